@@ -5,6 +5,6 @@ import com.parker.forex.utils.JfxUtils;
 public class TestCompiler {
 
 	public static void main(String[] args) throws Exception {
-		JfxUtils.compile("src/jforex/indicators/PairBollingerBands.java");
+		JfxUtils.compile("src/main/java/com/parker/forex/indicators/PairBollingerBands.java");
 	}
 }
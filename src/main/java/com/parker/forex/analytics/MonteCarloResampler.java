@@ -0,0 +1,208 @@
+package com.parker.forex.analytics;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Estimates the tail risk of a strategy by resampling its closed trades with a circular block bootstrap, run in
+ * parallel chunks seeded from one root so results do not depend on the number of cores.
+ */
+public class MonteCarloResampler {
+
+    private static final int SIMULATIONS_PER_CHUNK = 256;
+
+    private final double[] tradeProfits;
+
+    private int simulations = 10_000;
+    private int blockSize = 1;
+    private double startingEquity = 10_000;
+    private double ruinEquity = 0;
+    private long seed = 42;
+
+    public MonteCarloResampler(double[] tradeProfits) {
+        if (tradeProfits.length == 0) {
+            throw new IllegalArgumentException("At least one trade is required.");
+        }
+        this.tradeProfits = tradeProfits.clone();
+    }
+
+    public static MonteCarloResampler fromLedger(TradeLedger ledger) {
+        return new MonteCarloResampler(ledger.getClosedTradeProfits());
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private void simulate(int from, int to, SplittableRandom random, MonteCarloResult result) {
+        int trades = tradeProfits.length;
+
+        for (int s = from; s < to; s++) {
+            double equity = startingEquity;
+            double peak = equity;
+            double maxDrawDown = 0;
+            int losingStreak = 0;
+            int maxLosingStreak = 0;
+            double minEquity = equity;
+
+            int t = 0;
+            while (t < trades) {
+                int index = random.nextInt(trades);
+                int blockEnd = Math.min(t + blockSize, trades);
+
+                for (; t < blockEnd; t++) {
+                    double profit = tradeProfits[index];
+                    if (++index == trades) {
+                        index = 0;
+                    }
+
+                    equity += profit;
+                    if (equity > peak) {
+                        peak = equity;
+                    } else if (peak - equity > maxDrawDown) {
+                        maxDrawDown = peak - equity;
+                    }
+                    if (equity < minEquity) {
+                        minEquity = equity;
+                    }
+
+                    // Wins and losses are close to random so the streak is counted without a branch on the sign
+                    losingStreak = (losingStreak + 1) * (int) (Double.doubleToRawLongBits(profit) >>> 63);
+                    if (losingStreak > maxLosingStreak) {
+                        maxLosingStreak = losingStreak;
+                    }
+                }
+            }
+
+            result.maxDrawDowns[s] = maxDrawDown;
+            result.finalProfits[s] = equity - startingEquity;
+            result.maxLosingStreaks[s] = maxLosingStreak;
+            result.ruined[s] = minEquity <= ruinEquity;
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    public MonteCarloResampler simulations(int simulations) {
+        if (simulations <= 0) {
+            throw new IllegalArgumentException("At least one simulation is required.");
+        }
+        this.simulations = simulations;
+        return this;
+    }
+
+    /**
+     * Sets the number of consecutive trades drawn at a time, 1 for a plain bootstrap.
+     */
+    public MonteCarloResampler blockSize(int blockSize) {
+        this.blockSize = Math.max(1, blockSize);
+        return this;
+    }
+
+    public MonteCarloResampler startingEquity(double startingEquity) {
+        this.startingEquity = startingEquity;
+        return this;
+    }
+
+    /**
+     * Sets the equity at or below which a sequence counts as ruined.
+     */
+    public MonteCarloResampler ruinEquity(double ruinEquity) {
+        this.ruinEquity = ruinEquity;
+        return this;
+    }
+
+    public MonteCarloResampler seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public MonteCarloResult run() {
+        MonteCarloResult result = new MonteCarloResult(simulations, tradeProfits.length);
+
+        int chunks = (simulations + SIMULATIONS_PER_CHUNK - 1) / SIMULATIONS_PER_CHUNK;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int i = 0; i < chunks; i++) {
+            randoms[i] = root.split();
+        }
+
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int from = chunk * SIMULATIONS_PER_CHUNK;
+            simulate(from, Math.min(from + SIMULATIONS_PER_CHUNK, simulations), randoms[chunk], result);
+        });
+
+        result.sort();
+        return result;
+    }
+
+    /**
+     * Percentile statistics of the resampled sequences.
+     */
+    public static class MonteCarloResult {
+
+        final int trades;
+        final double[] maxDrawDowns;
+        final double[] finalProfits;
+        final int[] maxLosingStreaks;
+        final boolean[] ruined;
+        int ruinedCount;
+
+        MonteCarloResult(int simulations, int trades) {
+            this.trades = trades;
+            this.maxDrawDowns = new double[simulations];
+            this.finalProfits = new double[simulations];
+            this.maxLosingStreaks = new int[simulations];
+            this.ruined = new boolean[simulations];
+        }
+
+        void sort() {
+            for (boolean r : ruined) {
+                if (r) {
+                    ruinedCount++;
+                }
+            }
+            Arrays.sort(maxDrawDowns);
+            Arrays.sort(finalProfits);
+            Arrays.sort(maxLosingStreaks);
+        }
+
+        private int indexOf(double percentile) {
+            int index = (int) Math.ceil(percentile / 100.0 * maxDrawDowns.length) - 1;
+            return Math.max(0, Math.min(maxDrawDowns.length - 1, index));
+        }
+
+        public int getSimulations() {
+            return maxDrawDowns.length;
+        }
+
+        public double getMaxDrawDown(double percentile) {
+            return maxDrawDowns[indexOf(percentile)];
+        }
+
+        public double getFinalProfit(double percentile) {
+            return finalProfits[indexOf(percentile)];
+        }
+
+        public int getMaxLosingStreak(double percentile) {
+            return maxLosingStreaks[indexOf(percentile)];
+        }
+
+        /**
+         * Returns the fraction (0-1) of sequences that hit the ruin equity at any point.
+         */
+        public double getRiskOfRuin() {
+            return maxDrawDowns.length == 0 ? 0 : (double) ruinedCount / maxDrawDowns.length;
+        }
+
+        @Override
+        public String toString() {
+            return "[simulations=" + getSimulations() + ", trades=" + trades
+                    + ", maxDrawDown p50/p95/p99=$" + Math.round(getMaxDrawDown(50)) + "/$" + Math.round(getMaxDrawDown(95)) + "/$" + Math.round(getMaxDrawDown(99))
+                    + ", finalProfit p5/p50/p95=$" + Math.round(getFinalProfit(5)) + "/$" + Math.round(getFinalProfit(50)) + "/$" + Math.round(getFinalProfit(95))
+                    + ", maxLosingStreak p50/p99=" + getMaxLosingStreak(50) + "/" + getMaxLosingStreak(99)
+                    + ", riskOfRuin=" + Math.round(getRiskOfRuin() * 1000) / 10.0 + "%]";
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.parker.forex.analytics;
+
+import com.dukascopy.api.Instrument;
+
+/**
+ * Columnar, in-memory view of a trade ledger file, holding every run written to it; use {@link #getRun(int)} to analyse
+ * one.
+ */
+public class TradeLedger {
+
+    // Header: magic(4) version(2) recordSize(2), then rows of time(8) type(1) side(1) instrument(2) reserved(4)
+    // orderId(8) amount(8) price(8) value(8) extra(8), little endian
+    static final int MAGIC = 0x544C4447; // "TLDG"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 56;
+
+    public static final int NO_INSTRUMENT = -1;
+
+    /**
+     * The kind of event stored in a ledger row. The meaning of the value columns depends on the type:
+     * <ul>
+     * <li>FILL: price=open price, value=0, extra=0</li>
+     * <li>CLOSE: price=close price, value=profit/loss in USD, extra=commission in USD charged for the order</li>
+     * <li>EQUITY: value=equity, extra=balance</li>
+     * <li>RUN: the start of a run, time=wall clock time the ledger was opened</li>
+     * </ul>
+     */
+    public enum Type {
+        FILL, CLOSE, EQUITY, RUN;
+
+        private static final Type[] VALUES = values();
+
+        static Type valueOf(byte code) {
+            return VALUES[code];
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    final int size;
+    final long[] times;
+    final byte[] types;
+    final byte[] sides;
+    final short[] instruments;
+    final long[] orderIds;
+    final double[] amounts;
+    final double[] prices;
+    final double[] values;
+    final double[] extras;
+
+    TradeLedger(int size) {
+        this.size = size;
+        this.times = new long[size];
+        this.types = new byte[size];
+        this.sides = new byte[size];
+        this.instruments = new short[size];
+        this.orderIds = new long[size];
+        this.amounts = new double[size];
+        this.prices = new double[size];
+        this.values = new double[size];
+        this.extras = new double[size];
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods - Column Access
+    // *****************************************************************************************************************
+    public int size() {
+        return size;
+    }
+
+    public long getTime(int row) {
+        return times[row];
+    }
+
+    public Type getType(int row) {
+        return Type.valueOf(types[row]);
+    }
+
+    public boolean isLong(int row) {
+        return sides[row] > 0;
+    }
+
+    public Instrument getInstrument(int row) {
+        return instruments[row] == NO_INSTRUMENT ? null : Instrument.values()[instruments[row]];
+    }
+
+    public long getOrderId(int row) {
+        return orderIds[row];
+    }
+
+    public double getAmount(int row) {
+        return amounts[row];
+    }
+
+    public double getPrice(int row) {
+        return prices[row];
+    }
+
+    public double getValue(int row) {
+        return values[row];
+    }
+
+    public double getExtra(int row) {
+        return extras[row];
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods - Analytics
+    // *****************************************************************************************************************
+    public int count(Type type) {
+        int count = 0;
+        byte code = (byte) type.ordinal();
+        for (int i = 0; i < size; i++) {
+            if (types[i] == code) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public double sum(Type type) {
+        double sum = 0;
+        byte code = (byte) type.ordinal();
+        for (int i = 0; i < size; i++) {
+            if (types[i] == code) {
+                sum += values[i];
+            }
+        }
+        return sum;
+    }
+
+    public int getWins() {
+        int wins = 0;
+        byte code = (byte) Type.CLOSE.ordinal();
+        for (int i = 0; i < size; i++) {
+            if (types[i] == code && values[i] - extras[i] >= 0) {
+                wins++;
+            }
+        }
+        return wins;
+    }
+
+    public int getLosses() {
+        return count(Type.CLOSE) - getWins();
+    }
+
+    /**
+     * Returns the net profit of all closed trades, i.e. the closed profit less the commission of each trade.
+     */
+    public double getNetProfit() {
+        double profit = 0;
+        byte code = (byte) Type.CLOSE.ordinal();
+        for (int i = 0; i < size; i++) {
+            if (types[i] == code) {
+                profit += values[i] - extras[i];
+            }
+        }
+        return profit;
+    }
+
+    /**
+     * Returns the net profit (after commission) of each closed trade in close order.
+     */
+    public double[] getClosedTradeProfits() {
+        double[] profits = new double[count(Type.CLOSE)];
+        byte code = (byte) Type.CLOSE.ordinal();
+        for (int i = 0, j = 0; i < size; i++) {
+            if (types[i] == code) {
+                profits[j++] = values[i] - extras[i];
+            }
+        }
+        return profits;
+    }
+
+    /**
+     * Returns the times of the equity snapshots.
+     */
+    public long[] getEquityTimes() {
+        long[] equityTimes = new long[count(Type.EQUITY)];
+        byte code = (byte) Type.EQUITY.ordinal();
+        for (int i = 0, j = 0; i < size; i++) {
+            if (types[i] == code) {
+                equityTimes[j++] = times[i];
+            }
+        }
+        return equityTimes;
+    }
+
+    /**
+     * Returns the equity curve from the equity snapshots.
+     */
+    public double[] getEquityCurve() {
+        double[] equity = new double[count(Type.EQUITY)];
+        byte code = (byte) Type.EQUITY.ordinal();
+        for (int i = 0, j = 0; i < size; i++) {
+            if (types[i] == code) {
+                equity[j++] = values[i];
+            }
+        }
+        return equity;
+    }
+
+    /**
+     * Returns the maximum peak-to-trough decline of the equity curve. Each run has its own curve, so a decline is never
+     * measured from the peak of an earlier run.
+     */
+    public double getMaxDrawDown() {
+        double peak = Double.NEGATIVE_INFINITY;
+        double maxDrawDown = 0;
+        byte code = (byte) Type.EQUITY.ordinal();
+        byte runCode = (byte) Type.RUN.ordinal();
+        for (int i = 0; i < size; i++) {
+            if (types[i] == code) {
+                peak = Math.max(peak, values[i]);
+                maxDrawDown = Math.max(maxDrawDown, peak - values[i]);
+            } else if (types[i] == runCode) {
+                peak = Double.NEGATIVE_INFINITY;
+            }
+        }
+        return maxDrawDown;
+    }
+
+    /**
+     * Returns the number of runs in the ledger.
+     */
+    public int getRunCount() {
+        return count(Type.RUN);
+    }
+
+    /**
+     * Returns the rows of a single run, e.g. <code>ledger.getRun(ledger.getRunCount() - 1)</code> for the latest.
+     */
+    public TradeLedger getRun(int run) {
+        if (run < 0 || run >= getRunCount()) {
+            throw new IndexOutOfBoundsException("Run " + run + " of " + getRunCount());
+        }
+
+        byte code = (byte) Type.RUN.ordinal();
+        int from = 0;
+        int current = -1;
+        for (int i = 0; i < size && current < run; i++) {
+            if (types[i] == code) {
+                current++;
+                from = i;
+            }
+        }
+        int to = from + 1;
+        while (to < size && types[to] != code) {
+            to++;
+        }
+
+        TradeLedger ledger = new TradeLedger(to - from);
+        System.arraycopy(times, from, ledger.times, 0, ledger.size);
+        System.arraycopy(types, from, ledger.types, 0, ledger.size);
+        System.arraycopy(sides, from, ledger.sides, 0, ledger.size);
+        System.arraycopy(instruments, from, ledger.instruments, 0, ledger.size);
+        System.arraycopy(orderIds, from, ledger.orderIds, 0, ledger.size);
+        System.arraycopy(amounts, from, ledger.amounts, 0, ledger.size);
+        System.arraycopy(prices, from, ledger.prices, 0, ledger.size);
+        System.arraycopy(values, from, ledger.values, 0, ledger.size);
+        System.arraycopy(extras, from, ledger.extras, 0, ledger.size);
+        return ledger;
+    }
+}
@@ -0,0 +1,61 @@
+package com.parker.forex.analytics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads ledger files written by {@link TradeLedgerWriter} into a columnar {@link TradeLedger}. The file is memory
+ * mapped and decoded in a single sequential pass.
+ */
+public final class TradeLedgerReader {
+
+    private TradeLedgerReader() {}
+
+    public static TradeLedger read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < TradeLedger.HEADER_SIZE) {
+                throw new IOException("Not a trade ledger file: " + path);
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Trade ledger file is too large to map: " + path);
+            }
+
+            MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0, length);
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != TradeLedger.MAGIC) {
+                throw new IOException("Not a trade ledger file: " + path);
+            }
+            short version = buffer.getShort();
+            short recordSize = buffer.getShort();
+            if (version != TradeLedger.VERSION || recordSize != TradeLedger.RECORD_SIZE) {
+                throw new IOException("Unsupported trade ledger version " + version + " (recordSize=" + recordSize + "): " + path);
+            }
+
+            // Ignore any trailing partial row left behind by a crashed writer
+            int rows = (int) ((length - TradeLedger.HEADER_SIZE) / TradeLedger.RECORD_SIZE);
+            TradeLedger ledger = new TradeLedger(rows);
+
+            for (int i = 0; i < rows; i++) {
+                ledger.times[i] = buffer.getLong();
+                ledger.types[i] = buffer.get();
+                ledger.sides[i] = buffer.get();
+                ledger.instruments[i] = buffer.getShort();
+                buffer.getInt();
+                ledger.orderIds[i] = buffer.getLong();
+                ledger.amounts[i] = buffer.getDouble();
+                ledger.prices[i] = buffer.getDouble();
+                ledger.values[i] = buffer.getDouble();
+                ledger.extras[i] = buffer.getDouble();
+            }
+            return ledger;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.parker.forex.analytics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.Instrument;
+import com.parker.forex.analytics.TradeLedger.Type;
+
+/**
+ * Appends fills, closes and equity snapshots to a binary ledger of fixed-width rows, starting each run with a {@link
+ * Type#RUN} row.
+ */
+public class TradeLedgerWriter implements Closeable {
+
+    private static final int DEFAULT_BUFFER_ROWS = 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    public TradeLedgerWriter(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_ROWS);
+    }
+
+    public TradeLedgerWriter(Path path, int bufferRows) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(1, bufferRows) * TradeLedger.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            long length = channel.size();
+            if (length == 0) {
+                buffer.putInt(TradeLedger.MAGIC);
+                buffer.putShort(TradeLedger.VERSION);
+                buffer.putShort((short) TradeLedger.RECORD_SIZE);
+                flush();
+            } else {
+                openExisting(path, length);
+            }
+            write(System.currentTimeMillis(), Type.RUN, true, null, 0, 0, 0, 0, 0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    /**
+     * Checks the header and positions after the last whole row.
+     */
+    private void openExisting(Path path, long length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(TradeLedger.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int read = 0;
+        while (header.hasRemaining() && read >= 0) {
+            read = channel.read(header, header.position());
+        }
+        header.flip();
+        if (header.remaining() < TradeLedger.HEADER_SIZE || header.getInt() != TradeLedger.MAGIC) {
+            throw new IOException("Not a trade ledger file: " + path);
+        }
+        short version = header.getShort();
+        short recordSize = header.getShort();
+        if (version != TradeLedger.VERSION || recordSize != TradeLedger.RECORD_SIZE) {
+            throw new IOException("Unsupported trade ledger version " + version + " (recordSize=" + recordSize + "): " + path);
+        }
+
+        long end = TradeLedger.HEADER_SIZE + (length - TradeLedger.HEADER_SIZE) / TradeLedger.RECORD_SIZE * TradeLedger.RECORD_SIZE;
+        if (end != length) {
+            channel.truncate(end);
+        }
+        channel.position(end);
+    }
+
+    private static long toOrderId(IOrder order) {
+        String id = order.getId();
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException nfe) {
+            return id.hashCode();
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    public void write(long time, Type type, boolean isLong, Instrument instrument, long orderId, double amount, double price,
+            double value, double extra) throws IOException {
+        if (buffer.remaining() < TradeLedger.RECORD_SIZE) {
+            flush();
+        }
+
+        buffer.putLong(time);
+        buffer.put((byte) type.ordinal());
+        buffer.put((byte) (isLong ? 1 : -1));
+        buffer.putShort((short) (instrument == null ? TradeLedger.NO_INSTRUMENT : instrument.ordinal()));
+        buffer.putInt(0);
+        buffer.putLong(orderId);
+        buffer.putDouble(amount);
+        buffer.putDouble(price);
+        buffer.putDouble(value);
+        buffer.putDouble(extra);
+    }
+
+    public void recordFill(IOrder order) throws IOException {
+        write(order.getFillTime(), Type.FILL, order.isLong(), order.getInstrument(), toOrderId(order), order.getAmount(),
+                order.getOpenPrice(), 0, 0);
+    }
+
+    public void recordClose(IOrder order) throws IOException {
+        write(order.getCloseTime(), Type.CLOSE, order.isLong(), order.getInstrument(), toOrderId(order), order.getAmount(),
+                order.getClosePrice(), order.getProfitLossInUSD(), order.getCommissionInUSD());
+    }
+
+    public void recordEquity(long time, double equity, double balance) throws IOException {
+        write(time, Type.EQUITY, true, null, 0, 0, 0, equity, balance);
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
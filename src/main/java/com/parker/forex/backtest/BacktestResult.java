@@ -0,0 +1,169 @@
+package com.parker.forex.backtest;
+
+import java.util.Arrays;
+
+/**
+ * Closed trades of a vectorised backtest held in parallel primitive arrays, along with summary statistics.
+ */
+public class BacktestResult {
+
+    public static final byte EXIT_STOP_LOSS = 1;
+    public static final byte EXIT_TAKE_PROFIT = 2;
+    public static final byte EXIT_TIME = 3;
+    public static final byte EXIT_END_OF_DATA = 4;
+
+    int size;
+    long[] entryTimes = new long[64];
+    long[] exitTimes = new long[64];
+    byte[] directions = new byte[64];
+    byte[] exitReasons = new byte[64];
+    double[] entryPrices = new double[64];
+    double[] exitPrices = new double[64];
+    double[] pips = new double[64];
+
+    int ambiguousBars;
+    int tickLookups;
+
+    void add(long entryTime, long exitTime, int direction, byte exitReason, double entryPrice, double exitPrice, double pipValue) {
+        if (size == entryTimes.length) {
+            int capacity = size * 2;
+            entryTimes = Arrays.copyOf(entryTimes, capacity);
+            exitTimes = Arrays.copyOf(exitTimes, capacity);
+            directions = Arrays.copyOf(directions, capacity);
+            exitReasons = Arrays.copyOf(exitReasons, capacity);
+            entryPrices = Arrays.copyOf(entryPrices, capacity);
+            exitPrices = Arrays.copyOf(exitPrices, capacity);
+            pips = Arrays.copyOf(pips, capacity);
+        }
+
+        entryTimes[size] = entryTime;
+        exitTimes[size] = exitTime;
+        directions[size] = (byte) direction;
+        exitReasons[size] = exitReason;
+        entryPrices[size] = entryPrice;
+        exitPrices[size] = exitPrice;
+        pips[size] = direction * (exitPrice - entryPrice) / pipValue;
+        size++;
+    }
+
+    void append(BacktestResult result) {
+        for (int i = 0; i < result.size; i++) {
+            add(result.entryTimes[i], result.exitTimes[i], result.directions[i], result.exitReasons[i], result.entryPrices[i],
+                    result.exitPrices[i], 1);
+            pips[size - 1] = result.pips[i];
+        }
+        ambiguousBars += result.ambiguousBars;
+        tickLookups += result.tickLookups;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    public int size() {
+        return size;
+    }
+
+    public long getEntryTime(int trade) {
+        return entryTimes[trade];
+    }
+
+    public long getExitTime(int trade) {
+        return exitTimes[trade];
+    }
+
+    public boolean isLong(int trade) {
+        return directions[trade] > 0;
+    }
+
+    public byte getExitReason(int trade) {
+        return exitReasons[trade];
+    }
+
+    public double getEntryPrice(int trade) {
+        return entryPrices[trade];
+    }
+
+    public double getExitPrice(int trade) {
+        return exitPrices[trade];
+    }
+
+    public double getPips(int trade) {
+        return pips[trade];
+    }
+
+    /**
+     * Returns the number of bars whose range crossed both the stop loss and take profit (or both stop entries).
+     */
+    public int getAmbiguousBars() {
+        return ambiguousBars;
+    }
+
+    /**
+     * Returns the number of ambiguous bars that were resolved with a tick lookup.
+     */
+    public int getTickLookups() {
+        return tickLookups;
+    }
+
+    public int getWins() {
+        int wins = 0;
+        for (int i = 0; i < size; i++) {
+            if (pips[i] > 0) {
+                wins++;
+            }
+        }
+        return wins;
+    }
+
+    public int getLosses() {
+        int losses = 0;
+        for (int i = 0; i < size; i++) {
+            if (pips[i] < 0) {
+                losses++;
+            }
+        }
+        return losses;
+    }
+
+    public double getTotalPips() {
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += pips[i];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the cumulative pips after each trade.
+     */
+    public double[] getEquityCurvePips() {
+        double[] equity = new double[size];
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += pips[i];
+            equity[i] = total;
+        }
+        return equity;
+    }
+
+    public double getMaxDrawDownPips() {
+        double total = 0;
+        double peak = 0;
+        double maxDrawDown = 0;
+        for (int i = 0; i < size; i++) {
+            total += pips[i];
+            peak = Math.max(peak, total);
+            maxDrawDown = Math.max(maxDrawDown, peak - total);
+        }
+        return maxDrawDown;
+    }
+
+    @Override
+    public String toString() {
+        int trades = getWins() + getLosses();
+        double winPct = trades == 0 ? 0 : 100.0 * getWins() / trades;
+        return "[trades=" + size + ", wins=" + getWins() + ", losses=" + getLosses() + ", win%=" + Math.round(winPct * 10) / 10.0
+                + ", pips=" + Math.round(getTotalPips() * 10) / 10.0 + ", maxDrawDownPips=" + Math.round(getMaxDrawDownPips() * 10) / 10.0
+                + ", ambiguousBars=" + ambiguousBars + ", tickLookups=" + tickLookups + "]";
+    }
+}
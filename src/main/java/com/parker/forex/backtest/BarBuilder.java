@@ -0,0 +1,358 @@
+package com.parker.forex.backtest;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.dukascopy.api.Filter;
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.JFException;
+import com.dukascopy.api.OfferSide;
+import com.dukascopy.api.Period;
+
+/**
+ * Builds the ask and bid bars of every period from replayed ticks in one pass, aligned as Dukascopy aligns them, for
+ * strategies that rely on <code>onBar</code> outside the Dukascopy tester.
+ */
+public class BarBuilder {
+
+    /** The periods built by default, shortest first. */
+    public static final Period[] STANDARD_PERIODS = {Period.ONE_SEC, Period.TEN_SECS, Period.ONE_MIN, Period.FIVE_MINS,
+        Period.TEN_MINS, Period.FIFTEEN_MINS, Period.THIRTY_MINS, Period.ONE_HOUR, Period.FOUR_HOURS, Period.DAILY,
+        Period.WEEKLY, Period.MONTHLY};
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    private static final long HOUR = 60 * 60000;
+    private static final long DAY = 24 * HOUR;
+    private static final long WEEK = 7 * DAY;
+    private static final long MONDAY = 4 * DAY;
+    private static final long WEEKEND_START = 4 * DAY + 22 * HOUR;
+    private static final long WEEKEND_END = 6 * DAY + 22 * HOUR;
+
+    /** Bar values are stored by slot as the ask fields, then the bid fields. */
+    private static final int OPEN = 0;
+    private static final int HIGH = 1;
+    private static final int LOW = 2;
+    private static final int CLOSE = 3;
+    private static final int VOLUME = 4;
+    private static final int ASK = 0;
+    private static final int BID = 5;
+    private static final int FIELDS = 10;
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final Filter filter;
+    private final int historySize;
+    private final Period[] periods;
+    private Listener listener;
+
+    private final long[] starts;
+    private final long[] ends;
+    private final int[] tickCounts;
+    private final double[] values;
+    private final History[] histories;
+
+    private final boolean[] started;
+    private final int[] active;
+    private int activeCount;
+    private long nextEnd = Long.MAX_VALUE;
+
+    /**
+     * Builds the {@link #STANDARD_PERIODS} keeping the last 1000 bars of each.
+     */
+    public BarBuilder(Filter filter) {
+        this(filter, 1000, STANDARD_PERIODS);
+    }
+
+    /**
+     * @param filter Which bars without ticks, flat at the previous close, are passed on.
+     * @param historySize The number of closed bars kept for each instrument, period and side.
+     */
+    public BarBuilder(Filter filter, int historySize, Period... periods) {
+        if (historySize <= 0) {
+            throw new IllegalArgumentException("The history size must be positive");
+        }
+        this.filter = filter;
+        this.historySize = historySize;
+        this.periods = periods.clone();
+        Arrays.sort(this.periods, Comparator.comparingLong(BarBuilder::getLength));
+        for (Period period : this.periods) {
+            if (getLength(period) <= 0) {
+                throw new IllegalArgumentException("Bars cannot be built for the period " + period);
+            }
+        }
+
+        int instruments = INSTRUMENTS.length;
+        int slots = instruments * this.periods.length;
+        this.starts = new long[slots];
+        this.ends = new long[slots];
+        this.tickCounts = new int[slots];
+        this.values = new double[slots * FIELDS];
+        this.histories = new History[slots];
+        this.started = new boolean[instruments];
+        this.active = new int[instruments];
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private static long getLength(Period period) {
+        return Period.MONTHLY.equals(period) ? 31 * DAY : period.getInterval();
+    }
+
+    private static long getBarEnd(Period period, long start) {
+        if (Period.MONTHLY.equals(period)) {
+            LocalDate date = Instant.ofEpochMilli(start).atZone(ZoneOffset.UTC).toLocalDate().plusMonths(1);
+            return date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        }
+        return Period.WEEKLY.equals(period) ? start + WEEK : start + period.getInterval();
+    }
+
+    private static boolean isWeekend(long time) {
+        long weekTime = Math.floorMod(time - MONDAY, WEEK);
+        return weekTime >= WEEKEND_START && weekTime < WEEKEND_END;
+    }
+
+    private int indexOf(Period period) {
+        for (int p = 0; p < periods.length; p++) {
+            if (periods[p].equals(period)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("Bars are not built for the period " + period);
+    }
+
+    private void open(int slot, long start, long end, double ask, double bid) {
+        starts[slot] = start;
+        ends[slot] = end;
+        tickCounts[slot] = 0;
+
+        int base = slot * FIELDS;
+        Arrays.fill(values, base + ASK, base + ASK + VOLUME, ask);
+        Arrays.fill(values, base + BID, base + BID + VOLUME, bid);
+        values[base + ASK + VOLUME] = 0;
+        values[base + BID + VOLUME] = 0;
+    }
+
+    private void start(int ordinal, long time, double ask, double bid) {
+        for (int p = 0; p < periods.length; p++) {
+            long start = getBarStart(periods[p], time);
+            long end = getBarEnd(periods[p], start);
+            open(ordinal * periods.length + p, start, end, ask, bid);
+            nextEnd = Math.min(nextEnd, end);
+        }
+
+        started[ordinal] = true;
+        int i = activeCount++;
+        while (i > 0 && active[i - 1] > ordinal) {
+            active[i] = active[i - 1];
+            i--;
+        }
+        active[i] = ordinal;
+    }
+
+    private void close(int ordinal, int p, int slot) throws JFException {
+        int base = slot * FIELDS;
+        long start = starts[slot];
+        boolean flat = tickCounts[slot] == 0;
+        boolean skip = flat && (filter == Filter.ALL_FLATS || filter == Filter.WEEKENDS && isWeekend(start));
+
+        if (!skip) {
+            if (histories[slot] == null) {
+                histories[slot] = new History(historySize);
+            }
+            histories[slot].add(start, values, base);
+
+            if (listener != null) {
+                listener.onBar(INSTRUMENTS[ordinal], periods[p], toBar(start, base + ASK), toBar(start, base + BID));
+            }
+        }
+
+        long end = ends[slot];
+        open(slot, end, getBarEnd(periods[p], end), values[base + ASK + CLOSE], values[base + BID + CLOSE]);
+    }
+
+    private IBar toBar(long time, int offset) {
+        return new ReplayBar(time, values[offset + OPEN], values[offset + HIGH], values[offset + LOW], values[offset + CLOSE],
+            values[offset + VOLUME]);
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * @return The start of the bar of the period containing the time.
+     */
+    public static long getBarStart(Period period, long time) {
+        if (Period.MONTHLY.equals(period)) {
+            LocalDate date = Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC).toLocalDate().withDayOfMonth(1);
+            return date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        }
+        if (Period.WEEKLY.equals(period)) {
+            return Math.floorDiv(time - MONDAY, WEEK) * WEEK + MONDAY;
+        }
+        return Math.floorDiv(time, period.getInterval()) * period.getInterval();
+    }
+
+    /**
+     * Sets the listener closed bars are passed to, e.g. <code>strategy::onBar</code>.
+     */
+    public BarBuilder setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Closes the bars of every instrument that end at or before the time.
+     */
+    public void advance(long time) throws JFException {
+        while (nextEnd <= time) {
+            long end = nextEnd;
+            nextEnd = Long.MAX_VALUE;
+            for (int p = 0; p < periods.length; p++) {
+                for (int i = 0; i < activeCount; i++) {
+                    int slot = active[i] * periods.length + p;
+                    if (ends[slot] == end) {
+                        close(active[i], p, slot);
+                    }
+                    nextEnd = Math.min(nextEnd, ends[slot]);
+                }
+            }
+        }
+    }
+
+    public void onTick(Instrument instrument, ITick tick) throws JFException {
+        onTick(instrument, tick.getTime(), tick.getBid(), tick.getAsk(), tick.getBidVolume(), tick.getAskVolume());
+    }
+
+    /**
+     * Closes the bars the tick is past, then adds the tick to the bars of its instrument.
+     */
+    public void onTick(Instrument instrument, long time, double bid, double ask, double bidVolume, double askVolume) throws JFException {
+        advance(time);
+
+        int ordinal = instrument.ordinal();
+        if (!started[ordinal]) {
+            start(ordinal, time, ask, bid);
+        }
+
+        for (int slot = ordinal * periods.length, last = slot + periods.length; slot < last; slot++) {
+            int base = slot * FIELDS;
+            if (tickCounts[slot]++ == 0) {
+                values[base + ASK + OPEN] = ask;
+                values[base + ASK + HIGH] = ask;
+                values[base + ASK + LOW] = ask;
+                values[base + BID + OPEN] = bid;
+                values[base + BID + HIGH] = bid;
+                values[base + BID + LOW] = bid;
+            } else {
+                values[base + ASK + HIGH] = Math.max(values[base + ASK + HIGH], ask);
+                values[base + ASK + LOW] = Math.min(values[base + ASK + LOW], ask);
+                values[base + BID + HIGH] = Math.max(values[base + BID + HIGH], bid);
+                values[base + BID + LOW] = Math.min(values[base + BID + LOW], bid);
+            }
+            values[base + ASK + CLOSE] = ask;
+            values[base + BID + CLOSE] = bid;
+            values[base + ASK + VOLUME] += askVolume;
+            values[base + BID + VOLUME] += bidVolume;
+        }
+    }
+
+    /**
+     * Returns a bar the way <code>IHistory.getBar</code> does.
+     *
+     * @param shift 0 for the bar being built, 1 for the last closed bar and so on.
+     * @return Null if the bar is not known.
+     */
+    public IBar getBar(Instrument instrument, Period period, OfferSide side, int shift) {
+        int slot = instrument.ordinal() * periods.length + indexOf(period);
+        int offset = side == OfferSide.ASK ? ASK : BID;
+        if (!started[instrument.ordinal()]) {
+            return null;
+        }
+        if (shift == 0) {
+            return toBar(starts[slot], slot * FIELDS + offset);
+        }
+
+        History history = histories[slot];
+        return history == null || shift > history.size ? null : history.get(history.size - shift, offset);
+    }
+
+    /**
+     * @return Up to the given number of the last closed bars, oldest first.
+     */
+    public List<IBar> getBars(Instrument instrument, Period period, OfferSide side, int count) {
+        History history = histories[instrument.ordinal() * periods.length + indexOf(period)];
+        int offset = side == OfferSide.ASK ? ASK : BID;
+        int size = history == null ? 0 : Math.min(count, history.size);
+
+        List<IBar> bars = new ArrayList<>(size);
+        for (int i = history == null ? 0 : history.size - size; bars.size() < size; i++) {
+            bars.add(history.get(i, offset));
+        }
+        return bars;
+    }
+
+    /**
+     * @return The start of the bar being built, or -1 if the instrument has had no ticks.
+     */
+    public long getCurrentBarStart(Instrument instrument, Period period) {
+        return started[instrument.ordinal()] ? starts[instrument.ordinal() * periods.length + indexOf(period)] : -1;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    public interface Listener {
+
+        /**
+         * Called for each closed bar, see {@link com.dukascopy.api.IStrategy#onBar}.
+         */
+        void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) throws JFException;
+    }
+
+    /**
+     * A ring of the last closed bars of one instrument and period, both sides.
+     */
+    private static class History {
+
+        private final long[] times;
+        private final double[] values;
+        private int next;
+        private int size;
+
+        History(int capacity) {
+            this.times = new long[capacity];
+            this.values = new double[capacity * FIELDS];
+        }
+
+        void add(long time, double[] source, int offset) {
+            times[next] = time;
+            System.arraycopy(source, offset, values, next * FIELDS, FIELDS);
+            next = (next + 1) % times.length;
+            size = Math.min(size + 1, times.length);
+        }
+
+        /**
+         * @param index From 0 for the oldest bar kept.
+         */
+        IBar get(int index, int offset) {
+            int i = Math.floorMod(next - size + index, times.length);
+            int base = i * FIELDS + offset;
+            return new ReplayBar(times[i], values[base + OPEN], values[base + HIGH], values[base + LOW], values[base + CLOSE],
+                values[base + VOLUME]);
+        }
+    }
+}
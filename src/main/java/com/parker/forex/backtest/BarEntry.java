@@ -0,0 +1,51 @@
+package com.parker.forex.backtest;
+
+/**
+ * The orders a {@link BarRule} wants placed after a bar closes, either a market order or stop orders pending until
+ * <code>pendingUntil</code>. Reused for every bar; unused prices are NaN.
+ */
+public class BarEntry {
+
+    /** 1 for a market buy, -1 for a market sell, 0 for no market order. */
+    public int direction;
+
+    /** Ask price that triggers a buy, or NaN. */
+    public double buyStop;
+
+    /** Bid price that triggers a sell, or NaN. */
+    public double sellStop;
+
+    /** Stop orders are cancelled if not triggered in a bar opening before this time. */
+    public long pendingUntil;
+
+    /** Stop loss distance from the fill price, or NaN. */
+    public double stopLossDistance;
+
+    /** Take profit distance from the fill price, or NaN. */
+    public double takeProfitDistance;
+
+    /** Absolute stop loss price for market orders, overrides the distance when set. */
+    public double stopLossPrice;
+
+    /** Absolute take profit price for market orders, overrides the distance when set. */
+    public double takeProfitPrice;
+
+    /** The position is closed at the close of the first bar opening at or after this time, 0 for no time exit. */
+    public long exitTime;
+
+    void reset() {
+        direction = 0;
+        buyStop = Double.NaN;
+        sellStop = Double.NaN;
+        pendingUntil = 0;
+        stopLossDistance = Double.NaN;
+        takeProfitDistance = Double.NaN;
+        stopLossPrice = Double.NaN;
+        takeProfitPrice = Double.NaN;
+        exitTime = 0;
+    }
+
+    boolean isEmpty() {
+        return direction == 0 && Double.isNaN(buyStop) && Double.isNaN(sellStop);
+    }
+}
@@ -0,0 +1,21 @@
+package com.parker.forex.backtest;
+
+/**
+ * Entry (and optionally trailing stop) logic of a bar-driven strategy expressed over primitive bar arrays.
+ */
+public interface BarRule {
+
+    /**
+     * Called when the given bar has closed and there is no open position. Fills in the entry and returns true if orders
+     * should be placed, replacing any pending orders.
+     */
+    boolean evaluate(BarSeries bid, BarSeries ask, int bar, BarEntry entry);
+
+    /**
+     * Called when the given bar has closed and a position is open. Returns the new stop loss price, or the current one to
+     * leave it unchanged.
+     */
+    default double trailStop(BarSeries bid, BarSeries ask, int bar, boolean isLong, double entryPrice, double stopLoss) {
+        return stopLoss;
+    }
+}
@@ -0,0 +1,135 @@
+package com.parker.forex.backtest;
+
+/**
+ * Entry rules of the archived bar-driven strategies expressed as {@link BarRule}s for the {@link VectorisedBacktester}.
+ * Parameters mirror the strategies' configurable fields.
+ */
+public final class BarRules {
+
+    private static final long MILLIS_IN_HOUR = 3_600_000L;
+    private static final long MILLIS_IN_DAY = 86_400_000L;
+
+    private BarRules() {}
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private static int getHourOfDay(long time) {
+        return (int) ((time % MILLIS_IN_DAY) / MILLIS_IN_HOUR);
+    }
+
+    private static boolean isWeekend(long time) {
+        // 01/01/1970 was a Thursday
+        int dayOfWeek = (int) ((time / MILLIS_IN_DAY + 4) % 7);
+        return dayOfWeek == 0 || dayOfWeek == 6;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * TrendSetterStrategy: opens in the direction of the last bar and closes at the end of the next one.
+     */
+    public static BarRule trendSetter(double pipValue, int minPeriodRangePips) {
+        return (bid, ask, bar, entry) -> {
+            double barSize = bid.closes[bar] - bid.opens[bar];
+            if (Math.abs(barSize) <= minPeriodRangePips * pipValue) {
+                return false;
+            }
+
+            entry.direction = barSize > 0 ? 1 : -1;
+            entry.exitTime = bid.times[bar] + bid.interval;
+            return true;
+        };
+    }
+
+    /**
+     * BallBreakerStrategy: stop orders beyond the previous (daily) bar's range with a fixed stop loss and a take profit
+     * at the risk/reward ratio. Pending orders are replaced at the next bar.
+     */
+    public static BarRule ballBreaker(double pipValue, int stopLossPips, int entryBuffer, int riskRewardRatio) {
+        return (bid, ask, bar, entry) -> {
+            entry.buyStop = ask.highs[bar] + pipValue * entryBuffer;
+            entry.sellStop = bid.lows[bar] - pipValue * entryBuffer;
+            entry.pendingUntil = bid.times[bar] + 2 * bid.interval;
+            entry.stopLossDistance = pipValue * stopLossPips;
+            entry.takeProfitDistance = pipValue * stopLossPips * riskRewardRatio;
+            return true;
+        };
+    }
+
+    /**
+     * DayTripperStrategy: buys when the ask trades above the previous (daily) close plus the entry delta and sells when
+     * the bid trades below it, closing at the end of the day. As in the strategy both triggers use the same level.
+     * Only one order a day is modelled, the strategy's default daily order limit; higher limits are not supported.
+     */
+    public static BarRule dayTripper(double pipValue, int entryDelta, int stopLossPips, int takeProfitPips) {
+        return (bid, ask, bar, entry) -> {
+            double entryPrice = bid.closes[bar] + pipValue * entryDelta;
+            entry.buyStop = entryPrice;
+            entry.sellStop = entryPrice;
+            entry.pendingUntil = bid.times[bar] + 2 * bid.interval;
+            entry.stopLossDistance = pipValue * stopLossPips;
+            entry.takeProfitDistance = pipValue * takeProfitPips;
+            entry.exitTime = bid.times[bar] + bid.interval;
+            return true;
+        };
+    }
+
+    /**
+     * MorningGloryStrategy: trades breaks of the early morning range in the direction of the SMA, with the stop loss at
+     * the other side of the range trailed to recent closes, and closes everything at the end hour.
+     */
+    public static BarRule morningGlory(int smaPeriods, int initialRangePeriods, int stopLossLookbackPeriods, int startHour, int endHour) {
+        return new BarRule() {
+
+            // Unknown until the first bar at the start hour
+            double buyTriggerPrice = Double.NaN;
+            double sellTriggerPrice = Double.NaN;
+
+            @Override
+            public boolean evaluate(BarSeries bid, BarSeries ask, int bar, BarEntry entry) {
+                long time = bid.times[bar];
+                int hour = getHourOfDay(time);
+                if (isWeekend(time) || hour < startHour || hour >= endHour) {
+                    return false;
+                }
+
+                if (hour == startHour) {
+                    buyTriggerPrice = bid.getMaxClose(bar, initialRangePeriods);
+                    sellTriggerPrice = bid.getMinClose(bar, initialRangePeriods);
+                }
+
+                if (Double.isNaN(buyTriggerPrice) || Double.isNaN(sellTriggerPrice)) {
+                    return false;
+                }
+
+                double close = bid.closes[bar];
+                double sma = bid.getSma(bar, smaPeriods);
+                if (close > buyTriggerPrice && close > sma) {
+                    entry.direction = 1;
+                    entry.stopLossPrice = sellTriggerPrice;
+                } else if (close < sellTriggerPrice && close < sma) {
+                    entry.direction = -1;
+                    entry.stopLossPrice = buyTriggerPrice;
+                } else {
+                    return false;
+                }
+
+                entry.exitTime = time - time % MILLIS_IN_DAY + endHour * MILLIS_IN_HOUR;
+                return true;
+            }
+
+            @Override
+            public double trailStop(BarSeries bid, BarSeries ask, int bar, boolean isLong, double entryPrice, double stopLoss) {
+                if (isLong) {
+                    double min = bid.getMinClose(bar, stopLossLookbackPeriods);
+                    return entryPrice > min && min > stopLoss ? min : stopLoss;
+                } else {
+                    double max = bid.getMaxClose(bar, stopLossLookbackPeriods);
+                    return entryPrice < max && max < stopLoss ? max : stopLoss;
+                }
+            }
+        };
+    }
+}
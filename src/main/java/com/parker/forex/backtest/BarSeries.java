@@ -0,0 +1,145 @@
+package com.parker.forex.backtest;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.dukascopy.api.IBar;
+
+/**
+ * A series of bars for one instrument, period and offer side held in parallel primitive arrays.
+ */
+public class BarSeries {
+
+    final long interval;
+    final long[] times;
+    final double[] opens;
+    final double[] highs;
+    final double[] lows;
+    final double[] closes;
+
+    public BarSeries(long interval, long[] times, double[] opens, double[] highs, double[] lows, double[] closes) {
+        int size = times.length;
+        if (opens.length != size || highs.length != size || lows.length != size || closes.length != size) {
+            throw new IllegalArgumentException("All bar columns must have the same length.");
+        }
+
+        this.interval = interval;
+        this.times = times;
+        this.opens = opens;
+        this.highs = highs;
+        this.lows = lows;
+        this.closes = closes;
+    }
+
+    /**
+     * Copies bars loaded from the history service, e.g. <code>history.getBars(instrument, period, side, from, to)</code>.
+     */
+    public static BarSeries fromBars(long interval, List<IBar> bars) {
+        int size = bars.size();
+        long[] times = new long[size];
+        double[] opens = new double[size];
+        double[] highs = new double[size];
+        double[] lows = new double[size];
+        double[] closes = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            IBar bar = bars.get(i);
+            times[i] = bar.getTime();
+            opens[i] = bar.getOpen();
+            highs[i] = bar.getHigh();
+            lows[i] = bar.getLow();
+            closes[i] = bar.getClose();
+        }
+        return new BarSeries(interval, times, opens, highs, lows, closes);
+    }
+
+    /**
+     * Returns a copy of this series with every price shifted by a constant spread. Useful to derive an ask series from a
+     * bid series when only one side is available.
+     */
+    public BarSeries withSpread(double spread) {
+        int size = size();
+        double[] opens = new double[size];
+        double[] highs = new double[size];
+        double[] lows = new double[size];
+        double[] closes = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            opens[i] = this.opens[i] + spread;
+            highs[i] = this.highs[i] + spread;
+            lows[i] = this.lows[i] + spread;
+            closes[i] = this.closes[i] + spread;
+        }
+        return new BarSeries(interval, times, opens, highs, lows, closes);
+    }
+
+    /**
+     * Returns the index of the first bar opening at or after the given time (binary search), or size() if there is none.
+     */
+    public int indexOf(long time) {
+        int index = Arrays.binarySearch(times, time);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public long getTime(int bar) {
+        return times[bar];
+    }
+
+    public double getOpen(int bar) {
+        return opens[bar];
+    }
+
+    public double getHigh(int bar) {
+        return highs[bar];
+    }
+
+    public double getLow(int bar) {
+        return lows[bar];
+    }
+
+    public double getClose(int bar) {
+        return closes[bar];
+    }
+
+    /**
+     * Returns the lowest close of the given number of bars ending at (and including) the given bar.
+     */
+    public double getMinClose(int bar, int count) {
+        double min = Double.MAX_VALUE;
+        for (int i = Math.max(0, bar - count + 1); i <= bar; i++) {
+            min = Math.min(min, closes[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Returns the highest close of the given number of bars ending at (and including) the given bar.
+     */
+    public double getMaxClose(int bar, int count) {
+        double max = -Double.MAX_VALUE;
+        for (int i = Math.max(0, bar - count + 1); i <= bar; i++) {
+            max = Math.max(max, closes[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the simple moving average of the closes of the given number of bars ending at (and including) the given bar.
+     */
+    public double getSma(int bar, int count) {
+        int from = Math.max(0, bar - count + 1);
+        double total = 0;
+        for (int i = from; i <= bar; i++) {
+            total += closes[i];
+        }
+        return total / (bar - from + 1);
+    }
+}
@@ -0,0 +1,109 @@
+package com.parker.forex.backtest;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.dukascopy.api.Configurable;
+
+/**
+ * A grid of integer parameter ranges to optimize over. Parameters are named after the <code>@Configurable</code> fields
+ * of the strategy they are taken from and every combination is addressed by a single index.
+ */
+public class ParameterGrid {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<int[]> ranges = new ArrayList<>();
+
+    /**
+     * Adds a parameter ranging from <code>from</code> to <code>to</code> (inclusive) in the given step.
+     */
+    public ParameterGrid add(String name, int from, int to, int step) {
+        if (step <= 0 || to < from) {
+            throw new IllegalArgumentException("Invalid range for " + name + ": " + from + " to " + to + " step " + step);
+        }
+        names.add(name);
+        ranges.add(new int[] {from, to, step});
+        return this;
+    }
+
+    /**
+     * Checks that every parameter matches the value of an <code>@Configurable</code> field of the given strategy class.
+     */
+    public ParameterGrid validate(Class<?> strategyClass) {
+        Set<String> configurables = new HashSet<>();
+        for (Field field : strategyClass.getFields()) {
+            Configurable configurable = field.getAnnotation(Configurable.class);
+            if (configurable != null) {
+                configurables.add(configurable.value());
+            }
+        }
+
+        for (String name : names) {
+            if (!configurables.contains(name)) {
+                throw new IllegalArgumentException(strategyClass.getSimpleName() + " has no @Configurable parameter named '" + name + "'.");
+            }
+        }
+        return this;
+    }
+
+    public int getParameterCount() {
+        return names.size();
+    }
+
+    public String getName(int parameter) {
+        return names.get(parameter);
+    }
+
+    private int getValueCount(int parameter) {
+        int[] range = ranges.get(parameter);
+        return Math.toIntExact(((long) range[1] - range[0]) / range[2] + 1);
+    }
+
+    /**
+     * Returns the number of parameter combinations.
+     *
+     * @throws ArithmeticException If there are more than fit in an int.
+     */
+    public int size() {
+        int size = 1;
+        for (int i = 0; i < names.size(); i++) {
+            size = Math.multiplyExact(size, getValueCount(i));
+        }
+        return size;
+    }
+
+    /**
+     * Returns the parameter values of the given combination, in the order the parameters were added.
+     */
+    public int[] get(int combination) {
+        int[] values = new int[names.size()];
+        for (int i = values.length - 1; i >= 0; i--) {
+            int count = getValueCount(i);
+            int[] range = ranges.get(i);
+            values[i] = range[0] + (combination % count) * range[2];
+            combination /= count;
+        }
+        return values;
+    }
+
+    public String toString(int[] values) {
+        StringBuilder parameters = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            parameters.append(i == 0 ? "" : ", ").append(names.get(i)).append("=").append(values[i]);
+        }
+        return parameters.append("]").toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder grid = new StringBuilder("[");
+        for (int i = 0; i < names.size(); i++) {
+            grid.append(i == 0 ? "" : ", ").append(names.get(i)).append("=").append(Arrays.toString(ranges.get(i)));
+        }
+        return grid.append("]").toString();
+    }
+}
@@ -0,0 +1,149 @@
+package com.parker.forex.backtest;
+
+import java.util.Arrays;
+
+/**
+ * Orders waiting for a price to rise or fall to their trigger price, in a binary heap of order slots held in primitive
+ * arrays.
+ */
+class PriceBook {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final boolean rising;
+    private int[] slots = new int[16];
+    private double[] prices = new double[16];
+    private int[] positions = new int[16];
+    private int size;
+
+    /**
+     * @param rising True if orders trigger when the price rises to their price, so the lowest price is on top; false
+     *            if they trigger when it falls to it, so the highest is on top.
+     */
+    PriceBook(boolean rising) {
+        this.rising = rising;
+        Arrays.fill(positions, -1);
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private boolean before(double a, double b) {
+        return rising ? a < b : a > b;
+    }
+
+    private void place(int position, int slot, double price) {
+        slots[position] = slot;
+        prices[position] = price;
+        positions[slot] = position;
+    }
+
+    private void siftUp(int position) {
+        int slot = slots[position];
+        double price = prices[position];
+        while (position > 0) {
+            int parent = (position - 1) >> 1;
+            if (!before(price, prices[parent])) {
+                break;
+            }
+            place(position, slots[parent], prices[parent]);
+            position = parent;
+        }
+        place(position, slot, price);
+    }
+
+    private void siftDown(int position) {
+        int slot = slots[position];
+        double price = prices[position];
+        int half = size >> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && before(prices[child + 1], prices[child])) {
+                child++;
+            }
+            if (!before(prices[child], price)) {
+                break;
+            }
+            place(position, slots[child], prices[child]);
+            position = child;
+        }
+        place(position, slot, price);
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Adds the order, or moves it to the new price if it is already in the book.
+     */
+    void put(int slot, double price) {
+        if (slot >= positions.length) {
+            int length = positions.length;
+            positions = Arrays.copyOf(positions, Math.max(slot + 1, length * 2));
+            Arrays.fill(positions, length, positions.length, -1);
+        }
+
+        int position = positions[slot];
+        if (position >= 0) {
+            boolean up = before(price, prices[position]);
+            prices[position] = price;
+            if (up) {
+                siftUp(position);
+            } else {
+                siftDown(position);
+            }
+            return;
+        }
+
+        if (size == slots.length) {
+            slots = Arrays.copyOf(slots, size * 2);
+            prices = Arrays.copyOf(prices, size * 2);
+        }
+        slots[size] = slot;
+        prices[size] = price;
+        positions[slot] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * Removes the order if it is in the book.
+     */
+    void remove(int slot) {
+        int position = slot < positions.length ? positions[slot] : -1;
+        if (position < 0) {
+            return;
+        }
+        positions[slot] = -1;
+
+        if (position != --size) {
+            // Fill the gap with the last order and restore the heap around it
+            int moved = slots[size];
+            place(position, moved, prices[size]);
+            siftUp(position);
+            siftDown(positions[moved]);
+        }
+    }
+
+    /**
+     * @return True if the price has reached the trigger price of the order on top.
+     */
+    boolean isTriggered(double price) {
+        return size > 0 && (rising ? price >= prices[0] : price <= prices[0]);
+    }
+
+    /**
+     * @return The slot of the order nearest to triggering.
+     */
+    int peek() {
+        return slots[0];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
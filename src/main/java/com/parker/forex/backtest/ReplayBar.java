@@ -0,0 +1,66 @@
+package com.parker.forex.backtest;
+
+import com.dukascopy.api.IBar;
+
+/**
+ * An immutable bar built from replayed ticks.
+ */
+public class ReplayBar implements IBar {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final long time;
+    private final double open;
+    private final double high;
+    private final double low;
+    private final double close;
+    private final double volume;
+
+    public ReplayBar(long time, double open, double high, double low, double close, double volume) {
+        this.time = time;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    @Override
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public double getOpen() {
+        return open;
+    }
+
+    @Override
+    public double getHigh() {
+        return high;
+    }
+
+    @Override
+    public double getLow() {
+        return low;
+    }
+
+    @Override
+    public double getClose() {
+        return close;
+    }
+
+    @Override
+    public double getVolume() {
+        return volume;
+    }
+
+    @Override
+    public String toString() {
+        return time + " O:" + open + " H:" + high + " L:" + low + " C:" + close + " V:" + volume;
+    }
+}
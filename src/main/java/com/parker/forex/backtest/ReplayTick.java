@@ -0,0 +1,97 @@
+package com.parker.forex.backtest;
+
+import com.dukascopy.api.ITick;
+
+/**
+ * A tick of replayed data. An instance can be set again for the next tick where nothing keeps a reference to it.
+ */
+public class ReplayTick implements ITick {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private long time;
+    private double bid;
+    private double ask;
+    private double bidVolume;
+    private double askVolume;
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    public ReplayTick set(long time, double bid, double ask, double bidVolume, double askVolume) {
+        this.time = time;
+        this.bid = bid;
+        this.ask = ask;
+        this.bidVolume = bidVolume;
+        this.askVolume = askVolume;
+        return this;
+    }
+
+    /**
+     * Copies the current tick of the source.
+     */
+    public ReplayTick set(TickSource source) {
+        return set(source.getTime(), source.getBid(), source.getAsk(), source.getBidVolume(), source.getAskVolume());
+    }
+
+    @Override
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public double getBid() {
+        return bid;
+    }
+
+    @Override
+    public double getAsk() {
+        return ask;
+    }
+
+    @Override
+    public double getBidVolume() {
+        return bidVolume;
+    }
+
+    @Override
+    public double getAskVolume() {
+        return askVolume;
+    }
+
+    @Override
+    public double[] getBids() {
+        return new double[] {bid};
+    }
+
+    @Override
+    public double[] getAsks() {
+        return new double[] {ask};
+    }
+
+    @Override
+    public double[] getBidVolumes() {
+        return new double[] {bidVolume};
+    }
+
+    @Override
+    public double[] getAskVolumes() {
+        return new double[] {askVolume};
+    }
+
+    @Override
+    public double getTotalBidVolume() {
+        return bidVolume;
+    }
+
+    @Override
+    public double getTotalAskVolume() {
+        return askVolume;
+    }
+
+    @Override
+    public String toString() {
+        return time + " " + bid + "/" + ask;
+    }
+}
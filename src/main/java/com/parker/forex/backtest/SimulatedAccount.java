@@ -0,0 +1,394 @@
+package com.parker.forex.backtest;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dukascopy.api.IAccount;
+import com.dukascopy.api.ICurrency;
+import com.dukascopy.api.Instrument;
+
+/**
+ * The account of a {@link SimulatedEngine}, answering equity and margin queries from per-instrument running totals that
+ * are re-marked as ticks move prices and currency rates.
+ */
+public class SimulatedAccount {
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final SimulatedEngine engine;
+    private final ICurrency accountCurrency;
+    private final double leverage;
+    private final IAccount account;
+
+    // Per currency, indexed in the order the currencies are first seen
+    private final Map<String, Integer> currencyIndexes = new HashMap<>();
+    private double[] rates = new double[0];
+    private boolean[] directRates = new boolean[0];
+    // The instrument a currency is valued through, or -1 if valued directly or not at all
+    private int[] crossInstruments = new int[0];
+    private boolean[] changedRates = new boolean[0];
+    private int[] changes = new int[0];
+    private int changeCount;
+    private final int accountIndex;
+    private final int usdIndex;
+
+    // Per instrument, indexed by ordinal
+    private final int[] baseIndexes = new int[INSTRUMENTS.length];
+    private final int[] quoteIndexes = new int[INSTRUMENTS.length];
+    private final double[] longUnits = new double[INSTRUMENTS.length];
+    private final double[] longCosts = new double[INSTRUMENTS.length];
+    private final double[] shortUnits = new double[INSTRUMENTS.length];
+    private final double[] shortCosts = new double[INSTRUMENTS.length];
+    private final double[] profits = new double[INSTRUMENTS.length];
+    private final double[] margins = new double[INSTRUMENTS.length];
+
+    // The instruments with open positions
+    private final int[] positions = new int[INSTRUMENTS.length];
+    private final boolean[] open = new boolean[INSTRUMENTS.length];
+    private int positionCount;
+
+    private double balance;
+    private double profit;
+    private double usedMargin;
+
+    /**
+     * Creates the account and attaches it to the engine, which reports its fills and closes to it from then on.
+     *
+     * @param deposit The starting balance in the account currency.
+     */
+    public SimulatedAccount(SimulatedEngine engine, ICurrency accountCurrency, double deposit, double leverage) {
+        if (!(leverage > 0)) {
+            throw new IllegalArgumentException("The leverage must be positive");
+        }
+        this.engine = engine;
+        this.accountCurrency = accountCurrency;
+        this.leverage = leverage;
+        this.balance = deposit;
+        Arrays.fill(baseIndexes, -1);
+        Arrays.fill(quoteIndexes, -1);
+
+        accountIndex = register(accountCurrency);
+        rates[accountIndex] = 1;
+        directRates[accountIndex] = true;
+        usdIndex = register("USD");
+
+        account = (IAccount) Proxy.newProxyInstance(IAccount.class.getClassLoader(), new Class<?>[] {IAccount.class}, this::invoke);
+        engine.account = this;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private int register(ICurrency currency) {
+        return register(currency.getCurrencyCode());
+    }
+
+    private int register(String currency) {
+        Integer index = currencyIndexes.get(currency);
+        if (index == null) {
+            index = currencyIndexes.size();
+            currencyIndexes.put(currency, index);
+
+            rates = Arrays.copyOf(rates, index + 1);
+            directRates = Arrays.copyOf(directRates, index + 1);
+            crossInstruments = Arrays.copyOf(crossInstruments, index + 1);
+            changedRates = Arrays.copyOf(changedRates, index + 1);
+            changes = Arrays.copyOf(changes, index + 1);
+            rates[index] = Double.NaN;
+            crossInstruments[index] = -1;
+        }
+        return index;
+    }
+
+    private void register(Instrument instrument) {
+        int i = instrument.ordinal();
+        if (baseIndexes[i] < 0) {
+            baseIndexes[i] = register(instrument.getPrimaryJFCurrency());
+            quoteIndexes[i] = register(instrument.getSecondaryJFCurrency());
+        }
+    }
+
+    private double getMid(int i) {
+        return (engine.getBid(INSTRUMENTS[i]) + engine.getAsk(INSTRUMENTS[i])) / 2;
+    }
+
+    /**
+     * Values the instrument's currencies from its mid price. Rates from an instrument quoted against the account
+     * currency take precedence over rates derived through another currency.
+     *
+     * @return The index of the currency whose rate was set, or -1 if none was.
+     */
+    private int updateRates(Instrument instrument) {
+        int i = instrument.ordinal();
+        int base = baseIndexes[i];
+        int quote = quoteIndexes[i];
+        double mid = getMid(i);
+
+        if (quote == accountIndex) {
+            rates[base] = mid;
+            directRates[base] = true;
+            crossInstruments[base] = -1;
+            return base;
+        } else if (base == accountIndex) {
+            rates[quote] = 1 / mid;
+            directRates[quote] = true;
+            crossInstruments[quote] = -1;
+            return quote;
+        } else if (!directRates[base] && !Double.isNaN(rates[quote])) {
+            rates[base] = mid * rates[quote];
+            crossInstruments[base] = i;
+            return base;
+        } else if (!directRates[quote] && !Double.isNaN(rates[base])) {
+            rates[quote] = rates[base] / mid;
+            crossInstruments[quote] = i;
+            return quote;
+        }
+        return -1;
+    }
+
+    /**
+     * Revalues the currencies valued through the changed currency, and those valued through them, recording every
+     * currency whose rate changed.
+     */
+    private void updateCrossRates(int changed) {
+        changeCount = 0;
+        changedRates[changed] = true;
+        changes[changeCount++] = changed;
+        for (int c = 0; c < changeCount; c++) {
+            int source = changes[c];
+            for (int currency = 0; currency < crossInstruments.length; currency++) {
+                int k = crossInstruments[currency];
+                if (k < 0 || changedRates[currency]) {
+                    continue;
+                }
+                if (quoteIndexes[k] == source && baseIndexes[k] == currency) {
+                    rates[currency] = getMid(k) * rates[source];
+                } else if (baseIndexes[k] == source && quoteIndexes[k] == currency) {
+                    rates[currency] = rates[source] / getMid(k);
+                } else {
+                    continue;
+                }
+                changedRates[currency] = true;
+                changes[changeCount++] = currency;
+            }
+        }
+    }
+
+    /**
+     * Values the instrument's positions at the last prices, adjusting the totals by the difference.
+     */
+    private void mark(int i) {
+        Instrument instrument = INSTRUMENTS[i];
+        double quoteValue = longUnits[i] * engine.getBid(instrument) - longCosts[i] + shortCosts[i] - shortUnits[i] * engine.getAsk(instrument);
+        double newProfit = quoteValue * rates[quoteIndexes[i]];
+        double newMargin = Math.abs(longUnits[i] - shortUnits[i]) * rates[baseIndexes[i]] / leverage;
+        newProfit = Double.isNaN(newProfit) ? 0 : newProfit;
+        newMargin = Double.isNaN(newMargin) ? 0 : newMargin;
+
+        profit += newProfit - profits[i];
+        usedMargin += newMargin - margins[i];
+        profits[i] = newProfit;
+        margins[i] = newMargin;
+    }
+
+    /**
+     * Recomputes the totals from the positions, so rounding cannot build up over a long replay.
+     */
+    private void sum() {
+        profit = 0;
+        usedMargin = 0;
+        for (int p = 0; p < positionCount; p++) {
+            profit += profits[positions[p]];
+            usedMargin += margins[positions[p]];
+        }
+    }
+
+    private void updatePosition(int i) {
+        boolean hasPosition = longUnits[i] > 1e-6 || shortUnits[i] > 1e-6;
+        if (hasPosition && !open[i]) {
+            open[i] = true;
+            positions[positionCount++] = i;
+        } else if (!hasPosition && open[i]) {
+            longUnits[i] = longCosts[i] = shortUnits[i] = shortCosts[i] = 0;
+            mark(i);
+
+            open[i] = false;
+            for (int p = 0; p < positionCount; p++) {
+                if (positions[p] == i) {
+                    positions[p] = positions[--positionCount];
+                    break;
+                }
+            }
+        }
+        sum();
+    }
+
+    private Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getEquity":
+            case "getBaseEquity":
+                return getEquity();
+            case "getBalance":
+                return balance;
+            case "getUsedMargin":
+                return usedMargin;
+            case "getLeverage":
+                return leverage;
+            case "getCreditLine":
+                return getFreeMargin() * leverage;
+            case "getUseOfLeverage":
+                return getEquity() > 0 ? usedMargin / getEquity() * 100 : 0;
+            case "getAccountCurrency":
+                return accountCurrency;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "SimulatedAccount " + getEquity() + " " + accountCurrency;
+            default:
+                return SimulatedApi.getNeutralValue(method);
+        }
+    }
+
+    /**
+     * Marks the instrument, and those whose currency values the tick moved, to market.
+     */
+    void onTick(Instrument instrument) {
+        register(instrument);
+        int changed = updateRates(instrument);
+
+        int i = instrument.ordinal();
+        if (open[i]) {
+            mark(i);
+        }
+        if (changed >= 0) {
+            updateCrossRates(changed);
+            for (int p = 0; p < positionCount; p++) {
+                int k = positions[p];
+                if (k != i && (changedRates[quoteIndexes[k]] || changedRates[baseIndexes[k]])) {
+                    mark(k);
+                }
+            }
+            for (int c = 0; c < changeCount; c++) {
+                changedRates[changes[c]] = false;
+            }
+        }
+    }
+
+    /**
+     * Adds a filled amount to the instrument's position and charges the commission.
+     *
+     * @return The commission in the account currency.
+     */
+    double onFill(Instrument instrument, boolean isLong, double amount, double price, double usdCommission) {
+        register(instrument);
+        int i = instrument.ordinal();
+        double units = amount * SimulatedEngine.UNITS_PER_LOT;
+        if (isLong) {
+            longUnits[i] += units;
+            longCosts[i] += units * price;
+        } else {
+            shortUnits[i] += units;
+            shortCosts[i] += units * price;
+        }
+
+        double commission = toAccountCurrency(usdCommission);
+        balance -= commission;
+        updatePosition(i);
+        mark(i);
+        return commission;
+    }
+
+    /**
+     * Takes a closed amount from the instrument's position, books its profit and charges the commission.
+     *
+     * @return The profit in the account currency, before commission.
+     */
+    double onClose(Instrument instrument, boolean isLong, double amount, double openPrice, double closePrice, double usdCommission) {
+        register(instrument);
+        int i = instrument.ordinal();
+        double units = amount * SimulatedEngine.UNITS_PER_LOT;
+        if (isLong) {
+            longUnits[i] -= units;
+            longCosts[i] -= units * openPrice;
+        } else {
+            shortUnits[i] -= units;
+            shortCosts[i] -= units * openPrice;
+        }
+
+        double realised = (isLong ? closePrice - openPrice : openPrice - closePrice) * units * rates[quoteIndexes[i]];
+        realised = Double.isNaN(realised) ? 0 : realised;
+        balance += realised - toAccountCurrency(usdCommission);
+        mark(i);
+        updatePosition(i);
+        return realised;
+    }
+
+    /**
+     * @return The value of one unit of the instrument's quote currency in the account currency, or NaN if not valued.
+     */
+    double getQuoteRate(Instrument instrument) {
+        register(instrument);
+        return rates[quoteIndexes[instrument.ordinal()]];
+    }
+
+    double toAccountCurrency(double usdAmount) {
+        double converted = usdAmount * rates[usdIndex];
+        return usdAmount == 0 || Double.isNaN(converted) ? 0 : converted;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * @return The account to hand to strategies, e.g. from a simulated context.
+     */
+    public IAccount getAccount() {
+        return account;
+    }
+
+    public double getEquity() {
+        return balance + profit;
+    }
+
+    public double getBalance() {
+        return balance;
+    }
+
+    /**
+     * @return The margin used by the open positions, from the net amount of each instrument.
+     */
+    public double getUsedMargin() {
+        return usedMargin;
+    }
+
+    public double getFreeMargin() {
+        return getEquity() - usedMargin;
+    }
+
+    /**
+     * @return The profit of the open positions at the last prices.
+     */
+    public double getUnrealisedProfit() {
+        return profit;
+    }
+
+    /**
+     * @return The value of one unit of the currency in the account currency, or NaN if it has not been valued.
+     */
+    public double getRate(ICurrency currency) {
+        Integer index = currencyIndexes.get(currency.getCurrencyCode());
+        return index == null ? Double.NaN : rates[index];
+    }
+
+    public ICurrency getAccountCurrency() {
+        return accountCurrency;
+    }
+}
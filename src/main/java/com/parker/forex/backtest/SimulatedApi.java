@@ -0,0 +1,53 @@
+package com.parker.forex.backtest;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Neutral answers for the getters of the simulated engine and account proxies that they hold no state for.
+ */
+final class SimulatedApi {
+
+    private SimulatedApi() {}
+
+    // *****************************************************************************************************************
+    // Package Methods
+    // *****************************************************************************************************************
+    /**
+     * @return The neutral value of a primitive or collection getter: zero, false or an empty collection.
+     * @throws UnsupportedOperationException If the method is not such a getter, so it has no fair answer.
+     */
+    static Object getNeutralValue(Method method) {
+        String name = method.getName();
+        Class<?> type = method.getReturnType();
+        boolean getter = method.getParameterCount() == 0 && (name.startsWith("get") || name.startsWith("is"));
+        if (getter && type == boolean.class) {
+            return false;
+        }
+        if (getter && type == double.class) {
+            return 0.0;
+        }
+        if (getter && type == float.class) {
+            return 0f;
+        }
+        if (getter && type == long.class) {
+            return 0L;
+        }
+        if (getter && type == int.class) {
+            return 0;
+        }
+        if (getter && type == List.class) {
+            return Collections.emptyList();
+        }
+        if (getter && type == Set.class) {
+            return Collections.emptySet();
+        }
+        if (getter && type == Map.class) {
+            return Collections.emptyMap();
+        }
+        throw new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + name + " is not simulated");
+    }
+}
@@ -0,0 +1,1074 @@
+package com.parker.forex.backtest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dukascopy.api.IEngine;
+import com.dukascopy.api.IEngine.OrderCommand;
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.IOrder.State;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.JFException;
+import com.dukascopy.api.OfferSide;
+
+/**
+ * Executes orders against replayed ticks in process, standing in for the platform's engine in a local backtest. Each
+ * message carries a copy of its order's state from when it was queued.
+ */
+public class SimulatedEngine {
+
+    /** The number of base currency units in a lot. */
+    public static final double UNITS_PER_LOT = 1000000;
+
+    /** The slippage in pips the platform allows a close at a price when none is given. */
+    public static final double DEFAULT_SLIPPAGE = 5;
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+    private static final State[] ANY_STATE = {};
+
+    private static final int ASK_RISES = 0;
+    private static final int ASK_FALLS = 1;
+    private static final int BID_RISES = 2;
+    private static final int BID_FALLS = 3;
+    /** Added to the book of a price to get the book of the trailing stops following it. */
+    private static final int TRAILS = 4;
+    private static final int BOOKS = 8;
+
+    /** The conversion of an instrument whose quote currency is USD. */
+    private static final int USD = -1;
+    /** The conversion of an instrument whose quote currency cannot be valued in USD. */
+    private static final int NONE = -2;
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final SlippageModel slippageModel;
+    private final CommissionModel commissionModel;
+    private Listener listener;
+    private IEngine engine;
+    SimulatedAccount account;
+
+    // Per instrument, indexed by ordinal
+    private final double[] bids = new double[INSTRUMENTS.length];
+    private final double[] asks = new double[INSTRUMENTS.length];
+    private final int[] usdInstruments = new int[INSTRUMENTS.length];
+    private final boolean[] usdInverses = new boolean[INSTRUMENTS.length];
+    private final PriceBook[] books = new PriceBook[INSTRUMENTS.length * BOOKS];
+    // Pending orders with a good till time, keyed by the time
+    private final PriceBook expiries = new PriceBook(true);
+
+    // Working orders, by slot, label and id
+    private Order[] slots = new Order[64];
+    private int[] freeSlots = new int[64];
+    private int freeCount;
+    private int slotCount;
+    private final Map<String, Order> ordersByLabel = new LinkedHashMap<>();
+    private final Map<String, Order> ordersById = new HashMap<>();
+
+    // Queued messages, those before the delivered count already handed to the listener
+    private Message[] messages = new Message[64];
+    private int messageCount;
+    private int deliveredCount;
+    private long nextId = 1;
+    private long time;
+
+    public SimulatedEngine() {
+        this(SlippageModel.NONE, CommissionModel.NONE);
+    }
+
+    public SimulatedEngine(SlippageModel slippageModel, CommissionModel commissionModel) {
+        this.slippageModel = slippageModel;
+        this.commissionModel = commissionModel;
+        Arrays.fill(bids, Double.NaN);
+        Arrays.fill(asks, Double.NaN);
+
+        for (Instrument instrument : INSTRUMENTS) {
+            int i = instrument.ordinal();
+            String quote = instrument.getSecondaryJFCurrency().getCurrencyCode();
+            usdInstruments[i] = "USD".equals(quote) ? USD : NONE;
+            for (Instrument other : INSTRUMENTS) {
+                String otherBase = other.getPrimaryJFCurrency().getCurrencyCode();
+                String otherQuote = other.getSecondaryJFCurrency().getCurrencyCode();
+                if (usdInstruments[i] == NONE && otherBase.equals(quote) && "USD".equals(otherQuote)) {
+                    usdInstruments[i] = other.ordinal();
+                } else if (usdInstruments[i] == NONE && "USD".equals(otherBase) && otherQuote.equals(quote)) {
+                    usdInstruments[i] = other.ordinal();
+                    usdInverses[i] = true;
+                }
+            }
+        }
+
+        engine = (IEngine) Proxy.newProxyInstance(IEngine.class.getClassLoader(), new Class<?>[] {IEngine.class}, this::invokeEngine);
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private PriceBook getBook(Instrument instrument, int book) {
+        int index = instrument.ordinal() * BOOKS + book;
+        if (books[index] == null) {
+            books[index] = new PriceBook((book & 1) == 0);
+        }
+        return books[index];
+    }
+
+    /**
+     * @return The book a market or pending order waits in to be filled.
+     */
+    private static int getTriggerBook(OrderCommand command) {
+        switch (command) {
+            case BUY:
+            case BUYSTOP:
+            case SELLLIMIT_BYASK:
+                return ASK_RISES;
+            case BUYLIMIT:
+            case PLACE_BID:
+            case SELLSTOP_BYASK:
+                return ASK_FALLS;
+            case BUYSTOP_BYBID:
+            case SELLLIMIT:
+            case PLACE_OFFER:
+                return BID_RISES;
+            default:
+                return BID_FALLS;
+        }
+    }
+
+    private static boolean isMarket(OrderCommand command) {
+        return command == OrderCommand.BUY || command == OrderCommand.SELL;
+    }
+
+    private static boolean isLimit(OrderCommand command) {
+        switch (command) {
+            case BUYLIMIT:
+            case BUYLIMIT_BYBID:
+            case SELLLIMIT:
+            case SELLLIMIT_BYASK:
+            case PLACE_BID:
+            case PLACE_OFFER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return The USD value of one unit of the instrument's quote currency, or NaN if it cannot be valued yet.
+     */
+    private double getUsdRate(Instrument instrument) {
+        int conversion = usdInstruments[instrument.ordinal()];
+        if (conversion == USD) {
+            return 1;
+        }
+        if (conversion == NONE) {
+            return Double.NaN;
+        }
+        double mid = (bids[conversion] + asks[conversion]) / 2;
+        return usdInverses[instrument.ordinal()] ? 1 / mid : mid;
+    }
+
+    private int allocateSlot(Order order) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == slots.length) {
+                slots = Arrays.copyOf(slots, slotCount * 2);
+                freeSlots = Arrays.copyOf(freeSlots, slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        slots[slot] = order;
+        return slot;
+    }
+
+    private void releaseSlot(Order order) {
+        for (int book = 0; book < BOOKS; book++) {
+            removeFromBook(order, book);
+        }
+        expiries.remove(order.slot);
+        slots[order.slot] = null;
+        freeSlots[freeCount++] = order.slot;
+        order.slot = -1;
+
+        ordersByLabel.remove(order.label);
+        ordersById.remove(order.id);
+    }
+
+    private void removeFromBook(Order order, int book) {
+        PriceBook priceBook = books[order.instrument.ordinal() * BOOKS + book];
+        if (priceBook != null) {
+            priceBook.remove(order.slot);
+        }
+    }
+
+    private double getPrice(Instrument instrument, OfferSide side) {
+        return side == OfferSide.ASK ? asks[instrument.ordinal()] : bids[instrument.ordinal()];
+    }
+
+    private static int getStopLossBook(Order order) {
+        if (order.stopLossSide == OfferSide.ASK) {
+            return order.isLong ? ASK_FALLS : ASK_RISES;
+        }
+        return order.isLong ? BID_FALLS : BID_RISES;
+    }
+
+    private static int getTakeProfitBook(Order order) {
+        return order.isLong ? BID_RISES : ASK_FALLS;
+    }
+
+    /**
+     * Puts the order's stop loss, trailing step and take profit in the books, or takes them out when unset.
+     */
+    private void placeProtection(Order order) {
+        int stopLossBook = getStopLossBook(order);
+        // A trailing stop moves when its price moves away from it, i.e. the other way on the same side
+        int trailBook = TRAILS + (stopLossBook ^ 1);
+
+        // The stop loss may have moved from the other side
+        removeFromBook(order, stopLossBook ^ 2);
+        removeFromBook(order, trailBook ^ 2);
+
+        if (order.stopLossPrice > 0) {
+            getBook(order.instrument, stopLossBook).put(order.slot, order.stopLossPrice);
+        } else {
+            removeFromBook(order, stopLossBook);
+        }
+        if (order.stopLossPrice > 0 && order.trailingStep > 0) {
+            if (Double.isNaN(order.trailingDistance)) {
+                order.trailingDistance = Math.abs(getPrice(order.instrument, order.stopLossSide) - order.stopLossPrice);
+            }
+            double step = order.trailingDistance + order.trailingStep * order.instrument.getPipValue();
+            getBook(order.instrument, trailBook).put(order.slot, order.isLong ? order.stopLossPrice + step : order.stopLossPrice - step);
+        } else {
+            removeFromBook(order, trailBook);
+        }
+        if (order.takeProfitPrice > 0) {
+            getBook(order.instrument, getTakeProfitBook(order)).put(order.slot, order.takeProfitPrice);
+        } else {
+            removeFromBook(order, getTakeProfitBook(order));
+        }
+    }
+
+    /**
+     * Moves a trailing stop loss back to its distance from the price, which has moved a trailing step further.
+     */
+    private void trail(Order order, double price) {
+        order.stopLossPrice = order.isLong ? price - order.trailingDistance : price + order.trailingDistance;
+        placeProtection(order);
+        queue(IMessage.Type.ORDER_CHANGED_OK, order);
+    }
+
+    private double getCommission(Order order, double amount, double price) {
+        return commissionModel.getCommission(order.instrument, amount, amount * UNITS_PER_LOT * price * getUsdRate(order.instrument));
+    }
+
+    private double getSlippage(Order order, double amount, double price) {
+        double slippage = slippageModel.getSlippage(order.instrument, order.isLong, amount, price);
+        return order.isLong ? slippage : -slippage;
+    }
+
+    private void fill(Order order, boolean slipped) {
+        int i = order.instrument.ordinal();
+        double price = order.isLong ? asks[i] : bids[i];
+        if (slipped) {
+            price += getSlippage(order, order.amount, price);
+        }
+
+        getBook(order.instrument, getTriggerBook(order.command)).remove(order.slot);
+        expiries.remove(order.slot);
+        order.state = State.FILLED;
+        order.openPrice = price;
+        order.fillTime = time;
+        double commission = getCommission(order, order.amount, price);
+        order.commission += commission;
+        if (account != null) {
+            order.accountCommission += account.onFill(order.instrument, order.isLong, order.amount, price, commission);
+        }
+        placeProtection(order);
+        queue(IMessage.Type.ORDER_FILL_OK, order);
+    }
+
+    /**
+     * Closes all or part of a filled order at the market.
+     */
+    private void close(Order order, double amount, boolean slipped) {
+        int i = order.instrument.ordinal();
+        double price = order.isLong ? bids[i] : asks[i];
+        if (slipped) {
+            price -= getSlippage(order, amount, price);
+        }
+
+        double commission = getCommission(order, amount, price);
+        order.closedProfit += order.getProfit(amount, price);
+        order.commission += commission;
+        if (account != null) {
+            order.closedAccountProfit += account.onClose(order.instrument, order.isLong, amount, order.openPrice, price, commission);
+            order.accountCommission += account.toAccountCurrency(commission);
+        }
+        order.amount -= amount;
+        order.closePrice = price;
+        if (order.amount <= 1e-9) {
+            order.amount = 0;
+            order.state = State.CLOSED;
+            order.closeTime = time;
+            releaseSlot(order);
+        }
+        queue(IMessage.Type.ORDER_CLOSE_OK, order);
+    }
+
+    private void cancel(Order order) {
+        order.state = State.CANCELED;
+        order.closeTime = time;
+        releaseSlot(order);
+        queue(IMessage.Type.ORDER_CLOSE_OK, order);
+    }
+
+    private void queue(IMessage.Type type, Order order) {
+        if (messageCount == messages.length) {
+            messages = Arrays.copyOf(messages, messageCount * 2);
+        }
+        messages[messageCount++] = new Message(type, order, time);
+    }
+
+    /**
+     * @return The first message queued but not yet delivered for the order that leaves it in one of the states, or in
+     *         any state if none are given; null if there is none.
+     */
+    private IMessage findUpdate(Order order, State[] states) {
+        for (int m = deliveredCount; m < messageCount; m++) {
+            Message message = messages[m];
+            if (message.order == order && (states.length == 0 || Arrays.asList(states).contains(message.state))) {
+                return message.proxy;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the next update of the order to one of the states. A market order waiting for its first tick is filled at
+     * the last price, as it would be during the wait on the platform; any other order has no update until the replay
+     * moves on, so the wait times out with null.
+     */
+    private IMessage waitForUpdate(Order order, State[] states) {
+        IMessage update = findUpdate(order, states);
+        if (update == null && order.state == State.OPENED && isMarket(order.command) && !Double.isNaN(bids[order.instrument.ordinal()])) {
+            fill(order, true);
+            update = findUpdate(order, states);
+        }
+        return update;
+    }
+
+    /**
+     * @return The order behind one of the engine's order proxies or message copies, or null if it is neither.
+     */
+    private static Order getOrder(Object proxy) {
+        if (proxy == null || !Proxy.isProxyClass(proxy.getClass())) {
+            return null;
+        }
+        InvocationHandler handler = Proxy.getInvocationHandler(proxy);
+        if (handler instanceof Order) {
+            return (Order) handler;
+        }
+        return handler instanceof Message && ((Message) handler).orderProxy == proxy ? ((Message) handler).order : null;
+    }
+
+    private IOrder submitOrder(Object[] args) throws JFException {
+        String label = (String) args[0];
+        Instrument instrument = (Instrument) args[1];
+        OrderCommand command = (OrderCommand) args[2];
+        double amount = (Double) args[3];
+        double price = args.length > 4 ? (Double) args[4] : 0;
+        long goodTillTime = args.length > 8 ? (Long) args[8] : 0;
+
+        if (label == null || ordersByLabel.containsKey(label)) {
+            throw new JFException("Label not unique: " + label);
+        }
+        if (!(amount > 0)) {
+            throw new JFException("Order " + label + " has an invalid amount: " + amount);
+        }
+        boolean market = isMarket(command);
+        if (!market && !(price > 0)) {
+            throw new JFException("Order " + label + " has an invalid price: " + price);
+        }
+        if (goodTillTime < 0 || goodTillTime > 0 && (market || goodTillTime <= time)) {
+            throw new JFException("Order " + label + " has an invalid good till time: " + goodTillTime);
+        }
+
+        Order order = new Order(String.valueOf(nextId++), label, instrument, command, amount);
+        order.slot = allocateSlot(order);
+        order.openPrice = market ? 0 : price;
+        order.stopLossPrice = args.length > 6 ? (Double) args[6] : 0;
+        order.takeProfitPrice = args.length > 7 ? (Double) args[7] : 0;
+        order.goodTillTime = goodTillTime;
+        order.comment = args.length > 9 ? (String) args[9] : null;
+        ordersByLabel.put(label, order);
+        ordersById.put(order.id, order);
+
+        // Market orders wait for any next price
+        double trigger = market ? (order.isLong ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY) : price;
+        getBook(instrument, getTriggerBook(command)).put(order.slot, trigger);
+        if (goodTillTime > 0) {
+            expiries.put(order.slot, goodTillTime);
+        }
+        queue(IMessage.Type.ORDER_SUBMIT_OK, order);
+        return order.proxy;
+    }
+
+    /**
+     * Nets filled orders of one instrument into a new order. The netted amounts close at the average open price of
+     * the larger side, which the new order opens at, so only the netting books a profit.
+     */
+    private IOrder mergeOrders(String label, Collection<?> sources) throws JFException {
+        if (label == null || ordersByLabel.containsKey(label)) {
+            throw new JFException("Label not unique: " + label);
+        }
+
+        List<Order> orders = new ArrayList<>();
+        double longAmount = 0;
+        double longCost = 0;
+        double shortAmount = 0;
+        double shortCost = 0;
+        for (Object source : sources) {
+            Order order = getOrder(source);
+            if (order == null || ordersById.get(order.id) != order || order.state != State.FILLED || orders.contains(order)) {
+                throw new JFException("Cannot merge order " + source + " into " + label);
+            }
+            if (!orders.isEmpty() && order.instrument != orders.get(0).instrument) {
+                throw new JFException("Cannot merge orders of " + orders.get(0).instrument + " and " + order.instrument);
+            }
+            orders.add(order);
+            if (order.isLong) {
+                longAmount += order.amount;
+                longCost += order.amount * order.openPrice;
+            } else {
+                shortAmount += order.amount;
+                shortCost += order.amount * order.openPrice;
+            }
+        }
+        if (orders.size() < 2) {
+            throw new JFException("Merging " + label + " needs at least two orders");
+        }
+
+        Instrument instrument = orders.get(0).instrument;
+        boolean isLong = longAmount >= shortAmount;
+        double price = isLong ? longCost / longAmount : shortCost / shortAmount;
+        for (Order order : orders) {
+            order.closedProfit += order.getProfit(order.amount, price);
+            if (account != null) {
+                order.closedAccountProfit += account.onClose(instrument, order.isLong, order.amount, order.openPrice, price, 0);
+            }
+            order.amount = 0;
+            order.closePrice = price;
+            order.state = State.CLOSED;
+            order.closeTime = time;
+            releaseSlot(order);
+        }
+
+        Order merged = new Order(String.valueOf(nextId++), label, instrument, isLong ? OrderCommand.BUY : OrderCommand.SELL, Math.abs(longAmount - shortAmount));
+        merged.openPrice = price;
+        merged.fillTime = time;
+        if (merged.amount > 1e-9) {
+            merged.state = State.FILLED;
+            merged.slot = allocateSlot(merged);
+            ordersByLabel.put(label, merged);
+            ordersById.put(merged.id, merged);
+            if (account != null) {
+                account.onFill(instrument, isLong, merged.amount, price, 0);
+            }
+        } else {
+            // Fully netted, nothing is left open
+            merged.amount = 0;
+            merged.closePrice = price;
+            merged.state = State.CLOSED;
+            merged.closeTime = time;
+            merged.slot = -1;
+        }
+        queue(IMessage.Type.ORDERS_MERGE_OK, merged);
+        return merged.proxy;
+    }
+
+    private List<IOrder> getOrders(Instrument instrument) {
+        List<IOrder> orders = new ArrayList<>();
+        for (Order order : ordersByLabel.values()) {
+            if (instrument == null || instrument == order.instrument) {
+                orders.add(order.proxy);
+            }
+        }
+        return orders;
+    }
+
+    private Object invokeEngine(Object proxy, Method method, Object[] args) throws Throwable {
+        int count = args == null ? 0 : args.length;
+        switch (method.getName()) {
+            case "submitOrder":
+                return submitOrder(args);
+            case "mergeOrders":
+                return mergeOrders((String) args[0], args[1] instanceof Collection ? (Collection<?>) args[1] : Arrays.asList((Object[]) args[1]));
+            case "getOrders":
+                return getOrders(count == 0 ? null : (Instrument) args[0]);
+            case "getOrder":
+                Order byLabel = ordersByLabel.get((String) args[0]);
+                return byLabel == null ? null : byLabel.proxy;
+            case "getOrderById":
+                Order byId = ordersById.get((String) args[0]);
+                return byId == null ? null : byId.proxy;
+            case "closeOrders":
+                Collection<?> orders = args[0] instanceof Collection ? (Collection<?>) args[0] : Arrays.asList((Object[]) args[0]);
+                for (Object order : orders) {
+                    ((IOrder) order).close();
+                }
+                return null;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "SimulatedEngine";
+            default:
+                return SimulatedApi.getNeutralValue(method);
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * @return The engine to submit orders through.
+     */
+    public IEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Sets the listener the order messages are delivered to, e.g. <code>strategy::onMessage</code>.
+     */
+    public SimulatedEngine setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public void onTick(Instrument instrument, ITick tick) throws JFException {
+        onTick(instrument, tick.getTime(), tick.getBid(), tick.getAsk());
+    }
+
+    /**
+     * Fills, triggers and closes the orders the prices reach, then delivers the queued messages.
+     */
+    public void onTick(Instrument instrument, long time, double bid, double ask) throws JFException {
+        int i = instrument.ordinal();
+        this.time = time;
+        bids[i] = bid;
+        asks[i] = ask;
+
+        // Pending orders expire before the tick can fill them
+        while (expiries.isTriggered(time)) {
+            cancel(slots[expiries.peek()]);
+        }
+
+        // Filling an order can put its stop loss or take profit in a book already checked
+        boolean triggered = true;
+        while (triggered) {
+            triggered = false;
+            for (int book = 0; book < BOOKS; book++) {
+                PriceBook priceBook = books[i * BOOKS + book];
+                double price = (book & 2) == 0 ? ask : bid;
+                while (priceBook != null && priceBook.isTriggered(price)) {
+                    Order order = slots[priceBook.peek()];
+                    if (book >= TRAILS) {
+                        trail(order, price);
+                    } else if (order.state == State.OPENED) {
+                        fill(order, !isLimit(order.command));
+                    } else {
+                        close(order, order.amount, book != getTakeProfitBook(order));
+                    }
+                    triggered = true;
+                }
+            }
+        }
+
+        if (account != null) {
+            account.onTick(instrument);
+        }
+        flush();
+    }
+
+    /**
+     * Delivers the queued messages, including any queued while they are handled.
+     */
+    public void flush() throws JFException {
+        for (int m = 0; m < messageCount; m++) {
+            deliveredCount = m + 1;
+            if (listener != null) {
+                listener.onMessage(messages[m].proxy);
+            }
+        }
+        Arrays.fill(messages, 0, messageCount, null);
+        messageCount = 0;
+        deliveredCount = 0;
+    }
+
+    public double getBid(Instrument instrument) {
+        return bids[instrument.ordinal()];
+    }
+
+    public double getAsk(Instrument instrument) {
+        return asks[instrument.ordinal()];
+    }
+
+    /**
+     * @return The number of pending and filled orders.
+     */
+    public int getOpenOrders() {
+        return ordersByLabel.size();
+    }
+
+    /**
+     * @return The market time of the last tick.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    public interface Listener {
+
+        void onMessage(IMessage message) throws JFException;
+    }
+
+    /**
+     * Decides how far fills at the market move against the order.
+     */
+    public interface SlippageModel {
+
+        SlippageModel NONE = (instrument, isLong, amount, price) -> 0;
+
+        /**
+         * @return The price distance the fill moves against the order, 0 for none.
+         */
+        double getSlippage(Instrument instrument, boolean isLong, double amount, double price);
+
+        /**
+         * Slips every fill by a fixed number of pips.
+         */
+        static SlippageModel fixed(double pips) {
+            return (instrument, isLong, amount, price) -> pips * instrument.getPipValue();
+        }
+    }
+
+    /**
+     * Decides the commission charged on each fill and close.
+     */
+    public interface CommissionModel {
+
+        CommissionModel NONE = (instrument, amount, usdValue) -> 0;
+
+        /**
+         * @param usdValue The traded value in USD, or NaN if the instrument cannot be valued in USD yet.
+         * @return The commission in USD.
+         */
+        double getCommission(Instrument instrument, double amount, double usdValue);
+
+        /**
+         * Charges a rate per million USD traded, the way Dukascopy does.
+         */
+        static CommissionModel perMillion(double rate) {
+            return (instrument, amount, usdValue) -> Double.isNaN(usdValue) ? 0 : usdValue / 1000000 * rate;
+        }
+    }
+
+    /**
+     * The simulated state of an order, answering the calls on its {@link IOrder} proxy.
+     */
+    private class Order implements InvocationHandler {
+
+        final String id;
+        final Instrument instrument;
+        final OrderCommand command;
+        final boolean isLong;
+        final long creationTime;
+        final IOrder proxy;
+
+        String label;
+        String comment;
+        long goodTillTime;
+        int slot;
+        State state = State.OPENED;
+        double amount;
+        double requestedAmount;
+        double openPrice;
+        double closePrice;
+        double stopLossPrice;
+        OfferSide stopLossSide;
+        double trailingStep;
+        double trailingDistance = Double.NaN;
+        double takeProfitPrice;
+        long fillTime;
+        long closeTime;
+        double commission;
+        double closedProfit;
+        double accountCommission;
+        double closedAccountProfit;
+
+        Order(String id, String label, Instrument instrument, OrderCommand command, double amount) {
+            this.id = id;
+            this.label = label;
+            this.instrument = instrument;
+            this.command = command;
+            this.isLong = command.isLong();
+            this.amount = amount;
+            this.requestedAmount = amount;
+            this.creationTime = time;
+            this.stopLossSide = isLong ? OfferSide.BID : OfferSide.ASK;
+            this.proxy = (IOrder) Proxy.newProxyInstance(IOrder.class.getClassLoader(), new Class<?>[] {IOrder.class}, this);
+        }
+
+        /**
+         * @return The profit in USD of the amount at the price.
+         */
+        double getProfit(double amount, double price) {
+            return (isLong ? price - openPrice : openPrice - price) * amount * UNITS_PER_LOT * getUsdRate(instrument);
+        }
+
+        /**
+         * @return The price the order would close at now.
+         */
+        double getExitPrice() {
+            return state == State.FILLED ? (isLong ? bids[instrument.ordinal()] : asks[instrument.ordinal()]) : closePrice;
+        }
+
+        double getProfitLossInUSD() {
+            if (state == State.FILLED) {
+                return closedProfit + getProfit(amount, getExitPrice());
+            }
+            return closedProfit;
+        }
+
+        double getProfitLossInAccountCurrency() {
+            if (account == null) {
+                return getProfitLossInUSD();
+            }
+            if (state == State.FILLED) {
+                double open = (isLong ? getExitPrice() - openPrice : openPrice - getExitPrice()) * amount * UNITS_PER_LOT;
+                double value = open * account.getQuoteRate(instrument);
+                return closedAccountProfit + (Double.isNaN(value) ? 0 : value);
+            }
+            return closedAccountProfit;
+        }
+
+        /**
+         * @return The commission in the account currency, or in USD without an account.
+         */
+        double getCommission() {
+            return account == null ? commission : accountCommission;
+        }
+
+        double getProfitLossInPips() {
+            if (state != State.FILLED && state != State.CLOSED) {
+                return 0;
+            }
+            double price = getExitPrice();
+            return (isLong ? price - openPrice : openPrice - price) / instrument.getPipValue();
+        }
+
+        void checkWorking(String action) throws JFException {
+            if (slot < 0) {
+                throw new JFException("Cannot " + action + " order " + label + " in state " + state);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            int count = args == null ? 0 : args.length;
+            switch (method.getName()) {
+                case "getId":
+                    return id;
+                case "getLabel":
+                    return label;
+                case "getInstrument":
+                    return instrument;
+                case "getOrderCommand":
+                    return command;
+                case "isLong":
+                    return isLong;
+                case "getState":
+                    return state;
+                case "getAmount":
+                    return amount;
+                case "getRequestedAmount":
+                case "getOriginalAmount":
+                    return requestedAmount;
+                case "getOpenPrice":
+                    return openPrice;
+                case "getClosePrice":
+                    return closePrice;
+                case "getStopLossPrice":
+                    return stopLossPrice;
+                case "getStopLossSide":
+                    return stopLossSide;
+                case "getTrailingStep":
+                    return trailingStep;
+                case "getTakeProfitPrice":
+                    return takeProfitPrice;
+                case "getCreationTime":
+                    return creationTime;
+                case "getFillTime":
+                    return fillTime;
+                case "getCloseTime":
+                    return closeTime;
+                case "getProfitLossInPips":
+                    return getProfitLossInPips();
+                case "getProfitLossInUSD":
+                    return getProfitLossInUSD();
+                case "getProfitLossInAccountCurrency":
+                    return getProfitLossInAccountCurrency();
+                case "getCommission":
+                    return getCommission();
+                case "getCommissionInUSD":
+                    return commission;
+                case "getComment":
+                    return comment;
+                case "getGoodTillTime":
+                    return goodTillTime;
+                case "setLabel":
+                    checkWorking("change");
+                    String newLabel = (String) args[0];
+                    if (newLabel == null || ordersByLabel.containsKey(newLabel)) {
+                        throw new JFException("Label not unique: " + newLabel);
+                    }
+                    ordersByLabel.remove(label);
+                    label = newLabel;
+                    ordersByLabel.put(label, this);
+                    queue(IMessage.Type.ORDER_CHANGED_OK, this);
+                    return null;
+                case "setGoodTillTime":
+                    checkWorking("change");
+                    long newTime = (Long) args[0];
+                    if (state != State.OPENED || isMarket(command) || newTime < 0 || newTime > 0 && newTime <= time) {
+                        throw new JFException("Cannot set the good till time of order " + label + " in state " + state + " to " + newTime);
+                    }
+                    goodTillTime = newTime;
+                    if (goodTillTime > 0) {
+                        expiries.put(slot, goodTillTime);
+                    } else {
+                        expiries.remove(slot);
+                    }
+                    queue(IMessage.Type.ORDER_CHANGED_OK, this);
+                    return null;
+                case "setStopLossPrice":
+                    checkWorking("change");
+                    stopLossPrice = (Double) args[0];
+                    if (count > 1 && args[1] != null) {
+                        stopLossSide = (OfferSide) args[1];
+                    }
+                    trailingStep = count > 2 && (Double) args[2] > 0 ? (Double) args[2] : 0;
+                    // Trailing stops keep the distance from the price when they are placed
+                    trailingDistance = Double.NaN;
+                    if (state == State.FILLED) {
+                        placeProtection(this);
+                    }
+                    queue(IMessage.Type.ORDER_CHANGED_OK, this);
+                    return null;
+                case "setTakeProfitPrice":
+                    checkWorking("change");
+                    takeProfitPrice = (Double) args[0];
+                    if (state == State.FILLED) {
+                        placeProtection(this);
+                    }
+                    queue(IMessage.Type.ORDER_CHANGED_OK, this);
+                    return null;
+                case "setOpenPrice":
+                    checkWorking("change");
+                    if (state != State.OPENED || !(openPrice > 0)) {
+                        throw new JFException("Cannot change the open price of order " + label + " in state " + state);
+                    }
+                    openPrice = (Double) args[0];
+                    getBook(instrument, getTriggerBook(command)).put(slot, openPrice);
+                    queue(IMessage.Type.ORDER_CHANGED_OK, this);
+                    return null;
+                case "setRequestedAmount":
+                    checkWorking("change");
+                    if (state != State.OPENED) {
+                        throw new JFException("Cannot change the amount of order " + label + " in state " + state);
+                    }
+                    amount = (Double) args[0];
+                    requestedAmount = amount;
+                    queue(IMessage.Type.ORDER_CHANGED_OK, this);
+                    return null;
+                case "close":
+                    checkWorking("close");
+                    if (state == State.OPENED) {
+                        cancel(this);
+                        return null;
+                    }
+                    double closeAmount = count > 0 && (Double) args[0] > 0 ? Math.min((Double) args[0], amount) : amount;
+                    if (count > 1 && (Double) args[1] > 0) {
+                        // The market may be worse than the price by at most the slippage
+                        double slippage = (count > 2 && (Double) args[2] >= 0 ? (Double) args[2] : DEFAULT_SLIPPAGE) * instrument.getPipValue();
+                        double worst = isLong ? (Double) args[1] - slippage : (Double) args[1] + slippage;
+                        if (isLong ? getExitPrice() < worst : getExitPrice() > worst) {
+                            queue(IMessage.Type.ORDER_CLOSE_REJECTED, this);
+                            return null;
+                        }
+                    }
+                    close(this, closeAmount, true);
+                    return null;
+                case "waitForUpdate":
+                    return waitForUpdate(this, count > 0 && args[count - 1] instanceof State[] ? (State[]) args[count - 1] : ANY_STATE);
+                case "equals":
+                    return getOrder(args[0]) == this;
+                case "hashCode":
+                    return System.identityHashCode(this.proxy);
+                case "toString":
+                    return label + " " + command + " " + amount + " " + instrument + " " + state;
+                default:
+                    return SimulatedApi.getNeutralValue(method);
+            }
+        }
+    }
+
+    /**
+     * A message and a copy of its order's state when it was queued, answering the calls on its {@link IMessage} proxy
+     * and on the {@link IOrder} proxy it hands out, whose actions and identity are those of the live order.
+     */
+    private static class Message implements InvocationHandler {
+
+        final IMessage.Type type;
+        final Order order;
+        final long creationTime;
+        final IMessage proxy;
+        IOrder orderProxy;
+
+        // The order's state when the message was queued
+        final String label;
+        final State state;
+        final double amount;
+        final double requestedAmount;
+        final double openPrice;
+        final double closePrice;
+        final double stopLossPrice;
+        final OfferSide stopLossSide;
+        final double trailingStep;
+        final double takeProfitPrice;
+        final long fillTime;
+        final long closeTime;
+        final long goodTillTime;
+        final double profitLossInPips;
+        final double profitLossInUSD;
+        final double profitLossInAccountCurrency;
+        final double commission;
+        final double commissionInUSD;
+
+        Message(IMessage.Type type, Order order, long creationTime) {
+            this.type = type;
+            this.order = order;
+            this.creationTime = creationTime;
+            this.proxy = (IMessage) Proxy.newProxyInstance(IMessage.class.getClassLoader(), new Class<?>[] {IMessage.class}, this);
+
+            label = order.label;
+            state = order.state;
+            amount = order.amount;
+            requestedAmount = order.requestedAmount;
+            openPrice = order.openPrice;
+            closePrice = order.closePrice;
+            stopLossPrice = order.stopLossPrice;
+            stopLossSide = order.stopLossSide;
+            trailingStep = order.trailingStep;
+            takeProfitPrice = order.takeProfitPrice;
+            fillTime = order.fillTime;
+            closeTime = order.closeTime;
+            goodTillTime = order.goodTillTime;
+            profitLossInPips = order.getProfitLossInPips();
+            profitLossInUSD = order.getProfitLossInUSD();
+            profitLossInAccountCurrency = order.getProfitLossInAccountCurrency();
+            commission = order.getCommission();
+            commissionInUSD = order.commission;
+        }
+
+        private Object invokeOrder(Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getLabel":
+                    return label;
+                case "getState":
+                    return state;
+                case "getAmount":
+                    return amount;
+                case "getRequestedAmount":
+                case "getOriginalAmount":
+                    return requestedAmount;
+                case "getOpenPrice":
+                    return openPrice;
+                case "getClosePrice":
+                    return closePrice;
+                case "getStopLossPrice":
+                    return stopLossPrice;
+                case "getStopLossSide":
+                    return stopLossSide;
+                case "getTrailingStep":
+                    return trailingStep;
+                case "getTakeProfitPrice":
+                    return takeProfitPrice;
+                case "getFillTime":
+                    return fillTime;
+                case "getCloseTime":
+                    return closeTime;
+                case "getGoodTillTime":
+                    return goodTillTime;
+                case "getProfitLossInPips":
+                    return profitLossInPips;
+                case "getProfitLossInUSD":
+                    return profitLossInUSD;
+                case "getProfitLossInAccountCurrency":
+                    return profitLossInAccountCurrency;
+                case "getCommission":
+                    return commission;
+                case "getCommissionInUSD":
+                    return commissionInUSD;
+                case "toString":
+                    return label + " " + order.command + " " + amount + " " + order.instrument + " " + state;
+                default:
+                    return order.invoke(order.proxy, method, args);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (proxy == orderProxy) {
+                return invokeOrder(method, args);
+            }
+            switch (method.getName()) {
+                case "getType":
+                    return type;
+                case "getOrder":
+                    if (orderProxy == null) {
+                        orderProxy = (IOrder) Proxy.newProxyInstance(IOrder.class.getClassLoader(), new Class<?>[] {IOrder.class}, this);
+                    }
+                    return orderProxy;
+                case "getContent":
+                    return null;
+                case "getCreationTime":
+                    return creationTime;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type + " " + label + " " + state;
+                default:
+                    return SimulatedApi.getNeutralValue(method);
+            }
+        }
+    }
+}
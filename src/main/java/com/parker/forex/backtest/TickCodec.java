@@ -0,0 +1,342 @@
+package com.parker.forex.backtest;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.dukascopy.api.Instrument;
+
+/**
+ * Compact tick encoding for local history, storing blocks of ticks as zig-zag varint deltas so a typical tick takes 5-8
+ * bytes instead of 32.
+ */
+public class TickCodec {
+
+    public static final int BLOCK_SIZE = 1024;
+    public static final int MAX_EXTRA_DECIMALS = 3;
+
+    // count(4) length(4) priceDecimals(1) askVolumeDecimals(1) bidVolumeDecimals(1) reserved(1) firstTime(8), then
+    // the times, the asks and spreads interleaved, and the volumes, little endian
+    static final int BLOCK_HEADER_SIZE = 20;
+
+    private static final int RAW_VOLUMES = 0xFF;
+    private static final int MAX_VOLUME_DECIMALS = 6;
+    private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12};
+
+    private TickCodec() {
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    /**
+     * @return The fewest decimals from the minimum at which all the prices are whole points, or -1 if there are none.
+     */
+    private static int getPriceDecimals(double[] asks, double[] bids, int from, int to, int minimum) {
+        for (int decimals = minimum; decimals <= minimum + MAX_EXTRA_DECIMALS && decimals < POWERS_OF_TEN.length; decimals++) {
+            double scale = POWERS_OF_TEN[decimals];
+            if (isWhole(asks, from, to, scale) && isWhole(bids, from, to, scale)) {
+                return decimals;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWhole(double[] prices, int from, int to, double scale) {
+        for (int i = from; i < to; i++) {
+            double points = Math.rint(prices[i] * scale);
+            if (Math.abs(points) > 1L << 52 || points / scale != prices[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The fewest decimals at which all the volumes round trip as floats, or {@link #RAW_VOLUMES}.
+     */
+    private static int getVolumeDecimals(double[] volumes, int from, int to) {
+        for (int decimals = 0; decimals <= MAX_VOLUME_DECIMALS; decimals++) {
+            double scale = POWERS_OF_TEN[decimals];
+            boolean exact = true;
+            for (int i = from; i < to && exact; i++) {
+                double units = Math.rint(volumes[i] * scale);
+                exact = Math.abs(units) <= 1L << 52 && (float) (units / scale) == (float) volumes[i];
+            }
+            if (exact) {
+                return decimals;
+            }
+        }
+        return RAW_VOLUMES;
+    }
+
+    private static void writeVolumes(Output out, double[] volumes, int from, int to, int decimals) {
+        if (decimals == RAW_VOLUMES) {
+            for (int i = from; i < to; i++) {
+                out.writeVarint(Float.floatToRawIntBits((float) volumes[i]) & 0xFFFFFFFFL);
+            }
+        } else {
+            double scale = POWERS_OF_TEN[decimals];
+            for (int i = from; i < to; i++) {
+                out.writeZigZag((long) Math.rint(volumes[i] * scale));
+            }
+        }
+    }
+
+    private static void readVolumes(Input in, double[] volumes, int from, int to, int decimals) {
+        if (decimals == RAW_VOLUMES) {
+            for (int i = from; i < to; i++) {
+                volumes[i] = Float.intBitsToFloat((int) in.readVarint());
+            }
+        } else {
+            double scale = POWERS_OF_TEN[decimals];
+            for (int i = from; i < to; i++) {
+                volumes[i] = (float) (in.readZigZag() / scale);
+            }
+        }
+    }
+
+    /**
+     * @return False if the block's prices are not whole points at any supported scale.
+     */
+    private static boolean encodeBlock(Output out, TickSeries ticks, int from, int to, int minimumDecimals) {
+        int priceDecimals = getPriceDecimals(ticks.asks, ticks.bids, from, to, minimumDecimals);
+        if (priceDecimals < 0) {
+            return false;
+        }
+        int askVolumeDecimals = getVolumeDecimals(ticks.askVolumes, from, to);
+        int bidVolumeDecimals = getVolumeDecimals(ticks.bidVolumes, from, to);
+
+        int start = out.size;
+        out.writeInt(to - from);
+        out.writeInt(0);
+        out.writeByte(priceDecimals);
+        out.writeByte(askVolumeDecimals);
+        out.writeByte(bidVolumeDecimals);
+        out.writeByte(0);
+        out.writeLong(ticks.times[from]);
+
+        long previousTime = ticks.times[from];
+        long previousGap = 0;
+        for (int i = from + 1; i < to; i++) {
+            long gap = ticks.times[i] - previousTime;
+            out.writeZigZag(gap - previousGap);
+            previousTime = ticks.times[i];
+            previousGap = gap;
+        }
+
+        double scale = POWERS_OF_TEN[priceDecimals];
+        long previousAsk = 0;
+        for (int i = from; i < to; i++) {
+            long ask = (long) Math.rint(ticks.asks[i] * scale);
+            out.writeZigZag(ask - previousAsk);
+            out.writeZigZag(ask - (long) Math.rint(ticks.bids[i] * scale));
+            previousAsk = ask;
+        }
+
+        writeVolumes(out, ticks.askVolumes, from, to, askVolumeDecimals);
+        writeVolumes(out, ticks.bidVolumes, from, to, bidVolumeDecimals);
+
+        out.setInt(start + 4, out.size - start);
+        return true;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * @return The encoded blocks, or null if some prices are not whole points at any supported scale, in which case the
+     *         ticks have to be stored raw.
+     */
+    public static byte[] encode(TickSeries ticks) {
+        int count = ticks.size();
+        int minimumDecimals = ticks.instrument.getPipScale() + 1;
+        Output out = new Output(count * 8 + BLOCK_HEADER_SIZE);
+        for (int from = 0; from < count; from += BLOCK_SIZE) {
+            if (!encodeBlock(out, ticks, from, Math.min(count, from + BLOCK_SIZE), minimumDecimals)) {
+                return null;
+            }
+        }
+        return Arrays.copyOf(out.data, out.size);
+    }
+
+    /**
+     * Decodes the blocks holding the given number of ticks.
+     *
+     * @throws IOException If the data is corrupt or holds fewer ticks.
+     */
+    public static TickSeries decode(Instrument instrument, byte[] data, int offset, int count) throws IOException {
+        long[] times = new long[count];
+        double[] bids = new double[count];
+        double[] asks = new double[count];
+        double[] bidVolumes = new double[count];
+        double[] askVolumes = new double[count];
+
+        int position = offset;
+        int decoded = 0;
+        while (decoded < count) {
+            if (position + BLOCK_HEADER_SIZE > data.length) {
+                throw new IOException("Truncated tick block at " + position);
+            }
+            if (getBlockSize(data, position) > count - decoded) {
+                throw new IOException("Corrupt tick block at " + position);
+            }
+            int next = decodeBlock(data, position, times, bids, asks, bidVolumes, askVolumes, decoded);
+            decoded += getBlockSize(data, position);
+            position = next;
+        }
+        return new TickSeries(instrument, times, bids, asks, bidVolumes, askVolumes);
+    }
+
+    /**
+     * @return The number of ticks in the block starting at the position.
+     */
+    public static int getBlockSize(byte[] data, int position) {
+        return Input.getInt(data, position);
+    }
+
+    /**
+     * Expands one block into the columns, from the offset on.
+     *
+     * @return The position of the next block.
+     * @throws IOException If the block is corrupt.
+     */
+    public static int decodeBlock(byte[] data, int position, long[] times, double[] bids, double[] asks, double[] bidVolumes,
+            double[] askVolumes, int offset) throws IOException {
+        try {
+            int count = Input.getInt(data, position);
+            int length = Input.getInt(data, position + 4);
+            int priceDecimals = data[position + 8] & 0xFF;
+            int askVolumeDecimals = data[position + 9] & 0xFF;
+            int bidVolumeDecimals = data[position + 10] & 0xFF;
+            if (count <= 0 || length < BLOCK_HEADER_SIZE || priceDecimals >= POWERS_OF_TEN.length) {
+                throw new IOException("Corrupt tick block at " + position);
+            }
+
+            Input in = new Input(data, position + BLOCK_HEADER_SIZE);
+            int to = offset + count;
+
+            long time = Input.getLong(data, position + 12);
+            long gap = 0;
+            times[offset] = time;
+            for (int i = offset + 1; i < to; i++) {
+                gap += in.readZigZag();
+                time += gap;
+                times[i] = time;
+            }
+
+            double scale = POWERS_OF_TEN[priceDecimals];
+            long ask = 0;
+            for (int i = offset; i < to; i++) {
+                ask += in.readZigZag();
+                asks[i] = ask / scale;
+                bids[i] = (ask - in.readZigZag()) / scale;
+            }
+
+            readVolumes(in, askVolumes, offset, to, askVolumeDecimals);
+            readVolumes(in, bidVolumes, offset, to, bidVolumeDecimals);
+
+            if (in.position != position + length) {
+                throw new IOException("Corrupt tick block at " + position);
+            }
+            return in.position;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated tick block at " + position, e);
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    private static final class Output {
+
+        byte[] data;
+        int size;
+
+        Output(int capacity) {
+            data = new byte[Math.max(16, capacity)];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + extra, data.length * 2));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            data[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            setInt(size, value);
+            size += 4;
+        }
+
+        void setInt(int position, int value) {
+            data[position] = (byte) value;
+            data[position + 1] = (byte) (value >>> 8);
+            data[position + 2] = (byte) (value >>> 16);
+            data[position + 3] = (byte) (value >>> 24);
+        }
+
+        void writeLong(long value) {
+            writeInt((int) value);
+            writeInt((int) (value >>> 32));
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+    }
+
+    private static final class Input {
+
+        final byte[] data;
+        int position;
+
+        Input(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        static int getInt(byte[] data, int position) {
+            return (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8 | (data[position + 2] & 0xFF) << 16
+                    | (data[position + 3] & 0xFF) << 24;
+        }
+
+        static long getLong(byte[] data, int position) {
+            return (getInt(data, position) & 0xFFFFFFFFL) | (long) getInt(data, position + 4) << 32;
+        }
+
+        long readVarint() {
+            // Most values fit in one byte, so that case skips the loop
+            int b = data[position++];
+            if (b >= 0) {
+                return b;
+            }
+            long value = b & 0x7F;
+            int shift = 7;
+            do {
+                b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        long readZigZag() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
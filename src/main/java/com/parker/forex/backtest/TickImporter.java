@@ -0,0 +1,479 @@
+package com.parker.forex.backtest;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.tukaani.xz.LZMAInputStream;
+
+import com.dukascopy.api.Instrument;
+
+/**
+ * Imports Dukascopy <code>.bi5</code> and JForex CSV tick exports into a {@link TickStore}, decoding files in parallel
+ * and merging them with the days already stored.
+ */
+public class TickImporter {
+
+    private static final long HOUR = 60 * 60000;
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final TickStore store;
+    private final int threads;
+    private final Map<Path, Object> dayLocks = new ConcurrentHashMap<>();
+
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public TickImporter(TickStore store, int threads) {
+        this.store = store;
+        this.threads = threads;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private static <T> T get(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new IllegalStateException(ee.getCause());
+        }
+    }
+
+    private <T> List<T> run(List<Task<T>> tasks) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (Task<T> task : tasks) {
+                futures.add(executor.submit(task::call));
+            }
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(get(future));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sorts the ticks by time and drops invalid and duplicate ones.
+     */
+    private TickSeries clean(TickSeries ticks) {
+        int size = ticks.size();
+        long[] times = ticks.times;
+
+        Integer[] order = null;
+        for (int i = 1; i < size && order == null; i++) {
+            if (times[i] < times[i - 1]) {
+                order = new Integer[size];
+                for (int j = 0; j < size; j++) {
+                    order[j] = j;
+                }
+                Arrays.sort(order, Comparator.comparingLong(j -> times[j]));
+            }
+        }
+
+        Columns columns = new Columns(size);
+        int sameTimeStart = 0;
+        for (int k = 0; k < size; k++) {
+            int i = order == null ? k : order[k];
+            double bid = ticks.bids[i];
+            double ask = ticks.asks[i];
+            if (!(bid > 0) || !(ask >= bid) || Double.isInfinite(ask)) {
+                rejected.incrementAndGet();
+                continue;
+            }
+
+            if (columns.size == 0 || columns.times[columns.size - 1] != times[i]) {
+                sameTimeStart = columns.size;
+            } else if (columns.contains(sameTimeStart, bid, ask, ticks.bidVolumes[i], ticks.askVolumes[i])) {
+                duplicates.incrementAndGet();
+                continue;
+            }
+            columns.add(times[i], bid, ask, ticks.bidVolumes[i], ticks.askVolumes[i]);
+        }
+        return columns.toSeries(ticks.instrument);
+    }
+
+    /**
+     * Merges the day's ticks into the stored day.
+     */
+    private int store(long day, TickSeries ticks) throws IOException {
+        Object lock = dayLocks.computeIfAbsent(store.getPath(ticks.instrument, day), path -> new Object());
+        synchronized (lock) {
+            TickSeries stored = store.readDay(ticks.instrument, day);
+            TickSeries merged = clean(stored == null ? ticks : Columns.concat(stored, ticks));
+            store.writeDay(day, merged);
+
+            int added = merged.size() - (stored == null ? 0 : stored.size());
+            imported.addAndGet(added);
+            return added;
+        }
+    }
+
+    /**
+     * @return The start of the hour a <code>yyyy/MM/dd/HHh_ticks.bi5</code> file holds, with the month from 0.
+     */
+    private static long getHourStart(Path file) {
+        int count = file.getNameCount();
+        if (count < 4) {
+            throw new IllegalArgumentException("Not a yyyy/MM/dd/HHh_ticks.bi5 file: " + file);
+        }
+        int year = Integer.parseInt(file.getName(count - 4).toString());
+        int month = Integer.parseInt(file.getName(count - 3).toString()) + 1;
+        int day = Integer.parseInt(file.getName(count - 2).toString());
+        int hour = Integer.parseInt(file.getFileName().toString().substring(0, 2));
+        return LocalDate.of(year, month, day).toEpochDay() * TickStore.DAY + hour * HOUR;
+    }
+
+    private static void decodeBi5(Instrument instrument, Path file, byte[] buffer, Columns columns) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        if (data.length == 0) {
+            // Hours without ticks are stored as empty files
+            return;
+        }
+
+        long hourStart = getHourStart(file);
+        double scale = Math.pow(10, instrument.getPipScale() + 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        try (InputStream in = new LZMAInputStream(new ByteArrayInputStream(data))) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        ByteBuffer records = ByteBuffer.wrap(out.toByteArray());
+        while (records.remaining() >= 20) {
+            long time = hourStart + records.getInt();
+            double ask = records.getInt() / scale;
+            double bid = records.getInt() / scale;
+            double askVolume = records.getFloat();
+            double bidVolume = records.getFloat();
+            columns.add(time, bid, ask, bidVolume, askVolume);
+        }
+    }
+
+    private int importBi5Day(Instrument instrument, long day, List<Path> files) throws IOException {
+        byte[] buffer = new byte[8192];
+        Columns columns = new Columns(1024);
+        for (Path file : files) {
+            try {
+                decodeBi5(instrument, file, buffer, columns);
+            } catch (IOException e) {
+                throw new IOException("Could not decode " + file, e);
+            }
+        }
+        return columns.size == 0 ? 0 : store(day, columns.toSeries(instrument));
+    }
+
+    private int importCsvFile(Instrument instrument, Path file) throws IOException {
+        int added = 0;
+        CsvParser parser = new CsvParser();
+        Columns columns = new Columns(1024);
+        long currentDay = Long.MIN_VALUE;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || !Character.isDigit(line.charAt(0))) {
+                    continue;
+                }
+                if (!parser.parse(line)) {
+                    rejected.incrementAndGet();
+                    continue;
+                }
+
+                long day = Math.floorDiv(parser.time, TickStore.DAY);
+                if (day != currentDay && columns.size > 0) {
+                    added += store(currentDay, columns.toSeries(instrument));
+                    columns = new Columns(1024);
+                }
+                currentDay = day;
+                columns.add(parser.time, parser.bid, parser.ask, parser.bidVolume, parser.askVolume);
+            }
+        } catch (IOException e) {
+            throw new IOException("Could not read " + file, e);
+        }
+
+        if (columns.size > 0) {
+            added += store(currentDay, columns.toSeries(instrument));
+        }
+        return added;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Imports every <code>.bi5</code> file under the directory, laid out as <code>yyyy/MM/dd/HHh_ticks.bi5</code> with
+     * months counted from 0 as on the Dukascopy feed, decoding a day's files per task.
+     *
+     * @return The number of ticks added to the store.
+     */
+    public long importBi5(Instrument instrument, Path directory) throws IOException, InterruptedException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(path -> path.getFileName().toString().endsWith("h_ticks.bi5")).sorted().collect(Collectors.toList());
+        }
+
+        Map<Long, List<Path>> days = new TreeMap<>();
+        for (Path file : files) {
+            days.computeIfAbsent(Math.floorDiv(getHourStart(file), TickStore.DAY), day -> new ArrayList<>()).add(file);
+        }
+
+        List<Task<Integer>> tasks = new ArrayList<>();
+        days.forEach((day, dayFiles) -> tasks.add(() -> importBi5Day(instrument, day, dayFiles)));
+        return run(tasks).stream().mapToLong(Integer::longValue).sum();
+    }
+
+    /**
+     * Imports CSV files of <code>time,ask,bid,askVolume,bidVolume</code> rows with GMT times, one file per task. Lines
+     * not starting with a digit, such as the header, are skipped.
+     *
+     * @return The number of ticks added to the store.
+     */
+    public long importCsv(Instrument instrument, List<Path> files) throws IOException, InterruptedException {
+        List<Task<Integer>> tasks = new ArrayList<>();
+        for (Path file : files) {
+            tasks.add(() -> importCsvFile(instrument, file));
+        }
+        return run(tasks).stream().mapToLong(Integer::longValue).sum();
+    }
+
+    /**
+     * @return The number of ticks added to the store since the importer was created.
+     */
+    public long getImported() {
+        return imported.get();
+    }
+
+    /**
+     * @return The number of ticks dropped for a missing or crossed price or an unreadable line.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return The number of ticks dropped as repeats of a tick at the same time.
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    private interface Task<T> {
+
+        T call() throws IOException;
+    }
+
+    /**
+     * Growable tick columns.
+     */
+    private static class Columns {
+
+        long[] times;
+        double[] bids;
+        double[] asks;
+        double[] bidVolumes;
+        double[] askVolumes;
+        int size;
+
+        Columns(int capacity) {
+            times = new long[Math.max(1, capacity)];
+            bids = new double[times.length];
+            asks = new double[times.length];
+            bidVolumes = new double[times.length];
+            askVolumes = new double[times.length];
+        }
+
+        static TickSeries concat(TickSeries first, TickSeries second) {
+            Columns columns = new Columns(first.size() + second.size());
+            for (TickSeries ticks : new TickSeries[] {first, second}) {
+                for (int i = 0; i < ticks.size(); i++) {
+                    columns.add(ticks.times[i], ticks.bids[i], ticks.asks[i], ticks.bidVolumes[i], ticks.askVolumes[i]);
+                }
+            }
+            return columns.toSeries(first.instrument);
+        }
+
+        void add(long time, double bid, double ask, double bidVolume, double askVolume) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                times = Arrays.copyOf(times, capacity);
+                bids = Arrays.copyOf(bids, capacity);
+                asks = Arrays.copyOf(asks, capacity);
+                bidVolumes = Arrays.copyOf(bidVolumes, capacity);
+                askVolumes = Arrays.copyOf(askVolumes, capacity);
+            }
+            times[size] = time;
+            bids[size] = bid;
+            asks[size] = ask;
+            bidVolumes[size] = bidVolume;
+            askVolumes[size] = askVolume;
+            size++;
+        }
+
+        /**
+         * @return True if a tick from the index on has the prices and volumes, volumes compared as stored.
+         */
+        boolean contains(int from, double bid, double ask, double bidVolume, double askVolume) {
+            for (int i = from; i < size; i++) {
+                if (bids[i] == bid && asks[i] == ask && (float) bidVolumes[i] == (float) bidVolume && (float) askVolumes[i] == (float) askVolume) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        TickSeries toSeries(Instrument instrument) {
+            return new TickSeries(instrument, Arrays.copyOf(times, size), Arrays.copyOf(bids, size), Arrays.copyOf(asks, size),
+                    Arrays.copyOf(bidVolumes, size), Arrays.copyOf(askVolumes, size));
+        }
+    }
+
+    /**
+     * Parses CSV lines without allocating, caching the day of the last date seen.
+     */
+    private static class CsvParser {
+
+        private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14,
+            1e15, 1e16, 1e17, 1e18};
+
+        long time;
+        double ask;
+        double bid;
+        double askVolume;
+        double bidVolume;
+
+        private String line;
+        private int position;
+        private int lastDate = -1;
+        private long lastDay;
+
+        /**
+         * @return False if the line is not a valid tick.
+         */
+        boolean parse(String line) {
+            this.line = line;
+            this.position = 0;
+            try {
+                // The date is year first or last; hold its fields as one number to spot a repeat of the last date
+                int first = (int) nextNumber();
+                int second = (int) nextNumber();
+                int third = (int) nextNumber();
+                int date = first > 31 ? (first * 100 + second) * 100 + third : (third * 100 + second) * 100 + first;
+                if (date != lastDate) {
+                    lastDay = LocalDate.of(date / 10000, date / 100 % 100, date % 100).toEpochDay();
+                    lastDate = date;
+                }
+
+                long hours = nextNumber();
+                long minutes = nextNumber();
+                long seconds = nextNumber();
+                long millis = line.charAt(position) == '.' ? nextNumber() : 0;
+                time = lastDay * TickStore.DAY + ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+
+                skipField();
+                ask = nextDecimal();
+                bid = nextDecimal();
+                askVolume = nextDecimal();
+                bidVolume = nextDecimal();
+                return true;
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+
+        private long nextNumber() {
+            while (!Character.isDigit(line.charAt(position))) {
+                position++;
+            }
+            long value = 0;
+            while (position < line.length() && Character.isDigit(line.charAt(position))) {
+                value = value * 10 + line.charAt(position++) - '0';
+            }
+            return value;
+        }
+
+        /**
+         * Moves past the rest of the time field, e.g. a time zone, to the next separator.
+         */
+        private void skipField() {
+            while (line.charAt(position) != ',' && line.charAt(position) != ';') {
+                position++;
+            }
+        }
+
+        /**
+         * Reads the decimal after the next separator. Plain decimals are read exactly without allocating; anything else
+         * is left to Double.parseDouble.
+         */
+        private double nextDecimal() {
+            int start = ++position;
+            int end = start;
+            while (end < line.length() && line.charAt(end) != ',' && line.charAt(end) != ';') {
+                end++;
+            }
+            position = end;
+
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = -1;
+            for (int i = start; i < end; i++) {
+                char c = line.charAt(i);
+                if (c >= '0' && c <= '9' && digits < 18) {
+                    mantissa = mantissa * 10 + c - '0';
+                    digits++;
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                } else if (c == '.' && decimals < 0) {
+                    decimals = 0;
+                } else {
+                    return Double.parseDouble(line.substring(start, end).trim());
+                }
+            }
+            if (digits == 0) {
+                throw new NumberFormatException("Missing number");
+            }
+            // Both are exact doubles, so the division rounds once, as Double.parseDouble does
+            return decimals <= 0 ? mantissa : mantissa / POWERS_OF_TEN[decimals];
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.parker.forex.backtest;
+
+import com.dukascopy.api.IStrategy;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.JFException;
+
+/**
+ * Merges the tick streams of several instruments into one in time order, ties going by instrument then source so a
+ * replay is always identical.
+ */
+public class TickMerger implements TickSource {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final TickSource[] sources;
+    private final long[] times;
+    private final int[] ordinals;
+    private final int[] heap;
+    private int size;
+
+    private boolean started;
+    private TickSource current;
+
+    private boolean reuseTicks;
+    private final ReplayTick reusedTick = new ReplayTick();
+
+    public TickMerger(TickSource... sources) {
+        this.sources = sources.clone();
+        this.times = new long[sources.length];
+        this.ordinals = new int[sources.length];
+        this.heap = new int[sources.length];
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private boolean before(int a, int b) {
+        if (times[a] != times[b]) {
+            return times[a] < times[b];
+        }
+        if (ordinals[a] != ordinals[b]) {
+            return ordinals[a] < ordinals[b];
+        }
+        return a < b;
+    }
+
+    private void siftUp(int i) {
+        int source = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (!before(source, heap[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = source;
+    }
+
+    private void siftDown(int i) {
+        int source = heap[i];
+        int half = size >> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], source)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = source;
+    }
+
+    private ReplayTick nextTick() {
+        return (reuseTicks ? reusedTick : new ReplayTick()).set(current);
+    }
+
+    private void start() {
+        for (int source = 0; source < sources.length; source++) {
+            if (sources[source].next()) {
+                times[source] = sources[source].getTime();
+                ordinals[source] = sources[source].getInstrument().ordinal();
+                heap[size] = source;
+                siftUp(size++);
+            }
+        }
+        started = true;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    @Override
+    public boolean next() {
+        if (!started) {
+            start();
+        } else if (size > 0) {
+            // Move the source of the last tick on and put it back in place
+            int source = heap[0];
+            TickSource top = sources[source];
+            if (top.next()) {
+                times[source] = top.getTime();
+            } else {
+                heap[0] = heap[--size];
+            }
+            if (size > 0) {
+                siftDown(0);
+            }
+        }
+
+        if (size == 0) {
+            current = null;
+            return false;
+        }
+        current = sources[heap[0]];
+        return true;
+    }
+
+    /**
+     * Passes one {@link ReplayTick} to every callback instead of a new tick each, for strategies that copy the values
+     * they keep rather than the tick.
+     */
+    public void setReuseTicks(boolean reuseTicks) {
+        this.reuseTicks = reuseTicks;
+    }
+
+    /**
+     * Passes every remaining tick to the strategy's <code>onTick</code>.
+     *
+     * @return The number of ticks replayed.
+     */
+    public long replay(IStrategy strategy) throws JFException {
+        long count = 0;
+        while (next()) {
+            strategy.onTick(current.getInstrument(), nextTick());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Replays every remaining tick through the bar builder and into the strategy. Bars the tick closes are passed to
+     * the strategy's <code>onBar</code> before it sees the tick in <code>onTick</code>.
+     *
+     * @return The number of ticks replayed.
+     */
+    public long replay(IStrategy strategy, BarBuilder bars) throws JFException {
+        bars.setListener(strategy::onBar);
+        long count = 0;
+        while (next()) {
+            Instrument instrument = current.getInstrument();
+            ReplayTick tick = nextTick();
+            bars.onTick(instrument, tick);
+            strategy.onTick(instrument, tick);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public Instrument getInstrument() {
+        return current.getInstrument();
+    }
+
+    @Override
+    public long getTime() {
+        return current.getTime();
+    }
+
+    @Override
+    public double getBid() {
+        return current.getBid();
+    }
+
+    @Override
+    public double getAsk() {
+        return current.getAsk();
+    }
+
+    @Override
+    public double getBidVolume() {
+        return current.getBidVolume();
+    }
+
+    @Override
+    public double getAskVolume() {
+        return current.getAskVolume();
+    }
+}
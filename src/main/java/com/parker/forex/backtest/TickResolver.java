@@ -0,0 +1,13 @@
+package com.parker.forex.backtest;
+
+/**
+ * Looks up ticks to decide which of two price levels was reached first within a bar when the bar's range crosses both.
+ */
+public interface TickResolver {
+
+    /**
+     * @return 1 if the upper price was reached first, -1 if the lower price was reached first and 0 if neither was
+     *         reached between the given times.
+     */
+    int firstTouched(long fromTime, long toTime, double upperPrice, double lowerPrice);
+}
@@ -0,0 +1,138 @@
+package com.parker.forex.backtest;
+
+import java.util.List;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+
+/**
+ * A series of ticks for one instrument held in parallel primitive arrays.
+ */
+public class TickSeries {
+
+    final Instrument instrument;
+    final long[] times;
+    final double[] bids;
+    final double[] asks;
+    final double[] bidVolumes;
+    final double[] askVolumes;
+
+    public TickSeries(Instrument instrument, long[] times, double[] bids, double[] asks, double[] bidVolumes, double[] askVolumes) {
+        int size = times.length;
+        if (bids.length != size || asks.length != size || bidVolumes.length != size || askVolumes.length != size) {
+            throw new IllegalArgumentException("All tick columns must have the same length.");
+        }
+
+        this.instrument = instrument;
+        this.times = times;
+        this.bids = bids;
+        this.asks = asks;
+        this.bidVolumes = bidVolumes;
+        this.askVolumes = askVolumes;
+    }
+
+    /**
+     * Copies ticks loaded from the history service, e.g. <code>history.getTicks(instrument, from, to)</code>.
+     */
+    public static TickSeries fromTicks(Instrument instrument, List<ITick> ticks) {
+        int size = ticks.size();
+        long[] times = new long[size];
+        double[] bids = new double[size];
+        double[] asks = new double[size];
+        double[] bidVolumes = new double[size];
+        double[] askVolumes = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            ITick tick = ticks.get(i);
+            times[i] = tick.getTime();
+            bids[i] = tick.getBid();
+            asks[i] = tick.getAsk();
+            bidVolumes[i] = tick.getBidVolume();
+            askVolumes[i] = tick.getAskVolume();
+        }
+        return new TickSeries(instrument, times, bids, asks, bidVolumes, askVolumes);
+    }
+
+    /**
+     * @return A new cursor positioned before the first tick.
+     */
+    public TickSource cursor() {
+        return new Cursor();
+    }
+
+    public Instrument getInstrument() {
+        return instrument;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public double getBid(int index) {
+        return bids[index];
+    }
+
+    public double getAsk(int index) {
+        return asks[index];
+    }
+
+    public double getBidVolume(int index) {
+        return bidVolumes[index];
+    }
+
+    public double getAskVolume(int index) {
+        return askVolumes[index];
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    private class Cursor implements TickSource {
+
+        private int index = -1;
+
+        @Override
+        public Instrument getInstrument() {
+            return instrument;
+        }
+
+        @Override
+        public boolean next() {
+            if (index + 1 >= times.length) {
+                index = times.length;
+                return false;
+            }
+            index++;
+            return true;
+        }
+
+        @Override
+        public long getTime() {
+            return times[index];
+        }
+
+        @Override
+        public double getBid() {
+            return bids[index];
+        }
+
+        @Override
+        public double getAsk() {
+            return asks[index];
+        }
+
+        @Override
+        public double getBidVolume() {
+            return bidVolumes[index];
+        }
+
+        @Override
+        public double getAskVolume() {
+            return askVolumes[index];
+        }
+    }
+}
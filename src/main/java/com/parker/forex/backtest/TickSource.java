@@ -0,0 +1,32 @@
+package com.parker.forex.backtest;
+
+import com.dukascopy.api.Instrument;
+
+/**
+ * A forward-only cursor over a time ordered stream of ticks. The getters describe the current tick and are only valid
+ * after {@link #next()} has returned true; reading them allocates nothing.
+ */
+public interface TickSource {
+
+    /**
+     * @return The instrument of the current tick.
+     */
+    Instrument getInstrument();
+
+    /**
+     * Moves to the next tick.
+     *
+     * @return False once the stream is exhausted.
+     */
+    boolean next();
+
+    long getTime();
+
+    double getBid();
+
+    double getAsk();
+
+    double getBidVolume();
+
+    double getAskVolume();
+}
@@ -0,0 +1,225 @@
+package com.parker.forex.backtest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.dukascopy.api.Instrument;
+
+/**
+ * Local tick history, one file per instrument and GMT day under <code>root/INSTRUMENT/yyyy/MM/dd.ticks</code>, each day
+ * replaced atomically.
+ */
+public class TickStore {
+
+    // magic(4) version(2) reserved(2) count(4) reserved(4), then TickCodec blocks or, for prices the codec cannot
+    // hold, raw columns of times, asks, bids and float volumes, little endian
+    static final int MAGIC = 0x5449434B; // "TICK"
+    static final short RAW_VERSION = 1;
+    static final short ENCODED_VERSION = 2;
+    static final int HEADER_SIZE = 16;
+
+    static final long DAY = 24 * 60 * 60000;
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final Path root;
+
+    public TickStore(Path root) {
+        this.root = root;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private static TickSeries slice(TickSeries ticks, int from, int to) {
+        return new TickSeries(ticks.instrument, Arrays.copyOfRange(ticks.times, from, to), Arrays.copyOfRange(ticks.bids, from, to),
+                Arrays.copyOfRange(ticks.asks, from, to), Arrays.copyOfRange(ticks.bidVolumes, from, to),
+                Arrays.copyOfRange(ticks.askVolumes, from, to));
+    }
+
+    private static void putColumns(ByteBuffer buffer, TickSeries ticks) {
+        int count = ticks.size();
+        buffer.asLongBuffer().put(ticks.times, 0, count);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asDoubleBuffer().put(ticks.asks, 0, count);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asDoubleBuffer().put(ticks.bids, 0, count);
+        buffer.position(buffer.position() + count * 8);
+        for (int i = 0; i < count; i++) {
+            buffer.putFloat((float) ticks.askVolumes[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putFloat((float) ticks.bidVolumes[i]);
+        }
+    }
+
+    private static TickSeries getColumns(Instrument instrument, ByteBuffer buffer, int count) {
+        long[] times = new long[count];
+        double[] asks = new double[count];
+        double[] bids = new double[count];
+        double[] askVolumes = new double[count];
+        double[] bidVolumes = new double[count];
+        buffer.asLongBuffer().get(times);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asDoubleBuffer().get(asks);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asDoubleBuffer().get(bids);
+        buffer.position(buffer.position() + count * 8);
+        for (int i = 0; i < count; i++) {
+            askVolumes[i] = buffer.getFloat();
+        }
+        for (int i = 0; i < count; i++) {
+            bidVolumes[i] = buffer.getFloat();
+        }
+        return new TickSeries(instrument, times, bids, asks, bidVolumes, askVolumes);
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * @param day The GMT day as days from the epoch, e.g. <code>Math.floorDiv(time, DAY)</code>.
+     */
+    public Path getPath(Instrument instrument, long day) {
+        LocalDate date = LocalDate.ofEpochDay(day);
+        return root.resolve(instrument.name()).resolve(String.format("%04d", date.getYear()))
+                .resolve(String.format("%02d", date.getMonthValue())).resolve(String.format("%02d.ticks", date.getDayOfMonth()));
+    }
+
+    public boolean exists(Instrument instrument, long day) {
+        return Files.exists(getPath(instrument, day));
+    }
+
+    /**
+     * Replaces the stored day with the ticks, which must be in time order and all fall on that day.
+     */
+    public void writeDay(long day, TickSeries ticks) throws IOException {
+        int count = ticks.size();
+        for (int i = 0; i < count; i++) {
+            if (Math.floorDiv(ticks.times[i], DAY) != day || i > 0 && ticks.times[i] < ticks.times[i - 1]) {
+                throw new IllegalArgumentException("Ticks must be in time order and on day " + LocalDate.ofEpochDay(day));
+            }
+        }
+
+        byte[] encoded = TickCodec.encode(ticks);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (encoded != null ? encoded.length : count * 32))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort(encoded != null ? ENCODED_VERSION : RAW_VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(count);
+        buffer.putInt(0);
+        if (encoded != null) {
+            buffer.put(encoded);
+        } else {
+            putColumns(buffer, ticks);
+        }
+        buffer.flip();
+
+        Path path = getPath(ticks.instrument, day);
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The stored ticks of the day, or null if the day is not stored.
+     */
+    public TickSeries readDay(Instrument instrument, long day) throws IOException {
+        Path path = getPath(instrument, day);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0, length);
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (length < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a tick file: " + path);
+            }
+            short version = buffer.getShort();
+            buffer.getShort();
+            int count = buffer.getInt();
+            buffer.getInt();
+            if (count < 0) {
+                throw new IOException("Corrupt tick file: " + path);
+            }
+
+            if (version == ENCODED_VERSION) {
+                byte[] encoded = new byte[buffer.remaining()];
+                buffer.get(encoded);
+                try {
+                    return TickCodec.decode(instrument, encoded, 0, count);
+                } catch (IOException e) {
+                    throw new IOException("Could not decode " + path, e);
+                }
+            } else if (version == RAW_VERSION) {
+                if (length != HEADER_SIZE + count * 32L) {
+                    throw new IOException("Truncated tick file: " + path);
+                }
+                return getColumns(instrument, buffer, count);
+            }
+            throw new IOException("Unsupported tick file version " + version + ": " + path);
+        }
+    }
+
+    /**
+     * @return The stored ticks from (inclusive) to (exclusive) the times, in time order.
+     */
+    public TickSeries read(Instrument instrument, long from, long to) throws IOException {
+        List<TickSeries> days = new ArrayList<>();
+        int size = 0;
+        for (long day = Math.floorDiv(from, DAY); day <= Math.floorDiv(to - 1, DAY); day++) {
+            TickSeries ticks = readDay(instrument, day);
+            if (ticks != null) {
+                int start = 0;
+                int end = ticks.size();
+                while (start < end && ticks.times[start] < from) {
+                    start++;
+                }
+                while (end > start && ticks.times[end - 1] >= to) {
+                    end--;
+                }
+                days.add(start == 0 && end == ticks.size() ? ticks : slice(ticks, start, end));
+                size += end - start;
+            }
+        }
+
+        long[] times = new long[size];
+        double[] bids = new double[size];
+        double[] asks = new double[size];
+        double[] bidVolumes = new double[size];
+        double[] askVolumes = new double[size];
+        int offset = 0;
+        for (TickSeries ticks : days) {
+            int count = ticks.size();
+            System.arraycopy(ticks.times, 0, times, offset, count);
+            System.arraycopy(ticks.bids, 0, bids, offset, count);
+            System.arraycopy(ticks.asks, 0, asks, offset, count);
+            System.arraycopy(ticks.bidVolumes, 0, bidVolumes, offset, count);
+            System.arraycopy(ticks.askVolumes, 0, askVolumes, offset, count);
+            offset += count;
+        }
+        return new TickSeries(instrument, times, bids, asks, bidVolumes, askVolumes);
+    }
+}
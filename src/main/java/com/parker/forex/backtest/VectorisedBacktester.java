@@ -0,0 +1,193 @@
+package com.parker.forex.backtest;
+
+/**
+ * Fast screening backtester for bar-driven strategies, running the entry rule over OHLC arrays and resolving exits with
+ * an intrabar high/low model. Confirm results with a tick-accurate run before trading.
+ */
+public class VectorisedBacktester {
+
+    private final double pipValue;
+    private final TickResolver tickResolver;
+
+    public VectorisedBacktester(double pipValue) {
+        this(pipValue, null);
+    }
+
+    public VectorisedBacktester(double pipValue, TickResolver tickResolver) {
+        this.pipValue = pipValue;
+        this.tickResolver = tickResolver;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private int resolve(long fromTime, long toTime, double upperPrice, double lowerPrice, double open, double close, BacktestResult result) {
+        result.ambiguousBars++;
+
+        if (tickResolver != null) {
+            result.tickLookups++;
+            int first = tickResolver.firstTouched(fromTime, toTime, upperPrice, lowerPrice);
+            if (first != 0) {
+                return first;
+            }
+        }
+        return close >= open ? -1 : 1;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    public BacktestResult run(BarSeries bid, BarSeries ask, BarRule rule) {
+        return run(bid, ask, rule, 0, bid.size());
+    }
+
+    /**
+     * Runs the rule over the bars in the range [fromBar, toBar). Bars before the range are still visible to the rule, so
+     * indicators can warm up on data preceding the test window.
+     */
+    public BacktestResult run(BarSeries bid, BarSeries ask, BarRule rule, int fromBar, int toBar) {
+        if (bid.size() != ask.size()) {
+            throw new IllegalArgumentException("Bid and ask series must be aligned: " + bid.size() + " != " + ask.size());
+        }
+
+        BacktestResult result = new BacktestResult();
+        BarEntry entry = new BarEntry();
+        long interval = bid.interval;
+
+        // Pending stop orders
+        boolean pending = false;
+        double buyStop = Double.NaN;
+        double sellStop = Double.NaN;
+        long pendingUntil = 0;
+
+        // Open position
+        int position = 0;
+        boolean filledIntrabar = false;
+        long entryTime = 0;
+        long exitTime = 0;
+        double entryPrice = 0;
+        double stopLoss = Double.NaN;
+        double takeProfit = Double.NaN;
+        double stopLossDistance = Double.NaN;
+        double takeProfitDistance = Double.NaN;
+
+        for (int i = fromBar; i < toBar; i++) {
+            long barTime = bid.times[i];
+
+            // Trigger pending stop orders
+            if (pending) {
+                if (barTime >= pendingUntil) {
+                    pending = false;
+                } else {
+                    boolean buyHit = !Double.isNaN(buyStop) && ask.highs[i] >= buyStop;
+                    boolean sellHit = !Double.isNaN(sellStop) && bid.lows[i] <= sellStop;
+
+                    if (buyHit && sellHit) {
+                        if (ask.opens[i] >= buyStop) {
+                            sellHit = false;
+                        } else if (bid.opens[i] <= sellStop) {
+                            buyHit = false;
+                        } else if (resolve(barTime, barTime + interval, buyStop, sellStop, bid.opens[i], bid.closes[i], result) > 0) {
+                            sellHit = false;
+                        } else {
+                            buyHit = false;
+                        }
+                    }
+
+                    if (buyHit || sellHit) {
+                        pending = false;
+                        position = buyHit ? 1 : -1;
+                        filledIntrabar = true;
+                        entryTime = barTime;
+                        entryPrice = buyHit ? Math.max(buyStop, ask.opens[i]) : Math.min(sellStop, bid.opens[i]);
+                        stopLoss = Double.isNaN(stopLossDistance) ? Double.NaN : entryPrice - position * stopLossDistance;
+                        takeProfit = Double.isNaN(takeProfitDistance) ? Double.NaN : entryPrice + position * takeProfitDistance;
+                    }
+                }
+            }
+
+            // Resolve exits of the open position
+            if (position != 0) {
+                BarSeries exitSide = position > 0 ? bid : ask;
+                double open = exitSide.opens[i];
+                double high = exitSide.highs[i];
+                double low = exitSide.lows[i];
+
+                double upper = position > 0 ? takeProfit : stopLoss;
+                double lower = position > 0 ? stopLoss : takeProfit;
+                boolean upperHit = !Double.isNaN(upper) && high >= upper;
+                boolean lowerHit = !Double.isNaN(lower) && low <= lower;
+
+                if (upperHit && lowerHit) {
+                    if (!filledIntrabar && open >= upper) {
+                        lowerHit = false;
+                    } else if (!filledIntrabar && open <= lower) {
+                        upperHit = false;
+                    } else if (resolve(barTime, barTime + interval, upper, lower, open, exitSide.closes[i], result) > 0) {
+                        lowerHit = false;
+                    } else {
+                        upperHit = false;
+                    }
+                }
+
+                boolean closed = true;
+                if (upperHit) {
+                    double price = filledIntrabar ? upper : Math.max(upper, open);
+                    result.add(entryTime, barTime, position, position > 0 ? BacktestResult.EXIT_TAKE_PROFIT : BacktestResult.EXIT_STOP_LOSS,
+                            entryPrice, price, pipValue);
+                } else if (lowerHit) {
+                    double price = filledIntrabar ? lower : Math.min(lower, open);
+                    result.add(entryTime, barTime, position, position > 0 ? BacktestResult.EXIT_STOP_LOSS : BacktestResult.EXIT_TAKE_PROFIT,
+                            entryPrice, price, pipValue);
+                } else if (exitTime != 0 && barTime >= exitTime) {
+                    result.add(entryTime, barTime, position, BacktestResult.EXIT_TIME, entryPrice, exitSide.closes[i], pipValue);
+                } else {
+                    closed = false;
+                    filledIntrabar = false;
+                    stopLoss = rule.trailStop(bid, ask, i, position > 0, entryPrice, stopLoss);
+                }
+
+                if (closed) {
+                    position = 0;
+                }
+            }
+
+            // Evaluate the entry rule for the next bar, replacing any pending orders as the strategies do on each bar
+            if (position == 0 && i < toBar - 1) {
+                if (pending && bid.times[i + 1] >= pendingUntil) {
+                    pending = false;
+                }
+                entry.reset();
+                if (rule.evaluate(bid, ask, i, entry) && !entry.isEmpty()) {
+                    stopLossDistance = entry.stopLossDistance;
+                    takeProfitDistance = entry.takeProfitDistance;
+                    exitTime = entry.exitTime;
+
+                    if (entry.direction != 0) {
+                        position = entry.direction > 0 ? 1 : -1;
+                        filledIntrabar = false;
+                        entryTime = bid.times[i + 1];
+                        entryPrice = position > 0 ? ask.opens[i + 1] : bid.opens[i + 1];
+                        stopLoss = !Double.isNaN(entry.stopLossPrice) ? entry.stopLossPrice
+                                : Double.isNaN(stopLossDistance) ? Double.NaN : entryPrice - position * stopLossDistance;
+                        takeProfit = !Double.isNaN(entry.takeProfitPrice) ? entry.takeProfitPrice
+                                : Double.isNaN(takeProfitDistance) ? Double.NaN : entryPrice + position * takeProfitDistance;
+                    } else {
+                        pending = true;
+                        buyStop = entry.buyStop;
+                        sellStop = entry.sellStop;
+                        pendingUntil = entry.pendingUntil;
+                    }
+                }
+            }
+        }
+
+        // Close anything still open at the last close
+        if (position != 0) {
+            int last = toBar - 1;
+            double price = position > 0 ? bid.closes[last] : ask.closes[last];
+            result.add(entryTime, bid.times[last], position, BacktestResult.EXIT_END_OF_DATA, entryPrice, price, pipValue);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package com.parker.forex.backtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Walk-forward optimization: every parameter combination is scored over rolling in-sample windows in parallel, and the
+ * best of each window is traded over the out-of-sample window after it.
+ */
+public class WalkForwardOptimizer {
+
+    private final BarSeries bid;
+    private final BarSeries ask;
+    private final VectorisedBacktester backtester;
+    private final int threads;
+
+    public WalkForwardOptimizer(BarSeries bid, BarSeries ask, VectorisedBacktester backtester) {
+        this(bid, ask, backtester, Runtime.getRuntime().availableProcessors());
+    }
+
+    public WalkForwardOptimizer(BarSeries bid, BarSeries ask, VectorisedBacktester backtester, int threads) {
+        this.bid = bid;
+        this.ask = ask;
+        this.backtester = backtester;
+        this.threads = threads;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private List<WalkForwardSegment> createSegments(long inSampleMillis, long outOfSampleMillis) {
+        List<WalkForwardSegment> segments = new ArrayList<>();
+        if (bid.size() == 0) {
+            return segments;
+        }
+
+        long lastTime = bid.getTime(bid.size() - 1);
+        for (long start = bid.getTime(0); start + inSampleMillis <= lastTime; start += outOfSampleMillis) {
+            int inSampleFrom = bid.indexOf(start);
+            int inSampleTo = bid.indexOf(start + inSampleMillis);
+            int outOfSampleTo = bid.indexOf(start + inSampleMillis + outOfSampleMillis);
+
+            if (inSampleTo > inSampleFrom && outOfSampleTo > inSampleTo) {
+                segments.add(new WalkForwardSegment(inSampleFrom, inSampleTo, outOfSampleTo));
+            }
+        }
+        return segments;
+    }
+
+    private static <T> T get(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new IllegalStateException(ee.getCause());
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    public WalkForwardResult run(long inSampleMillis, long outOfSampleMillis, ParameterGrid grid, Function<int[], BarRule> ruleFactory)
+            throws InterruptedException {
+        return run(inSampleMillis, outOfSampleMillis, grid, ruleFactory, BacktestResult::getTotalPips);
+    }
+
+    /**
+     * @param ruleFactory Creates a new rule for the given parameter values (rules may keep state so are never shared).
+     * @param objective The score to maximise on the in-sample windows.
+     */
+    public WalkForwardResult run(long inSampleMillis, long outOfSampleMillis, ParameterGrid grid, Function<int[], BarRule> ruleFactory,
+            ToDoubleFunction<BacktestResult> objective) throws InterruptedException {
+        List<WalkForwardSegment> segments = createSegments(inSampleMillis, outOfSampleMillis);
+        int combinations = grid.size();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Optimize every in-sample window
+            List<Future<Double>> scores = new ArrayList<>(segments.size() * combinations);
+            for (WalkForwardSegment segment : segments) {
+                for (int c = 0; c < combinations; c++) {
+                    int[] parameters = grid.get(c);
+                    scores.add(executor.submit(() -> objective.applyAsDouble(
+                            backtester.run(bid, ask, ruleFactory.apply(parameters), segment.inSampleFrom, segment.inSampleTo))));
+                }
+            }
+
+            for (int s = 0; s < segments.size(); s++) {
+                WalkForwardSegment segment = segments.get(s);
+                for (int c = 0; c < combinations; c++) {
+                    double score = get(scores.get(s * combinations + c));
+                    if (score > segment.inSampleScore) {
+                        segment.inSampleScore = score;
+                        segment.bestParameters = grid.get(c);
+                    }
+                }
+            }
+
+            // Evaluate the best parameters out of sample, windows where every score was NaN are not traded
+            List<Future<BacktestResult>> results = new ArrayList<>(segments.size());
+            for (WalkForwardSegment segment : segments) {
+                results.add(segment.bestParameters == null ? null : executor.submit(() -> backtester.run(bid, ask,
+                        ruleFactory.apply(segment.bestParameters), segment.inSampleTo, segment.outOfSampleTo)));
+            }
+
+            BacktestResult outOfSample = new BacktestResult();
+            for (int s = 0; s < segments.size(); s++) {
+                WalkForwardSegment segment = segments.get(s);
+                segment.outOfSampleResult = results.get(s) == null ? new BacktestResult() : get(results.get(s));
+                outOfSample.append(segment.outOfSampleResult);
+            }
+
+            return new WalkForwardResult(grid, Collections.unmodifiableList(segments), outOfSample);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.parker.forex.backtest;
+
+import java.util.List;
+
+/**
+ * The windows of a walk-forward run along with the stitched out-of-sample result.
+ */
+public class WalkForwardResult {
+
+    private final ParameterGrid grid;
+    private final List<WalkForwardSegment> segments;
+    private final BacktestResult outOfSample;
+
+    WalkForwardResult(ParameterGrid grid, List<WalkForwardSegment> segments, BacktestResult outOfSample) {
+        this.grid = grid;
+        this.segments = segments;
+        this.outOfSample = outOfSample;
+    }
+
+    public List<WalkForwardSegment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Returns the out-of-sample trades of all windows in time order.
+     */
+    public BacktestResult getOutOfSample() {
+        return outOfSample;
+    }
+
+    /**
+     * Returns the stitched out-of-sample equity curve in cumulative pips per trade.
+     */
+    public double[] getOutOfSampleEquityCurvePips() {
+        return outOfSample.getEquityCurvePips();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("Walk-forward over " + segments.size() + " windows " + grid + ":\n");
+        for (int i = 0; i < segments.size(); i++) {
+            WalkForwardSegment segment = segments.get(i);
+            result.append("  ").append(i + 1).append(": ");
+            if (segment.bestParameters == null) {
+                result.append("no valid in-sample score");
+            } else {
+                result.append(grid.toString(segment.bestParameters)).append(" inSampleScore=")
+                        .append(Math.round(segment.inSampleScore * 10) / 10.0);
+            }
+            result.append(" outOfSample=").append(segment.outOfSampleResult).append("\n");
+        }
+        return result.append("Out of sample: ").append(outOfSample).toString();
+    }
+}
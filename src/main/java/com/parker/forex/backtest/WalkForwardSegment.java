@@ -0,0 +1,57 @@
+package com.parker.forex.backtest;
+
+/**
+ * One in-sample/out-of-sample window of a walk-forward run.
+ */
+public class WalkForwardSegment {
+
+    final int inSampleFrom;
+    final int inSampleTo;
+    final int outOfSampleTo;
+
+    int[] bestParameters;
+    double inSampleScore = Double.NEGATIVE_INFINITY;
+    BacktestResult outOfSampleResult;
+
+    WalkForwardSegment(int inSampleFrom, int inSampleTo, int outOfSampleTo) {
+        this.inSampleFrom = inSampleFrom;
+        this.inSampleTo = inSampleTo;
+        this.outOfSampleTo = outOfSampleTo;
+    }
+
+    /**
+     * Returns the first bar of the in-sample window.
+     */
+    public int getInSampleFrom() {
+        return inSampleFrom;
+    }
+
+    /**
+     * Returns the first bar of the out-of-sample window, i.e. the bar after the in-sample window.
+     */
+    public int getOutOfSampleFrom() {
+        return inSampleTo;
+    }
+
+    /**
+     * Returns the bar after the out-of-sample window.
+     */
+    public int getOutOfSampleTo() {
+        return outOfSampleTo;
+    }
+
+    /**
+     * Returns the parameters with the best in-sample score, or null if every score was NaN and the window was not traded.
+     */
+    public int[] getBestParameters() {
+        return bestParameters;
+    }
+
+    public double getInSampleScore() {
+        return inSampleScore;
+    }
+
+    public BacktestResult getOutOfSampleResult() {
+        return outOfSampleResult;
+    }
+}
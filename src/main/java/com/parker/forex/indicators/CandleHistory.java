@@ -0,0 +1,134 @@
+package com.parker.forex.indicators;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.OfferSide;
+import com.dukascopy.api.Period;
+
+/**
+ * The recent closed bars and lookback extremes a {@link CandlestickPatternScanner} evaluates patterns against for one
+ * instrument, period and offer side.
+ */
+public class CandleHistory {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    final Instrument instrument;
+    final Period period;
+    final OfferSide offerSide;
+
+    private final int capacity;
+    private final long[] times;
+    private final double[] opens;
+    private final double[] highs;
+    private final double[] lows;
+    private final double[] closes;
+    private int head = -1;
+    private long count;
+
+    private final RollingExtremes extremes;
+
+    CandleHistory(Instrument instrument, Period period, OfferSide offerSide, int formationBars, int lookback) {
+        this.instrument = instrument;
+        this.period = period;
+        this.offerSide = offerSide;
+
+        this.capacity = formationBars;
+        this.times = new long[formationBars];
+        this.opens = new double[formationBars];
+        this.highs = new double[formationBars];
+        this.lows = new double[formationBars];
+        this.closes = new double[formationBars];
+        this.extremes = new RollingExtremes(lookback);
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private int indexOf(int shift) {
+        if (shift < 0 || shift >= size()) {
+            throw new IndexOutOfBoundsException("Shift " + shift + " is outside the " + size() + " bars in the history");
+        }
+        int index = head - shift;
+        return index < 0 ? index + capacity : index;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Adds a closed bar. The oldest bar of the formation moves into the lookback window.
+     */
+    public void update(IBar bar) {
+        head = head + 1 == capacity ? 0 : head + 1;
+        if (count >= capacity) {
+            extremes.add(highs[head], lows[head]);
+        }
+
+        times[head] = bar.getTime();
+        opens[head] = bar.getOpen();
+        highs[head] = bar.getHigh();
+        lows[head] = bar.getLow();
+        closes[head] = bar.getClose();
+        count++;
+    }
+
+    public Instrument getInstrument() {
+        return instrument;
+    }
+
+    public Period getPeriod() {
+        return period;
+    }
+
+    public OfferSide getOfferSide() {
+        return offerSide;
+    }
+
+    /**
+     * @return The number of formation bars available.
+     */
+    public int size() {
+        return count < capacity ? (int) count : capacity;
+    }
+
+    public long getTime(int shift) {
+        return times[indexOf(shift)];
+    }
+
+    public double getOpen(int shift) {
+        return opens[indexOf(shift)];
+    }
+
+    public double getHigh(int shift) {
+        return highs[indexOf(shift)];
+    }
+
+    public double getLow(int shift) {
+        return lows[indexOf(shift)];
+    }
+
+    public double getClose(int shift) {
+        return closes[indexOf(shift)];
+    }
+
+    public double getBody(int shift) {
+        int index = indexOf(shift);
+        return Math.abs(closes[index] - opens[index]);
+    }
+
+    /**
+     * @return The highest high of the lookback bars before the formation or NaN if there are none yet.
+     */
+    public double getPreviousHigh() {
+        return extremes.getHighest();
+    }
+
+    /**
+     * @return The lowest low of the lookback bars before the formation or NaN if there are none yet.
+     */
+    public double getPreviousLow() {
+        return extremes.getLowest();
+    }
+}
@@ -0,0 +1,21 @@
+package com.parker.forex.indicators;
+
+/**
+ * A candlestick formation evaluated by the {@link CandlestickPatternScanner} each time a bar closes.
+ */
+public interface CandlestickPattern {
+
+    String getName();
+
+    /**
+     * @return The number of bars making up the formation, ending with the bar that has just closed.
+     */
+    int getBarCount();
+
+    /**
+     * @param bars The closed bars, where shift 0 is the bar that has just closed. At least {@link #getBarCount()} bars
+     *            are available.
+     * @return True if the formation is present.
+     */
+    boolean matches(CandleHistory bars);
+}
@@ -0,0 +1,138 @@
+package com.parker.forex.indicators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.OfferSide;
+import com.dukascopy.api.Period;
+
+/**
+ * Evaluates {@link CandlestickPattern}s once per closed bar from a small {@link CandleHistory} per instrument, period
+ * and offer side, instead of re-reading the bar history every tick.
+ */
+public class CandlestickPatternScanner {
+
+    /**
+     * Notified from within {@link CandlestickPatternScanner#onBar(Instrument, Period, IBar, IBar)} for each pattern
+     * formed by the bar that has just closed.
+     */
+    public interface PatternListener {
+        void onPattern(CandlestickPattern pattern, CandleHistory bars);
+    }
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final CandlestickPattern[] patterns;
+    private final int formationBars;
+    private final int lookback;
+    private final Map<Period, CandleHistory[]> histories = new HashMap<Period, CandleHistory[]>();
+    private final List<PatternListener> listeners = new ArrayList<PatternListener>();
+
+    /**
+     * @param lookback The number of bars before a formation used for the previous high and low.
+     * @param patterns The patterns to evaluate on each closed bar.
+     */
+    public CandlestickPatternScanner(int lookback, CandlestickPattern... patterns) {
+        if (patterns.length == 0) {
+            throw new IllegalArgumentException("At least one pattern is required");
+        }
+
+        int formationBars = 1;
+        for (CandlestickPattern pattern : patterns) {
+            formationBars = Math.max(formationBars, pattern.getBarCount());
+        }
+
+        this.patterns = patterns.clone();
+        this.formationBars = formationBars;
+        this.lookback = lookback;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private static int indexOf(Instrument instrument, OfferSide offerSide) {
+        return instrument.ordinal() * 2 + (offerSide == OfferSide.ASK ? 0 : 1);
+    }
+
+    private void scan(CandleHistory bars) {
+        for (CandlestickPattern pattern : patterns) {
+            if (bars.size() >= pattern.getBarCount() && pattern.matches(bars)) {
+                for (PatternListener listener : listeners) {
+                    listener.onPattern(pattern, bars);
+                }
+            }
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Starts keeping bars for the instrument and period on both offer sides.
+     */
+    public void subscribe(Instrument instrument, Period period) {
+        CandleHistory[] periodHistories = histories.get(period);
+        if (periodHistories == null) {
+            periodHistories = new CandleHistory[Instrument.values().length * 2];
+            histories.put(period, periodHistories);
+        }
+
+        for (OfferSide offerSide : new OfferSide[] {OfferSide.ASK, OfferSide.BID}) {
+            int index = indexOf(instrument, offerSide);
+            if (periodHistories[index] == null) {
+                periodHistories[index] = new CandleHistory(instrument, period, offerSide, formationBars, lookback);
+            }
+        }
+    }
+
+    public void addListener(PatternListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Loads closed bars, oldest first, without notifying listeners.
+     */
+    public void warmUp(Instrument instrument, Period period, OfferSide offerSide, List<IBar> bars) {
+        CandleHistory history = getHistory(instrument, period, offerSide);
+        if (history == null) {
+            throw new IllegalStateException(instrument + " " + period + " has not been subscribed");
+        }
+        for (IBar bar : bars) {
+            history.update(bar);
+        }
+    }
+
+    /**
+     * Adds the closed bars and evaluates every pattern against them. Unsubscribed instruments and periods are ignored.
+     */
+    public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) {
+        CandleHistory[] periodHistories = histories.get(period);
+        if (periodHistories == null) {
+            return;
+        }
+
+        CandleHistory ask = periodHistories[indexOf(instrument, OfferSide.ASK)];
+        CandleHistory bid = periodHistories[indexOf(instrument, OfferSide.BID)];
+        if (ask == null) {
+            return;
+        }
+
+        ask.update(askBar);
+        bid.update(bidBar);
+        scan(ask);
+        scan(bid);
+    }
+
+    /**
+     * @return The bars kept for the instrument, period and side or null if not subscribed.
+     */
+    public CandleHistory getHistory(Instrument instrument, Period period, OfferSide offerSide) {
+        CandleHistory[] periodHistories = histories.get(period);
+        return periodHistories == null ? null : periodHistories[indexOf(instrument, offerSide)];
+    }
+}
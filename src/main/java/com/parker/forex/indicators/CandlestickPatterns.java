@@ -0,0 +1,142 @@
+package com.parker.forex.indicators;
+
+import java.util.function.Predicate;
+
+/**
+ * Common {@link CandlestickPattern}s for the {@link CandlestickPatternScanner}. Sizes are given in pips of the
+ * instrument the pattern is evaluated on.
+ */
+public final class CandlestickPatterns {
+
+    private CandlestickPatterns() {}
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private static double pips(CandleHistory bars, double pips) {
+        return pips * bars.getInstrument().getPipValue();
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Creates a pattern from a predicate over the closed bars.
+     */
+    public static CandlestickPattern of(String name, int barCount, Predicate<CandleHistory> predicate) {
+        return new CandlestickPattern() {
+            public String getName() {
+                return name;
+            }
+
+            public int getBarCount() {
+                return barCount;
+            }
+
+            public boolean matches(CandleHistory bars) {
+                return predicate.test(bars);
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * A large bearish bar, a small star below it making a new low for the lookback and a bullish bar at least half the
+     * size of the first (as traded by StarGazerStrategy).
+     */
+    public static CandlestickPattern morningStar(double maxStarPips, double minBoundingPips, boolean enforceStarDirection) {
+        return of("Morning Star", 3, bars -> {
+            double leadingOpen = bars.getOpen(2);
+            double leadingClose = bars.getClose(2);
+            double starOpen = bars.getOpen(1);
+            double starClose = bars.getClose(1);
+            double trailingOpen = bars.getOpen(0);
+            double trailingClose = bars.getClose(0);
+
+            return bars.getLow(1) < bars.getPreviousLow() // no previous bars are lower (crude trend check)
+                    && leadingOpen - leadingClose >= pips(bars, minBoundingPips) // first bar body is large enough and downwards
+                    && leadingClose > starOpen && leadingClose > starClose // star is fully below the first bar
+                    && (!enforceStarDirection || starOpen <= starClose) // star is upwards
+                    && bars.getBody(1) <= pips(bars, maxStarPips) // star body is small enough
+                    && starOpen < trailingOpen && starClose < trailingOpen // star is fully below the last bar
+                    && trailingClose - trailingOpen >= pips(bars, minBoundingPips) // last bar body is large enough and upwards
+                    && bars.getBody(0) >= bars.getBody(2) / 2; // last bar body is at least half the first
+        });
+    }
+
+    /**
+     * The bearish mirror of {@link #morningStar(double, double, boolean)}.
+     */
+    public static CandlestickPattern eveningStar(double maxStarPips, double minBoundingPips, boolean enforceStarDirection) {
+        return of("Evening Star", 3, bars -> {
+            double leadingOpen = bars.getOpen(2);
+            double leadingClose = bars.getClose(2);
+            double starOpen = bars.getOpen(1);
+            double starClose = bars.getClose(1);
+            double trailingOpen = bars.getOpen(0);
+            double trailingClose = bars.getClose(0);
+
+            return bars.getHigh(1) > bars.getPreviousHigh() // no previous bars are higher (crude trend check)
+                    && leadingClose - leadingOpen >= pips(bars, minBoundingPips) // first bar body is large enough and upwards
+                    && leadingClose < starOpen && leadingClose < starClose // star is fully above the first bar
+                    && (!enforceStarDirection || starOpen >= starClose) // star is downwards
+                    && bars.getBody(1) <= pips(bars, maxStarPips) // star body is small enough
+                    && starOpen > trailingOpen && starClose > trailingOpen // star is fully above the last bar
+                    && trailingOpen - trailingClose >= pips(bars, minBoundingPips) // last bar body is large enough and downwards
+                    && bars.getBody(0) >= bars.getBody(2) / 2; // last bar body is at least half the first
+        });
+    }
+
+    /**
+     * A bullish bar whose body covers the body of the preceding bearish bar.
+     */
+    public static CandlestickPattern bullishEngulfing() {
+        return of("Bullish Engulfing", 2, bars -> bars.getOpen(1) > bars.getClose(1) && bars.getClose(0) > bars.getOpen(0)
+                && bars.getOpen(0) <= bars.getClose(1) && bars.getClose(0) >= bars.getOpen(1));
+    }
+
+    /**
+     * A bearish bar whose body covers the body of the preceding bullish bar.
+     */
+    public static CandlestickPattern bearishEngulfing() {
+        return of("Bearish Engulfing", 2, bars -> bars.getClose(1) > bars.getOpen(1) && bars.getOpen(0) > bars.getClose(0)
+                && bars.getOpen(0) >= bars.getClose(1) && bars.getClose(0) <= bars.getOpen(1));
+    }
+
+    /**
+     * A bar whose body is at most the given fraction of its range.
+     */
+    public static CandlestickPattern doji(double maxBodyRatio) {
+        return of("Doji", 1, bars -> {
+            double range = bars.getHigh(0) - bars.getLow(0);
+            return range > 0 && bars.getBody(0) <= range * maxBodyRatio;
+        });
+    }
+
+    /**
+     * A bar with a lower shadow at least twice its body and an upper shadow no longer than its body, closing in the
+     * lower half of the lookback range.
+     */
+    public static CandlestickPattern hammer() {
+        return of("Hammer", 1, bars -> {
+            double body = bars.getBody(0);
+            double top = Math.max(bars.getOpen(0), bars.getClose(0));
+            double bottom = Math.min(bars.getOpen(0), bars.getClose(0));
+            double midpoint = (bars.getPreviousHigh() + bars.getPreviousLow()) / 2;
+
+            return body > 0 && bottom - bars.getLow(0) >= 2 * body && bars.getHigh(0) - top <= body
+                    && bars.getClose(0) < midpoint;
+        });
+    }
+
+    /**
+     * A bar whose range is inside the range of the preceding bar.
+     */
+    public static CandlestickPattern insideBar() {
+        return of("Inside Bar", 2, bars -> bars.getHigh(0) < bars.getHigh(1) && bars.getLow(0) > bars.getLow(1));
+    }
+}
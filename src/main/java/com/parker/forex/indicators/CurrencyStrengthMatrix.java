@@ -0,0 +1,141 @@
+package com.parker.forex.indicators;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dukascopy.api.ICurrency;
+import com.dukascopy.api.Instrument;
+
+/**
+ * Sampled price history for the basket strategies, keeping each instrument's price change per lookback window in a
+ * currency-by-currency matrix.
+ */
+public class CurrencyStrengthMatrix {
+
+    private static final int MAX_CURRENCIES = 32;
+
+    private final int[] windows;
+    private final int capacity;
+
+    private final List<ICurrency> currencies = new ArrayList<>();
+    private final InstrumentHistory[] histories = new InstrumentHistory[Instrument.values().length];
+
+    // [window][base * MAX_CURRENCIES + quote]
+    private final double[][] changes;
+
+    /**
+     * @param windows The lookback windows as a number of samples.
+     */
+    public CurrencyStrengthMatrix(int... windows) {
+        if (windows.length == 0) {
+            throw new IllegalArgumentException("At least one window is required.");
+        }
+
+        int maxWindow = 0;
+        for (int window : windows) {
+            if (window < 1) {
+                throw new IllegalArgumentException("Window " + window + " must hold at least one sample.");
+            }
+            maxWindow = Math.max(maxWindow, window);
+        }
+        this.windows = windows.clone();
+        this.capacity = maxWindow + 1;
+        this.changes = new double[windows.length][MAX_CURRENCIES * MAX_CURRENCIES];
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private int register(ICurrency currency) {
+        int index = currencies.indexOf(currency);
+        if (index < 0) {
+            if (currencies.size() == MAX_CURRENCIES) {
+                throw new IllegalStateException("Too many currencies: " + currency);
+            }
+            currencies.add(currency);
+            index = currencies.size() - 1;
+        }
+        return index;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    public CurrencyStrengthMatrix addInstrument(Instrument instrument) {
+        if (histories[instrument.ordinal()] == null) {
+            int base = register(instrument.getPrimaryJFCurrency());
+            int quote = register(instrument.getSecondaryJFCurrency());
+            histories[instrument.ordinal()] = new InstrumentHistory(base, quote, capacity);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a price sample for an instrument. Samples of unregistered instruments are ignored.
+     */
+    public void addSample(Instrument instrument, double price) {
+        InstrumentHistory history = histories[instrument.ordinal()];
+        if (history == null) {
+            return;
+        }
+
+        history.add(price);
+
+        for (int w = 0; w < windows.length; w++) {
+            if (history.count > windows[w]) {
+                double change = price - history.get(windows[w]);
+                changes[w][history.base * MAX_CURRENCIES + history.quote] = change;
+                changes[w][history.quote * MAX_CURRENCIES + history.base] = -change;
+            }
+        }
+    }
+
+    /**
+     * Returns true once the instrument has enough samples to cover the given window.
+     */
+    public boolean isReady(int window, Instrument instrument) {
+        InstrumentHistory history = histories[instrument.ordinal()];
+        return history != null && history.count > windows[window];
+    }
+
+    /**
+     * Returns the change in price of the instrument over the given window.
+     */
+    public double getPriceChange(int window, Instrument instrument) {
+        InstrumentHistory history = histories[instrument.ordinal()];
+        return history == null ? 0 : changes[window][history.base * MAX_CURRENCIES + history.quote];
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    static class InstrumentHistory {
+
+        final int base;
+        final int quote;
+        final double[] prices;
+
+        int head = -1;
+        int count;
+
+        InstrumentHistory(int base, int quote, int capacity) {
+            this.base = base;
+            this.quote = quote;
+            this.prices = new double[capacity];
+        }
+
+        void add(double price) {
+            head = (head + 1) % prices.length;
+            prices[head] = price;
+            count = Math.min(count + 1, prices.length);
+        }
+
+        /**
+         * Returns the price the given number of samples ago.
+         */
+        double get(int samplesAgo) {
+            int index = head - samplesAgo;
+            return prices[index < 0 ? index + prices.length : index];
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.parker.forex.indicators;
+
+import java.util.Arrays;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.OfferSide;
+
+/**
+ * Builds Renko, range, tick and volume bars locally from the tick stream, so strategies using them do not query the
+ * history service on their decision path.
+ */
+public class PriceBarFactory {
+
+    public enum BarType {RENKO, RANGE, TICK, VOLUME}
+
+    /**
+     * Notified from within {@link PriceBarFactory#onTick(Instrument, ITick)} each time a bar completes.
+     */
+    public interface PriceBarListener {
+        void onPriceBar(PriceBarHistory history);
+    }
+
+    private static final PriceBarHistory[] NONE = new PriceBarHistory[0];
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final PriceBarHistory[][] histories = new PriceBarHistory[Instrument.values().length][];
+
+    public PriceBarFactory() {
+        Arrays.fill(histories, NONE);
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    public PriceBarHistory subscribe(Instrument instrument, OfferSide offerSide, BarType type, double size, int capacity) {
+        return subscribe(instrument, offerSide, type, size, capacity, null);
+    }
+
+    /**
+     * Subscribes a bar series, returning the existing series if the same one has already been subscribed.
+     *
+     * @param size The brick or range height in pips, the ticks per bar or the volume per bar (in millions).
+     * @param capacity The number of completed bars to keep.
+     * @param listener Notified as each bar completes, may be null.
+     */
+    public PriceBarHistory subscribe(Instrument instrument, OfferSide offerSide, BarType type, double size, int capacity,
+            PriceBarListener listener) {
+        PriceBarHistory[] instrumentHistories = histories[instrument.ordinal()];
+        for (PriceBarHistory history : instrumentHistories) {
+            if (history.offerSide == offerSide && history.type == type && history.size == size && history.listener == listener) {
+                return history;
+            }
+        }
+
+        PriceBarHistory history = new PriceBarHistory(instrument, offerSide, type, size, capacity, listener);
+        instrumentHistories = Arrays.copyOf(instrumentHistories, instrumentHistories.length + 1);
+        instrumentHistories[instrumentHistories.length - 1] = history;
+        histories[instrument.ordinal()] = instrumentHistories;
+        return history;
+    }
+
+    public void onTick(Instrument instrument, ITick tick) {
+        for (PriceBarHistory history : histories[instrument.ordinal()]) {
+            if (history.offerSide == OfferSide.BID) {
+                history.update(tick.getTime(), tick.getBid(), tick.getBidVolume());
+            } else {
+                history.update(tick.getTime(), tick.getAsk(), tick.getAskVolume());
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.parker.forex.indicators;
+
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.OfferSide;
+import com.parker.forex.indicators.PriceBarFactory.BarType;
+import com.parker.forex.indicators.PriceBarFactory.PriceBarListener;
+
+/**
+ * A Renko, range, tick or volume bar series built by the {@link PriceBarFactory}, keeping its completed bars in
+ * fixed-size primitive rings.
+ */
+public class PriceBarHistory {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    final Instrument instrument;
+    final OfferSide offerSide;
+    final BarType type;
+    final double size;
+    final PriceBarListener listener;
+
+    private final double threshold;
+    private final int capacity;
+    private final long[] times;
+    private final long[] endTimes;
+    private final double[] opens;
+    private final double[] highs;
+    private final double[] lows;
+    private final double[] closes;
+    private final double[] volumes;
+
+    private int head = -1;
+    private long count;
+
+    // The forming bar
+    private boolean forming;
+    private long formTime;
+    private long formEndTime;
+    private double formOpen;
+    private double formHigh;
+    private double formLow;
+    private double formClose;
+    private double formVolume;
+    private int formTicks;
+
+    // Position of the last renko brick in multiples of the brick size, kept integral so bricks don't drift
+    private boolean hasBrick;
+    private long brick;
+
+    PriceBarHistory(Instrument instrument, OfferSide offerSide, BarType type, double size, int capacity, PriceBarListener listener) {
+        if (size <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Size and capacity must be positive: size=" + size + ", capacity=" + capacity);
+        }
+
+        this.instrument = instrument;
+        this.offerSide = offerSide;
+        this.type = type;
+        this.size = size;
+        this.listener = listener;
+        this.threshold = type == BarType.RENKO || type == BarType.RANGE ? size * instrument.getPipValue() : size;
+
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.endTimes = new long[capacity];
+        this.opens = new double[capacity];
+        this.highs = new double[capacity];
+        this.lows = new double[capacity];
+        this.closes = new double[capacity];
+        this.volumes = new double[capacity];
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private void open(long time, double price, double volume) {
+        forming = true;
+        formTime = time;
+        formEndTime = time;
+        formOpen = price;
+        formHigh = price;
+        formLow = price;
+        formClose = price;
+        formVolume = volume;
+        formTicks = 1;
+    }
+
+    private void extend(long time, double price, double volume) {
+        formEndTime = time;
+        formClose = price;
+        formVolume += volume;
+        formTicks++;
+        if (price > formHigh) {
+            formHigh = price;
+        }
+        if (price < formLow) {
+            formLow = price;
+        }
+    }
+
+    private void complete(long time, long endTime, double open, double high, double low, double close, double volume) {
+        head = head + 1 == capacity ? 0 : head + 1;
+        times[head] = time;
+        endTimes[head] = endTime;
+        opens[head] = open;
+        highs[head] = high;
+        lows[head] = low;
+        closes[head] = close;
+        volumes[head] = volume;
+        count++;
+
+        if (listener != null) {
+            listener.onPriceBar(this);
+        }
+    }
+
+    private void completeForming() {
+        forming = false;
+        complete(formTime, formEndTime, formOpen, formHigh, formLow, formClose, formVolume);
+    }
+
+    private void updateRenko(long time, double price, double volume) {
+        if (!hasBrick) {
+            hasBrick = true;
+            brick = (long) Math.floor(price / threshold);
+        }
+
+        if (forming) {
+            extend(time, price, volume);
+        } else {
+            open(time, price, volume);
+        }
+
+        // A tick can complete several bricks when the price gaps
+        boolean completed = false;
+        while (price >= (brick + 2) * threshold || price <= (brick - 1) * threshold) {
+            long brickTime = completed ? time : formTime;
+            double brickVolume = completed ? 0 : formVolume;
+
+            if (price >= (brick + 2) * threshold) {
+                brick++;
+                double low = brick * threshold;
+                double high = (brick + 1) * threshold;
+                complete(brickTime, time, low, high, low, high, brickVolume);
+            } else {
+                brick--;
+                double low = brick * threshold;
+                double high = (brick + 1) * threshold;
+                complete(brickTime, time, high, high, low, low, brickVolume);
+            }
+            completed = true;
+        }
+
+        if (completed) {
+            open(time, price, 0);
+        }
+    }
+
+    private void updateRange(long time, double price, double volume) {
+        if (forming && (price > formLow + threshold || price < formHigh - threshold)) {
+            completeForming();
+        }
+        if (forming) {
+            extend(time, price, volume);
+        } else {
+            open(time, price, volume);
+        }
+    }
+
+    private void updateTick(long time, double price, double volume) {
+        if (forming) {
+            extend(time, price, volume);
+        } else {
+            open(time, price, volume);
+        }
+        if (formTicks >= threshold) {
+            completeForming();
+        }
+    }
+
+    private void updateVolume(long time, double price, double volume) {
+        if (forming) {
+            extend(time, price, volume);
+        } else {
+            open(time, price, volume);
+        }
+        if (formVolume >= threshold) {
+            completeForming();
+        }
+    }
+
+    private int indexOf(int shift) {
+        if (shift < 0 || shift >= size()) {
+            throw new IndexOutOfBoundsException("Shift " + shift + " is outside the " + size() + " bars in the history");
+        }
+        int index = head - shift;
+        return index < 0 ? index + capacity : index;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Updates the series with a price, completing as many bars as the price closes.
+     */
+    public void update(long time, double price, double volume) {
+        switch (type) {
+            case RENKO:
+                updateRenko(time, price, volume);
+                break;
+            case RANGE:
+                updateRange(time, price, volume);
+                break;
+            case TICK:
+                updateTick(time, price, volume);
+                break;
+            case VOLUME:
+                updateVolume(time, price, volume);
+                break;
+        }
+    }
+
+    public Instrument getInstrument() {
+        return instrument;
+    }
+
+    public OfferSide getOfferSide() {
+        return offerSide;
+    }
+
+    public BarType getType() {
+        return type;
+    }
+
+    /**
+     * @return The brick or range height in pips, the ticks per bar or the volume per bar.
+     */
+    public double getSize() {
+        return size;
+    }
+
+    /**
+     * @return The number of completed bars available, at most the capacity.
+     */
+    public int size() {
+        return count < capacity ? (int) count : capacity;
+    }
+
+    /**
+     * @return The total number of bars completed since the series started.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The start time of the completed bar, where shift 0 is the most recently completed bar.
+     */
+    public long getTime(int shift) {
+        return times[indexOf(shift)];
+    }
+
+    public long getEndTime(int shift) {
+        return endTimes[indexOf(shift)];
+    }
+
+    public double getOpen(int shift) {
+        return opens[indexOf(shift)];
+    }
+
+    public double getHigh(int shift) {
+        return highs[indexOf(shift)];
+    }
+
+    public double getLow(int shift) {
+        return lows[indexOf(shift)];
+    }
+
+    public double getClose(int shift) {
+        return closes[indexOf(shift)];
+    }
+
+    public double getVolume(int shift) {
+        return volumes[indexOf(shift)];
+    }
+
+    /**
+     * @return True if there is a bar forming that has not completed yet.
+     */
+    public boolean isForming() {
+        return forming;
+    }
+
+    public double getFormingOpen() {
+        return formOpen;
+    }
+
+    public double getFormingClose() {
+        return formClose;
+    }
+
+    @Override
+    public String toString() {
+        return instrument + " " + offerSide + " " + type + "(" + size + ")";
+    }
+}
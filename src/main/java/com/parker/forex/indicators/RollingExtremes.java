@@ -0,0 +1,141 @@
+package com.parker.forex.indicators;
+
+/**
+ * Highest high and lowest low over the last N bars, kept in monotonic deques so adding a bar is amortized O(1).
+ */
+public class RollingExtremes {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final int window;
+    private long count;
+
+    // Deque of candidate highs, decreasing from front to back
+    private final long[] highBars;
+    private final double[] highs;
+    private int highFront;
+    private int highSize;
+
+    // Deque of candidate lows, increasing from front to back
+    private final long[] lowBars;
+    private final double[] lows;
+    private int lowFront;
+    private int lowSize;
+
+    /**
+     * @param window The number of bars the extremes are taken over.
+     */
+    public RollingExtremes(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        }
+        this.window = window;
+        this.highBars = new long[window];
+        this.highs = new double[window];
+        this.lowBars = new long[window];
+        this.lows = new double[window];
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private int wrap(int index) {
+        return index >= window ? index - window : index;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Adds the next bar, dropping the bar that falls out of the window.
+     */
+    public void add(double high, double low) {
+        long bar = count++;
+        long oldest = bar - window + 1;
+
+        // Highs - drop expired bars from the front and dominated bars from the back
+        if (highSize > 0 && highBars[highFront] < oldest) {
+            highFront = wrap(highFront + 1);
+            highSize--;
+        }
+        while (highSize > 0 && highs[wrap(highFront + highSize - 1)] <= high) {
+            highSize--;
+        }
+        int back = wrap(highFront + highSize);
+        highBars[back] = bar;
+        highs[back] = high;
+        highSize++;
+
+        // Lows
+        if (lowSize > 0 && lowBars[lowFront] < oldest) {
+            lowFront = wrap(lowFront + 1);
+            lowSize--;
+        }
+        while (lowSize > 0 && lows[wrap(lowFront + lowSize - 1)] >= low) {
+            lowSize--;
+        }
+        back = wrap(lowFront + lowSize);
+        lowBars[back] = bar;
+        lows[back] = low;
+        lowSize++;
+    }
+
+    public void clear() {
+        count = 0;
+        highFront = 0;
+        highSize = 0;
+        lowFront = 0;
+        lowSize = 0;
+    }
+
+    /**
+     * @return The highest high in the window or NaN if no bars have been added.
+     */
+    public double getHighest() {
+        return highSize == 0 ? Double.NaN : highs[highFront];
+    }
+
+    /**
+     * @return The lowest low in the window or NaN if no bars have been added.
+     */
+    public double getLowest() {
+        return lowSize == 0 ? Double.NaN : lows[lowFront];
+    }
+
+    /**
+     * @return How many bars ago the highest high was made, where 0 is the last bar added, or -1 if empty.
+     */
+    public int getHighestShift() {
+        return highSize == 0 ? -1 : (int) (count - 1 - highBars[highFront]);
+    }
+
+    /**
+     * @return How many bars ago the lowest low was made, where 0 is the last bar added, or -1 if empty.
+     */
+    public int getLowestShift() {
+        return lowSize == 0 ? -1 : (int) (count - 1 - lowBars[lowFront]);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * @return The number of bars in the window, at most the window length.
+     */
+    public int size() {
+        return count < window ? (int) count : window;
+    }
+
+    public boolean isFull() {
+        return count >= window;
+    }
+
+    /**
+     * @return The total number of bars added.
+     */
+    public long getCount() {
+        return count;
+    }
+}
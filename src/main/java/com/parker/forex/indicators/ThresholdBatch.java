@@ -0,0 +1,161 @@
+package com.parker.forex.indicators;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates many price thresholds of one instrument together, held in parallel primitive arrays so a tick that moves
+ * nothing costs one branch-free pass.
+ */
+public class ThresholdBatch {
+
+    public enum Mode {
+        /** Counters are not kept, only the base price and direction of the last move. */
+        CROSS,
+        /** Counts consecutive moves in the same direction, positive when up, and restarts at 0 on a reversal. */
+        TREND,
+        /** Counts consecutive alternating moves, positive when the last move was up, and restarts at 0 on a repeat. */
+        RANGE
+    }
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final Mode mode;
+    private int size;
+
+    private double[] thresholds = new double[16];
+    private double[] basePrices = new double[16];
+    private double[] askWeights = new double[16];
+    private int[] counters = new int[16];
+    private int[] directions = new int[16];
+
+    private int[] moved = new int[16];
+    private int movedCount;
+
+    public ThresholdBatch(Mode mode) {
+        this.mode = mode;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private void move(int slot, int direction) {
+        int counter = counters[slot];
+        switch (mode) {
+            case TREND:
+                counters[slot] = direction > 0 ? (counter >= 0 ? counter + 1 : 0) : (counter <= 0 ? counter - 1 : 0);
+                break;
+            case RANGE:
+                int last = directions[slot];
+                counters[slot] = direction > 0 ? (last < 0 ? counter + 1 : 0) : (last > 0 ? counter - 1 : 0);
+                break;
+            default:
+                break;
+        }
+        directions[slot] = direction;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Adds a slot.
+     *
+     * @param threshold The price distance from the base that moves the slot.
+     * @param ask True if the slot follows the ask price, false for the bid.
+     * @return The slot's number, in the order slots were added.
+     */
+    public int add(double threshold, boolean ask) {
+        if (size == thresholds.length) {
+            int capacity = size * 2;
+            thresholds = Arrays.copyOf(thresholds, capacity);
+            basePrices = Arrays.copyOf(basePrices, capacity);
+            askWeights = Arrays.copyOf(askWeights, capacity);
+            counters = Arrays.copyOf(counters, capacity);
+            directions = Arrays.copyOf(directions, capacity);
+            moved = Arrays.copyOf(moved, capacity);
+        }
+
+        thresholds[size] = threshold;
+        askWeights[size] = ask ? 1 : 0;
+        return size++;
+    }
+
+    /**
+     * Updates every slot from a single price.
+     *
+     * @return The number of slots that moved.
+     */
+    public int update(double price) {
+        return update(price, price);
+    }
+
+    /**
+     * Updates every slot from the bid or ask price it follows.
+     *
+     * @return The number of slots that moved, see {@link #getMoved(int)}.
+     */
+    public int update(double bid, double ask) {
+        movedCount = 0;
+
+        // Branch free and vectorisable - the only pass when nothing moves
+        double excess = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            excess = Math.max(excess, Math.abs(askWeights[i] * ask + (1 - askWeights[i]) * bid - basePrices[i]) - thresholds[i]);
+        }
+        if (!(excess > 0)) {
+            return 0;
+        }
+
+        for (int i = 0; i < size; i++) {
+            double price = askWeights[i] * ask + (1 - askWeights[i]) * bid;
+            double distance = price - basePrices[i];
+            if (Math.abs(distance) > thresholds[i]) {
+                if (basePrices[i] != 0) {
+                    move(i, distance > 0 ? 1 : -1);
+                }
+                basePrices[i] = price;
+                moved[movedCount++] = i;
+            }
+        }
+        return movedCount;
+    }
+
+    /**
+     * @param i From 0 to the count returned by the last update.
+     * @return The slot number of a slot that moved on the last update, in slot order.
+     */
+    public int getMoved(int i) {
+        return moved[i];
+    }
+
+    public int getCounter(int slot) {
+        return counters[slot];
+    }
+
+    /**
+     * @return 1 if the slot's last move was up, -1 if down or 0 if it has not moved.
+     */
+    public int getDirection(int slot) {
+        return directions[slot];
+    }
+
+    public double getBasePrice(int slot) {
+        return basePrices[slot];
+    }
+
+    /**
+     * Replaces the slot's base price, e.g. when restoring saved state. 0 makes the next price set it.
+     */
+    public void setBasePrice(int slot, double price) {
+        basePrices[slot] = price;
+    }
+
+    public double getThreshold(int slot) {
+        return thresholds[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,228 @@
+package com.parker.forex.monitoring;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dukascopy.api.IAccount;
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IStrategy;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.JFException;
+import com.dukascopy.api.Period;
+import com.parker.forex.CustomStrategy;
+
+/**
+ * Wraps any strategy and records the latency of its callbacks in histograms, output with the budget breaches when the
+ * strategy is stopped.
+ */
+public class InstrumentedStrategy implements CustomStrategy {
+
+    private static final long DEFAULT_BUDGET_NANOS = 1_000_000L;
+    private static final long MAX_TRACKED_NANOS = 60_000_000_000L;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    final IStrategy strategy;
+    final long budgetNanos;
+
+    IContext context;
+
+    final LatencyHistogram[] tickHistograms = new LatencyHistogram[Instrument.values().length];
+    final Map<Period, LatencyHistogram[]> barHistograms = new HashMap<>();
+    final LatencyHistogram messageHistogram = new LatencyHistogram(MAX_TRACKED_NANOS);
+
+    long tickBreaches;
+    long barBreaches;
+    long messageBreaches;
+
+    // The slowest callback over budget
+    long worstBreachNanos;
+    String worstBreach;
+
+    public InstrumentedStrategy(IStrategy strategy) {
+        this(strategy, DEFAULT_BUDGET_NANOS);
+    }
+
+    /**
+     * @param strategy The strategy to instrument.
+     * @param budgetNanos The maximum time a single callback should take before it is flagged.
+     */
+    public InstrumentedStrategy(IStrategy strategy, long budgetNanos) {
+        this.strategy = strategy;
+        this.budgetNanos = budgetNanos;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private void log(String message) {
+        context.getConsole().getOut().println(message);
+    }
+
+    private double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private LatencyHistogram getTickHistogram(Instrument instrument) {
+        LatencyHistogram histogram = tickHistograms[instrument.ordinal()];
+        if (histogram == null) {
+            histogram = tickHistograms[instrument.ordinal()] = new LatencyHistogram(MAX_TRACKED_NANOS);
+        }
+        return histogram;
+    }
+
+    private LatencyHistogram getBarHistogram(Instrument instrument, Period period) {
+        LatencyHistogram[] histograms = barHistograms.get(period);
+        if (histograms == null) {
+            histograms = new LatencyHistogram[Instrument.values().length];
+            barHistograms.put(period, histograms);
+        }
+
+        LatencyHistogram histogram = histograms[instrument.ordinal()];
+        if (histogram == null) {
+            histogram = histograms[instrument.ordinal()] = new LatencyHistogram(MAX_TRACKED_NANOS);
+        }
+        return histogram;
+    }
+
+    /**
+     * Keeps the slowest breach only, so a strategy running over budget is not slowed further by logging every breach.
+     */
+    private boolean isWorstBreach(long elapsed) {
+        if (elapsed > worstBreachNanos) {
+            worstBreachNanos = elapsed;
+            return true;
+        }
+        return false;
+    }
+
+    private void outputStats(String name, LatencyHistogram histogram) {
+        if (histogram == null || histogram.getTotalCount() == 0) {
+            return;
+        }
+
+        StringBuilder stats = new StringBuilder(name).append(": count=").append(histogram.getTotalCount())
+                .append(", mean=").append(toMillis((long) histogram.getMean())).append("ms");
+        for (double percentile : PERCENTILES) {
+            stats.append(", p").append(percentile).append("=").append(toMillis(histogram.getValueAtPercentile(percentile))).append("ms");
+        }
+        stats.append(", max=").append(toMillis(histogram.getMax())).append("ms");
+
+        if (histogram.getOverflowCount() > 0) {
+            stats.append(" (overflows=").append(histogram.getOverflowCount()).append(")");
+        }
+        log(stats.toString());
+    }
+
+    private void outputStats() {
+        log("--------------------------------------------------------------------------------------------------");
+        log("Callback Latency: " + getName() + " (budget=" + toMillis(budgetNanos) + "ms, breaches: tick=" + tickBreaches
+                + ", bar=" + barBreaches + ", message=" + messageBreaches + ")");
+        if (worstBreach != null) {
+            log("Slowest breach: " + worstBreach + " took " + toMillis(worstBreachNanos) + "ms");
+        }
+
+        for (Instrument instrument : Instrument.values()) {
+            outputStats("onTick " + instrument, tickHistograms[instrument.ordinal()]);
+        }
+
+        List<Period> periods = new ArrayList<>(barHistograms.keySet());
+        periods.sort((p1, p2) -> Long.compare(p1.getInterval(), p2.getInterval()));
+        for (Period period : periods) {
+            LatencyHistogram[] histograms = barHistograms.get(period);
+            for (Instrument instrument : Instrument.values()) {
+                outputStats("onBar " + instrument + " " + period, histograms[instrument.ordinal()]);
+            }
+        }
+
+        outputStats("onMessage", messageHistogram);
+        log("--------------------------------------------------------------------------------------------------");
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods - Implementation of the CustomStrategy interface
+    // *****************************************************************************************************************
+    public String getName() {
+        return strategy instanceof CustomStrategy ? ((CustomStrategy) strategy).getName() : strategy.getClass().getSimpleName();
+    }
+
+    public String getDescription() {
+        return strategy instanceof CustomStrategy ? ((CustomStrategy) strategy).getDescription() : "Instrumented " + getName();
+    }
+
+    public Instrument getInstrument() {
+        return strategy instanceof CustomStrategy ? ((CustomStrategy) strategy).getInstrument() : null;
+    }
+
+    public void onStart(IContext context) throws JFException {
+        this.context = context;
+        strategy.onStart(context);
+    }
+
+    public void onTick(Instrument instrument, ITick tick) throws JFException {
+        long start = System.nanoTime();
+        try {
+            strategy.onTick(instrument, tick);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            getTickHistogram(instrument).record(elapsed);
+            if (elapsed > budgetNanos) {
+                tickBreaches++;
+                if (isWorstBreach(elapsed)) {
+                    worstBreach = "onTick(" + instrument + ") at " + tick.getTime();
+                }
+            }
+        }
+    }
+
+    public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) throws JFException {
+        long start = System.nanoTime();
+        try {
+            strategy.onBar(instrument, period, askBar, bidBar);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            getBarHistogram(instrument, period).record(elapsed);
+            if (elapsed > budgetNanos) {
+                barBreaches++;
+                if (isWorstBreach(elapsed)) {
+                    worstBreach = "onBar(" + instrument + ", " + period + ") at " + askBar.getTime();
+                }
+            }
+        }
+    }
+
+    public void onMessage(IMessage message) throws JFException {
+        long start = System.nanoTime();
+        try {
+            strategy.onMessage(message);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            messageHistogram.record(elapsed);
+            if (elapsed > budgetNanos) {
+                messageBreaches++;
+                if (isWorstBreach(elapsed)) {
+                    worstBreach = "onMessage(" + message.getType() + ") at " + message.getCreationTime();
+                }
+            }
+        }
+    }
+
+    public void onAccount(IAccount account) throws JFException {
+        strategy.onAccount(account);
+    }
+
+    public void onStop() throws JFException {
+        try {
+            strategy.onStop();
+        } finally {
+            outputStats();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.parker.forex.orders;
+
+import java.util.Arrays;
+
+import com.dukascopy.api.IOrder;
+
+/**
+ * Price levels of a grid in a sorted primitive array, with a long and a short order slot per level.
+ */
+public class GridLadder {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final double tolerance;
+
+    private double[] prices = new double[INITIAL_CAPACITY];
+    private IOrder[] longOrders = new IOrder[INITIAL_CAPACITY];
+    private IOrder[] shortOrders = new IOrder[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @param tolerance Prices within this distance of a level are treated as that level, typically half a pipette.
+     */
+    public GridLadder(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    /**
+     * @return The index of the first level above the price.
+     */
+    private int upperBound(double price) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] <= price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The index of the first level at or above the price.
+     */
+    private int lowerBound(double price) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] < price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void grow() {
+        int capacity = prices.length * 2;
+        prices = Arrays.copyOf(prices, capacity);
+        longOrders = Arrays.copyOf(longOrders, capacity);
+        shortOrders = Arrays.copyOf(shortOrders, capacity);
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Adds a level at the price if there isn't one already.
+     *
+     * @return The index of the level.
+     */
+    public int add(double price) {
+        int index = lowerBound(price - tolerance);
+        if (index < size && prices[index] <= price + tolerance) {
+            return index;
+        }
+
+        if (size == prices.length) {
+            grow();
+        }
+        System.arraycopy(prices, index, prices, index + 1, size - index);
+        System.arraycopy(longOrders, index, longOrders, index + 1, size - index);
+        System.arraycopy(shortOrders, index, shortOrders, index + 1, size - index);
+
+        prices[index] = price;
+        longOrders[index] = null;
+        shortOrders[index] = null;
+        size++;
+        return index;
+    }
+
+    /**
+     * Removes the levels that have neither a long nor a short order.
+     */
+    public void prune() {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (longOrders[i] != null || shortOrders[i] != null) {
+                prices[kept] = prices[i];
+                longOrders[kept] = longOrders[i];
+                shortOrders[kept] = shortOrders[i];
+                kept++;
+            }
+        }
+        Arrays.fill(longOrders, kept, size, null);
+        Arrays.fill(shortOrders, kept, size, null);
+        size = kept;
+    }
+
+    public void clear() {
+        Arrays.fill(longOrders, 0, size, null);
+        Arrays.fill(shortOrders, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return The index of the level at the price or -1 if there isn't one.
+     */
+    public int indexOf(double price) {
+        int index = lowerBound(price - tolerance);
+        return index < size && prices[index] <= price + tolerance ? index : -1;
+    }
+
+    /**
+     * @return The index of the highest level at or below the price or -1 if there isn't one.
+     */
+    public int floor(double price) {
+        return upperBound(price + tolerance) - 1;
+    }
+
+    /**
+     * @return The index of the lowest level at or above the price or -1 if there isn't one.
+     */
+    public int ceiling(double price) {
+        int index = lowerBound(price - tolerance);
+        return index < size ? index : -1;
+    }
+
+    /**
+     * Returns the first level touched when the price moves from one price to another, i.e. the nearest level beyond the
+     * starting price that the move reaches.
+     *
+     * @return The index of the touched level or -1 if the move didn't reach one.
+     */
+    public int touched(double fromPrice, double toPrice) {
+        if (toPrice > fromPrice) {
+            int index = upperBound(fromPrice);
+            return index < size && prices[index] <= toPrice ? index : -1;
+        } else if (toPrice < fromPrice) {
+            int index = lowerBound(fromPrice) - 1;
+            return index >= 0 && prices[index] >= toPrice ? index : -1;
+        }
+        return -1;
+    }
+
+    public double getPrice(int index) {
+        return prices[index];
+    }
+
+    public IOrder getOrder(int index, boolean isLong) {
+        return isLong ? longOrders[index] : shortOrders[index];
+    }
+
+    public void setOrder(int index, boolean isLong, IOrder order) {
+        if (isLong) {
+            longOrders[index] = order;
+        } else {
+            shortOrders[index] = order;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,241 @@
+package com.parker.forex.orders;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dukascopy.api.IEngine;
+import com.dukascopy.api.IEngine.OrderCommand;
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.IOrder.State;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.JFException;
+
+/**
+ * Tracks the orders of a grid on one instrument from the strategy's order messages, so a ladder can be placed without
+ * waiting for the engine. Forward every message to {@link #onMessage(IMessage)} before acting on it.
+ */
+public class GridOrderManager {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final IEngine engine;
+    private final Instrument instrument;
+    private final GridLadder ladder;
+
+    // Pending and open orders only
+    private final Map<String, GridOrder> orders = new LinkedHashMap<>();
+    private int pendingCount;
+    private int orderCount;
+
+    // Totals of the completed orders
+    private int ordersFilled;
+    private double profitLossInPips;
+    private double profitLoss;
+    private double commission;
+
+    public GridOrderManager(IEngine engine, Instrument instrument) {
+        this.engine = engine;
+        this.instrument = instrument;
+        this.ladder = new GridLadder(instrument.getPipValue() / 20);
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private double round(double price) {
+        return price == 0 ? 0 : BigDecimal.valueOf(price).setScale(instrument.getPipScale(), RoundingMode.HALF_UP).doubleValue();
+    }
+
+    private IOrder track(IOrder order, boolean isLong, double price) {
+        GridOrder gridOrder = new GridOrder(order, isLong);
+        orders.put(order.getLabel(), gridOrder);
+        pendingCount++;
+        orderCount++;
+
+        if (price > 0) {
+            gridOrder.price = price;
+            ladder.prune();
+            ladder.setOrder(ladder.add(price), isLong, order);
+        }
+        return order;
+    }
+
+    private void release(GridOrder gridOrder) {
+        IOrder order = gridOrder.order;
+        orders.remove(order.getLabel());
+        if (!gridOrder.filled) {
+            pendingCount--;
+        }
+
+        if (order.getFillTime() > 0) {
+            ordersFilled++;
+        }
+        profitLossInPips += order.getProfitLossInPips();
+        profitLoss += order.getProfitLossInAccountCurrency();
+        commission += order.getCommission();
+
+        int level = Double.isNaN(gridOrder.price) ? -1 : ladder.indexOf(gridOrder.price);
+        if (level >= 0 && ladder.getOrder(level, gridOrder.isLong) == order) {
+            ladder.setOrder(level, gridOrder.isLong, null);
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Submits a market order without waiting for it to be filled.
+     */
+    public IOrder submit(String label, OrderCommand command, double amount) throws JFException {
+        return track(engine.submitOrder(label, instrument, command, amount), command.isLong(), 0);
+    }
+
+    /**
+     * Submits an order without waiting for the engine. Prices are rounded to the instrument's pip scale and a price of 0
+     * submits a market order.
+     */
+    public IOrder submit(String label, OrderCommand command, double amount, double price, double slippage, double stopLoss,
+            double takeProfit) throws JFException {
+        price = round(price);
+        IOrder order = engine.submitOrder(label, instrument, command, amount, price, slippage, round(stopLoss), round(takeProfit));
+        return track(order, command.isLong(), price);
+    }
+
+    /**
+     * Updates the state of the grid from an order message. Levels without orders are dropped only when a level is
+     * added, so the returned index stays valid until then.
+     *
+     * @return The index of the order's level or -1 if the message is not for an order of this grid or the order has no
+     *         level yet.
+     */
+    public int onMessage(IMessage message) {
+        IOrder order = message.getOrder();
+        GridOrder gridOrder = order == null ? null : orders.get(order.getLabel());
+        if (gridOrder == null) {
+            return -1;
+        }
+
+        IMessage.Type type = message.getType();
+        if (IMessage.Type.ORDER_FILL_OK.equals(type) && !gridOrder.filled) {
+            gridOrder.filled = true;
+            pendingCount--;
+
+            if (Double.isNaN(gridOrder.price)) {
+                gridOrder.price = order.getOpenPrice();
+                ladder.prune();
+                ladder.setOrder(ladder.add(gridOrder.price), gridOrder.isLong, order);
+            }
+        } else if (IMessage.Type.ORDER_CLOSE_OK.equals(type) || IMessage.Type.ORDER_SUBMIT_REJECTED.equals(type)
+                || IMessage.Type.ORDER_FILL_REJECTED.equals(type)) {
+            release(gridOrder);
+        }
+
+        return Double.isNaN(gridOrder.price) ? -1 : ladder.indexOf(gridOrder.price);
+    }
+
+    /**
+     * Closes or cancels every order of the grid that is still pending or open.
+     */
+    public void closeAll() throws JFException {
+        // Closing may deliver the close message before returning, so iterate over a copy
+        for (IOrder order : getOpenOrders()) {
+            State state = order.getState();
+            if (!State.CLOSED.equals(state) && !State.CANCELED.equals(state)) {
+                order.close();
+            }
+        }
+    }
+
+    public GridLadder getLadder() {
+        return ladder;
+    }
+
+    /**
+     * @return True if an order has been submitted and is waiting to be filled.
+     */
+    public boolean isPending() {
+        return pendingCount > 0;
+    }
+
+    /**
+     * @return True if any order of the grid is still pending or open.
+     */
+    public boolean hasOpenOrders() {
+        return !orders.isEmpty();
+    }
+
+    /**
+     * @return The pending and open orders in submission order.
+     */
+    public List<IOrder> getOpenOrders() {
+        List<IOrder> openOrders = new ArrayList<>(orders.size());
+        for (GridOrder gridOrder : orders.values()) {
+            openOrders.add(gridOrder.order);
+        }
+        return openOrders;
+    }
+
+    /**
+     * @return The number of orders submitted to the grid, including completed orders.
+     */
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    public int getOrdersFilled() {
+        int filled = ordersFilled;
+        for (GridOrder gridOrder : orders.values()) {
+            if (gridOrder.order.getFillTime() > 0) {
+                filled++;
+            }
+        }
+        return filled;
+    }
+
+    public double getProfitLossInPips() {
+        double total = profitLossInPips;
+        for (GridOrder gridOrder : orders.values()) {
+            total += gridOrder.order.getProfitLossInPips();
+        }
+        return total;
+    }
+
+    public double getProfitLoss() {
+        double total = profitLoss;
+        for (GridOrder gridOrder : orders.values()) {
+            total += gridOrder.order.getProfitLossInAccountCurrency();
+        }
+        return total;
+    }
+
+    public double getCommission() {
+        double total = commission;
+        for (GridOrder gridOrder : orders.values()) {
+            total += gridOrder.order.getCommission();
+        }
+        return total;
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    private static class GridOrder {
+
+        final IOrder order;
+        final boolean isLong;
+
+        double price = Double.NaN;
+        boolean filled;
+
+        GridOrder(IOrder order, boolean isLong) {
+            this.order = order;
+            this.isLong = isLong;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.parker.forex.orders;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.IOrder.State;
+import com.dukascopy.api.JFException;
+
+/**
+ * Routes order messages to the handler owning the order, by order id or by the longest registered label prefix.
+ */
+public class MessageRouter {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final Node root = new Node();
+    private final Map<String, OrderHandler> handlersById = new HashMap<>();
+    private int prefixCount;
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private static void dispatch(OrderHandler handler, IMessage message, IOrder order) throws JFException {
+        handler.onMessage(message);
+
+        switch (message.getType()) {
+            case ORDER_SUBMIT_OK:
+                handler.onSubmitted(order);
+                break;
+            case ORDER_FILL_OK:
+                handler.onFilled(order);
+                break;
+            case ORDER_CHANGED_OK:
+                handler.onChanged(order);
+                break;
+            case ORDER_CLOSE_OK:
+                // Pending orders that are closed before being filled are cancelled
+                if (State.CANCELED.equals(order.getState())) {
+                    handler.onCancelled(order);
+                } else {
+                    handler.onClosed(order);
+                }
+                break;
+            case ORDER_SUBMIT_REJECTED:
+            case ORDER_FILL_REJECTED:
+            case ORDER_CHANGED_REJECTED:
+            case ORDER_CLOSE_REJECTED:
+            case ORDERS_MERGE_REJECTED:
+                handler.onRejected(order, message);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Routes the orders whose label starts with the prefix to the handler, replacing any handler already registered
+     * for the same prefix.
+     */
+    public void route(String labelPrefix, OrderHandler handler) {
+        if (labelPrefix == null || labelPrefix.isEmpty() || handler == null) {
+            throw new IllegalArgumentException("A label prefix and handler are required");
+        }
+
+        Node node = root;
+        for (int i = 0; i < labelPrefix.length(); i++) {
+            node = node.getOrAddChild(labelPrefix.charAt(i));
+        }
+        if (node.handler == null) {
+            prefixCount++;
+        }
+        node.handler = handler;
+    }
+
+    /**
+     * Stops routing the label prefix, pruning the nodes only it used.
+     *
+     * @return True if the prefix was routed.
+     */
+    public boolean unroute(String labelPrefix) {
+        Node[] path = new Node[labelPrefix.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < labelPrefix.length(); i++) {
+            path[i + 1] = path[i].getChild(labelPrefix.charAt(i));
+            if (path[i + 1] == null) {
+                return false;
+            }
+        }
+
+        Node node = path[labelPrefix.length()];
+        if (node.handler == null) {
+            return false;
+        }
+        node.handler = null;
+        prefixCount--;
+
+        for (int i = labelPrefix.length(); i > 0 && path[i].handler == null && path[i].size == 0; i--) {
+            path[i - 1].removeChild(labelPrefix.charAt(i - 1));
+        }
+        return true;
+    }
+
+    /**
+     * Routes a single order to the handler. Order id routes take precedence over label prefixes.
+     */
+    public void routeOrder(String orderId, OrderHandler handler) {
+        handlersById.put(orderId, handler);
+    }
+
+    /**
+     * @return True if the order id was routed.
+     */
+    public boolean unrouteOrder(String orderId) {
+        return handlersById.remove(orderId) != null;
+    }
+
+    /**
+     * @return The handler the order's messages are routed to or null if there is none.
+     */
+    public OrderHandler getHandler(IOrder order) {
+        if (!handlersById.isEmpty() && order.getId() != null) {
+            OrderHandler handler = handlersById.get(order.getId());
+            if (handler != null) {
+                return handler;
+            }
+        }
+
+        String label = order.getLabel();
+        if (label == null || prefixCount == 0) {
+            return null;
+        }
+
+        OrderHandler handler = null;
+        Node node = root;
+        for (int i = 0; i < label.length() && (node = node.getChild(label.charAt(i))) != null; i++) {
+            if (node.handler != null) {
+                handler = node.handler;
+            }
+        }
+        return handler;
+    }
+
+    /**
+     * Passes the message to the handler of its order.
+     *
+     * @return True if the message was routed, false if it has no order or the order has no handler.
+     */
+    public boolean onMessage(IMessage message) throws JFException {
+        IOrder order = message.getOrder();
+        if (order == null) {
+            return false;
+        }
+
+        OrderHandler handler = getHandler(order);
+        if (handler == null) {
+            return false;
+        }
+
+        dispatch(handler, message, order);
+        return true;
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    /**
+     * Receives the messages of the orders routed to it. Implement only the callbacks of interest.
+     */
+    public interface OrderHandler {
+
+        /**
+         * Called with every message routed to the handler, before the typed callback.
+         */
+        default void onMessage(IMessage message) throws JFException {
+        }
+
+        default void onSubmitted(IOrder order) throws JFException {
+        }
+
+        default void onFilled(IOrder order) throws JFException {
+        }
+
+        default void onChanged(IOrder order) throws JFException {
+        }
+
+        /**
+         * Called when a filled order is closed, including partial closes which leave the order filled.
+         */
+        default void onClosed(IOrder order) throws JFException {
+        }
+
+        /**
+         * Called when a pending order is closed before being filled.
+         */
+        default void onCancelled(IOrder order) throws JFException {
+        }
+
+        default void onRejected(IOrder order, IMessage message) throws JFException {
+        }
+    }
+
+    /**
+     * A trie node. Labels are short and drawn from a small alphabet, so children are held in small parallel arrays
+     * and found by a linear scan.
+     */
+    private static class Node {
+        char[] keys = new char[2];
+        Node[] children = new Node[2];
+        int size;
+        OrderHandler handler;
+
+        Node getChild(char key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node getOrAddChild(char key) {
+            Node child = getChild(key);
+            if (child == null) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    children = Arrays.copyOf(children, size * 2);
+                }
+                child = new Node();
+                keys[size] = key;
+                children[size++] = child;
+            }
+            return child;
+        }
+
+        void removeChild(char key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    keys[i] = keys[--size];
+                    children[i] = children[size];
+                    children[size] = null;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.parker.forex.orders;
+
+import com.dukascopy.api.IEngine.OrderCommand;
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.IOrder.State;
+import com.dukascopy.api.Instrument;
+
+/**
+ * Profit locker state for every instrument and direction, in arrays indexed by instrument ordinal and side.
+ */
+public class ProfitLockerStore {
+
+    private static final int LONG = 0;
+    private static final int SHORT = 1;
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final Slot[] slots = new Slot[Instrument.values().length * 2];
+    private final boolean[] instruments = new boolean[Instrument.values().length];
+    private int size;
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private static int indexOf(Instrument instrument, boolean isLong) {
+        return instrument.ordinal() * 2 + (isLong ? LONG : SHORT);
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Adds a slot for the instrument and direction of the order command, returning the existing slot if there is one.
+     */
+    public Slot add(Instrument instrument, OrderCommand orderCommand, double atrMultiplier) {
+        int index = indexOf(instrument, orderCommand.isLong());
+        Slot slot = slots[index];
+        if (slot == null) {
+            slot = slots[index] = new Slot(instrument, orderCommand, atrMultiplier);
+            instruments[instrument.ordinal()] = true;
+            size++;
+        }
+        return slot;
+    }
+
+    public boolean contains(Instrument instrument) {
+        return instruments[instrument.ordinal()];
+    }
+
+    /**
+     * @return The slot for the instrument and direction or null if the pair is not traded.
+     */
+    public Slot get(Instrument instrument, boolean isLong) {
+        return slots[indexOf(instrument, isLong)];
+    }
+
+    public Slot get(Instrument instrument, OrderCommand orderCommand) {
+        return get(instrument, orderCommand.isLong());
+    }
+
+    public Slot get(IOrder order) {
+        return get(order.getInstrument(), order.isLong());
+    }
+
+    /**
+     * @return The number of (instrument, direction) slots in the store.
+     */
+    public int size() {
+        return size;
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    public static class Slot {
+
+        public final Instrument instrument;
+        public final OrderCommand orderCommand;
+        public double atrMultiplier;
+
+        public int takeProfitPips;
+
+        public double profit;
+        public double lockedProfit;
+
+        public IOrder order;
+
+        Slot(Instrument instrument, OrderCommand orderCommand, double atrMultiplier) {
+            this.instrument = instrument;
+            this.orderCommand = orderCommand;
+            this.atrMultiplier = atrMultiplier;
+        }
+
+        /**
+         * Adds the profit of a closed order to the running profit, raising the locked profit if it has been exceeded.
+         */
+        public void addProfit(double orderProfit) {
+            profit += orderProfit;
+            if (profit > lockedProfit) {
+                lockedProfit = profit;
+            }
+        }
+
+        /**
+         * @return True if the slot's order is still pending or open.
+         */
+        public boolean hasOpenPosition() {
+            if (order == null) {
+                return false;
+            }
+            State state = order.getState();
+            return !State.CLOSED.equals(state) && !State.CANCELED.equals(state);
+        }
+
+        /**
+         * Clears the order handle if it is the given order, matched on its label.
+         */
+        public void release(IOrder order) {
+            if (this.order != null && this.order.getLabel().equals(order.getLabel())) {
+                this.order = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return instrument + " (" + orderCommand + ")";
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package com.parker.forex.orders;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dukascopy.api.IAccount;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.ICurrency;
+import com.dukascopy.api.IEngine;
+import com.dukascopy.api.IEngine.OrderCommand;
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.IOrder.State;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.JFException;
+
+/**
+ * Pre-trade risk checks across a whole portfolio, made against a book of working orders and equity kept from every
+ * tick, message and account update forwarded to it. Orders submitted through {@link #getEngine()} are passed, resized
+ * or rejected.
+ */
+public class RiskEngine {
+
+    /** The number of base currency units in a lot. */
+    public static final double UNITS_PER_LOT = 1000000;
+
+    /** The smallest order amount. Resized orders are rounded down to a multiple of it. */
+    public static final double MIN_LOTS = 0.001;
+
+    public enum Limit {
+        ORDER_LOTS, OPEN_LOTS, INSTRUMENT_LOTS, CURRENCY_EXPOSURE, MARGIN_USE, OPEN_ORDERS, LOSS
+    }
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final RiskLimits limits;
+    private final List<BreachListener> listeners = new ArrayList<>();
+    private final Map<String, WorkingOrder> orders = new HashMap<>();
+
+    // Per instrument, indexed by ordinal
+    private final double[] bids = new double[Instrument.values().length];
+    private final double[] asks = new double[Instrument.values().length];
+    private final double[] netLots = new double[Instrument.values().length];
+    private final int[] baseIndexes = new int[Instrument.values().length];
+    private final int[] quoteIndexes = new int[Instrument.values().length];
+    private final boolean[] traded = new boolean[Instrument.values().length];
+
+    // Filled lots and their cost (lots * open price) per instrument, valued at the bid for longs and the ask for shorts
+    private final double[] longLots = new double[Instrument.values().length];
+    private final double[] longCosts = new double[Instrument.values().length];
+    private final double[] shortLots = new double[Instrument.values().length];
+    private final double[] shortCosts = new double[Instrument.values().length];
+    private final List<Instrument> tradedInstruments = new ArrayList<>();
+
+    // Per currency, indexed in the order the currencies are first seen
+    private final Map<ICurrency, Integer> currencyIndexes = new HashMap<>();
+    private double[] exposures = new double[0];
+    private double[] rates = new double[0];
+    private boolean[] directRates = new boolean[0];
+
+    private IEngine engine;
+    private IAccount account;
+    private int accountCurrency;
+    private double leverage;
+    private double startingEquity;
+
+    private double openLots;
+    private double marginUsed;
+
+    // The equity is the balance plus the profit of the filled orders, both in the account currency
+    private double balance;
+    private double openProfit;
+    private Limit breach;
+
+    public RiskEngine(RiskLimits limits) {
+        this.limits = limits;
+        Arrays.fill(bids, Double.NaN);
+        Arrays.fill(asks, Double.NaN);
+        Arrays.fill(baseIndexes, -1);
+        Arrays.fill(quoteIndexes, -1);
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private int register(ICurrency currency) {
+        Integer index = currencyIndexes.get(currency);
+        if (index == null) {
+            index = currencyIndexes.size();
+            currencyIndexes.put(currency, index);
+
+            exposures = Arrays.copyOf(exposures, index + 1);
+            rates = Arrays.copyOf(rates, index + 1);
+            directRates = Arrays.copyOf(directRates, index + 1);
+            rates[index] = Double.NaN;
+        }
+        return index;
+    }
+
+    private void register(Instrument instrument) {
+        int i = instrument.ordinal();
+        if (baseIndexes[i] < 0) {
+            baseIndexes[i] = register(instrument.getPrimaryJFCurrency());
+            quoteIndexes[i] = register(instrument.getSecondaryJFCurrency());
+        }
+    }
+
+    /**
+     * Values the instrument's currencies in the account currency from its mid price. Rates from an instrument quoted
+     * against the account currency take precedence over rates derived through another currency.
+     */
+    private void updateRates(Instrument instrument) {
+        int i = instrument.ordinal();
+        int base = baseIndexes[i];
+        int quote = quoteIndexes[i];
+        double mid = (bids[i] + asks[i]) / 2;
+
+        if (quote == accountCurrency) {
+            rates[base] = mid;
+            directRates[base] = true;
+        } else if (base == accountCurrency) {
+            rates[quote] = 1 / mid;
+            directRates[quote] = true;
+        } else if (!directRates[base] && !Double.isNaN(rates[quote])) {
+            rates[base] = mid * rates[quote];
+        } else if (!directRates[quote] && !Double.isNaN(rates[base])) {
+            rates[quote] = rates[base] / mid;
+        }
+    }
+
+    private void updateBook() {
+        double margin = 0;
+        double profit = 0;
+        for (Instrument instrument : tradedInstruments) {
+            int i = instrument.ordinal();
+            double rate = rates[baseIndexes[i]];
+            if (netLots[i] != 0 && !Double.isNaN(rate)) {
+                margin += Math.abs(netLots[i]) * UNITS_PER_LOT * rate / leverage;
+            }
+
+            double quoteRate = rates[quoteIndexes[i]];
+            if ((longLots[i] != 0 || shortLots[i] != 0) && !Double.isNaN(quoteRate) && !Double.isNaN(bids[i])) {
+                profit += (longLots[i] * bids[i] - longCosts[i] + shortCosts[i] - shortLots[i] * asks[i]) * UNITS_PER_LOT * quoteRate;
+            }
+        }
+        marginUsed = margin;
+        openProfit = profit;
+    }
+
+    private double cap(Limit limit, double capacity, double allowed) {
+        if (capacity < allowed) {
+            breach = limit;
+            return Math.max(capacity, 0);
+        }
+        return allowed;
+    }
+
+    private double reject(Limit limit, Instrument instrument, OrderCommand command, double amount) {
+        breach = limit;
+        publish(instrument, command, amount, 0);
+        return 0;
+    }
+
+    private void publish(Instrument instrument, OrderCommand command, double requestedAmount, double allowedAmount) {
+        for (BreachListener listener : listeners) {
+            listener.onBreach(breach, instrument, command, requestedAmount, allowedAmount);
+        }
+    }
+
+    /**
+     * Sets the amount and price of a working order, adjusting the book by the difference.
+     */
+    private void apply(WorkingOrder order, double amount, double price) {
+        int i = order.instrument.ordinal();
+        openLots += amount - order.amount;
+        netLots[i] += order.sign * (amount - order.amount);
+        exposures[baseIndexes[i]] += order.sign * (amount - order.amount) * UNITS_PER_LOT;
+        exposures[quoteIndexes[i]] -= order.sign * (amount * price - order.amount * order.price) * UNITS_PER_LOT;
+
+        if (order.filled) {
+            double[] lots = order.sign > 0 ? longLots : shortLots;
+            double[] costs = order.sign > 0 ? longCosts : shortCosts;
+            lots[i] += amount - order.amount;
+            costs[i] += amount * price - order.amount * order.price;
+        }
+
+        order.amount = amount;
+        order.price = price;
+    }
+
+    private void fill(WorkingOrder order, double amount, double price) {
+        if (!order.filled) {
+            // Count the order's amount as a position from here on
+            double pendingAmount = order.amount;
+            apply(order, 0, order.price);
+            order.filled = true;
+            apply(order, pendingAmount, order.price);
+        }
+        apply(order, amount, price);
+    }
+
+    private void release(String label, WorkingOrder order) {
+        apply(order, 0, order.price);
+        orders.remove(label);
+    }
+
+    private void track(IOrder order, Instrument instrument, boolean isLong, double amount, double price) {
+        WorkingOrder workingOrder = new WorkingOrder(order, instrument, isLong ? 1 : -1);
+        orders.put(order.getLabel(), workingOrder);
+        apply(workingOrder, amount, price);
+
+        int i = instrument.ordinal();
+        if (!traded[i]) {
+            traded[i] = true;
+            tradedInstruments.add(instrument);
+        }
+    }
+
+    /**
+     * Replaces the merged orders with the resulting order, keeping the equity unchanged by booking the profit of the
+     * positions netted off.
+     */
+    private void merge(IOrder merged) {
+        double profit = openProfit;
+        Instrument instrument = merged.getInstrument();
+        orders.values().removeIf(order -> {
+            if (order.instrument == instrument && State.CLOSED.equals(order.order.getState())) {
+                apply(order, 0, order.price);
+                return true;
+            }
+            return false;
+        });
+
+        if (State.FILLED.equals(merged.getState()) && merged.getAmount() > 0) {
+            register(instrument);
+            track(merged, instrument, merged.isLong(), 0, merged.getOpenPrice());
+            fill(orders.get(merged.getLabel()), merged.getAmount(), merged.getOpenPrice());
+        }
+        updateBook();
+        balance += profit - openProfit;
+    }
+
+    private IOrder submitOrder(IEngine platformEngine, Method method, Object[] args) throws Throwable {
+        String label = (String) args[0];
+        Instrument instrument = (Instrument) args[1];
+        OrderCommand command = (OrderCommand) args[2];
+        double amount = (Double) args[3];
+
+        double allowed = check(instrument, command, amount);
+        if (allowed <= 0) {
+            throw new JFException("Order " + label + " rejected by the " + breach + " risk limit");
+        }
+        args[3] = allowed;
+        IOrder order = (IOrder) invoke(platformEngine, method, args);
+
+        // Pending orders are valued at their own price, market orders at the current one until filled
+        int i = instrument.ordinal();
+        double price = args.length > 4 && (Double) args[4] > 0 ? (Double) args[4] : command.isLong() ? asks[i] : bids[i];
+        track(order, instrument, command.isLong(), allowed, Double.isNaN(price) ? 0 : price);
+        updateBook();
+        return order;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    public void onStart(IContext context) {
+        IEngine platformEngine = context.getEngine();
+        account = context.getAccount();
+        startingEquity = account.getEquity();
+        balance = startingEquity;
+        leverage = account.getLeverage() > 0 ? account.getLeverage() : 1;
+
+        accountCurrency = register(account.getAccountCurrency());
+        rates[accountCurrency] = 1;
+        directRates[accountCurrency] = true;
+
+        engine = (IEngine) Proxy.newProxyInstance(IEngine.class.getClassLoader(), new Class<?>[] {IEngine.class},
+                (proxy, method, args) -> "submitOrder".equals(method.getName()) && args != null && args.length >= 4
+                        ? submitOrder(platformEngine, method, args) : invoke(platformEngine, method, args));
+    }
+
+    /**
+     * @return The engine to submit orders through. Other calls are passed straight to the platform's engine.
+     */
+    public IEngine getEngine() {
+        return engine;
+    }
+
+    public RiskEngine addListener(BreachListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Checks an order against the limits, publishing a breach if it does not fit. Does not add the order to the book.
+     *
+     * @return The amount the order may be submitted with: the requested amount, a smaller amount if it was resized or 0
+     *         if it was rejected.
+     */
+    public double check(Instrument instrument, OrderCommand command, double amount) {
+        register(instrument);
+        breach = null;
+
+        if (orders.size() >= limits.maxOpenOrders) {
+            return reject(Limit.OPEN_ORDERS, instrument, command, amount);
+        }
+        double equity = getEquity();
+        if (startingEquity - equity >= limits.maxLoss) {
+            return reject(Limit.LOSS, instrument, command, amount);
+        }
+
+        int i = instrument.ordinal();
+        int base = baseIndexes[i];
+        int quote = quoteIndexes[i];
+        double sign = command.isLong() ? 1 : -1;
+
+        double allowed = amount;
+        allowed = cap(Limit.ORDER_LOTS, limits.maxOrderLots, allowed);
+        allowed = cap(Limit.OPEN_LOTS, limits.maxOpenLots - openLots, allowed);
+        allowed = cap(Limit.INSTRUMENT_LOTS, limits.maxInstrumentLots - sign * netLots[i], allowed);
+
+        // The account currency value of a lot's base and quote legs, NaN until valued
+        double baseValue = UNITS_PER_LOT * rates[base];
+        double quoteValue = UNITS_PER_LOT * (command.isLong() ? asks[i] : bids[i]) * rates[quote];
+        if (baseValue > 0) {
+            allowed = cap(Limit.CURRENCY_EXPOSURE, (limits.maxCurrencyExposure - sign * exposures[base] * rates[base]) / baseValue, allowed);
+
+            // Orders reducing the instrument's net position free its margin first
+            double freed = sign * netLots[i] < 0 ? Math.abs(netLots[i]) : 0;
+            allowed = cap(Limit.MARGIN_USE, freed + (limits.maxMarginUse * equity - marginUsed) / (baseValue / leverage), allowed);
+        }
+        if (quoteValue > 0) {
+            allowed = cap(Limit.CURRENCY_EXPOSURE, (limits.maxCurrencyExposure + sign * exposures[quote] * rates[quote]) / quoteValue, allowed);
+        }
+
+        if (allowed < amount) {
+            allowed = limits.resize ? Math.floor(allowed * 1000 + 1e-6) / 1000 : 0;
+            if (allowed < MIN_LOTS) {
+                allowed = 0;
+            }
+            publish(instrument, command, amount, allowed);
+        }
+        return allowed;
+    }
+
+    public void onTick(Instrument instrument, ITick tick) {
+        int i = instrument.ordinal();
+        bids[i] = tick.getBid();
+        asks[i] = tick.getAsk();
+
+        register(instrument);
+        updateRates(instrument);
+        if (!tradedInstruments.isEmpty()) {
+            updateBook();
+        }
+    }
+
+    public void onMessage(IMessage message) {
+        IOrder order = message.getOrder();
+        if (order != null && IMessage.Type.ORDERS_MERGE_OK.equals(message.getType())) {
+            merge(order);
+            return;
+        }
+
+        WorkingOrder workingOrder = order == null ? null : orders.get(order.getLabel());
+        if (workingOrder == null) {
+            return;
+        }
+
+        switch (message.getType()) {
+            case ORDER_FILL_OK:
+                fill(workingOrder, order.getAmount(), order.getOpenPrice());
+                break;
+            case ORDER_CHANGED_OK:
+                if (State.OPENED.equals(order.getState())) {
+                    apply(workingOrder, order.getRequestedAmount(), order.getOpenPrice());
+                }
+                break;
+            case ORDER_CLOSE_OK:
+                if (State.CLOSED.equals(order.getState()) || State.CANCELED.equals(order.getState())) {
+                    if (workingOrder.filled) {
+                        balance += order.getProfitLossInAccountCurrency() - order.getCommission();
+                    }
+                    release(order.getLabel(), workingOrder);
+                } else {
+                    // Partially closed, the closed part's profit is booked at the close price
+                    double quoteRate = rates[quoteIndexes[workingOrder.instrument.ordinal()]];
+                    if (workingOrder.filled && !Double.isNaN(quoteRate)) {
+                        balance += workingOrder.sign * (workingOrder.amount - order.getAmount()) * UNITS_PER_LOT
+                                * (order.getClosePrice() - workingOrder.price) * quoteRate;
+                    }
+                    apply(workingOrder, order.getAmount(), workingOrder.price);
+                }
+                break;
+            case ORDER_SUBMIT_REJECTED:
+            case ORDER_FILL_REJECTED:
+                release(order.getLabel(), workingOrder);
+                break;
+            default:
+                return;
+        }
+        updateBook();
+    }
+
+    /**
+     * Resets the equity to the account's, picking up swaps, deposits and anything else not seen in the messages.
+     */
+    public void onAccount(IAccount account) {
+        balance = account.getEquity() - openProfit;
+    }
+
+    /**
+     * @return The equity from the account's at the start, the profit of the closed orders and the current profit of
+     *         the filled orders.
+     */
+    public double getEquity() {
+        return balance + openProfit;
+    }
+
+    /**
+     * @return The total amount of the working orders, pending and filled.
+     */
+    public double getOpenLots() {
+        return openLots;
+    }
+
+    public int getOpenOrders() {
+        return orders.size();
+    }
+
+    /**
+     * @return The net amount of the instrument's working orders, positive when long.
+     */
+    public double getNetLots(Instrument instrument) {
+        return netLots[instrument.ordinal()];
+    }
+
+    /**
+     * @return The net exposure to the currency in the account currency, positive when long, or NaN if the currency
+     *         has not been valued.
+     */
+    public double getExposure(ICurrency currency) {
+        Integer index = currencyIndexes.get(currency);
+        return index == null ? 0 : exposures[index] * rates[index];
+    }
+
+    /**
+     * @return The margin used by the working orders in the account currency.
+     */
+    public double getMarginUsed() {
+        return marginUsed;
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    public interface BreachListener {
+
+        /**
+         * Called when an order does not fit the limits.
+         *
+         * @param limit The limit that bound the order's amount.
+         * @param allowedAmount The amount the order was resized to, or 0 if it was rejected.
+         */
+        void onBreach(Limit limit, Instrument instrument, OrderCommand command, double requestedAmount, double allowedAmount);
+    }
+
+    private static class WorkingOrder {
+        final IOrder order;
+        final Instrument instrument;
+        final double sign;
+        double amount;
+        double price;
+        boolean filled;
+
+        WorkingOrder(IOrder order, Instrument instrument, double sign) {
+            this.order = order;
+            this.instrument = instrument;
+            this.sign = sign;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.parker.forex.orders;
+
+/**
+ * The limits a {@link RiskEngine} checks orders against, each off until set. Lots are JForex lots and money amounts are
+ * in the account currency.
+ */
+public class RiskLimits {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    double maxOrderLots = Double.POSITIVE_INFINITY;
+    double maxOpenLots = Double.POSITIVE_INFINITY;
+    double maxInstrumentLots = Double.POSITIVE_INFINITY;
+    double maxCurrencyExposure = Double.POSITIVE_INFINITY;
+    double maxMarginUse = Double.POSITIVE_INFINITY;
+    double maxLoss = Double.POSITIVE_INFINITY;
+    int maxOpenOrders = Integer.MAX_VALUE;
+    boolean resize;
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * The largest amount of a single order.
+     */
+    public RiskLimits maxOrderLots(double lots) {
+        this.maxOrderLots = lots;
+        return this;
+    }
+
+    /**
+     * The largest total amount of the working orders, pending and filled, across all instruments.
+     */
+    public RiskLimits maxOpenLots(double lots) {
+        this.maxOpenLots = lots;
+        return this;
+    }
+
+    /**
+     * The largest net long or short amount of any one instrument.
+     */
+    public RiskLimits maxInstrumentLots(double lots) {
+        this.maxInstrumentLots = lots;
+        return this;
+    }
+
+    /**
+     * The largest net long or short exposure to any one currency, valued in the account currency.
+     */
+    public RiskLimits maxCurrencyExposure(double amount) {
+        this.maxCurrencyExposure = amount;
+        return this;
+    }
+
+    /**
+     * The largest fraction of the equity the margin of the working orders may use, e.g. 0.5 for half.
+     */
+    public RiskLimits maxMarginUse(double fraction) {
+        this.maxMarginUse = fraction;
+        return this;
+    }
+
+    /**
+     * The loss from the starting equity at which new orders are no longer accepted.
+     */
+    public RiskLimits maxLoss(double amount) {
+        this.maxLoss = amount;
+        return this;
+    }
+
+    /**
+     * The largest number of working orders.
+     */
+    public RiskLimits maxOpenOrders(int orders) {
+        this.maxOpenOrders = orders;
+        return this;
+    }
+
+    /**
+     * Whether orders breaching a lot, exposure or margin limit are reduced to the amount that fits rather than
+     * rejected.
+     */
+    public RiskLimits resize(boolean resize) {
+        this.resize = resize;
+        return this;
+    }
+}
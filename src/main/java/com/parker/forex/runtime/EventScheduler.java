@@ -0,0 +1,294 @@
+package com.parker.forex.runtime;
+
+import com.dukascopy.api.JFException;
+
+/**
+ * Runs callbacks at market times rather than wall clock times, from a hierarchical timing wheel advanced with the time
+ * of each tick or bar.
+ */
+public class EventScheduler {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    /** The list holding timers that are due, or were scheduled before the time was known. */
+    private static final int DUE = LEVELS * SLOTS;
+    private static final int UNSCHEDULED = -1;
+
+    private static final long MINUTE = 60000;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final long resolution;
+    private final Timer[] heads = new Timer[DUE + 1];
+    private final Timer[] tails = new Timer[DUE + 1];
+    private final int[] levelCounts = new int[LEVELS];
+    private int size;
+
+    private boolean started;
+    private long now;
+    private long time = Long.MIN_VALUE;
+
+    /**
+     * Creates a scheduler with a resolution of one second.
+     */
+    public EventScheduler() {
+        this(1000);
+    }
+
+    /**
+     * @param resolution The granularity of the timer times in milliseconds.
+     */
+    public EventScheduler(long resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("The resolution must be positive");
+        }
+        this.resolution = resolution;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private void append(int index, Timer timer) {
+        timer.index = index;
+        timer.prev = tails[index];
+        timer.next = null;
+        if (tails[index] == null) {
+            heads[index] = timer;
+        } else {
+            tails[index].next = timer;
+        }
+        tails[index] = timer;
+    }
+
+    private void remove(Timer timer) {
+        int index = timer.index;
+        if (timer.prev == null) {
+            heads[index] = timer.next;
+        } else {
+            timer.prev.next = timer.next;
+        }
+        if (timer.next == null) {
+            tails[index] = timer.prev;
+        } else {
+            timer.next.prev = timer.prev;
+        }
+
+        if (index != DUE) {
+            levelCounts[index >> SLOT_BITS]--;
+        }
+        timer.index = UNSCHEDULED;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    /**
+     * Places a timer on the level of the highest slot-sized group of bits in which its tick differs from the current
+     * one, so it is moved down when the wheel turns to that group's value.
+     */
+    private void insert(Timer timer) {
+        if (!started || timer.tick <= now) {
+            append(DUE, timer);
+            return;
+        }
+
+        int level = (63 - Long.numberOfLeadingZeros(timer.tick ^ now)) / SLOT_BITS;
+        int slot;
+        if (level < LEVELS) {
+            slot = (int) (timer.tick >>> (level * SLOT_BITS)) & SLOT_MASK;
+        } else {
+            // Beyond the wheel - park it in the top level slot turned to last and place it again from there
+            level = LEVELS - 1;
+            slot = (int) ((now >>> (level * SLOT_BITS)) - 1) & SLOT_MASK;
+        }
+
+        levelCounts[level]++;
+        append((level << SLOT_BITS) + slot, timer);
+    }
+
+    private void cascade(int level) {
+        int index = (level << SLOT_BITS) + ((int) (now >>> (level * SLOT_BITS)) & SLOT_MASK);
+        while (heads[index] != null) {
+            Timer timer = heads[index];
+            remove(timer);
+            insert(timer);
+        }
+    }
+
+    private void fire(int index) throws JFException {
+        while (heads[index] != null) {
+            Timer timer = heads[index];
+            remove(timer);
+            size--;
+            timer.task.run(timer.time);
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * @return The next time the clock reads the hour and minute in GMT, after the given time.
+     */
+    public static long nextTimeOfDay(long time, int hour, int minute) {
+        long next = Math.floorDiv(time, DAY) * DAY + (hour * 60 + minute) * MINUTE;
+        return next > time ? next : next + DAY;
+    }
+
+    /**
+     * Runs the task at the market time. Times that have already passed run on the next advance.
+     */
+    public Timer schedule(long time, Task task) {
+        Timer timer = new Timer(time, -Math.floorDiv(-time, resolution), task);
+        insert(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Runs the task after the delay in milliseconds of market time.
+     */
+    public Timer scheduleIn(long delay, Task task) {
+        return schedule(getTime() + delay, task);
+    }
+
+    /**
+     * Runs the task at the next time the clock reads the hour and minute in GMT.
+     */
+    public Timer scheduleAtTimeOfDay(int hour, int minute, Task task) {
+        return schedule(nextTimeOfDay(getTime(), hour, minute), task);
+    }
+
+    /**
+     * Moves the market time forward, running the tasks that fall due in the order of their times. Times earlier than
+     * the current time are ignored.
+     */
+    public void advance(long time) throws JFException {
+        long target = Math.floorDiv(time, resolution);
+        if (!started) {
+            // Timers scheduled before the time was known can be placed now
+            started = true;
+            now = target;
+            Timer timer = heads[DUE];
+            heads[DUE] = null;
+            tails[DUE] = null;
+            while (timer != null) {
+                Timer next = timer.next;
+                insert(timer);
+                timer = next;
+            }
+        }
+        this.time = Math.max(this.time, time);
+
+        fire(DUE);
+        while (now < target) {
+            int level = 0;
+            while (level < LEVELS && levelCounts[level] == 0) {
+                level++;
+            }
+            if (level == LEVELS) {
+                now = target;
+                break;
+            }
+
+            // Nothing moves or fires before the lowest occupied level turns
+            if (level > 0) {
+                int shift = level * SLOT_BITS;
+                long turn = ((now >>> shift) + 1) << shift;
+                if (turn > target) {
+                    now = target;
+                    break;
+                }
+                now = turn - 1;
+            }
+            now++;
+
+            // Move timers down from the levels that have turned, highest first
+            int turned = 0;
+            while (turned + 1 < LEVELS && (now & ((1L << ((turned + 1) * SLOT_BITS)) - 1)) == 0) {
+                turned++;
+            }
+            for (int i = turned; i > 0; i--) {
+                cascade(i);
+            }
+
+            fire((int) now & SLOT_MASK);
+            fire(DUE);
+        }
+    }
+
+    /**
+     * @return The latest market time advanced to.
+     */
+    public long getTime() {
+        if (!started) {
+            throw new IllegalStateException("The market time is not known until the first advance");
+        }
+        return time;
+    }
+
+    /**
+     * @return The number of scheduled timers.
+     */
+    public int size() {
+        return size;
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    public interface Task {
+
+        /**
+         * @param time The market time the task was scheduled for.
+         */
+        void run(long time) throws JFException;
+    }
+
+    /**
+     * A scheduled task.
+     */
+    public final class Timer {
+
+        private final long time;
+        private final long tick;
+        private final Task task;
+
+        private int index = UNSCHEDULED;
+        private Timer prev;
+        private Timer next;
+
+        private Timer(long time, long tick, Task task) {
+            this.time = time;
+            this.tick = tick;
+            this.task = task;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return True if the task has not run or been cancelled.
+         */
+        public boolean isScheduled() {
+            return index != UNSCHEDULED;
+        }
+
+        /**
+         * @return True if the task was cancelled before it ran.
+         */
+        public boolean cancel() {
+            if (index == UNSCHEDULED) {
+                return false;
+            }
+            remove(this);
+            size--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.parker.forex.runtime;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Strategy state that can be checkpointed to and recovered from a {@link StateJournal}. Buffers are little endian and
+ * positioned at the start of the data; the state decides its own layout.
+ */
+public interface JournaledState {
+
+    /**
+     * Writes the full state. A {@link java.nio.BufferOverflowException} makes the journal retry with a larger buffer.
+     */
+    void writeSnapshot(ByteBuffer buffer);
+
+    /**
+     * Replaces the state with a snapshot previously written by {@link #writeSnapshot(ByteBuffer)}.
+     */
+    void readSnapshot(ByteBuffer buffer);
+
+    /**
+     * Re-applies an event appended after the snapshot was taken. Replayed events must not be journaled again.
+     *
+     * @param type The type the event was appended with.
+     * @param event The event payload, limited to its own bytes.
+     */
+    void replay(int type, ByteBuffer event);
+}
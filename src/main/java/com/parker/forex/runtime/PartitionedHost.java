@@ -0,0 +1,701 @@
+package com.parker.forex.runtime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.dukascopy.api.IAccount;
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.IEngine.OrderCommand;
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.IOrder.State;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.JFException;
+import com.dukascopy.api.Period;
+import com.parker.forex.CustomStrategy;
+import com.parker.forex.backtest.ReplayTick;
+
+/**
+ * Runs per-instrument strategy partitions on worker threads, each fed by the platform thread through a single producer,
+ * single consumer ring. Partitions get copies of ticks and messages, never live orders, and post actions the platform
+ * thread runs in delivery order, so results do not depend on the thread count. Events delivered while actions run are
+ * held until the actions finish. Partitions must be added before the host is started.
+ */
+public class PartitionedHost implements CustomStrategy {
+
+    private static final int MIN_CAPACITY = 64;
+    private static final int SPINS = 1000;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 20_000;
+
+    private static final int TICK = 1;
+    private static final int BAR = 2;
+    private static final int MESSAGE = 3;
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    final String name;
+    final int threads;
+    final int window;
+    final List<Partition> partitions = new ArrayList<>();
+    final Partition[] partitionsByInstrument = new Partition[Instrument.values().length];
+    final Worker[] workersByInstrument = new Worker[Instrument.values().length];
+
+    IContext context;
+    Worker[] workers;
+
+    // The events with actions still to run, as worker and sequence, in delivery order
+    int[] pendingWorkers;
+    long[] pendingSequences;
+    int pendingHead;
+    int pendingSize;
+    boolean applying;
+
+    // Events delivered while actions run, waiting for them to finish, and spare events to hold them
+    final Deque<Event> deferred = new ArrayDeque<>();
+    final Deque<Event> spareEvents = new ArrayDeque<>();
+    boolean publishingDeferred;
+
+    /**
+     * @param threads The maximum number of worker threads. Partitions are shared among them in the order added.
+     * @param window The number of events whose actions may be outstanding, i.e. how far the workers may run ahead.
+     */
+    public PartitionedHost(String name, int threads, int window) {
+        if (threads <= 0 || window < 0) {
+            throw new IllegalArgumentException("The threads must be positive and the window not negative");
+        }
+        this.name = name;
+        this.threads = threads;
+        this.window = window;
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private void log(String message) {
+        context.getConsole().getOut().println(message);
+    }
+
+    private static void idle(int attempt) {
+        if (attempt > SPINS + YIELDS) {
+            LockSupport.parkNanos(PARK_NANOS);
+        } else if (attempt > SPINS) {
+            Thread.yield();
+        }
+    }
+
+    private static void rethrow(Throwable error) throws JFException {
+        if (error instanceof JFException) {
+            throw (JFException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        throw new IllegalStateException(error);
+    }
+
+    /**
+     * @return The slot for the worker's next event, once the slot's previous actions have run, or while actions run an
+     *         event held until they finish, as the ring may be full.
+     */
+    private Event claim(Worker worker) throws JFException {
+        if (applying) {
+            Event event = spareEvents.isEmpty() ? new Event() : spareEvents.pop();
+            event.worker = worker;
+            deferred.add(event);
+            return event;
+        }
+        while (worker.published - worker.applied >= worker.slots.length) {
+            apply();
+        }
+        return worker.slots[(int) (worker.published & worker.mask)];
+    }
+
+    /**
+     * Publishes the events held while actions ran, in the order they were delivered, swapping each into its ring slot.
+     */
+    private void publishDeferred() throws JFException {
+        if (publishingDeferred) {
+            // Making room ran more actions; the outer call publishes what they delivered
+            return;
+        }
+        publishingDeferred = true;
+        try {
+            while (!deferred.isEmpty()) {
+                Event event = deferred.peek();
+                Worker worker = event.worker;
+                Event slot = claim(worker);
+                deferred.poll();
+                event.worker = null;
+                worker.slots[(int) (worker.published & worker.mask)] = event;
+                spareEvents.push(slot);
+                publish(worker);
+            }
+        } finally {
+            publishingDeferred = false;
+        }
+    }
+
+    private void publish(Worker worker) throws JFException {
+        if (applying) {
+            // Held by claim until the actions finish
+            return;
+        }
+        int p = (pendingHead + pendingSize++) % pendingWorkers.length;
+        pendingWorkers[p] = worker.index;
+        pendingSequences[p] = worker.published;
+
+        worker.published++;
+        worker.publishedCount.lazySet(worker.published);
+    }
+
+    /**
+     * Runs the actions of events while more than the window are outstanding.
+     */
+    private void trim() throws JFException {
+        if (!applying) {
+            while (pendingSize > window) {
+                apply();
+            }
+        }
+    }
+
+    /**
+     * Waits for the oldest outstanding event and runs its actions.
+     */
+    private void apply() throws JFException {
+        Worker worker = workers[pendingWorkers[pendingHead]];
+        long sequence = pendingSequences[pendingHead];
+        pendingHead = (pendingHead + 1) % pendingWorkers.length;
+        pendingSize--;
+
+        for (int attempt = 0; worker.processedCount.get() <= sequence; attempt++) {
+            if (!worker.thread.isAlive()) {
+                throw new IllegalStateException("The " + worker.thread.getName() + " thread has stopped");
+            }
+            idle(attempt);
+        }
+
+        Event event = worker.slots[(int) (sequence & worker.mask)];
+        applying = true;
+        try {
+            Throwable error = event.error;
+            if (error == null) {
+                for (int i = 0; i < event.actions.size(); i++) {
+                    event.actions.get(i).run(context);
+                }
+            }
+            event.clear();
+            worker.applied = sequence + 1;
+            if (error != null) {
+                rethrow(error);
+            }
+        } finally {
+            applying = false;
+        }
+        publishDeferred();
+    }
+
+    private void stopWorkers() {
+        if (workers != null) {
+            for (Worker worker : workers) {
+                worker.running = false;
+            }
+            for (Worker worker : workers) {
+                try {
+                    worker.thread.join();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Hosts a partition. Each instrument can belong to one partition only.
+     */
+    public PartitionedHost add(Partition partition) {
+        if (context != null) {
+            throw new IllegalStateException("Partitions must be added before the host is started");
+        }
+        for (Instrument instrument : partition.getInstruments()) {
+            if (partitionsByInstrument[instrument.ordinal()] != null) {
+                throw new IllegalArgumentException(instrument + " already belongs to a partition");
+            }
+        }
+        for (Instrument instrument : partition.getInstruments()) {
+            partitionsByInstrument[instrument.ordinal()] = partition;
+        }
+        partitions.add(partition);
+        return this;
+    }
+
+    public List<Partition> getPartitions() {
+        return new ArrayList<>(partitions);
+    }
+
+    /**
+     * Runs the actions of every outstanding event, e.g. before reading state the actions change.
+     */
+    public void flush() throws JFException {
+        if (applying) {
+            throw new IllegalStateException("Actions cannot flush the host");
+        }
+        while (pendingSize > 0) {
+            apply();
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods - Implementation of the CustomStrategy interface
+    // *****************************************************************************************************************
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return name + " running " + partitions.size() + " partitions on " + Math.min(threads, partitions.size()) + " threads";
+    }
+
+    public Instrument getInstrument() {
+        return null;
+    }
+
+    public void onStart(IContext context) throws JFException {
+        this.context = context;
+
+        Set<Instrument> instruments = EnumSet.noneOf(Instrument.class);
+        for (Partition partition : partitions) {
+            instruments.addAll(partition.getInstruments());
+            partition.onStart(context);
+        }
+        context.setSubscribedInstruments(instruments, false);
+
+        // Each ring is only written by the platform thread and read by its worker, so it needs no locks
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, window + 2) - 1) << 1;
+        workers = new Worker[Math.max(1, Math.min(threads, partitions.size()))];
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = new Worker(w, name + "-partition-" + w, capacity);
+        }
+        for (int p = 0; p < partitions.size(); p++) {
+            Worker worker = workers[p % workers.length];
+            for (Instrument instrument : partitions.get(p).getInstruments()) {
+                workersByInstrument[instrument.ordinal()] = worker;
+            }
+        }
+        pendingWorkers = new int[capacity * workers.length];
+        pendingSequences = new long[capacity * workers.length];
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+
+        log("Started " + getDescription() + ".");
+    }
+
+    public void onTick(Instrument instrument, ITick tick) throws JFException {
+        Worker worker = workersByInstrument[instrument.ordinal()];
+        if (worker != null) {
+            // Ticks may be reused by the caller, so only their values are passed on and the partition gets its own
+            Event event = claim(worker);
+            event.type = TICK;
+            event.partition = partitionsByInstrument[instrument.ordinal()];
+            event.instrument = instrument;
+            event.time = tick.getTime();
+            event.bid = tick.getBid();
+            event.ask = tick.getAsk();
+            event.bidVolume = tick.getBidVolume();
+            event.askVolume = tick.getAskVolume();
+            publish(worker);
+            trim();
+        }
+    }
+
+    public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) throws JFException {
+        Worker worker = workersByInstrument[instrument.ordinal()];
+        if (worker != null) {
+            Event event = claim(worker);
+            event.type = BAR;
+            event.partition = partitionsByInstrument[instrument.ordinal()];
+            event.instrument = instrument;
+            event.period = period;
+            event.askBar = askBar;
+            event.bidBar = bidBar;
+            publish(worker);
+            trim();
+        }
+    }
+
+    public void onMessage(IMessage message) throws JFException {
+        IOrder order = message.getOrder();
+        if (order == null) {
+            // One event per partition rather than per worker, so the order does not depend on the grouping
+            for (int p = 0; p < partitions.size(); p++) {
+                Worker worker = workers[p % workers.length];
+                Event event = claim(worker);
+                event.type = MESSAGE;
+                event.partition = partitions.get(p);
+                event.message.set(message, null);
+                publish(worker);
+            }
+            trim();
+            return;
+        }
+
+        Worker worker = workersByInstrument[order.getInstrument().ordinal()];
+        if (worker != null) {
+            Event event = claim(worker);
+            event.type = MESSAGE;
+            event.partition = partitionsByInstrument[order.getInstrument().ordinal()];
+            event.message.set(message, order);
+            publish(worker);
+            trim();
+        }
+    }
+
+    public void onAccount(IAccount account) throws JFException {
+    }
+
+    public void onStop() throws JFException {
+        try {
+            flush();
+        } finally {
+            stopWorkers();
+        }
+        for (Partition partition : partitions) {
+            partition.onStop(context);
+        }
+        log("Stopped " + getDescription() + ".");
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    /**
+     * An order or account side effect, run on the platform thread with the host's context.
+     */
+    public interface Action {
+
+        void run(IContext context) throws JFException;
+    }
+
+    /**
+     * Collects the actions of the event being handled.
+     */
+    public interface Outbox {
+
+        void post(Action action);
+    }
+
+    /**
+     * The state and signals of one instrument or group of instruments. The callbacks run on a worker thread, so they
+     * must only touch the partition's own state; the values an action needs are copied into it when it is posted.
+     * <p>
+     * Each tick is the partition's own to keep, but message snapshots are reused between callbacks, so their values
+     * must be copied to be kept.
+     */
+    public interface Partition {
+
+        Set<Instrument> getInstruments();
+
+        /**
+         * Called on the platform thread before any event, e.g. to load history.
+         */
+        default void onStart(IContext context) throws JFException {
+        }
+
+        void onTick(Instrument instrument, ITick tick, Outbox outbox) throws JFException;
+
+        default void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar, Outbox outbox) throws JFException {
+        }
+
+        /**
+         * Called with the messages of orders for the partition's instruments and messages without an order. Actions
+         * changing the order find it by label, e.g. <code>context.getEngine().getOrder(label)</code>.
+         */
+        default void onMessage(MessageSnapshot message, Outbox outbox) throws JFException {
+        }
+
+        /**
+         * Called on the platform thread after every action has run.
+         */
+        default void onStop(IContext context) throws JFException {
+        }
+    }
+
+    /**
+     * A message and the state of its order when it was delivered, copied on the platform thread.
+     */
+    public static final class MessageSnapshot {
+
+        private IMessage.Type type;
+        private String content;
+        private long creationTime;
+
+        private boolean hasOrder;
+        private String orderId;
+        private String label;
+        private Instrument instrument;
+        private OrderCommand orderCommand;
+        private State state;
+        private double amount;
+        private double openPrice;
+        private double closePrice;
+        private double stopLossPrice;
+        private double takeProfitPrice;
+        private long fillTime;
+        private long closeTime;
+        private double profitLossInPips;
+        private double profitLossInUSD;
+        private double profitLossInAccountCurrency;
+        private double commission;
+
+        void set(IMessage message, IOrder order) {
+            type = message.getType();
+            content = message.getContent();
+            creationTime = message.getCreationTime();
+
+            hasOrder = order != null;
+            if (hasOrder) {
+                orderId = order.getId();
+                label = order.getLabel();
+                instrument = order.getInstrument();
+                orderCommand = order.getOrderCommand();
+                state = order.getState();
+                amount = order.getAmount();
+                openPrice = order.getOpenPrice();
+                closePrice = order.getClosePrice();
+                stopLossPrice = order.getStopLossPrice();
+                takeProfitPrice = order.getTakeProfitPrice();
+                fillTime = order.getFillTime();
+                closeTime = order.getCloseTime();
+                profitLossInPips = order.getProfitLossInPips();
+                profitLossInUSD = order.getProfitLossInUSD();
+                profitLossInAccountCurrency = order.getProfitLossInAccountCurrency();
+                commission = order.getCommission();
+            } else {
+                orderId = null;
+                label = null;
+                instrument = null;
+                orderCommand = null;
+                state = null;
+                amount = openPrice = closePrice = stopLossPrice = takeProfitPrice = 0;
+                fillTime = closeTime = 0;
+                profitLossInPips = profitLossInUSD = profitLossInAccountCurrency = commission = 0;
+            }
+        }
+
+        public IMessage.Type getType() {
+            return type;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        /**
+         * @return True if the message is about an order, false if the order getters have nothing to report.
+         */
+        public boolean hasOrder() {
+            return hasOrder;
+        }
+
+        public String getOrderId() {
+            return orderId;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public Instrument getInstrument() {
+            return instrument;
+        }
+
+        public OrderCommand getOrderCommand() {
+            return orderCommand;
+        }
+
+        public boolean isLong() {
+            return orderCommand != null && orderCommand.isLong();
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public double getOpenPrice() {
+            return openPrice;
+        }
+
+        public double getClosePrice() {
+            return closePrice;
+        }
+
+        public double getStopLossPrice() {
+            return stopLossPrice;
+        }
+
+        public double getTakeProfitPrice() {
+            return takeProfitPrice;
+        }
+
+        public long getFillTime() {
+            return fillTime;
+        }
+
+        public long getCloseTime() {
+            return closeTime;
+        }
+
+        public double getProfitLossInPips() {
+            return profitLossInPips;
+        }
+
+        public double getProfitLossInUSD() {
+            return profitLossInUSD;
+        }
+
+        public double getProfitLossInAccountCurrency() {
+            return profitLossInAccountCurrency;
+        }
+
+        public double getCommission() {
+            return commission;
+        }
+
+        @Override
+        public String toString() {
+            return hasOrder ? type + " " + label + " " + orderCommand + " " + amount + " " + instrument + " " + state : type + " " + content;
+        }
+    }
+
+    /**
+     * A ring slot, holding an event on the way to a worker and its actions on the way back.
+     */
+    private static final class Event implements Outbox {
+
+        // The worker a held event is for
+        Worker worker;
+
+        int type;
+        Partition partition;
+        Instrument instrument;
+        long time;
+        double bid;
+        double ask;
+        double bidVolume;
+        double askVolume;
+        Period period;
+        IBar askBar;
+        IBar bidBar;
+        final MessageSnapshot message = new MessageSnapshot();
+
+        final List<Action> actions = new ArrayList<>();
+        Throwable error;
+
+        @Override
+        public void post(Action action) {
+            actions.add(action);
+        }
+
+        void clear() {
+            partition = null;
+            askBar = null;
+            bidBar = null;
+            actions.clear();
+            error = null;
+        }
+    }
+
+    private static final class Worker implements Runnable {
+
+        final int index;
+        final Thread thread;
+        final Event[] slots;
+        final long mask;
+
+        // Written by the platform thread
+        final AtomicLong publishedCount = new AtomicLong();
+        long published;
+        long applied;
+
+        // Written by the worker thread
+        final AtomicLong processedCount = new AtomicLong();
+
+        volatile boolean running = true;
+
+        Worker(int index, String name, int capacity) {
+            this.index = index;
+            this.slots = new Event[capacity];
+            this.mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                slots[i] = new Event();
+            }
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        private void handle(Event event) throws JFException {
+            switch (event.type) {
+                case TICK:
+                    ITick tick = new ReplayTick().set(event.time, event.bid, event.ask, event.bidVolume, event.askVolume);
+                    event.partition.onTick(event.instrument, tick, event);
+                    break;
+                case BAR:
+                    event.partition.onBar(event.instrument, event.period, event.askBar, event.bidBar, event);
+                    break;
+                case MESSAGE:
+                    event.partition.onMessage(event.message, event);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown event type " + event.type);
+            }
+        }
+
+        @Override
+        public void run() {
+            long processed = 0;
+            int attempt = 0;
+            while (running || processed < publishedCount.get()) {
+                if (processed == publishedCount.get()) {
+                    idle(attempt++);
+                    continue;
+                }
+                attempt = 0;
+
+                Event event = slots[(int) (processed & mask)];
+                try {
+                    handle(event);
+                } catch (Throwable t) {
+                    // Reported on the platform thread when the event's actions are run
+                    event.actions.clear();
+                    event.error = t;
+                }
+                processedCount.lazySet(++processed);
+            }
+        }
+    }
+}
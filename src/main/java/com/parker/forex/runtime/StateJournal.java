@@ -0,0 +1,334 @@
+package com.parker.forex.runtime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot plus memory-mapped, append-only journal of a strategy's state, so a restarted strategy picks up where it
+ * left off. Replay stops at the first torn or corrupt event. Not thread safe.
+ */
+public class StateJournal implements Closeable {
+
+    private static final int SNAPSHOT_MAGIC = 0x534E4150; // "SNAP"
+    private static final int JOURNAL_MAGIC = 0x4A524E4C; // "JRNL"
+    private static final short SNAPSHOT_VERSION = 1;
+    private static final short JOURNAL_VERSION = 1;
+
+    // Snapshot: magic(4) version(2) reserved(2) sequence(8) length(4) crc32(4) data
+    // Journal: magic(4) version(2) reserved(2) reserved(8), then per event size(4) type(4) sequence(8) crc32(4)
+    // reserved(4) data, the size written last
+    private static final int SNAPSHOT_HEADER_SIZE = 24;
+    private static final int JOURNAL_HEADER_SIZE = 16;
+    private static final int EVENT_HEADER_SIZE = 24;
+
+    /** The largest event payload that can be appended. */
+    public static final int MAX_EVENT_SIZE = 4096;
+
+    private static final long INITIAL_JOURNAL_SIZE = 1 << 20;
+    private static final int INITIAL_SNAPSHOT_SIZE = 1 << 16;
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final FileChannel journalChannel;
+    private MappedByteBuffer journal;
+
+    private int position;
+    private int eventStart = -1;
+    private int eventType;
+    private long sequence;
+
+    private ByteBuffer snapshotBuffer = ByteBuffer.allocate(INITIAL_SNAPSHOT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Opens the journal in the directory, creating the directory and files as needed.
+     *
+     * @param name The base name of the snapshot and journal files.
+     */
+    public StateJournal(Path directory, String name) throws IOException {
+        Files.createDirectories(directory);
+        this.snapshotPath = directory.resolve(name + ".snapshot");
+        this.journalPath = directory.resolve(name + ".journal");
+        this.journalChannel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        boolean created = journalChannel.size() == 0;
+        map(Math.max(journalChannel.size(), INITIAL_JOURNAL_SIZE));
+
+        if (created) {
+            journal.putInt(0, JOURNAL_MAGIC);
+            journal.putShort(4, JOURNAL_VERSION);
+        } else if (journal.getInt(0) != JOURNAL_MAGIC || journal.getShort(4) != JOURNAL_VERSION) {
+            journalChannel.close();
+            throw new IOException("Not a version " + JOURNAL_VERSION + " journal: " + journalPath);
+        }
+
+        // Find the end of the committed events
+        position = JOURNAL_HEADER_SIZE;
+        long previousSequence = -1;
+        int size;
+        while ((size = getEventSize(position, previousSequence)) > 0) {
+            previousSequence = sequence = journal.getLong(position + 8);
+            position += size;
+        }
+
+        // Clear a corrupt event and anything after it, so stale events can't follow the ones appended from here
+        if (position + 4 <= journal.capacity() && journal.getInt(position) != 0) {
+            for (int i = position; i < journal.capacity(); i++) {
+                journal.put(i, (byte) 0);
+            }
+            journal.force();
+        }
+
+        // Carry on numbering from the snapshot when the journal was emptied by it
+        if (Files.exists(snapshotPath)) {
+            try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                if (channel.read(header, 0) == SNAPSHOT_HEADER_SIZE) {
+                    sequence = Math.max(sequence, header.getLong(8));
+                }
+            }
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private void map(long size) throws IOException {
+        journal = journalChannel.map(MapMode.READ_WRITE, 0, size);
+        journal.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private int checksum(int offset, int size) {
+        ByteBuffer event = journal.duplicate();
+        CRC32 crc32 = new CRC32();
+
+        // The type and sequence, then the payload
+        event.limit(offset + 16).position(offset + 4);
+        crc32.update(event);
+        event.limit(offset + size).position(offset + EVENT_HEADER_SIZE);
+        crc32.update(event);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * @param previousSequence The sequence of the event before, or -1 if it is the first.
+     * @return The size of the event at the offset, or 0 if it is incomplete, corrupt or out of sequence.
+     */
+    private int getEventSize(int offset, long previousSequence) {
+        if (offset + EVENT_HEADER_SIZE > journal.capacity()) {
+            return 0;
+        }
+        int size = journal.getInt(offset);
+        if (size < EVENT_HEADER_SIZE || size > journal.capacity() - offset) {
+            return 0;
+        }
+        if (previousSequence >= 0 && journal.getLong(offset + 8) != previousSequence + 1) {
+            return 0;
+        }
+        return journal.getInt(offset + 16) == checksum(offset, size) ? size : 0;
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        if (journal.capacity() - position < required) {
+            long size = journal.capacity();
+            while (size - position < required) {
+                size *= 2;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Journal is full, take a snapshot to empty it: " + journalPath);
+            }
+            journal.force();
+            map(size);
+        }
+    }
+
+    private long readSnapshot(JournaledState state) throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < SNAPSHOT_HEADER_SIZE || buffer.getInt(0) != SNAPSHOT_MAGIC || buffer.getShort(4) != SNAPSHOT_VERSION) {
+                throw new IOException("Not a version " + SNAPSHOT_VERSION + " snapshot: " + snapshotPath);
+            }
+
+            long snapshotSequence = buffer.getLong(8);
+            int length = buffer.getInt(16);
+            int crc = buffer.getInt(20);
+            if (SNAPSHOT_HEADER_SIZE + length > buffer.capacity()) {
+                throw new IOException("Truncated snapshot: " + snapshotPath);
+            }
+
+            buffer.position(SNAPSHOT_HEADER_SIZE);
+            buffer.limit(SNAPSHOT_HEADER_SIZE + length);
+            CRC32 crc32 = new CRC32();
+            crc32.update(buffer.duplicate());
+            if ((int) crc32.getValue() != crc) {
+                throw new IOException("Corrupt snapshot: " + snapshotPath);
+            }
+
+            state.readSnapshot(buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+            return snapshotSequence;
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Restores the state from the last snapshot and replays the events appended after it.
+     *
+     * @return The number of events replayed, or -1 if there was nothing to recover.
+     */
+    public int recover(JournaledState state) throws IOException {
+        boolean hasSnapshot = Files.exists(snapshotPath);
+        long snapshotSequence = readSnapshot(state);
+
+        int replayed = 0;
+        ByteBuffer event = journal.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        for (int offset = JOURNAL_HEADER_SIZE; offset < position; offset += journal.getInt(offset)) {
+            if (journal.getLong(offset + 8) > snapshotSequence) {
+                event.limit(offset + journal.getInt(offset));
+                event.position(offset + EVENT_HEADER_SIZE);
+                state.replay(journal.getInt(offset + 4), event.slice().order(ByteOrder.LITTLE_ENDIAN));
+                replayed++;
+            }
+        }
+
+        return hasSnapshot || replayed > 0 ? replayed : -1;
+    }
+
+    /**
+     * Starts appending an event. Write the payload to the returned buffer, at most {@link #MAX_EVENT_SIZE} bytes, and
+     * then call {@link #commit()}, or {@link #abort()} if writing it failed.
+     */
+    public ByteBuffer begin(int type) throws IOException {
+        if (eventStart >= 0) {
+            throw new IllegalStateException("The previous event has not been committed");
+        }
+        ensureCapacity(EVENT_HEADER_SIZE + MAX_EVENT_SIZE);
+
+        eventStart = position;
+        eventType = type;
+        journal.limit(position + EVENT_HEADER_SIZE + MAX_EVENT_SIZE);
+        journal.position(position + EVENT_HEADER_SIZE);
+        return journal;
+    }
+
+    /**
+     * Completes the event started by {@link #begin(int)}.
+     */
+    public void commit() {
+        if (eventStart < 0) {
+            throw new IllegalStateException("No event has been started");
+        }
+
+        int size = journal.position() - eventStart;
+        journal.putInt(eventStart + 4, eventType);
+        journal.putLong(eventStart + 8, ++sequence);
+        journal.putInt(eventStart + 16, checksum(eventStart, size));
+        journal.putInt(eventStart + 20, 0);
+        journal.putInt(eventStart, size);
+        journal.limit(journal.capacity());
+
+        position += size;
+        eventStart = -1;
+    }
+
+    /**
+     * Discards the event started by {@link #begin(int)}, e.g. after its payload overflowed the buffer.
+     */
+    public void abort() {
+        if (eventStart < 0) {
+            throw new IllegalStateException("No event has been started");
+        }
+
+        journal.limit(journal.capacity());
+        eventStart = -1;
+    }
+
+    /**
+     * Writes a snapshot of the whole state and empties the journal.
+     */
+    public void snapshot(JournaledState state) throws IOException {
+        if (eventStart >= 0) {
+            throw new IllegalStateException("An event has not been committed");
+        }
+
+        // Serialize, growing the buffer until the state fits
+        while (true) {
+            snapshotBuffer.clear();
+            try {
+                state.writeSnapshot(snapshotBuffer);
+                break;
+            } catch (BufferOverflowException boe) {
+                snapshotBuffer = ByteBuffer.allocate(snapshotBuffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        snapshotBuffer.flip();
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(snapshotBuffer.duplicate());
+        int length = snapshotBuffer.remaining();
+
+        Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, SNAPSHOT_HEADER_SIZE + length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(SNAPSHOT_MAGIC);
+            buffer.putShort(SNAPSHOT_VERSION);
+            buffer.putShort((short) 0);
+            buffer.putLong(sequence);
+            buffer.putInt(length);
+            buffer.putInt((int) crc32.getValue());
+            buffer.put(snapshotBuffer);
+            buffer.force();
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Events up to the snapshot's sequence are now redundant
+        for (int i = JOURNAL_HEADER_SIZE; i < position; i++) {
+            journal.put(i, (byte) 0);
+        }
+        position = JOURNAL_HEADER_SIZE;
+        journal.force();
+    }
+
+    /**
+     * @return The sequence number of the last event appended.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Forces appended events to disk. Not needed to survive the process dying, only the machine.
+     */
+    public void flush() {
+        journal.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            journal.force();
+        } finally {
+            journalChannel.close();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.parker.forex.runtime;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import com.dukascopy.api.IAccount;
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.IEngine;
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.JFException;
+import com.dukascopy.api.Period;
+import com.parker.forex.CustomStrategy;
+import com.parker.forex.orders.RiskEngine;
+
+/**
+ * Runs many strategies inside a single platform strategy, each seeing only its own instruments, orders and share of the
+ * account. Hosted order labels carry the strategy's prefix.
+ */
+public class StrategyHost implements CustomStrategy {
+
+    private static final HostedStrategy[] NONE = new HostedStrategy[0];
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    final String name;
+    final List<HostedStrategy> strategies = new ArrayList<>();
+    final HostedStrategy[][] strategiesByInstrument = new HostedStrategy[Instrument.values().length][];
+
+    IContext context;
+    RiskEngine riskEngine;
+
+    public StrategyHost(String name) {
+        this.name = name;
+        Arrays.fill(strategiesByInstrument, NONE);
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private void log(String message) {
+        context.getConsole().getOut().println(message);
+    }
+
+    /**
+     * Rebuilds the instrument routing table and subscribes the platform to every instrument in use.
+     */
+    private void updateSubscriptions(boolean lock) {
+        Set<Instrument> instruments = EnumSet.noneOf(Instrument.class);
+        for (HostedStrategy strategy : strategies) {
+            if (!strategy.stopped) {
+                instruments.addAll(strategy.instruments);
+            }
+        }
+
+        for (Instrument instrument : Instrument.values()) {
+            List<HostedStrategy> subscribed = new ArrayList<>();
+            for (HostedStrategy strategy : strategies) {
+                if (!strategy.stopped && strategy.instruments.contains(instrument)) {
+                    subscribed.add(strategy);
+                }
+            }
+            strategiesByInstrument[instrument.ordinal()] = subscribed.toArray(NONE);
+        }
+
+        if (context != null) {
+            context.setSubscribedInstruments(instruments, lock);
+        }
+    }
+
+    /**
+     * @return The strategy that submitted the order or null if it was not submitted through the host.
+     */
+    private HostedStrategy getStrategy(IOrder order) {
+        String label = order.getLabel();
+        if (label == null || label.length() < 3 || label.charAt(0) != HostedStrategy.PREFIX) {
+            return null;
+        }
+
+        int index = 0;
+        for (int i = 1; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (c == '_') {
+                return i > 1 && index < strategies.size() ? strategies.get(index) : null;
+            } else if (c < '0' || c > '9' || i > 9) {
+                return null;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return null;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    /**
+     * Hosts a strategy with an equal share of the starting equity.
+     */
+    public StrategyHost add(CustomStrategy strategy) {
+        return add(strategy, Double.NaN);
+    }
+
+    /**
+     * Hosts a strategy.
+     *
+     * @param allocation The fraction of the starting equity the strategy sees as its own.
+     */
+    public StrategyHost add(CustomStrategy strategy, double allocation) {
+        if (context != null) {
+            throw new IllegalStateException("Strategies must be added before the host is started");
+        }
+        strategies.add(new HostedStrategy(strategies.size(), strategy, allocation));
+        return this;
+    }
+
+    /**
+     * Checks the orders of every hosted strategy against the risk engine's limits.
+     */
+    public StrategyHost setRiskEngine(RiskEngine riskEngine) {
+        if (context != null) {
+            throw new IllegalStateException("The risk engine must be set before the host is started");
+        }
+        this.riskEngine = riskEngine;
+        return this;
+    }
+
+    public List<CustomStrategy> getStrategies() {
+        List<CustomStrategy> result = new ArrayList<>();
+        for (HostedStrategy strategy : strategies) {
+            result.add(strategy.strategy);
+        }
+        return result;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods - Implementation of the CustomStrategy interface
+    // *****************************************************************************************************************
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return name + " hosting " + strategies.size() + " strategies";
+    }
+
+    public Instrument getInstrument() {
+        return null;
+    }
+
+    public void onStart(IContext context) throws JFException {
+        this.context = context;
+        if (riskEngine != null) {
+            riskEngine.onStart(context);
+        }
+
+        // Strategies without an allocation share whatever the others leave
+        double allocated = 0;
+        int unallocated = 0;
+        for (HostedStrategy strategy : strategies) {
+            if (Double.isNaN(strategy.allocation)) {
+                unallocated++;
+            } else {
+                allocated += strategy.allocation;
+            }
+        }
+
+        double equity = context.getAccount().getEquity();
+        for (HostedStrategy strategy : strategies) {
+            double allocation = Double.isNaN(strategy.allocation) ? Math.max(1 - allocated, 0) / unallocated : strategy.allocation;
+            strategy.start(this, equity * allocation);
+        }
+        updateSubscriptions(false);
+
+        log("Started " + getDescription() + ".");
+        for (HostedStrategy strategy : strategies) {
+            strategy.strategy.onStart(strategy.context);
+        }
+    }
+
+    public void onTick(Instrument instrument, ITick tick) throws JFException {
+        if (riskEngine != null) {
+            riskEngine.onTick(instrument, tick);
+        }
+        for (HostedStrategy strategy : strategiesByInstrument[instrument.ordinal()]) {
+            strategy.strategy.onTick(instrument, tick);
+        }
+    }
+
+    public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) throws JFException {
+        for (HostedStrategy strategy : strategiesByInstrument[instrument.ordinal()]) {
+            strategy.strategy.onBar(instrument, period, askBar, bidBar);
+        }
+    }
+
+    public void onMessage(IMessage message) throws JFException {
+        if (riskEngine != null) {
+            riskEngine.onMessage(message);
+        }
+
+        IOrder order = message.getOrder();
+        if (order == null) {
+            for (HostedStrategy strategy : strategies) {
+                if (!strategy.stopped) {
+                    strategy.strategy.onMessage(message);
+                }
+            }
+            return;
+        }
+
+        HostedStrategy strategy = getStrategy(order);
+        if (strategy != null && !strategy.stopped) {
+            if (IMessage.Type.ORDER_CLOSE_OK.equals(message.getType()) && IOrder.State.CLOSED.equals(order.getState())) {
+                strategy.realizedProfit += order.getProfitLossInAccountCurrency() - order.getCommission();
+            }
+            strategy.strategy.onMessage(message);
+        }
+    }
+
+    public void onAccount(IAccount account) throws JFException {
+        if (riskEngine != null) {
+            riskEngine.onAccount(account);
+        }
+        for (HostedStrategy strategy : strategies) {
+            if (!strategy.stopped) {
+                strategy.strategy.onAccount(strategy.account);
+            }
+        }
+    }
+
+    public void onStop() throws JFException {
+        for (HostedStrategy strategy : strategies) {
+            if (!strategy.stopped) {
+                strategy.stopped = true;
+                strategy.strategy.onStop();
+            }
+        }
+        log("Stopped " + getDescription() + ".");
+    }
+
+    // *****************************************************************************************************************
+    // Static helper classes
+    // *****************************************************************************************************************
+    /**
+     * A hosted strategy along with the context, engine and account views it is given.
+     */
+    static class HostedStrategy {
+
+        static final char PREFIX = 'S';
+
+        final int index;
+        final String labelPrefix;
+        final CustomStrategy strategy;
+        final double allocation;
+        final Set<Instrument> instruments = EnumSet.noneOf(Instrument.class);
+
+        IContext context;
+        IEngine engine;
+        IAccount account;
+
+        double capital;
+        double realizedProfit;
+        boolean stopped;
+
+        HostedStrategy(int index, CustomStrategy strategy, double allocation) {
+            this.index = index;
+            this.labelPrefix = PREFIX + Integer.toString(index) + "_";
+            this.strategy = strategy;
+            this.allocation = allocation;
+
+            if (strategy.getInstrument() != null) {
+                instruments.add(strategy.getInstrument());
+            }
+        }
+
+        void start(StrategyHost host, double capital) {
+            IContext hostContext = host.context;
+            IEngine hostEngine = host.riskEngine != null ? host.riskEngine.getEngine() : hostContext.getEngine();
+            IAccount hostAccount = hostContext.getAccount();
+            this.capital = capital;
+
+            engine = proxy(IEngine.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "submitOrder":
+                    case "getOrder":
+                        if (args != null && args.length > 0 && args[0] instanceof String) {
+                            args[0] = labelPrefix + args[0];
+                        }
+                        return invoke(hostEngine, method, args);
+                    case "getOrders":
+                        return getOrders((Collection<?>) invoke(hostEngine, method, args));
+                    default:
+                        return invoke(hostEngine, method, args);
+                }
+            });
+
+            account = proxy(IAccount.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getEquity":
+                    case "getBaseEquity":
+                        return getEquity();
+                    case "getBalance":
+                        return this.capital + realizedProfit;
+                    default:
+                        return invoke(hostAccount, method, args);
+                }
+            });
+
+            context = proxy(IContext.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getEngine":
+                        return engine;
+                    case "getAccount":
+                        return account;
+                    case "getSubscribedInstruments":
+                        return Collections.unmodifiableSet(EnumSet.copyOf(instruments));
+                    case "setSubscribedInstruments":
+                        instruments.clear();
+                        @SuppressWarnings("unchecked")
+                        Set<Instrument> subscribed = (Set<Instrument>) args[0];
+                        instruments.addAll(subscribed);
+                        host.updateSubscriptions(args.length > 1 && Boolean.TRUE.equals(args[1]));
+                        return null;
+                    case "stop":
+                        if (!stopped) {
+                            stopped = true;
+                            host.updateSubscriptions(false);
+                            strategy.onStop();
+                        }
+                        return null;
+                    default:
+                        return invoke(hostContext, method, args);
+                }
+            });
+        }
+
+        List<IOrder> getOrders(Collection<?> orders) {
+            List<IOrder> result = new ArrayList<>();
+            for (Object order : orders) {
+                if (((IOrder) order).getLabel().startsWith(labelPrefix)) {
+                    result.add((IOrder) order);
+                }
+            }
+            return result;
+        }
+
+        double getEquity() throws JFException {
+            double equity = capital + realizedProfit;
+            for (IOrder order : engine.getOrders()) {
+                if (IOrder.State.FILLED.equals(order.getState())) {
+                    equity += order.getProfitLossInAccountCurrency();
+                }
+            }
+            return equity;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+        }
+    }
+}
@@ -48,7 +48,9 @@ import com.dukascopy.api.system.ITesterClient.DataLoadingMethod;
 import com.dukascopy.api.system.TesterFactory;
 
 /**
- * This small program demonstrates how to initialize Dukascopy tester and start a strategy
+ * This small program demonstrates how to initialize Dukascopy tester and start a strategy.
+ * <p>
+ * The test period can be passed as arguments in yyyyMMdd format, e.g. <code>TesterMain 20170601 20171231</code>.
  */
 public class TesterMain {
     
@@ -61,8 +63,16 @@ public class TesterMain {
     
     private static ITesterClient client;
     private static String reportsFileLocation = "report.html";
+    
+    private static String dateFrom = "20170601";
+    private static String dateTo = "20171231";
 
     public static void main(String[] args) throws Exception {
+        if (args.length >= 2) {
+            dateFrom = args[0];
+            dateTo = args[1];
+        }
+        
         client = TesterFactory.getDefaultInstance();
 
         setSystemListener();
@@ -160,10 +170,10 @@ public class TesterMain {
         // Set the date range
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
         dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-        Date dateFrom = dateFormat.parse("20170601");
-        Date dateTo = dateFormat.parse("20171231");
+        Date from = dateFormat.parse(dateFrom);
+        Date to = dateFormat.parse(dateTo);
 
-        client.setDataInterval(DataLoadingMethod.ALL_TICKS, dateFrom.getTime(), dateTo.getTime());
+        client.setDataInterval(DataLoadingMethod.ALL_TICKS, from.getTime(), to.getTime());
         client.downloadData(null).get();
     }
 
@@ -1,13 +1,18 @@
 package com.parker.forex.strategies;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.stream.Collectors;
@@ -25,6 +30,10 @@ import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.Period;
+import com.parker.forex.analytics.TradeLedgerWriter;
+import com.parker.forex.indicators.ThresholdBatch;
+import com.parker.forex.runtime.JournaledState;
+import com.parker.forex.runtime.StateJournal;
 
 /**
  * Performance-based strategy that monitors multiple concurrent strategies and opens th next order using the strategy
@@ -32,7 +41,7 @@ import com.dukascopy.api.Period;
  * 
  * @since April 2018.
  */
-public class TheCreeper implements IStrategy {
+public class TheCreeper implements IStrategy, JournaledState {
 
     private static final SimpleDateFormat DATE_FORMAT_SHORT = new SimpleDateFormat("yyyyMMdd");
     private static final SimpleDateFormat DATE_FORMAT_LONG = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss.SSS");
@@ -41,6 +50,13 @@ public class TheCreeper implements IStrategy {
     private static final long MILLIS_IN_YEAR = 31_536_000_000L;
     private static final long MILLIS_IN_DAY = 86_400_000L;
     
+    // Journal event types
+    private static final int EVENT_STARTED = 1;
+    private static final int EVENT_ORDER_PLACED = 2;
+    private static final int EVENT_ORDER_FILLED = 3;
+    private static final int EVENT_ORDER_CLOSED = 4;
+    private static final int EVENT_VIRTUAL_ORDER = 5;
+    
     static {
         DATE_FORMAT_SHORT.setTimeZone(TimeZone.getTimeZone("GMT"));
         DATE_FORMAT_LONG.setTimeZone(TimeZone.getTimeZone("GMT"));
@@ -65,6 +81,13 @@ public class TheCreeper implements IStrategy {
     double startEquity;
     
     List<InstrumentStrategy> strategies;
+    Map<Integer, InstrumentStrategy> strategiesByKey;
+    
+    // The virtual order prices of each instrument's strategies, by instrument ordinal
+    ThresholdBatch[] virtualOrders = new ThresholdBatch[Instrument.values().length];
+    InstrumentStrategy[][] virtualOrderStrategies = new InstrumentStrategy[Instrument.values().length][];
+    TradeLedgerWriter ledger;
+    StateJournal journal;
 
     @Configurable(value = "Base Trade Amount")
     public final double baseTradeAmount = 10.0;
@@ -78,6 +101,12 @@ public class TheCreeper implements IStrategy {
     @Configurable(value = "Min Win %")
     public final int minWinPct = 50;
     
+    @Configurable(value = "Trade Ledger File (blank to disable, relative to the strategy files directory)")
+    public final String ledgerFile = "";
+    
+    @Configurable(value = "State Directory (blank to disable)")
+    public final String stateDirectory = "";
+    
     // *****************************************************************************************************************
     // Private Methods
     // *****************************************************************************************************************
@@ -97,15 +126,34 @@ public class TheCreeper implements IStrategy {
         context.setSubscribedInstruments(instruments);
 
         strategies  = new ArrayList<>();
+        strategiesByKey = new HashMap<>();
         
         for (Instrument instrument : instruments) {
             for (StrategyType strategyType : StrategyType.values()) {
                 for (int takeProfitPips = 20; takeProfitPips <= 100; takeProfitPips += 20) {
-                    strategies.add(new InstrumentStrategy(instrument, strategyType, takeProfitPips));
+                    InstrumentStrategy strategy = new InstrumentStrategy(instrument, strategyType, takeProfitPips);
+                    strategies.add(strategy);
+                    strategiesByKey.put(strategy.key(), strategy);
                 }
             }
         }
         
+        if (!ledgerFile.isEmpty()) {
+            try {
+                ledger = new TradeLedgerWriter(context.getFilesDir().toPath().resolve(ledgerFile));
+            } catch (IOException ioe) {
+                throw new RuntimeException("Could not open trade ledger file.", ioe);
+            }
+        }
+        
+        if (!stateDirectory.isEmpty()) {
+            recoverState();
+        }
+        
+        for (Instrument instrument : instruments) {
+            initVirtualOrders(instrument);
+        }
+        
         log("\nStarted the " + getName() + " strategy using " + strategies.size() + " strategies across " + instruments.size() + " instruments.");
     }
     
@@ -122,7 +170,106 @@ public class TheCreeper implements IStrategy {
             if (startTime == 0) {
                 startTime = time;
                 startEquity = context.getAccount().getEquity();
+                
+                if (journal != null) {
+                    beginEvent(EVENT_STARTED).putLong(startTime).putDouble(startEquity);
+                    journal.commit();
+                }
+            }
+        }
+    }
+    
+    private void recordToLedger(IOrder order) {
+        if (ledger == null) {
+            return;
+        }
+        try {
+            if (State.CLOSED.equals(order.getState())) {
+                ledger.recordClose(order);
+            } else {
+                ledger.recordFill(order);
             }
+        } catch (IOException ioe) {
+            throw new RuntimeException("Could not write to trade ledger file.", ioe);
+        }
+    }
+    
+    private void recordEquityToLedger(long time) {
+        if (ledger == null) {
+            return;
+        }
+        try {
+            ledger.recordEquity(time, context.getAccount().getEquity(), context.getAccount().getBalance());
+        } catch (IOException ioe) {
+            throw new RuntimeException("Could not write to trade ledger file.", ioe);
+        }
+    }
+    
+    private void recoverState() {
+        try {
+            journal = new StateJournal(Paths.get(stateDirectory), getName().toLowerCase());
+            int replayed = journal.recover(this);
+            if (replayed >= 0) {
+                log("Recovered state from " + stateDirectory + " (" + replayed + " events replayed).");
+            }
+        } catch (IOException ioe) {
+            throw new RuntimeException("Could not recover strategy state.", ioe);
+        }
+        
+        // Re-attach any orders still open from before the restart
+        try {
+            for (IOrder order : context.getEngine().getOrders()) {
+                for (InstrumentStrategy strategy : strategies) {
+                    if (order.getLabel().startsWith(getName()) && order.getLabel().endsWith("_" + strategy)) {
+                        strategy.order = order;
+                    }
+                }
+            }
+        } catch (JFException jfe) {
+            throw new RuntimeException("Could not load open orders.", jfe);
+        }
+    }
+    
+    private ByteBuffer beginEvent(int type) {
+        try {
+            return journal.begin(type);
+        } catch (IOException ioe) {
+            throw new RuntimeException("Could not write to strategy state journal.", ioe);
+        }
+    }
+    
+    private void snapshotState() {
+        if (journal != null) {
+            try {
+                journal.snapshot(this);
+            } catch (IOException ioe) {
+                throw new RuntimeException("Could not write strategy state snapshot.", ioe);
+            }
+        }
+    }
+    
+    private void applyClose(InstrumentStrategy strategy, double profit, long duration) {
+        strategy.updateProfit(profit, duration);
+        
+        if (profit < 0) {
+            consecutiveLossCounter++;
+            
+            if (consecutiveLossCounter > maxConsecutiveLossCounter) {
+                maxConsecutiveLossCounter = consecutiveLossCounter;
+            }
+        } else {
+            consecutiveLossCounter = 0;
+        }
+        
+        double totalProfit = this.getTotalProfit();
+        this.maxProfit = Math.max(this.maxProfit, totalProfit);
+
+        double currentDrawDown = this.maxProfit - totalProfit;
+        this.maxDrawDown = Math.max(this.maxDrawDown, currentDrawDown);
+        
+        // Recalculate locked profit
+        if (totalProfit > lockedProfit) {
+            lockedProfit = totalProfit;
         }
     }
     
@@ -142,6 +289,20 @@ public class TheCreeper implements IStrategy {
         return BigDecimal.valueOf(value).setScale(precision, RoundingMode.HALF_UP).doubleValue();
     }
     
+    /**
+     * Batches the virtual orders of the instrument's strategies, starting from their recovered prices.
+     */
+    private void initVirtualOrders(Instrument instrument) {
+        List<InstrumentStrategy> instrumentStrategies = getStrategies(instrument);
+        ThresholdBatch batch = new ThresholdBatch(ThresholdBatch.Mode.CROSS);
+        for (InstrumentStrategy strategy : instrumentStrategies) {
+            int slot = batch.add(strategy.takeProfitPips * instrument.getPipValue(), OrderCommand.BUY.equals(strategy.virtualOrderCommand));
+            batch.setBasePrice(slot, strategy.virtualOrderPrice);
+        }
+        virtualOrders[instrument.ordinal()] = batch;
+        virtualOrderStrategies[instrument.ordinal()] = instrumentStrategies.toArray(new InstrumentStrategy[0]);
+    }
+    
     private List<InstrumentStrategy> getStrategies(Instrument instrument) {
         List<InstrumentStrategy> instrumentStrategies = new ArrayList<>();
         for (InstrumentStrategy strategy : strategies) {
@@ -220,6 +381,11 @@ public class TheCreeper implements IStrategy {
         double lotSize = getLotSize(strategy);
         IOrder order = context.getEngine().submitOrder(label, strategy.instrument, strategy.orderCommand, lotSize, 0, 0);
         strategy.order = order;
+        
+        if (journal != null) {
+            beginEvent(EVENT_ORDER_PLACED).putInt(orderCounter);
+            journal.commit();
+        }
     }
 
     private void handleMessage(IMessage message) throws JFException {
@@ -251,9 +417,15 @@ public class TheCreeper implements IStrategy {
         order.setTakeProfitPrice(round(openPrice + (negator * margin), instrument.getPipScale()));
         order.setStopLossPrice(round(openPrice - (negator * margin), instrument.getPipScale()));
 
+        recordToLedger(order);
         log(order.getLabel(), order.getFillTime(), "Filled " + strategy + " " + order.getOrderCommand() + " for " 
                 + order.getAmount() + " lots. " + strategy.getProfitStatus());
         endTime = order.getFillTime();
+        
+        if (journal != null) {
+            beginEvent(EVENT_ORDER_FILLED).putLong(endTime);
+            journal.commit();
+        }
     }
 
     private void onOrderClosed(IOrder order) throws JFException {
@@ -261,27 +433,13 @@ public class TheCreeper implements IStrategy {
         
         
         InstrumentStrategy strategy = getStrategy(order);
-        strategy.updateProfit(order);
-        
-        if (profit < 0) {
-            consecutiveLossCounter++;
-            
-            if (consecutiveLossCounter > maxConsecutiveLossCounter) {
-                maxConsecutiveLossCounter = consecutiveLossCounter;
-            }
-        } else {
-            consecutiveLossCounter = 0;
-        }
-        
-        double totalProfit = this.getTotalProfit();
-        this.maxProfit = Math.max(this.maxProfit, totalProfit);
-
-        double currentDrawDown = this.maxProfit - totalProfit;
-        this.maxDrawDown = Math.max(this.maxDrawDown, currentDrawDown);
+        long duration = order.getCloseTime() - order.getFillTime();
+        applyClose(strategy, profit, duration);
+        recordToLedger(order);
         
-        // Recalculate locked profit
-        if (totalProfit > lockedProfit) {
-            lockedProfit = totalProfit;
+        if (journal != null) {
+            beginEvent(EVENT_ORDER_CLOSED).putInt(strategy.key()).putDouble(profit).putLong(duration);
+            journal.commit();
         }
         
         log(order.getLabel(), order.getCloseTime(), "Closed " + strategy + " " + order.getOrderCommand() + " of " + order.getAmount() + " lots for $" + round(profit, 2) + " " 
@@ -314,6 +472,23 @@ public class TheCreeper implements IStrategy {
         
         log("Max Drawdown: $" + round(this.maxDrawDown, 2) + " (consecutiveLosses=" + maxConsecutiveLossCounter + ")");
         log(getName() + " strategy stopped.");
+        
+        if (ledger != null) {
+            try {
+                ledger.close();
+            } catch (IOException ioe) {
+                throw new RuntimeException("Could not close trade ledger file.", ioe);
+            }
+        }
+        
+        if (journal != null) {
+            snapshotState();
+            try {
+                journal.close();
+            } catch (IOException ioe) {
+                throw new RuntimeException("Could not close strategy state journal.", ioe);
+            }
+        }
     }
     
     String getProfitStatus() {
@@ -336,13 +511,26 @@ public class TheCreeper implements IStrategy {
     }
 
     public void onTick(Instrument instrument, ITick tick) throws JFException {
-        for (InstrumentStrategy strategy : getStrategies(instrument)) {
-            strategy.onTick(tick);
+        ThresholdBatch batch = virtualOrders[instrument.ordinal()];
+        if (batch == null) {
+            return;
+        }
+        
+        // Only the strategies whose virtual order reached its take profit need to act
+        int moved = batch.update(tick.getBid(), tick.getAsk());
+        for (int i = 0; i < moved; i++) {
+            InstrumentStrategy strategy = virtualOrderStrategies[instrument.ordinal()][batch.getMoved(i)];
+            if (strategy.onTick(tick) && journal != null) {
+                beginEvent(EVENT_VIRTUAL_ORDER).putInt(strategy.key()).putLong(strategy.lastVirtualResult)
+                    .putLong(strategy.lastVirtualDuration).putDouble(strategy.virtualOrderPrice).putLong(strategy.virtualOrderOpenTime);
+                journal.commit();
+            }
         }
     }
 
     public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) throws JFException {
         if (Period.ONE_HOUR.equals(period) && Instrument.EURUSD.equals(instrument)) {
+            recordEquityToLedger(askBar.getTime());
             checkAndTrade(askBar.getTime());
         }
         
@@ -352,12 +540,81 @@ public class TheCreeper implements IStrategy {
             log("Best Strategies:");
             this.getBestStrategies().stream().forEach(s -> log(">>> " + s.toString(), askBar.getTime(), s.getProfitStatus()));
             log("--------------------------------------------------------------------------------------------------");
+            
+            snapshotState();
         }
     }
 
     public void onAccount(IAccount account) throws JFException {
     }
     
+    // *****************************************************************************************************************
+    // Public Methods - Implementation of the JournaledState interface
+    // *****************************************************************************************************************
+    public void writeSnapshot(ByteBuffer buffer) {
+        buffer.putInt(orderCounter).putInt(consecutiveLossCounter).putInt(maxConsecutiveLossCounter);
+        buffer.putDouble(lockedProfit).putDouble(maxProfit).putDouble(maxDrawDown);
+        buffer.putLong(startTime).putLong(endTime).putDouble(startEquity);
+        
+        buffer.putInt(strategies.size());
+        for (InstrumentStrategy strategy : strategies) {
+            buffer.putInt(strategy.key());
+            strategy.writeSnapshot(buffer);
+        }
+    }
+
+    public void readSnapshot(ByteBuffer buffer) {
+        orderCounter = buffer.getInt();
+        consecutiveLossCounter = buffer.getInt();
+        maxConsecutiveLossCounter = buffer.getInt();
+        lockedProfit = buffer.getDouble();
+        maxProfit = buffer.getDouble();
+        maxDrawDown = buffer.getDouble();
+        startTime = buffer.getLong();
+        endTime = buffer.getLong();
+        startEquity = buffer.getDouble();
+        
+        for (int i = buffer.getInt(); i > 0; i--) {
+            int key = buffer.getInt();
+            InstrumentStrategy strategy = strategiesByKey.get(key);
+            
+            // Strategies no longer traded are read and discarded
+            if (strategy == null) {
+                strategy = new InstrumentStrategy(Instrument.EURUSD, StrategyType.BUY, 0);
+            }
+            strategy.readSnapshot(buffer);
+        }
+    }
+
+    public void replay(int type, ByteBuffer event) {
+        switch (type) {
+            case EVENT_STARTED:
+                startTime = event.getLong();
+                startEquity = event.getDouble();
+                break;
+            case EVENT_ORDER_PLACED:
+                orderCounter = event.getInt();
+                break;
+            case EVENT_ORDER_FILLED:
+                endTime = event.getLong();
+                break;
+            case EVENT_ORDER_CLOSED: {
+                InstrumentStrategy strategy = strategiesByKey.get(event.getInt());
+                if (strategy != null) {
+                    applyClose(strategy, event.getDouble(), event.getLong());
+                }
+                break;
+            }
+            case EVENT_VIRTUAL_ORDER: {
+                InstrumentStrategy strategy = strategiesByKey.get(event.getInt());
+                if (strategy != null) {
+                    strategy.applyVirtualOrder(event.getLong(), event.getLong(), event.getDouble(), event.getLong());
+                }
+                break;
+            }
+        }
+    }
+    
     // *****************************************************************************************************************
     // Static helper classes
     // *****************************************************************************************************************
@@ -385,6 +642,8 @@ public class TheCreeper implements IStrategy {
         OrderCommand virtualOrderCommand;
         double virtualOrderPrice;
         long virtualOrderOpenTime;
+        long lastVirtualResult;
+        long lastVirtualDuration;
         List<Long> virtualResults = new ArrayList<>();
         List<Long> virtualOrderDurations = new ArrayList<>();
 
@@ -400,20 +659,34 @@ public class TheCreeper implements IStrategy {
             }
         }
         
-        void onTick(ITick tick) {
+        /**
+         * @return True if a virtual order was opened or closed.
+         */
+        boolean onTick(ITick tick) {
             double price = OrderCommand.BUY.equals(this.virtualOrderCommand) ? tick.getAsk() : tick.getBid();
             long time = tick.getTime();
             
             if (virtualOrderPrice == 0) {
-                virtualOrderPrice = price;
-                virtualOrderOpenTime = time;
+                applyVirtualOrder(0, 0, price, time);
+                return true;
             } else if (Math.abs(price - virtualOrderPrice) > (takeProfitPips * this.instrument.getPipValue())) {
-                if (OrderCommand.BUY.equals(virtualOrderCommand) && price > virtualOrderPrice ||
-                        OrderCommand.SELL.equals(virtualOrderCommand) && price < virtualOrderPrice) {
-                    virtualResults.add(0, time);
-                } else {
-                    this.virtualResults.add(0, -time);
-                }
+                long result = OrderCommand.BUY.equals(virtualOrderCommand) && price > virtualOrderPrice ||
+                        OrderCommand.SELL.equals(virtualOrderCommand) && price < virtualOrderPrice ? time : -time;
+                applyVirtualOrder(result, time - virtualOrderOpenTime, price, time);
+                return true;
+            }
+            return false;
+        }
+        
+        /**
+         * Records the result of the virtual order (0 if there was none) and opens the next one.
+         */
+        void applyVirtualOrder(long result, long duration, double price, long time) {
+            lastVirtualResult = result;
+            lastVirtualDuration = duration;
+            
+            if (result != 0) {
+                this.virtualResults.add(0, result);
                 
                 if (this.virtualResults.size() > MIN_HISTORY_SIZE) {
                     List<Long> extra = this.virtualResults.subList(MIN_HISTORY_SIZE, this.virtualResults.size());
@@ -421,23 +694,22 @@ public class TheCreeper implements IStrategy {
                     this.virtualResults.addAll(extra.stream().filter(r -> (time - Math.abs(r)) < MAX_HISTORY_AGE).collect(Collectors.toList()));
                 }
                 
-                virtualOrderDurations.add(time - virtualOrderOpenTime);
+                virtualOrderDurations.add(duration);
                 
                 if (virtualOrderDurations.size() > this.virtualResults.size()) {
                     this.virtualOrderDurations = this.virtualOrderDurations.subList(0, this.virtualResults.size());
                 }
-                
-                virtualOrderPrice = price;
-                virtualOrderOpenTime = time;
             }
+            
+            virtualOrderPrice = price;
+            virtualOrderOpenTime = time;
         }
         
         void switchOrderCommand() {
             this.virtualOrderCommand = OrderCommand.BUY.equals(this.virtualOrderCommand) ? OrderCommand.SELL : OrderCommand.BUY;
         }
         
-        void updateProfit(IOrder order) {
-            double orderProfit = order.getProfitLossInUSD() - order.getCommissionInUSD();
+        void updateProfit(double orderProfit, long duration) {
             this.profit += orderProfit;
             
             if (orderProfit >= 0) {
@@ -446,7 +718,43 @@ public class TheCreeper implements IStrategy {
                 this.losses++;
             }
             
-            this.totalTradeDuration += 1.0 * (order.getCloseTime() - order.getFillTime());
+            this.totalTradeDuration += duration;
+        }
+        
+        void writeSnapshot(ByteBuffer buffer) {
+            buffer.putInt(wins).putInt(losses).putDouble(profit).putLong(totalTradeDuration);
+            buffer.put((byte) virtualOrderCommand.ordinal()).putDouble(virtualOrderPrice).putLong(virtualOrderOpenTime);
+            
+            buffer.putInt(virtualResults.size());
+            virtualResults.forEach(buffer::putLong);
+            buffer.putInt(virtualOrderDurations.size());
+            virtualOrderDurations.forEach(buffer::putLong);
+        }
+        
+        void readSnapshot(ByteBuffer buffer) {
+            wins = buffer.getInt();
+            losses = buffer.getInt();
+            profit = buffer.getDouble();
+            totalTradeDuration = buffer.getLong();
+            virtualOrderCommand = OrderCommand.values()[buffer.get()];
+            virtualOrderPrice = buffer.getDouble();
+            virtualOrderOpenTime = buffer.getLong();
+            
+            virtualResults = new ArrayList<>();
+            for (int i = buffer.getInt(); i > 0; i--) {
+                virtualResults.add(buffer.getLong());
+            }
+            virtualOrderDurations = new ArrayList<>();
+            for (int i = buffer.getInt(); i > 0; i--) {
+                virtualOrderDurations.add(buffer.getLong());
+            }
+        }
+        
+        /**
+         * @return A key identifying the strategy across restarts.
+         */
+        int key() {
+            return instrument.ordinal() * 100_000 + strategyType.ordinal() * 10_000 + takeProfitPips;
         }
         
         String getProfitStatus() {
@@ -45,6 +45,7 @@ public class BollywoodStrategy implements IStrategy {
     private IContext context;
     private long orderId;
     private int lastLossCounter;
+    private IBar previousBidBar;
     
     // Stats
     private int wins;
@@ -93,8 +94,8 @@ public class BollywoodStrategy implements IStrategy {
             if (lastLossCounter == 0 || lastLossCounter > 5) {
                 closeAllOrders();
                 
-                IBar bar1 = context.getHistory().getBar(instrument, period, OfferSide.BID, 1);
-                IBar bar2 = context.getHistory().getBar(instrument, period, OfferSide.BID, 2);
+                IBar bar1 = bidBar;
+                IBar bar2 = previousBidBar;
                 
                 double[] bbands1 = context.getIndicators().bbands(instrument, period, OfferSide.BID, AppliedPrice.CLOSE, 20, 2, 2, MaType.SMA, 1);
                 double[] bbands2 = context.getIndicators().bbands(instrument, period, OfferSide.BID, AppliedPrice.CLOSE, 20, 2, 2, MaType.SMA, 2);
@@ -107,6 +108,8 @@ public class BollywoodStrategy implements IStrategy {
             } else {
                 lastLossCounter++;
             }
+            
+            previousBidBar = bidBar;
         }
     }
     
@@ -145,6 +148,9 @@ public class BollywoodStrategy implements IStrategy {
     public void onStart(IContext context) throws JFException {
         this.context = context;
         context.setSubscribedInstruments(Collections.singleton(instrument));
+        
+        // Keep the last closed bar locally rather than reading it back from history on every bar
+        previousBidBar = context.getHistory().getBar(instrument, period, OfferSide.BID, 1);
         log("Started " + NAME + " strategy using " + instrument + ".");
     }
     
@@ -3,10 +3,8 @@ package com.parker.forex.strategies.archived;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -21,9 +19,12 @@ import com.dukascopy.api.IOrder.State;
 import com.dukascopy.api.IStrategy;
 import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
+import com.dukascopy.api.InstrumentType;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.OfferSide;
 import com.dukascopy.api.Period;
+import com.parker.forex.orders.ProfitLockerStore;
+import com.parker.forex.orders.ProfitLockerStore.Slot;
 
 /**
  * Multi-currency strategy that will always trade in the same direction. It continuously updates 
@@ -65,7 +66,7 @@ public class CombinedProfitLockerStrategy implements IStrategy {
     volatile long endTime;
     volatile double startEquity;
     
-    volatile List<InstrumentInfo> instrumentInfos;
+    final ProfitLockerStore store = new ProfitLockerStore();
 
     @Configurable(value = "Trade Amount Percentage (% of Equity)")
     public final double tradeAmountPct = 0.0001;
@@ -76,55 +77,67 @@ public class CombinedProfitLockerStrategy implements IStrategy {
     @Configurable(value = "Base ATR Multiplier")
     public final double baseAtrMultiplier = 0.5;
     
+    @Configurable(value = "Trade All Forex Instruments")
+    public final boolean tradeAllInstruments = false;
+    
     // *****************************************************************************************************************
     // Private Methods
     // *****************************************************************************************************************
-    private void init(IContext context) {
+    private void init(IContext context) throws JFException {
         this.context = context;
         
         Set<Instrument> instruments = new HashSet<>();
-        instruments.add(Instrument.EURUSD);
-        instruments.add(Instrument.USDJPY);
-        instruments.add(Instrument.GBPUSD);
-        
-        instruments.add(Instrument.EURJPY);
-        instruments.add(Instrument.EURGBP);
-        instruments.add(Instrument.GBPJPY);
+        if (tradeAllInstruments) {
+            for (Instrument instrument : Instrument.values()) {
+                if (instrument.getType() == InstrumentType.FOREX) {
+                    instruments.add(instrument);
+                }
+            }
+        } else {
+            instruments.add(Instrument.EURUSD);
+            instruments.add(Instrument.USDJPY);
+            instruments.add(Instrument.GBPUSD);
+            
+            instruments.add(Instrument.EURJPY);
+            instruments.add(Instrument.EURGBP);
+            instruments.add(Instrument.GBPJPY);
+        }
         
         context.setSubscribedInstruments(instruments);
 
-        instrumentInfos = new ArrayList<>();
-        
         for (Instrument instrument : instruments) {
-            instrumentInfos.add(new InstrumentInfo(instrument, OrderCommand.BUY, baseAtrMultiplier));
-            instrumentInfos.add(new InstrumentInfo(instrument, OrderCommand.SELL, baseAtrMultiplier));
+            store.add(instrument, OrderCommand.BUY, baseAtrMultiplier);
+            store.add(instrument, OrderCommand.SELL, baseAtrMultiplier);
         }
         
-        log("\nStarted the " + getName() + " strategy using " + instrumentInfos.size() + " instruments.");
+        // Pick up the orders left open by an earlier run
+        for (IOrder order : context.getEngine().getOrders()) {
+            Slot slot = store.get(order);
+            if (slot != null && order.getOrderCommand().equals(slot.orderCommand)
+                    && !State.CLOSED.equals(order.getState()) && !State.CANCELED.equals(order.getState())) {
+                slot.order = order;
+            }
+        }
+        
+        log("\nStarted the " + getName() + " strategy using " + instruments.size() + " instruments.");
     }
     
     private void checkAndTrade(Instrument instrument, Period period, long time) throws JFException {
-        if (Period.DAILY.equals(period)) {
-            List<InstrumentInfo> instrumentInfos = getInstrumentInfos(instrument);
-        
-            if (!instrumentInfos.isEmpty()) {
-                if (startTime == 0) {
-                    // If we haven't started yet then place orders for all instruments
-                    startTime = time;
-                    startEquity = context.getAccount().getEquity();
-                    
-                    for (InstrumentInfo nextInstrumentInfo : instrumentInfos) {
-                        placeOrder(nextInstrumentInfo);
-                    }
-                } else {
-                    // If an instrument does not have an open order then place one
-                    for (InstrumentInfo instrumentInfo : instrumentInfos) {
-                        if (!hasOpenPosition(instrumentInfo)) {
-                            placeOrder(instrumentInfo);
-                        }
-                    }
-                }
+        if (Period.DAILY.equals(period) && store.contains(instrument)) {
+            if (startTime == 0) {
+                startTime = time;
+                startEquity = context.getAccount().getEquity();
             }
+            
+            // If an instrument does not have an open order then place one
+            checkAndTrade(store.get(instrument, true));
+            checkAndTrade(store.get(instrument, false));
+        }
+    }
+    
+    private void checkAndTrade(Slot slot) throws JFException {
+        if (slot != null && !slot.hasOpenPosition()) {
+            placeOrder(slot);
         }
     }
     
@@ -144,12 +157,12 @@ public class CombinedProfitLockerStrategy implements IStrategy {
         return BigDecimal.valueOf(value).setScale(precision, RoundingMode.HALF_UP).doubleValue();
     }
     
-    private double getTradeAmount(InstrumentInfo instrumentInfo) {
+    private double getTradeAmount(Slot slot) {
         double tradeAmount = context.getAccount().getEquity() * this.tradeAmountPct;
         
         // Increase the trade amount if we are under the locked profit amount
-        if (instrumentInfo.profit < instrumentInfo.lockedProfit) {
-            tradeAmount = instrumentInfo.lockedProfit - instrumentInfo.profit + tradeAmount;
+        if (slot.profit < slot.lockedProfit) {
+            tradeAmount = slot.lockedProfit - slot.profit + tradeAmount;
             tradeAmount = Math.min(tradeAmount, getMaxTradeAmount());
         }
         
@@ -160,53 +173,24 @@ public class CombinedProfitLockerStrategy implements IStrategy {
         return context.getAccount().getEquity() * this.maxTradeAmountPct;
     }
 
-    private boolean hasOpenPosition(InstrumentInfo instrumentInfo) throws JFException {
-        for (IOrder order : context.getEngine().getOrders(instrumentInfo.instrument)) {
-            if (!State.CLOSED.equals(order.getState()) && !State.CANCELED.equals(order.getState()) 
-                    && order.getOrderCommand().equals(instrumentInfo.orderCommand)) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
-    private InstrumentInfo getInstrumentInfo(IOrder order) {
-        for (InstrumentInfo instrumentInfo : getInstrumentInfos(order.getInstrument())) {
-            if (instrumentInfo.orderCommand.equals(order.getOrderCommand())) {
-                return instrumentInfo;
-            }
-        }
-        return null;
-    }
-    
-    private List<InstrumentInfo> getInstrumentInfos(Instrument instrument) {
-        List<InstrumentInfo> infos = new ArrayList<>();
-        for (InstrumentInfo instrumentInfo : instrumentInfos) {
-            if (instrumentInfo.instrument.equals(instrument)) {
-                infos.add(instrumentInfo);
-            }
-        }
-        return infos;
-    }
-    
-    private double getLotSize(InstrumentInfo instrumentInfo) throws JFException {
-        Instrument instrument = instrumentInfo.instrument;
+    private double getLotSize(Slot slot) throws JFException {
+        Instrument instrument = slot.instrument;
         
         // Calculate the take profit pips based on the daily true range
         double atr = context.getIndicators().atr(instrument, Period.DAILY, OfferSide.BID, 30, 1);
-        int takeProfitPips = (int) (atr * instrumentInfo.atrMultiplier / instrument.getPipValue());
+        int takeProfitPips = (int) (atr * slot.atrMultiplier / instrument.getPipValue());
         
-        instrumentInfo.takeProfitPips = takeProfitPips;
+        slot.takeProfitPips = takeProfitPips;
         
         // Calculate the lot size
-        double tradeAmount = getTradeAmount(instrumentInfo);
+        double tradeAmount = getTradeAmount(slot);
         return Math.max(round((tradeAmount / takeProfitPips) * 0.01, 3), 0.001);
     }
 
-    private void placeOrder(InstrumentInfo instrumentInfo) throws JFException {
+    private void placeOrder(Slot slot) throws JFException {
         String label = getName() + "_" + (++orderCounter);
-        double lotSize = getLotSize(instrumentInfo);
-        context.getEngine().submitOrder(label, instrumentInfo.instrument, instrumentInfo.orderCommand, lotSize, 0, 0);
+        double lotSize = getLotSize(slot);
+        slot.order = context.getEngine().submitOrder(label, slot.instrument, slot.orderCommand, lotSize, 0, 0);
     }
 
     private void handleMessage(IMessage message) throws JFException {
@@ -222,35 +206,41 @@ public class CombinedProfitLockerStrategy implements IStrategy {
     
     private void onOrderCancelled(IMessage message) throws JFException {
         IOrder order = message.getOrder();
+        Slot slot = store.get(order);
+        if (slot != null) {
+            slot.release(order);
+        }
+        
         log(order.getLabel(), order.getCreationTime(), "Order has been cancelled: " + order.getInstrument() + " " + order.getOrderCommand() + " for " + order.getAmount() 
             + " lots. (" + message.getContent() + ")");
     }
 
     private void onOrderFilled(IOrder order) throws JFException {
         Instrument instrument = order.getInstrument();
-        InstrumentInfo instrumentInfo = getInstrumentInfo(order);
+        Slot slot = store.get(order);
         
         // Set the take profit and stop loss prices
         double openPrice = order.getOpenPrice();
-        double margin = instrument.getPipValue() * instrumentInfo.takeProfitPips;
+        double margin = instrument.getPipValue() * slot.takeProfitPips;
         int negator = order.isLong() ? 1 : -1;
 
         order.setTakeProfitPrice(round(openPrice + (negator * margin), instrument.getPipScale()));
         order.setStopLossPrice(round(openPrice - (negator * margin), instrument.getPipScale()));
 
-        log(order.getLabel(), order.getFillTime(), "Filled " + instrumentInfo + " " + order.getOrderCommand() + " for " + order.getAmount() + " lots. " + instrumentInfo.getProfitStatus());
+        log(order.getLabel(), order.getFillTime(), "Filled " + slot + " " + order.getOrderCommand() + " for " + order.getAmount() + " lots. " + getProfitStatus(slot));
         endTime = order.getFillTime();
     }
 
     private void onOrderClosed(IOrder order) throws JFException {
         double profit = order.getProfitLossInUSD() - order.getCommissionInUSD();
         
-        InstrumentInfo instrumentInfo = getInstrumentInfo(order);
-        instrumentInfo.updateProfit(order);
+        Slot slot = store.get(order);
+        slot.release(order);
+        updateProfit(slot, order, profit);
         updateStats(profit);
         
-        log(order.getLabel(), order.getCloseTime(), "Closed " + instrumentInfo + " " + order.getOrderCommand() + " of " + order.getAmount() + " lots for $" + round(profit, 2) + " " 
-                + (profit >= 0 ? "PROFIT" : "LOSS") + ". " + instrumentInfo.getProfitStatus());
+        log(order.getLabel(), order.getCloseTime(), "Closed " + slot + " " + order.getOrderCommand() + " of " + order.getAmount() + " lots for $" + round(profit, 2) + " " 
+                + (profit >= 0 ? "PROFIT" : "LOSS") + ". " + getProfitStatus(slot));
         
         if (profit < 0) {
             lossCounter++;
@@ -263,7 +253,18 @@ public class CombinedProfitLockerStrategy implements IStrategy {
             consecutiveLossCounter = 0;
         }
         
-        placeOrder(instrumentInfo);
+        placeOrder(slot);
+    }
+    
+    private void updateProfit(Slot slot, IOrder order, double profit) {
+        slot.addProfit(profit);
+        
+        // Safety net - if we have reached our max trade amount then take the hit and reset the profit levels
+        if (slot.lockedProfit - slot.profit > getMaxTradeAmount()) {
+            log(order.getLabel(), order.getCloseTime(), "Max trade amount hit for " + slot + "! Reducing instrument locked profit by $" 
+                    + round(slot.lockedProfit - slot.profit, 2) + ". " + getProfitStatus());
+            slot.lockedProfit = slot.profit;
+        }
     }
     
     private void updateStats(double profit) {
@@ -294,6 +295,11 @@ public class CombinedProfitLockerStrategy implements IStrategy {
         log(getName() + " strategy stopped.");
     }
     
+    String getProfitStatus(Slot slot) {
+        return "[profit=$" + round(slot.profit, 2) + ", lockedProfit=$" + round(slot.lockedProfit, 2) + ", equity=$" 
+                + round(context.getAccount().getEquity(), 2) + "]";
+    }
+    
     String getProfitStatus() {
         return "[profit=$" + round(totalProfit, 2) + ", lockedProfit=$" + round(totalLockedProfit, 2) + ", equity=$" 
                 + round(context.getAccount().getEquity(), 2) + "]";
@@ -323,57 +329,4 @@ public class CombinedProfitLockerStrategy implements IStrategy {
 
     public void onAccount(IAccount account) throws JFException {
     }
-    
-    // *****************************************************************************************************************
-    // Static helper classes
-    // *****************************************************************************************************************
-    class InstrumentInfo {
-
-        final Instrument instrument;
-        final OrderCommand orderCommand;
-        volatile double atrMultiplier;
-        
-        volatile int takeProfitPips;
-        
-        volatile double profit;
-        volatile double lockedProfit;
-        
-        InstrumentInfo(Instrument instrument, OrderCommand orderCommand, double atrMultiplier) {
-            this.instrument = instrument;
-            this.orderCommand = orderCommand;
-            this.atrMultiplier = atrMultiplier;
-        }
-
-        void updateProfit(IOrder order) {
-            double orderProfit = order.getProfitLossInUSD() - order.getCommissionInUSD();
-            this.profit += orderProfit;
-            
-//            if (orderProfit < 0) {
-//                this.atrMultiplier *= 1.5;
-//            } else {
-//                this.atrMultiplier = baseAtrMultiplier;
-//            }
-            
-            if (this.profit > this.lockedProfit) {
-                this.lockedProfit = this.profit;
-            }
-            
-            // Safety net - if we have reached our max trade amount then take the hit and reset the profit levels
-            if (this.lockedProfit - this.profit > getMaxTradeAmount()) {
-                log(order.getLabel(), order.getCloseTime(), "Max trade amount hit for " + this.toString() + "! Reducing instrument locked profit by $" 
-                        + round(this.lockedProfit - this.profit, 2) + ". " + getProfitStatus());
-                this.lockedProfit = this.profit;
-            }
-        }
-        
-        String getProfitStatus() {
-            return "[profit=$" + round(this.profit, 2) + ", lockedProfit=$" + round(this.lockedProfit, 2) + ", equity=$" 
-                    + round(context.getAccount().getEquity(), 2) + "]";
-        }
-        
-        @Override
-        public String toString() {
-            return this.instrument + " (" + this.orderCommand + ")";
-        }
-    }
 }
@@ -10,7 +10,6 @@ import com.dukascopy.api.IBar;
 import com.dukascopy.api.IConsole;
 import com.dukascopy.api.IContext;
 import com.dukascopy.api.IEngine;
-import com.dukascopy.api.IHistory;
 import com.dukascopy.api.IMessage;
 import com.dukascopy.api.IOrder;
 import com.dukascopy.api.IStrategy;
@@ -21,6 +20,9 @@ import com.dukascopy.api.OfferSide;
 import com.dukascopy.api.Period;
 import com.dukascopy.api.TickBarSize;
 import com.dukascopy.api.feed.ITickBar;
+import com.parker.forex.indicators.PriceBarFactory;
+import com.parker.forex.indicators.PriceBarFactory.BarType;
+import com.parker.forex.indicators.PriceBarHistory;
 
 /**
  * Determines buy and sell trigger points based on the crossing over of a fast
@@ -28,18 +30,25 @@ import com.dukascopy.api.feed.ITickBar;
  */
 public class EmaCrossoverStrategy implements IStrategy {
     
+    private static final int HISTORICAL_BARS = 100;
+    
     //*****************************************************************************************************************
     // Instance Fields
     //*****************************************************************************************************************
 	private IContext context;
     private IEngine engine;
-    private IHistory history;
     private IConsole console;
     
     private int orderCounter;
-    private long tickCounter;
     private int previousSignum;
     
+    private final PriceBarFactory priceBars = new PriceBarFactory();
+    private PriceBarHistory tickBars;
+    private long emaBarCount;
+    private long emaCloses;
+    private double fastEma;
+    private double slowEma;
+    
     @Configurable(value = "Instrument")
     public Instrument instrument = Instrument.EURUSD;
     
@@ -84,21 +93,20 @@ public class EmaCrossoverStrategy implements IStrategy {
         }
     }
     
-    private double[] calculateEma(int emaPeriod, List<ITickBar> tickBars) {
-        double[] ema = new double[tickBars.size()];
-        int counter = 0;
+    private double updateEma(int emaPeriod, double ema, double close) {
         double multiplier = 2.0 / (emaPeriod + 1);
-        
-        for (ITickBar tickBar : tickBars) {
-            if (counter == 0) {
-                ema[counter] = tickBar.getClose(); 
-            } else {
-                ema[counter] = (tickBar.getClose() * multiplier) + (ema[counter - 1] * (1 - multiplier));  
-            }
-            counter++;
+        return (close * multiplier) + (ema * (1 - multiplier));
+    }
+    
+    private void addEmaClose(double close) {
+        if (emaCloses == 0) {
+            fastEma = close;
+            slowEma = close;
+        } else {
+            fastEma = updateEma(fastEmaPeriod, fastEma, close);
+            slowEma = updateEma(slowEmaPeriod, slowEma, close);
         }
-        
-        return ema;
+        emaCloses++;
     }
     
     //*****************************************************************************************************************
@@ -107,7 +115,6 @@ public class EmaCrossoverStrategy implements IStrategy {
     public void onStart(IContext context) throws JFException {
     	this.context = context;
         engine = context.getEngine();
-        history = context.getHistory();
         console = context.getConsole();
 
         // Subscribe an instrument
@@ -115,6 +122,17 @@ public class EmaCrossoverStrategy implements IStrategy {
         instruments.add(instrument);                     
         context.setSubscribedInstruments(instruments, true);
         
+        // Build the EMA tick bars locally rather than querying the history every bar
+        tickBars = priceBars.subscribe(instrument, OfferSide.BID, BarType.TICK, emaBarSize, 2);
+        
+        // Warm the EMAs up from the history, which they used to be calculated over
+        @SuppressWarnings("deprecation")
+        List<ITickBar> historicalBars = context.getHistory().getTickBars(instrument, OfferSide.BID, TickBarSize.valueOf(emaBarSize), 
+                HISTORICAL_BARS, context.getHistory().getTimeOfLastTick(instrument), 0);
+        for (ITickBar tickBar : historicalBars) {
+            addEmaClose(tickBar.getClose());
+        }
+        
         log("Strategy started using " + instrument);
     }
 
@@ -122,26 +140,28 @@ public class EmaCrossoverStrategy implements IStrategy {
         log("Strategy stopped.");
     }
 
-    @SuppressWarnings("deprecation")
 	public void onTick(Instrument instrument, ITick tick) throws JFException {
         if (instrument.equals(this.instrument)) {
-            tickCounter++;
+            priceBars.onTick(instrument, tick);
             
-            if (tickCounter % emaBarSize == 0) {
-                tickCounter = 0;
+            if (tickBars.getCount() > emaBarCount) {
+                emaBarCount = tickBars.getCount();
                 
-                List<ITickBar> tickBars = history.getTickBars(instrument, OfferSide.BID, TickBarSize.valueOf(emaBarSize), 100, tick.getTime(), 0);
+                double previousDelta = fastEma - slowEma;
+                addEmaClose(tickBars.getClose(0));
                 
-                double[] fastEma = calculateEma(fastEmaPeriod, tickBars);
-                double[] slowEma = calculateEma(slowEmaPeriod, tickBars);
+                // No signals until the slow EMA has warmed up
+                if (emaCloses <= slowEmaPeriod) {
+                    return;
+                }
                 
                 if (previousSignum == 0) {
-                    previousSignum = (int) Math.signum(fastEma[fastEma.length - 2] - slowEma[fastEma.length - 2]);
+                    previousSignum = (int) Math.signum(previousDelta);
                 }
                 
                 // Determine if we have a trigger
                 IEngine.OrderCommand orderCommand = null;
-                double currentDelta = fastEma[fastEma.length - 1] - slowEma[fastEma.length - 1];
+                double currentDelta = fastEma - slowEma;
                 int currentSignum = (int) Math.signum(currentDelta);
                 
                 //log("Checking for trigger. [currentSignum=" + currentSignum + ",previousSignum=" + previousSignum + "]");
@@ -15,12 +15,13 @@ import com.dukascopy.api.IContext;
 import com.dukascopy.api.IEngine.OrderCommand;
 import com.dukascopy.api.IMessage;
 import com.dukascopy.api.IOrder;
-import com.dukascopy.api.IOrder.State;
 import com.dukascopy.api.IStrategy;
 import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.Period;
+import com.parker.forex.orders.GridLadder;
+import com.parker.forex.orders.GridOrderManager;
 
 public class ExposStrategy implements IStrategy {
 
@@ -88,7 +89,7 @@ public class ExposStrategy implements IStrategy {
         for (GridGroup group : gridGroups) {
             profitLoss += group.getProfitLossInCurrency();
             commission += group.getCommission();
-            orders += group.getOrders().size();
+            orders += group.getOrderCount();
         }
         
         log("------------------------------------------------------------------------------------------------------------");                
@@ -111,16 +112,19 @@ public class ExposStrategy implements IStrategy {
 			} else if (currentGroup.isProfitable(false)) {
 				currentGroup.closeAllOrders();
 				log("Grid Group closed. Profit=$" + round(currentGroup.getProfitLossInCurrency(), 2) + " (equity=$" + round(context.getAccount().getEquity(), 2) 
-					+ ", comm=$" + round(currentGroup.getCommission(), 2) + ", orders=" + currentGroup.getOrders().size() + ")");	
+					+ ", comm=$" + round(currentGroup.getCommission(), 2) + ", orders=" + currentGroup.getOrderCount() + ")");	
 				currentGroup = null;
 			 
 			//else if (currentGroup.isProfitable(true)) {
 			//	currentGroup.setTrailingStop(tick.getBid(), tick.getAsk());
 			//	log("Grid Group profitable. Setting trailing stops...");						
-			} else if (tick.getAsk() >= (currentGroup.getLastBuy() + gridAmount)) {
-				currentGroup.placeOrder(OrderCommand.BUY);
-			} else if (tick.getBid() <= (currentGroup.getLastSell() - gridAmount)) {
-				currentGroup.placeOrder(OrderCommand.SELL);
+			} else if (!currentGroup.isPending()) {
+				// Only extend the grid once the last order has been filled
+				if (tick.getAsk() >= (currentGroup.getLastBuy() + gridAmount)) {
+					currentGroup.placeOrder(OrderCommand.BUY);
+				} else if (tick.getBid() <= (currentGroup.getLastSell() - gridAmount)) {
+					currentGroup.placeOrder(OrderCommand.SELL);
+				}
 			}			
         } 
     }
@@ -128,6 +132,9 @@ public class ExposStrategy implements IStrategy {
     @Override
     public void onMessage(IMessage message) throws JFException {
 		if (message.getOrder().getInstrument().equals(instrument)) {			 
+			if (currentGroup != null) {
+				currentGroup.onMessage(message);
+			}
             if (IMessage.Type.ORDER_FILL_OK.equals(message.getType())) {
 				IOrder order = message.getOrder();  
                 log("Filled order " + order.getLabel() + " @ " + order.getOpenPrice() + " (equity=$" + round(context.getAccount().getEquity(), 2) + ")");                              
@@ -160,7 +167,7 @@ public class ExposStrategy implements IStrategy {
         private int id;
         private double lotSize;  
 		
-		private List<IOrder> orders = new ArrayList<IOrder>();  
+		private final GridOrderManager orders = new GridOrderManager(context.getEngine(), instrument);  
 
         public GridGroup(int id) throws JFException {
             this.id = id;            			
@@ -179,44 +186,35 @@ public class ExposStrategy implements IStrategy {
         }      
 
 		public void placeOrder(OrderCommand orderCommand) throws JFException {
-			String label = orderCommand.toString() + orders.size() + "_" + id;
-			IOrder order = context.getEngine().submitOrder(label, instrument, orderCommand, lotSize);
-	        order.waitForUpdate(State.FILLED);
-			orders.add(order);
+			String label = orderCommand.toString() + orders.getOrderCount() + "_" + id;
+			orders.submit(label, orderCommand, lotSize);
+		}
+
+		public void onMessage(IMessage message) {
+			orders.onMessage(message);
+		}
+
+		public boolean isPending() {
+			return orders.isPending();
 		}
 
 		public double getLastBuy() {
-			double price = 0;
-			for (IOrder order : orders) {
-				if (order.getOpenPrice() > price) {
-					price = order.getOpenPrice();
-				}
-			}
-			return price;
+			GridLadder ladder = orders.getLadder();
+			return ladder.isEmpty() ? 0 : ladder.getPrice(ladder.size() - 1);
 		}
 
 		public double getLastSell() {
-			double price = Double.MAX_VALUE;
-			for (IOrder order : orders) {
-				if (order.getOpenPrice() < price) {
-					price = order.getOpenPrice();
-				}
-			}
-			return price;
+			GridLadder ladder = orders.getLadder();
+			return ladder.isEmpty() ? Double.MAX_VALUE : ladder.getPrice(0);
 		}
 
-        public List<IOrder> getOrders() {
-            return orders;
+        public int getOrderCount() {
+            return orders.getOrderCount();
         }
         
 		public boolean isProfitable(boolean isTrailingStop) {
-            double profitLossPips = 0;
-			int profitableOrders = 0;
-
-            for (IOrder order : getOrders()) {
-                profitLossPips += order.getProfitLossInPips();
-				profitableOrders++;
-            }
+            double profitLossPips = orders.getProfitLossInPips();
+			int profitableOrders = orders.getOrderCount();
 			
 			if (isTrailingStop) {
 				return profitLossPips >= gridSize + (1.0 * gridSize / profitableOrders);
@@ -226,36 +224,19 @@ public class ExposStrategy implements IStrategy {
 		}
 
 		public double getProfitLossInCurrency() {
-            double profitLossPips = 0;
-            for (IOrder order : getOrders()) {
-                profitLossPips += order.getProfitLossInAccountCurrency();
-            }
-            return profitLossPips;
+            return orders.getProfitLoss();
         }
 
         public double getCommission() {
-            double commission = 0;
-            for (IOrder order : getOrders()) {
-                commission += order.getCommission();
-            }
-            return commission;
+            return orders.getCommission();
         }
 
 		public boolean hasOpenOrders() {
-	        for (IOrder order : getOrders()) {
-                if (!State.CLOSED.equals(order.getState()) && !State.CANCELED.equals(order.getState())) {
-                    return true;
-                }
-            }
-			return false;
+			return orders.hasOpenOrders();
 		}
 
         public void closeAllOrders() throws JFException {
-            for (IOrder order : getOrders()) {
-                if (!State.CLOSED.equals(order.getState()) && !State.CANCELED.equals(order.getState())) {
-                    order.close();
-                }
-            }
+            orders.closeAll();
         }
     }
 }
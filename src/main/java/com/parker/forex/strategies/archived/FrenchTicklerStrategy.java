@@ -2,7 +2,6 @@ package com.parker.forex.strategies.archived;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -183,15 +182,15 @@ public class FrenchTicklerStrategy implements IStrategy {
     	double highestHigh = 0.0;
     	double currentHigh = 0.0;
     	
-    	// Get the tick bars and reverse the list so we scan backwards
-    	List<ITickBar> tickBars = tickData.getTickBars(TickBar.T100, 50);
-    	Collections.reverse(tickBars);
+    	// Get the tick bars shared with the EMA check and scan them backwards
+    	List<ITickBar> tickBars = tickData.getRecentTickBars();
     	
     	// Set initial scan direction
     	boolean scanDown = isLong ? true : false;
     		
     	// Determine the highest high and lowest low
-		for (ITickBar tickBar : tickBars) {
+		for (int i = tickBars.size() - 1; i >= 0; i--) {
+			ITickBar tickBar = tickBars.get(i);
 			if (scanDown) {
     			if (currentLow >= tickBar.getLow()) {
     				currentLow = tickBar.getLow();
@@ -263,7 +262,7 @@ public class FrenchTicklerStrategy implements IStrategy {
 //    }
     
     private boolean isPriceOnEma(TickData tickData, Direction direction) throws JFException {
-        List<ITickBar> tickBars = tickData.getTickBars(TickBar.T100, 50);
+        List<ITickBar> tickBars = tickData.getRecentTickBars();
         double currentEmaPrice = calculateCurrentEmaPrice(tickBars);
         ITickBar tickBar = tickBars.get(tickBars.size() - 1);
         
@@ -447,6 +446,7 @@ public class FrenchTicklerStrategy implements IStrategy {
         private Instrument instrument;
         private int currentTickCount;
         private LimitedQueue<ITick> tickQueue;
+        private List<ITickBar> recentTickBars;
         
         //*****************************************************************************************************************
         // Constructor & Life-Cycle Methods
@@ -521,6 +521,7 @@ public class FrenchTicklerStrategy implements IStrategy {
         
         public void addTick(ITick tick) {
             tickQueue.add(tick);
+            recentTickBars = null;
         }
         
         public boolean isQueueFull() {
@@ -532,6 +533,16 @@ public class FrenchTicklerStrategy implements IStrategy {
             return createTickBar(startIndex, tickQueue.size());
         }
         
+        /**
+         * Returns the last 50 100 tick bars, built once per tick as the EMA check and the stop loss both use them.
+         */
+        public List<ITickBar> getRecentTickBars() {
+            if (recentTickBars == null) {
+                recentTickBars = getTickBars(TickBar.T100, 50);
+            }
+            return recentTickBars;
+        }
+        
         public List<ITickBar> getTickBars(int size, int number) {
             List<ITickBar> tickBars = new ArrayList<ITickBar>();
             int queueSize = tickQueue.size();
@@ -16,12 +16,13 @@ import com.dukascopy.api.IContext;
 import com.dukascopy.api.IEngine.OrderCommand;
 import com.dukascopy.api.IMessage;
 import com.dukascopy.api.IOrder;
-import com.dukascopy.api.IOrder.State;
 import com.dukascopy.api.IStrategy;
 import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.Period;
+import com.parker.forex.orders.GridLadder;
+import com.parker.forex.orders.GridOrderManager;
 
 public class GoldenGooseStrategy implements IStrategy {
 
@@ -101,7 +102,7 @@ public class GoldenGooseStrategy implements IStrategy {
         for (GridGroup group : gridGroups) {
             profitLoss += group.getProfitLossInCurrency();
             commission += group.getCommission();
-            orders += group.getOrders().size();
+            orders += group.getOrderCount();
 			duration += group.getDuration();
         }
         
@@ -149,9 +150,9 @@ public class GoldenGooseStrategy implements IStrategy {
 
                 log("Grid Group closed.", tick.getTime());
                 log("Profit=$" + round(profitLoss, 2) + " (equity=$" + round(context.getAccount().getEquity(), 2) 
-                    + ", comm=$" + round(currentGroup.getCommission(), 2) + ", orders=" + currentGroup.getOrders().size() + ")", tick.getTime());  
+                    + ", comm=$" + round(currentGroup.getCommission(), 2) + ", orders=" + currentGroup.getOrderCount() + ")", tick.getTime());  
 				log("Duration: " + round(1.0 * currentGroup.getDuration() / MILLIS_IN_HOUR, 2) + " hours (" 
-					+ round(1.0 * currentGroup.getDuration() / currentGroup.getOrders().size() / MILLIS_IN_HOUR, 2) + " hours/order)", tick.getTime());
+					+ round(1.0 * currentGroup.getDuration() / currentGroup.getOrderCount() / MILLIS_IN_HOUR, 2) + " hours/order)", tick.getTime());
 
                 currentGroup = null; 
                 
@@ -169,10 +170,13 @@ public class GoldenGooseStrategy implements IStrategy {
 //            		currentGroup.placeOrder(OrderCommand.SELL);
 //            	}
 //            }
-            } else if (currentGroup.getLastBuy() != 0 && tick.getAsk() >= (currentGroup.getLastBuy() + gridAmount)) {
-                currentGroup.placeOrder(OrderCommand.BUY);
-            } else if (currentGroup.getLastSell() != Double.MAX_VALUE && tick.getBid() <= (currentGroup.getLastSell() - gridAmount)) {
-                currentGroup.placeOrder(OrderCommand.SELL);
+            } else if (!currentGroup.isPending()) {
+                // Only extend the grid once the last order has been filled
+                if (currentGroup.getLastBuy() != 0 && tick.getAsk() >= (currentGroup.getLastBuy() + gridAmount)) {
+                    currentGroup.placeOrder(OrderCommand.BUY);
+                } else if (currentGroup.getLastSell() != Double.MAX_VALUE && tick.getBid() <= (currentGroup.getLastSell() - gridAmount)) {
+                    currentGroup.placeOrder(OrderCommand.SELL);
+                }
             }            
         } 
     }
@@ -180,6 +184,9 @@ public class GoldenGooseStrategy implements IStrategy {
     @Override
     public void onMessage(IMessage message) throws JFException {
         if (message.getOrder().getInstrument().equals(instrument)) {             
+            if (currentGroup != null) {
+                currentGroup.onMessage(message);
+            }
             if (IMessage.Type.ORDER_FILL_OK.equals(message.getType())) {
                 IOrder order = message.getOrder();  
                 log("Filled order " + order.getLabel() + " @ " + order.getOpenPrice() + " (equity=$" + round(context.getAccount().getEquity(), 2) 
@@ -214,7 +221,7 @@ public class GoldenGooseStrategy implements IStrategy {
         private long startTime;
 		private long endTime;
         
-        private List<IOrder> orders = new ArrayList<IOrder>();  
+        private final GridOrderManager orders = new GridOrderManager(context.getEngine(), instrument);  
 
         public GridGroup(int id, long startTime, OrderCommand orderCommand) throws JFException {
             this.id = id;                      
@@ -248,34 +255,30 @@ public class GoldenGooseStrategy implements IStrategy {
 //				} 
 //			}
 
-            String label = orderCommand.toString() + orders.size() + "_" + id;
-            IOrder order = context.getEngine().submitOrder(label, instrument, orderCommand, lotSize);
-            order.waitForUpdate(State.FILLED);
-            orders.add(order);
+            String label = orderCommand.toString() + orders.getOrderCount() + "_" + id;
+            orders.submit(label, orderCommand, lotSize);
+        }
+
+        public void onMessage(IMessage message) {
+            orders.onMessage(message);
+        }
+
+        public boolean isPending() {
+            return orders.isPending();
         }
 
         public double getLastBuy() {
-            double price = 0;
-            for (IOrder order : orders) {
-                if (order.getOpenPrice() > price) {
-                    price = order.getOpenPrice();
-                }
-            }
-            return price;
+            GridLadder ladder = orders.getLadder();
+            return ladder.isEmpty() ? 0 : ladder.getPrice(ladder.size() - 1);
         }
 
         public double getLastSell() {
-            double price = Double.MAX_VALUE;
-            for (IOrder order : orders) {
-                if (order.getOpenPrice() < price) {
-                    price = order.getOpenPrice();
-                }
-            }
-            return price;
+            GridLadder ladder = orders.getLadder();
+            return ladder.isEmpty() ? Double.MAX_VALUE : ladder.getPrice(0);
         }
 
-        public List<IOrder> getOrders() {
-            return orders;
+        public int getOrderCount() {
+            return orders.getOrderCount();
         }
         
         public boolean isDone() {           
@@ -284,39 +287,19 @@ public class GoldenGooseStrategy implements IStrategy {
         }
 
         public double getProfitLossInCurrency() {
-            double profitLoss = 0;
-            double commission = 0;
-            
-            for (IOrder order : getOrders()) {
-                profitLoss += order.getProfitLossInAccountCurrency();
-                commission += order.getCommission();
-            }
-            return (profitLoss - commission);
+            return (orders.getProfitLoss() - orders.getCommission());
         }
 
         public double getCommission() {
-            double commission = 0;
-            for (IOrder order : getOrders()) {
-                commission += order.getCommission();
-            }
-            return commission;
+            return orders.getCommission();
         }
 
         public boolean hasOpenOrders() {
-            for (IOrder order : getOrders()) {
-                if (!State.CLOSED.equals(order.getState()) && !State.CANCELED.equals(order.getState())) {
-                    return true;
-                }
-            }
-            return false;
+            return orders.hasOpenOrders();
         }
 
         public void closeAllOrders() throws JFException {
-            for (IOrder order : getOrders()) {
-                if (!State.CLOSED.equals(order.getState()) && !State.CANCELED.equals(order.getState())) {
-                    order.close();
-                }
-            }
+            orders.closeAll();
         }
 	}
 }
@@ -7,7 +7,6 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.TimeZone;
 
@@ -23,6 +22,8 @@ import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.Period;
+import com.parker.forex.orders.GridOrderManager;
+import com.parker.forex.orders.MessageRouter;
 
 public class GridLockedStrategy implements IStrategy {
 
@@ -53,6 +54,7 @@ public class GridLockedStrategy implements IStrategy {
     private GridGroup gridDown;
     
     private List<GridGroup> gridGroups = new ArrayList<GridGroup>();
+    private final MessageRouter router = new MessageRouter();
 
     //*****************************************************************************************************************
     // Private Methods
@@ -72,17 +74,12 @@ public class GridLockedStrategy implements IStrategy {
         return round(lotSize, 3);
     }
     
-    private IOrder placeOrder(String label, OrderCommand command, double lotSize, double price, double stopLoss, double takeProfit) throws JFException {
-        //context.getConsole().getOut().println(label + ": Open=" + price + ", SL=" + stopLoss + ", TP=" + takeProfit);
-        
-        IOrder order = context.getEngine().submitOrder(label, instrument, command, lotSize, round(price, instrument.getPipScale()), 0, round(stopLoss, instrument.getPipScale()), round(takeProfit, instrument.getPipScale()));
-        order.waitForUpdate(State.OPENED, State.FILLED);
-        return order;
-    }
-    
     @Override
     public void onMessage(IMessage message) throws JFException {
         IOrder order = message.getOrder();
+        if (order == null) {
+            return;
+        }
         
         if (State.OPENED.equals(order.getState())) {
             context.getConsole().getInfo().println(DF.format(new Date(order.getCreationTime())) + ": " + order.getLabel() + " - Opened " + order.getOrderCommand() + " @ $" + order.getOpenPrice() 
@@ -91,20 +88,6 @@ public class GridLockedStrategy implements IStrategy {
         } else if (State.FILLED.equals(order.getState())) {
             context.getConsole().getInfo().println(DF.format(new Date(order.getFillTime())) + ": " + order.getLabel() + " - Filled " + order.getOrderCommand() + " @ $" + order.getOpenPrice() 
                     + " [SL=$" + order.getStopLossPrice() + ",TP=$" + order.getTakeProfitPrice() + ", amount=" + order.getAmount() + "]");
-            
-            if (gridUp != null && gridUp.hasOrder(order) && !gridUp.isArmed()) {
-                gridUp.setArmed(true);
-                gridUp.initializeOrders();
-                gridDown.closeAllOrders();
-                gridGroups.add(gridUp);
-            }
-            
-            if (gridDown != null && gridDown.hasOrder(order) && !gridDown.isArmed()) {
-                gridDown.setArmed(true);
-                gridDown.initializeOrders();
-                gridUp.closeAllOrders();
-                gridGroups.add(gridDown);
-            }
         } else if (State.CANCELED.equals(order.getState())) {
             context.getConsole().getInfo().println(DF.format(new Date(order.getCloseTime())) + ": " + order.getLabel() + " - Cancelled " + order.getOrderCommand() + " @ $" + order.getOpenPrice() 
                     + " [SL=$" + order.getStopLossPrice() + ",TP=$" + order.getTakeProfitPrice() + ", amount=" + order.getAmount() + "]");
@@ -113,19 +96,10 @@ public class GridLockedStrategy implements IStrategy {
             context.getConsole().getInfo().println(DF.format(new Date(order.getCloseTime())) + ": " + order.getLabel() + " - Closed " + order.getOrderCommand() + " @ $" + order.getClosePrice() 
                     + " [Open=$" + order.getOpenPrice() + ",SL=$" + order.getStopLossPrice() + ",TP=$" + order.getTakeProfitPrice() + ",Profit=$" + order.getProfitLossInAccountCurrency() 
                     + ", Comm=$" + order.getCommission() + ", lots=" + order.getAmount() + "]");
-            
-            GridGroup gridGroup = gridUp.isArmed() ? gridUp : gridDown;
-                
-            if (gridGroup != null) {
-                if (gridGroup.isWinner(order)) {
-                    context.getConsole().getInfo().println("*************************** WINNER *************************** " + order.getLabel() +  " $" + gridGroup.getProfitLoss() + ", Comm=$" + gridGroup.getCommission());
-                    gridGroup.closeAllOrders();
-                } else if (gridGroup.isLoser(order)) {
-                    context.getConsole().getInfo().println(order.getLabel() + "*************************** FAILURE *************************** " + order.getLabel() + " $" + gridGroup.getProfitLoss() + ", Comm=$" + gridGroup.getCommission());
-                    gridGroup.closeAllOrders();
-                }
-            }
         }
+        
+        // Grid groups act on their own orders
+        router.onMessage(message);
     }
 
     @Override
@@ -204,21 +178,20 @@ public class GridLockedStrategy implements IStrategy {
     //*************************************************************************************************************************************************************
     // Inner classes.
     //*************************************************************************************************************************************************************
-    private class GridGroup {
+    private class GridGroup implements MessageRouter.OrderHandler {
     
         private int id;
+        private String prefix;
         private double lotSize;
         private double startPrice;
+        private double startLevelPrice;
         private Direction direction;
         private boolean armed;
         
-        private IOrder long0;
-        private IOrder short0;
+        // The level of the last message's order, as the order manager drops orders once they are closed
+        private int messageLevel = -1;
         
-        private IOrder long1;
-        private IOrder short1;
-        private IOrder long2;
-        private IOrder short2;
+        private final GridOrderManager orders = new GridOrderManager(context.getEngine(), instrument);
 
         public GridGroup(int id, double startPrice, double lotSize, Direction direction) throws JFException {
             this.id = id;
@@ -226,7 +199,8 @@ public class GridLockedStrategy implements IStrategy {
             this.lotSize = lotSize;
             this.direction = direction;
             
-            String prefix = "X" + id + "_" + direction + "_";
+            prefix = "X" + id + "_" + direction + "_";
+            router.route(prefix, this);
             
             double priceUp1 = round(startPrice + (gridSize * instrument.getPipValue()), 4);
             double priceUp3 = round(startPrice + (gridSize * 3 * instrument.getPipValue()), 4);
@@ -236,8 +210,51 @@ public class GridLockedStrategy implements IStrategy {
             OrderCommand buyCommand = Direction.UP.equals(direction) ? OrderCommand.BUYSTOP_BYBID : OrderCommand.BUYLIMIT_BYBID;
             OrderCommand sellCommand = Direction.UP.equals(direction) ? OrderCommand.SELLLIMIT : OrderCommand.SELLSTOP;
             
-            long0 = placeOrder(prefix + "LONG_0", buyCommand, lotSize, startPrice, priceDown3, priceUp1);
-            short0 = placeOrder(prefix + "SHORT_0", sellCommand, lotSize, startPrice, priceUp3, priceDown1);
+            placeOrder(prefix + "LONG_0", buyCommand, startPrice, priceDown3, priceUp1);
+            placeOrder(prefix + "SHORT_0", sellCommand, startPrice, priceUp3, priceDown1);
+            startLevelPrice = orders.getLadder().getPrice(0);
+        }
+        
+        private void placeOrder(String label, OrderCommand command, double price, double stopLoss, double takeProfit) throws JFException {
+            orders.submit(label, command, lotSize, price, 0, stopLoss, takeProfit);
+        }
+        
+        @Override
+        public void onMessage(IMessage message) {
+            messageLevel = orders.onMessage(message);
+            
+            // A group places no more orders once all of its orders are done
+            if (!orders.hasOpenOrders()) {
+                router.unroute(prefix);
+            }
+        }
+        
+        @Override
+        public void onFilled(IOrder order) throws JFException {
+            // The first fill of the current day's groups arms the grid and abandons the other direction
+            if (!armed && (this == gridUp || this == gridDown)) {
+                setArmed(true);
+                initializeOrders();
+                (this == gridUp ? gridDown : gridUp).closeAllOrders();
+                gridGroups.add(this);
+            }
+        }
+        
+        @Override
+        public void onClosed(IOrder order) throws JFException {
+            // Only the current day's armed group closes on a winner or loser
+            GridGroup current = gridUp.isArmed() ? gridUp : gridDown;
+            if (this != current || !armed || !State.CLOSED.equals(order.getState())) {
+                return;
+            }
+            
+            if (isWinner(order, messageLevel)) {
+                context.getConsole().getInfo().println("*************************** WINNER *************************** " + order.getLabel() +  " $" + getProfitLoss() + ", Comm=$" + getCommission());
+                closeAllOrders();
+            } else if (isLoser(order, messageLevel)) {
+                context.getConsole().getInfo().println(order.getLabel() + "*************************** FAILURE *************************** " + order.getLabel() + " $" + getProfitLoss() + ", Comm=$" + getCommission());
+                closeAllOrders();
+            }
         }
         
         public void setArmed(boolean armed) {
@@ -250,96 +267,61 @@ public class GridLockedStrategy implements IStrategy {
 
         public void initializeOrders() throws JFException  {
             this.armed = true;
-            String prefix = "X" + id + "_" + direction + "_";
 
             if (Direction.UP.equals(direction)) {
                 double priceUp1 = round(startPrice + (gridSize * instrument.getPipValue()), 4);
                 double priceUp2 = round(startPrice + (gridSize * 2 * instrument.getPipValue()), 4);
                 double priceUp3 = round(startPrice + (gridSize * 3 * instrument.getPipValue()), 4);
                 
-                long1 = placeOrder(prefix + "LONG_1", OrderCommand.BUYSTOP_BYBID, lotSize, priceUp1, startPrice, priceUp2);
-                short1 = placeOrder(prefix + "SHORT_1", OrderCommand.SELLLIMIT, lotSize, priceUp1, priceUp3, startPrice);
+                placeOrder(prefix + "LONG_1", OrderCommand.BUYSTOP_BYBID, priceUp1, startPrice, priceUp2);
+                placeOrder(prefix + "SHORT_1", OrderCommand.SELLLIMIT, priceUp1, priceUp3, startPrice);
                 
-                long2 = placeOrder(prefix + "LONG_2", OrderCommand.BUYSTOP_BYBID, lotSize, priceUp2, priceUp1, priceUp3);
-                short2 = placeOrder(prefix + "SHORT_2", OrderCommand.SELLLIMIT, lotSize, priceUp2, priceUp3, priceUp1);
+                placeOrder(prefix + "LONG_2", OrderCommand.BUYSTOP_BYBID, priceUp2, priceUp1, priceUp3);
+                placeOrder(prefix + "SHORT_2", OrderCommand.SELLLIMIT, priceUp2, priceUp3, priceUp1);
                 
             } else {
                 double priceDown1 = round(startPrice - (gridSize * instrument.getPipValue()), 4);
                 double priceDown2 = round(startPrice - (gridSize * 2 * instrument.getPipValue()), 4);
                 double priceDown3 = round(startPrice - (gridSize * 3 * instrument.getPipValue()), 4);
                 
-                short1 = placeOrder(prefix + "SHORT_1", OrderCommand.SELLSTOP, lotSize, priceDown1, startPrice, priceDown2);
-                long1 = placeOrder(prefix + "LONG_1", OrderCommand.BUYLIMIT_BYBID, lotSize, priceDown1, priceDown3, startPrice);
+                placeOrder(prefix + "SHORT_1", OrderCommand.SELLSTOP, priceDown1, startPrice, priceDown2);
+                placeOrder(prefix + "LONG_1", OrderCommand.BUYLIMIT_BYBID, priceDown1, priceDown3, startPrice);
                 
-                short2 = placeOrder(prefix + "SHORT_2", OrderCommand.SELLSTOP, lotSize, priceDown2, priceDown1, priceDown3);
-                long2 = placeOrder(prefix + "LONG_2", OrderCommand.BUYLIMIT_BYBID, lotSize, priceDown2, priceDown3, priceDown1);
+                placeOrder(prefix + "SHORT_2", OrderCommand.SELLSTOP, priceDown2, priceDown1, priceDown3);
+                placeOrder(prefix + "LONG_2", OrderCommand.BUYLIMIT_BYBID, priceDown2, priceDown3, priceDown1);
             }
         }
         
-        public boolean hasOrder(IOrder order) {
-            return getOrders().contains(order);
-        }
-        
-        public boolean isWinner(IOrder order) {
-            return order.getProfitLossInPips() > 0 && ((Direction.UP.equals(direction) && (order.equals(short1) || order.equals(short2))) 
-                    || (Direction.DOWN.equals(direction) && (order.equals(long1) || order.equals(long2))));
-        }
-        
-        public boolean isLoser(IOrder order) {
-            return order.getProfitLossInPips() > 0 && ((Direction.UP.equals(direction) && order.equals(long2)) 
-                    || (Direction.DOWN.equals(direction) && order.equals(short2)));
+        public boolean isWinner(IOrder order, int level) {
+            // A short above the start level when trending up or a long below it when trending down
+            int startLevel = orders.getLadder().indexOf(startLevelPrice);
+            return order.getProfitLossInPips() > 0 && level >= 0 && startLevel >= 0 
+                    && ((Direction.UP.equals(direction) && !order.isLong() && level > startLevel) 
+                    || (Direction.DOWN.equals(direction) && order.isLong() && level < startLevel));
         }
         
-        public List<IOrder> getOrders() {
-            List<IOrder> orders = new ArrayList<IOrder>();
-            orders.add(long0);
-            orders.add(long1);
-            orders.add(long2);
-            orders.add(short0);
-            orders.add(short1);
-            orders.add(short2);
-            
-            for (Iterator<IOrder> iterator = orders.iterator(); iterator.hasNext();) {
-                if (iterator.next() == null) {
-                    iterator.remove();
-                }
-            }
-            
-            return orders;
+        public boolean isLoser(IOrder order, int level) {
+            // A long at the top of the grid when trending up or a short at the bottom when trending down
+            int lastLevel = orders.getLadder().size() - 1;
+            return order.getProfitLossInPips() > 0 && level >= 0 && lastLevel > 0 
+                    && ((Direction.UP.equals(direction) && order.isLong() && level == lastLevel) 
+                    || (Direction.DOWN.equals(direction) && !order.isLong() && level == 0));
         }
         
         public double getProfitLoss() {
-            double profitLoss = 0;
-            for (IOrder order : getOrders()) {
-                profitLoss += order.getProfitLossInAccountCurrency();
-            }
-            return profitLoss;
+            return orders.getProfitLoss();
         }
         
         public double getCommission() {
-            double commission = 0;
-            for (IOrder order : getOrders()) {
-                commission += order.getCommission();
-            }
-            return commission;
+            return orders.getCommission();
         }
         
         public int getOrdersFilled() {
-            int ordersFilled = 0;
-            for (IOrder order : getOrders()) {
-                if (order.getFillTime() > 0) {
-                    ordersFilled++;
-                }
-            }
-            return ordersFilled;
+            return orders.getOrdersFilled();
         }
         
         public void closeAllOrders() throws JFException {
-            for (IOrder order : getOrders()) {
-                if (!State.CLOSED.equals(order.getState()) && !State.CANCELED.equals(order.getState())) {
-                    order.close();
-                }
-            }
+            orders.closeAll();
         }
     }
 }
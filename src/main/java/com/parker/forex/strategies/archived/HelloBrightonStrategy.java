@@ -25,6 +25,7 @@ import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.Period;
+import com.parker.forex.orders.MessageRouter;
 
 /**
  * Pairs trading based on cointegration. Determines order entry triggers based on the price spread deviation 
@@ -58,6 +59,7 @@ public class HelloBrightonStrategy implements IStrategy {
 	
 	private volatile List<Correlation> correlations;
 	private volatile List<InstrumentInfo> infos;
+	private final MessageRouter router = new MessageRouter();
 	
     @Configurable(value = "Lot Size")
     public double lotSize = 0.01;
@@ -97,8 +99,8 @@ public class HelloBrightonStrategy implements IStrategy {
         return BigDecimal.valueOf(value).setScale(precision, RoundingMode.HALF_UP).doubleValue();
     } 
 	
-    private IOrder placeOrder(Instrument instrument, OrderCommand orderCommand) throws JFException {
-        String label = instrument.name() + "_" + orderCounter++;  
+    private IOrder placeOrder(String labelPrefix, Instrument instrument, OrderCommand orderCommand) throws JFException {
+        String label = labelPrefix + instrument.name() + "_" + orderCounter++;  
         IOrder order = context.getEngine().submitOrder(label, instrument, orderCommand, lotSize);
         order.waitForUpdate(State.FILLED);	
 		return order;
@@ -151,26 +153,9 @@ public class HelloBrightonStrategy implements IStrategy {
         } else if (IMessage.Type.ORDER_CLOSE_OK.equals(message.getType())) {
             log(order.getInstrument() + ": Closed " + order.getOrderCommand() + " order " + order.getLabel() + " @ $" + order.getClosePrice() + " for $" + round(order.getProfitLossInAccountCurrency(), 2) +
                     " (" + order.getProfitLossInPips() + " pips)", order.getCloseTime());
-            
-            
-            for (Correlation correlation : correlations) {
-            	if (correlation.hasOrder(order)) {
-            		if (Double.isNaN(correlation.currentProfit)) {
-            			correlation.currentProfit = order.getProfitLossInUSD();
-            		} else {
-            			correlation.currentProfit += order.getProfitLossInUSD();
-            			
-            			if (correlation.currentProfit > 0) {
-            				correlation.wins++;
-            			} else {
-            				correlation.losses++;
-            			}
-            			
-            			correlation.currentProfit = Double.NaN;
-            		}
-            	}
-            }
         }
+        
+        router.onMessage(message);
     }
     
     protected boolean isTradingWindow(long time) {
@@ -228,10 +213,11 @@ public class HelloBrightonStrategy implements IStrategy {
      * Inner classes. 
      * ***************************************************************************************************************
      */
-    private class Correlation {
+    private class Correlation implements MessageRouter.OrderHandler {
     	
     	private volatile InstrumentInfo info1;
     	private volatile InstrumentInfo info2;
+    	private final String labelPrefix;
     	private volatile double meanAtOpen;
     	
     	private volatile double currentProfit =  Double.NaN;
@@ -244,6 +230,8 @@ public class HelloBrightonStrategy implements IStrategy {
     	public Correlation(InstrumentInfo info1, InstrumentInfo info2) {
     		this.info1 = info1;
     		this.info2 = info2;
+    		this.labelPrefix = info1.instrument.name() + "_" + info2.instrument.name() + "_";
+    		router.route(labelPrefix, this);
     	}
     	
 		public void addMean(String time, double mean) {			
@@ -342,13 +330,13 @@ public class HelloBrightonStrategy implements IStrategy {
 			
 			if (deviation > deviationLimitOpen) {
 				log("Opening orders. [deviation=" + round(deviation, 1) + ", LastMean=" + round(lastMean, 1) + ", MeanDeviation=" + round(meanDrift, 6) + ", Convergent]");
-				orders.add(placeOrder(info1.instrument, OrderCommand.SELL));
-				orders.add(placeOrder(info2.instrument, OrderCommand.BUY));
+				orders.add(placeOrder(labelPrefix, info1.instrument, OrderCommand.SELL));
+				orders.add(placeOrder(labelPrefix, info2.instrument, OrderCommand.BUY));
 				meanAtOpen = lastMean;
 			} else if (deviation < (-1 * deviationLimitOpen)) {
 				log("Opening orders. [deviation=" + round(deviation, 1) + ", LastMean=" + round(lastMean, 1) + ", MeanDeviation=" + round(meanDrift, 6) + ", Divergent]");
-				orders.add(placeOrder(info1.instrument, OrderCommand.BUY));
-				orders.add(placeOrder(info2.instrument, OrderCommand.SELL));
+				orders.add(placeOrder(labelPrefix, info1.instrument, OrderCommand.BUY));
+				orders.add(placeOrder(labelPrefix, info2.instrument, OrderCommand.SELL));
 				meanAtOpen = lastMean;
 			 }			
 		}
@@ -382,13 +370,22 @@ public class HelloBrightonStrategy implements IStrategy {
 			log("", true);
 		}
 		
-		public boolean hasOrder(IOrder order) {
-			for (IOrder nextOrder : orders) {
-				if (nextOrder.equals(order)) {
-					return true;
+		@Override
+		public void onClosed(IOrder order) {
+			// The pair is scored once both of its orders have closed
+			if (Double.isNaN(currentProfit)) {
+				currentProfit = order.getProfitLossInUSD();
+			} else {
+				currentProfit += order.getProfitLossInUSD();
+				
+				if (currentProfit > 0) {
+					wins++;
+				} else {
+					losses++;
 				}
+				
+				currentProfit = Double.NaN;
 			}
-			return false;
 		}
     }
     
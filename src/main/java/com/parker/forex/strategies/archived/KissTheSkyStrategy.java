@@ -20,6 +20,7 @@ import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.Period;
+import com.parker.forex.orders.GridOrderManager;
 
 /**
  * A grid-based trading strategy using a fixed grid size but with no fixed take profit. Once a grid level is reached
@@ -43,6 +44,7 @@ public class KissTheSkyStrategy implements IStrategy {
     //*****************************************************************************************************************
     private IContext context;
     private long orderId;
+    private GridOrderManager grid;
     
     // Stats
     private int wins;
@@ -71,9 +73,7 @@ public class KissTheSkyStrategy implements IStrategy {
     }
     
     private void closeAllOrders() throws JFException {
-        for (IOrder order : context.getEngine().getOrders(instrument)) {
-            order.close();
-        }
+        grid.closeAll();
     }
     
     private String getLabel(Instrument instrument) {
@@ -85,10 +85,11 @@ public class KissTheSkyStrategy implements IStrategy {
     }
     
     private IOrder placeTrade(OrderCommand orderCommand)  throws JFException {
-        return context.getEngine().submitOrder(getLabel(instrument), instrument, orderCommand, baseLotSize, 0, SLIPPAGE);
+        return grid.submit(getLabel(instrument), orderCommand, baseLotSize, 0, SLIPPAGE, 0, 0);
     }
     
     private void placeOrders() throws JFException {
+        grid = new GridOrderManager(context.getEngine(), instrument);
         placeTrade(OrderCommand.BUY);
         placeTrade(OrderCommand.SELL);
     }
@@ -97,8 +98,10 @@ public class KissTheSkyStrategy implements IStrategy {
     // Public Methods
     //*****************************************************************************************************************
     public void onMessage(IMessage message) throws JFException {
-        if (message.getOrder().getInstrument().equals(instrument)) {
+        // The grid is created when the first orders are placed
+        if (grid != null && message.getOrder().getInstrument().equals(instrument)) {
             IOrder order = message.getOrder();
+            grid.onMessage(message);
             int multiplier = order.isLong() ? 1 : -1;
             
             if (IMessage.Type.ORDER_FILL_OK.equals(message.getType())) {
@@ -115,7 +118,7 @@ public class KissTheSkyStrategy implements IStrategy {
             	
             	// When the first order is closed by hitting its stop loss adjust the stop loss on the remaining order to protect profits
         		if (order.getProfitLossInPips() < 0) {
-        			List<IOrder> openOrders = context.getEngine().getOrders(instrument);
+        			List<IOrder> openOrders = grid.getOpenOrders();
         			
         			if (!openOrders.isEmpty()) {
         				IOrder openOrder = openOrders.get(0);
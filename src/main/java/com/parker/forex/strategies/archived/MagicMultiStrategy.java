@@ -1,8 +1,11 @@
 package com.parker.forex.strategies.archived;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -31,13 +34,15 @@ import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.OfferSide;
 import com.dukascopy.api.Period;
+import com.parker.forex.runtime.JournaledState;
+import com.parker.forex.runtime.StateJournal;
 
 /**
  * A trend-following strategy that trades multiple currency pairs simultaneously. Lot sizes for each trade are 
  * dynamically calculated based on the current profitability. Take profit pips are also dynamically calculated
  * based on the average daily range of the instrument.
  */
-public class MagicMultiStrategy implements IStrategy {
+public class MagicMultiStrategy implements IStrategy, JournaledState {
     
     private static final SimpleDateFormat DATE_FORMAT_LONG = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss.SSS");
     private static final SimpleDateFormat DATE_FORMAT_MEDIUM = new SimpleDateFormat("yyyyMMddHHmm");
@@ -45,6 +50,12 @@ public class MagicMultiStrategy implements IStrategy {
     
     private static final long MILLIS_IN_DAY = 1000 * 60 * 60 * 24;
     
+    // Journal event types
+    private static final int EVENT_STARTED = 1;
+    private static final int EVENT_ORDER_PLACED = 2;
+    private static final int EVENT_ORDER_CLOSED = 3;
+    private static final int EVENT_QUEUE_CLEARED = 4;
+    
     static {
         DATE_FORMAT_LONG.setTimeZone(TimeZone.getTimeZone("GMT"));
         DATE_FORMAT_MONTH.setTimeZone(TimeZone.getTimeZone("GMT"));
@@ -63,6 +74,7 @@ public class MagicMultiStrategy implements IStrategy {
     private volatile double openLots;
     
     private volatile PrintWriter printWriter;
+    private StateJournal journal;
     
     private double startingEquity;
     private double maxEquity;
@@ -88,6 +100,9 @@ public class MagicMultiStrategy implements IStrategy {
     @Configurable(value = "ADR Multiplier")
     public final double adrMultiplier = 1.0;
     
+    @Configurable(value = "State Directory (blank to disable)")
+    public final String stateDirectory = "";
+    
     //*****************************************************************************************************************
     // Private Methods
     //*****************************************************************************************************************
@@ -108,6 +123,49 @@ public class MagicMultiStrategy implements IStrategy {
         return BigDecimal.valueOf(value).setScale(precision, RoundingMode.HALF_UP).doubleValue();
     }
     
+    private ByteBuffer beginEvent(int type) {
+        try {
+            return journal.begin(type);
+        } catch (IOException ioe) {
+            throw new RuntimeException("Could not write to strategy state journal.", ioe);
+        }
+    }
+    
+    private void snapshotState() {
+        if (journal != null) {
+            try {
+                journal.snapshot(this);
+            } catch (IOException ioe) {
+                throw new RuntimeException("Could not write strategy state snapshot.", ioe);
+            }
+        }
+    }
+    
+    private void updateTradingPeriod(long fillTime, long closeTime) {
+    	if (startTime == 0) {
+    		startTime = fillTime;
+    	}
+    	endTime = closeTime;
+    }
+    
+    private void applyClose(Instrument instrument, double amount, boolean isWin, OrderCommand queuedOrderCommand) {
+    	openLots -= amount;
+    	
+        if (isWin) {
+            winCounter++;
+            lossLots = Math.max(lossLots - amount, 0);
+        } else {
+            lossCounter++;
+           	lossLots += amount;
+           	
+           	// A journal may name an instrument that is no longer traded
+           	InstrumentInfo instrumentInfo = instrumentInfos.get(instrument);
+           	if (instrumentInfo != null) {
+           		queuedOrders.put(instrumentInfo, queuedOrderCommand);
+           	}
+        }
+    }
+    
     private double getLotSize(InstrumentInfo instrumentInfo) throws JFException {
     	double lotSize = instrumentInfo.getBaseLotSize();
         if (openLots >= maxTotalOpenLots) {
@@ -129,6 +187,11 @@ public class MagicMultiStrategy implements IStrategy {
         String label = getName() + "_" + instrument.name() + "_" + (++orderCounter);
         IOrder order = context.getEngine().submitOrder(label, instrument, orderCommand, getLotSize(instrumentInfo), 0, 0);
         openLots += order.getAmount(); 
+        
+        if (journal != null) {
+        	beginEvent(EVENT_ORDER_PLACED).putInt(orderCounter).putDouble(order.getAmount());
+        	journal.commit();
+        }
     }
  
     private void onOrderCancelled(IMessage message) throws JFException {    
@@ -156,21 +219,20 @@ public class MagicMultiStrategy implements IStrategy {
     	Instrument instrument = order.getInstrument();
     	OrderCommand orderCommand = order.getOrderCommand();
     	InstrumentInfo instrumentInfo = instrumentInfos.get(instrument);
+    	boolean isWin = order.getProfitLossInPips() >= 0;
     	
-    	openLots -= order.getAmount();
+        // Always trade in the current direction of the price, delaying the next trade after a loss to account for volatility
+    	OrderCommand queuedOrderCommand = OrderCommand.BUY.equals(orderCommand) ? OrderCommand.SELL : OrderCommand.BUY;
+    	applyClose(instrument, order.getAmount(), isWin, queuedOrderCommand);
     	
-        if (order.getProfitLossInPips() >= 0) {
-            winCounter++;
-            lossLots = Math.max(lossLots - order.getAmount(), 0);
+        if (journal != null) {
+        	beginEvent(EVENT_ORDER_CLOSED).putShort((short) instrument.ordinal()).putDouble(order.getAmount()).put((byte) (isWin ? 1 : 0))
+        		.put((byte) queuedOrderCommand.ordinal()).putLong(order.getFillTime()).putLong(order.getCloseTime());
+        	journal.commit();
+        }
+    	
+        if (isWin) {
             placeOrder(instrumentInfo, orderCommand);
-        } else {            
-            // Always trade in the current direction of the price
-            lossCounter++;
-           	lossLots += order.getAmount();
-            
-            // Delay the next trade after a loss to account for volatility
-            orderCommand = OrderCommand.BUY.equals(orderCommand) ? OrderCommand.SELL : OrderCommand.BUY;
-            queuedOrders.put(instrumentInfo, orderCommand);
         }
         
         log(order.getLabel() + " @ " + DATE_FORMAT_LONG.format(new Date(order.getCloseTime())) + ": Closed " + instrument + " " +  order.getOrderCommand() + " order @ $" 
@@ -244,6 +306,20 @@ public class MagicMultiStrategy implements IStrategy {
        	}
        	
        	logLine();
+       	
+       	if (!stateDirectory.isEmpty()) {
+       		try {
+       			journal = new StateJournal(Paths.get(stateDirectory), getName().toLowerCase());
+       			int replayed = journal.recover(this);
+       			if (replayed >= 0) {
+       				log("Recovered state from " + stateDirectory + " (" + replayed + " events replayed, openLots=" + round(openLots, 3) 
+       					+ ", lossLots=" + round(lossLots, 3) + ", queuedOrders=" + queuedOrders.size() + ").");
+       			}
+       		} catch (IOException ioe) {
+       			throw new RuntimeException("Could not recover strategy state.", ioe);
+       		}
+       	}
+       	
         log("Started the " + getName() + " strategy using " + instruments.size() + " instruments.");
     }
 
@@ -251,10 +327,7 @@ public class MagicMultiStrategy implements IStrategy {
     	IOrder order = message.getOrder();
     	if (order != null) {
     		if (order.getCloseTime() > 0) {
-    			if (startTime == 0) {
-    				startTime = order.getFillTime();
-    			}
-    			endTime = order.getCloseTime();
+    			updateTradingPeriod(order.getFillTime(), order.getCloseTime());
     		}
     		
 	        if (State.CANCELED.equals(order.getState())) {
@@ -281,6 +354,15 @@ public class MagicMultiStrategy implements IStrategy {
         log("Max Draw Down: $" + round(maxDrawDown, 2));
         
         printWriter.close();
+        
+        if (journal != null) {
+        	snapshotState();
+        	try {
+        		journal.close();
+        	} catch (IOException ioe) {
+        		throw new RuntimeException("Could not close strategy state journal.", ioe);
+        	}
+        }
     }
     
     public void onTick(Instrument instrument, ITick tick) throws JFException {
@@ -291,10 +373,19 @@ public class MagicMultiStrategy implements IStrategy {
 	    	if (!started) {
 	    		started = true;
 	    		placeInitialOrders();
+	    		
+	    		if (journal != null) {
+	    			beginEvent(EVENT_STARTED);
+	    			journal.commit();
+	    		}
 	    	} else if (!queuedOrders.isEmpty()) {
 	    		placeQueuedOrders();
 	    	}
     	}
+    	
+    	if (Period.DAILY.equals(period) && Instrument.EURUSD.equals(inst)) {
+    		snapshotState();
+    	}
     }
 
 	private void placeQueuedOrders() throws JFException {
@@ -303,6 +394,11 @@ public class MagicMultiStrategy implements IStrategy {
 				placeOrder(entry.getKey(), entry.getValue());
 			}
 			queuedOrders.clear();
+			
+			if (journal != null) {
+				beginEvent(EVENT_QUEUE_CLEARED);
+				journal.commit();
+			}
 		}
 	}
 
@@ -320,6 +416,63 @@ public class MagicMultiStrategy implements IStrategy {
     public void onAccount(IAccount account) throws JFException {
     }
     
+    //*****************************************************************************************************************
+    // Public Methods - Implementation of the JournaledState interface
+    //*****************************************************************************************************************
+    public void writeSnapshot(ByteBuffer buffer) {
+    	buffer.put((byte) (started ? 1 : 0)).putInt(orderCounter).putInt(winCounter).putInt(lossCounter);
+    	buffer.putDouble(lossLots).putDouble(openLots).putDouble(maxEquity).putDouble(maxDrawDown);
+    	buffer.putLong(startTime).putLong(endTime);
+    	
+    	synchronized (queuedOrders) {
+    		buffer.putInt(queuedOrders.size());
+    		for (Entry<InstrumentInfo, OrderCommand> entry : queuedOrders.entrySet()) {
+    			buffer.putShort((short) entry.getKey().getInstrument().ordinal()).put((byte) entry.getValue().ordinal());
+    		}
+    	}
+    }
+    
+    public void readSnapshot(ByteBuffer buffer) {
+    	started = buffer.get() == 1;
+    	orderCounter = buffer.getInt();
+    	winCounter = buffer.getInt();
+    	lossCounter = buffer.getInt();
+    	lossLots = buffer.getDouble();
+    	openLots = buffer.getDouble();
+    	maxEquity = buffer.getDouble();
+    	maxDrawDown = buffer.getDouble();
+    	startTime = buffer.getLong();
+    	endTime = buffer.getLong();
+    	
+    	queuedOrders.clear();
+    	for (int i = buffer.getInt(); i > 0; i--) {
+    		InstrumentInfo instrumentInfo = instrumentInfos.get(Instrument.values()[buffer.getShort()]);
+    		OrderCommand orderCommand = OrderCommand.values()[buffer.get()];
+    		if (instrumentInfo != null) {
+    			queuedOrders.put(instrumentInfo, orderCommand);
+    		}
+    	}
+    }
+    
+    public void replay(int type, ByteBuffer event) {
+    	switch (type) {
+    		case EVENT_STARTED:
+    			started = true;
+    			break;
+    		case EVENT_ORDER_PLACED:
+    			orderCounter = event.getInt();
+    			openLots += event.getDouble();
+    			break;
+    		case EVENT_ORDER_CLOSED:
+    			applyClose(Instrument.values()[event.getShort()], event.getDouble(), event.get() == 1, OrderCommand.values()[event.get()]);
+    			updateTradingPeriod(event.getLong(), event.getLong());
+    			break;
+    		case EVENT_QUEUE_CLEARED:
+    			queuedOrders.clear();
+    			break;
+    	}
+    }
+    
     //----------------------------------------------------------------------------------------------------------
     // Inner classes
     //----------------------------------------------------------------------------------------------------------
@@ -5,10 +5,8 @@ import java.math.RoundingMode;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -23,9 +21,11 @@ import com.dukascopy.api.IOrder.State;
 import com.dukascopy.api.IStrategy;
 import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
+import com.dukascopy.api.InstrumentType;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.OfferSide;
 import com.dukascopy.api.Period;
+import com.parker.forex.orders.ProfitLockerStore;
 
 /**
  * A constant order type strategy that either always buys or always sells. It continuously sets a profit target
@@ -73,7 +73,7 @@ public class MultiProfitLockerStrategy implements IStrategy {
     volatile double startEquity;
     
     volatile Set<Instrument> instruments;
-    volatile Map<Instrument, Integer> pipMap = new HashMap<>();
+    final ProfitLockerStore store = new ProfitLockerStore();
 
     @Configurable(value = "Base Trade Amount")
     public final double baseTradeAmount = 1;
@@ -87,6 +87,9 @@ public class MultiProfitLockerStrategy implements IStrategy {
     @Configurable(value = "Order Command (Buy/Sell)")
     public final OrderCommand orderCommand = OrderCommand.SELL;
 
+    @Configurable(value = "Trade All Forex Instruments")
+    public final boolean tradeAllInstruments = false;
+
     // *****************************************************************************************************************
     // Private Methods
     // *****************************************************************************************************************
@@ -102,13 +105,8 @@ public class MultiProfitLockerStrategy implements IStrategy {
         return BigDecimal.valueOf(value).setScale(precision, RoundingMode.HALF_UP).doubleValue();
     }
 
-    private boolean hasOpenPosition(Instrument instrument) throws JFException {
-        for (IOrder order : context.getEngine().getOrders(instrument)) {
-            if (!State.CLOSED.equals(order.getState()) && !State.CANCELED.equals(order.getState())) {
-                return true;
-            }
-        }
-        return false;
+    private boolean hasOpenPosition(Instrument instrument) {
+        return store.get(instrument, orderCommand).hasOpenPosition();
     }
     
     private boolean checkTime(long time) {
@@ -129,7 +127,7 @@ public class MultiProfitLockerStrategy implements IStrategy {
         double atr = context.getIndicators().atr(instrument, Period.DAILY, OfferSide.BID, 30, 1);
         int takeProfitPips = (int) (atr * atrMultiplier / instrument.getPipValue());
         
-        pipMap.put(instrument, takeProfitPips);
+        store.get(instrument, orderCommand).takeProfitPips = takeProfitPips;
         
         // Caclulate the lot size
         return Math.max(round((tradeAmount / takeProfitPips) * 0.01, 3), 0.001);
@@ -138,11 +136,15 @@ public class MultiProfitLockerStrategy implements IStrategy {
     private void placeOrder(Instrument instrument) throws JFException {
         String label = getName() + "_" + (++orderCounter);
         double lotSize = getLotSize(instrument);
-        context.getEngine().submitOrder(label, instrument, orderCommand, lotSize, 0, 0);
+        store.get(instrument, orderCommand).order = context.getEngine().submitOrder(label, instrument, orderCommand, lotSize, 0, 0);
     }
 
     private void onOrderCancelled(IMessage message) throws JFException {
         IOrder order = message.getOrder();
+        if (store.contains(order.getInstrument())) {
+            store.get(order.getInstrument(), orderCommand).release(order);
+        }
+        
         log("Order has been cancelled: " + order.getInstrument() + " " + order.getOrderCommand() + " for " + order.getAmount() 
             + " lots. ("  + message.getContent() + ")");
     }
@@ -152,7 +154,7 @@ public class MultiProfitLockerStrategy implements IStrategy {
         
         // Set the take profit and stop loss prices
         double openPrice = order.getOpenPrice();
-        double margin = instrument.getPipValue() * pipMap.get(instrument);
+        double margin = instrument.getPipValue() * store.get(instrument, orderCommand).takeProfitPips;
         int negator = order.isLong() ? 1 : -1;
 
         order.setTakeProfitPrice(round(openPrice + (negator * margin), instrument.getPipScale()));
@@ -171,6 +173,8 @@ public class MultiProfitLockerStrategy implements IStrategy {
         double profit = order.getProfitLossInUSD() - order.getCommissionInUSD();
         totalProfit += profit;
         
+        store.get(instrument, orderCommand).release(order);
+        
         // Recalculate locked profit
         if (totalProfit > lockedProfit) {
             lockedProfit = totalProfit;
@@ -203,16 +207,35 @@ public class MultiProfitLockerStrategy implements IStrategy {
         this.context = context;
         
         instruments = new HashSet<>();
-//        instruments.add(Instrument.EURUSD);
-//        instruments.add(Instrument.USDJPY);
-//        instruments.add(Instrument.GBPUSD);
-//        
-//        instruments.add(Instrument.EURJPY);
-        instruments.add(Instrument.EURGBP);
-//        instruments.add(Instrument.GBPJPY);
+        if (tradeAllInstruments) {
+            for (Instrument instrument : Instrument.values()) {
+                if (instrument.getType() == InstrumentType.FOREX) {
+                    instruments.add(instrument);
+                }
+            }
+        } else {
+//            instruments.add(Instrument.EURUSD);
+//            instruments.add(Instrument.USDJPY);
+//            instruments.add(Instrument.GBPUSD);
+//            
+//            instruments.add(Instrument.EURJPY);
+            instruments.add(Instrument.EURGBP);
+//            instruments.add(Instrument.GBPJPY);
+        }
         
         context.setSubscribedInstruments(instruments);
 
+        for (Instrument instrument : instruments) {
+            store.add(instrument, orderCommand, atrMultiplier);
+        }
+
+        // Pick up the orders left open by an earlier run
+        for (IOrder order : context.getEngine().getOrders()) {
+            if (store.contains(order.getInstrument()) && !State.CLOSED.equals(order.getState()) && !State.CANCELED.equals(order.getState())) {
+                store.get(order.getInstrument(), orderCommand).order = order;
+            }
+        }
+
         log("\nStarted the " + getName() + " strategy using " + instruments.size() + " instruments.");
     }
 
@@ -260,7 +283,7 @@ public class MultiProfitLockerStrategy implements IStrategy {
             }
         }
         
-        if (startTime > 0 && Period.DAILY.equals(period) && instruments.contains(instrument) 
+        if (startTime > 0 && Period.DAILY.equals(period) && store.contains(instrument) 
                 && !hasOpenPosition(instrument) && checkTime(askBar.getTime())) {
             placeOrder(instrument);
         }
@@ -5,11 +5,9 @@ import java.math.RoundingMode;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.TreeMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.dukascopy.api.IAccount;
 import com.dukascopy.api.IBar;
@@ -25,6 +23,7 @@ import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFCurrency;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.Period;
+import com.parker.forex.indicators.CurrencyStrengthMatrix;
 
 public class PowerOfOneStrategy implements IStrategy {
 
@@ -64,6 +63,7 @@ public class PowerOfOneStrategy implements IStrategy {
     volatile private double totalCommission;
     
     volatile private Basket basket;
+    volatile private CurrencyStrengthMatrix strengthMatrix;
         
     //*****************************************************************************************************************
     // Private Methods
@@ -91,6 +91,7 @@ public class PowerOfOneStrategy implements IStrategy {
     } 
 
     private void setupBasket() {
+        strengthMatrix = new CurrencyStrengthMatrix(priceHistorySize - 1);
         basket = new Basket(JFCurrency.getInstance("USD"),
             Instrument.EURUSD,
             Instrument.USDCHF,
@@ -176,6 +177,7 @@ public class PowerOfOneStrategy implements IStrategy {
             this.primaryCurrency = primaryCurrency;
             for (Instrument instrument : instruments) {
                 this.instruments.put(instrument, new InstrumentInfo(primaryCurrency, instrument));
+                strengthMatrix.addInstrument(instrument);
             }
         }
   
@@ -184,7 +186,7 @@ public class PowerOfOneStrategy implements IStrategy {
         	
         	for (InstrumentInfo info : instruments.values()) {
         		ITick lastTick = context.getHistory().getLastTick(info.instrument);
-        		info.addPrice(lastTick.getAsk());    		
+        		strengthMatrix.addSample(info.instrument, lastTick.getAsk());    		
                 tradeIndex += info.getTradeIndex();
         	}
         	
@@ -304,7 +306,6 @@ public class PowerOfOneStrategy implements IStrategy {
     
         volatile Instrument instrument;
         volatile OrderCommand orderCommand;
-        volatile List<Double> prices = new CopyOnWriteArrayList<Double>();
         volatile IOrder order;
         
         public InstrumentInfo(ICurrency primaryCurrency, Instrument instrument) {
@@ -317,15 +318,8 @@ public class PowerOfOneStrategy implements IStrategy {
             }
         }    
         
-        public void addPrice(Double price) {
-        	prices.add(price);
-        	if (prices.size() > priceHistorySize) {
-        		prices.remove(0);
-        	}
-        }
-        
         public double getPipMovement() {
-            return (prices.get(prices.size() - 1) - prices.get(0)) * Math.pow(10, instrument.getPipScale());
+            return strengthMatrix.getPriceChange(0, instrument) * Math.pow(10, instrument.getPipScale());
         }
         
         public boolean isTradable() {
@@ -338,7 +332,7 @@ public class PowerOfOneStrategy implements IStrategy {
         }
         
         public int getTradeIndex() {
-        	if (prices.size() >= priceHistorySize) {            
+        	if (strengthMatrix.isReady(0, instrument)) {            
                 if (Math.abs(getPipMovement()) > tradablePipThreshold) {
                     return isTradableBuy() ? 1 : -1;
                 };
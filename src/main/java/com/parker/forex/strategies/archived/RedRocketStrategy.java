@@ -27,6 +27,9 @@ import com.dukascopy.api.OfferSide;
 import com.dukascopy.api.Period;
 import com.dukascopy.api.PriceRange;
 import com.dukascopy.api.feed.IRenkoBar;
+import com.parker.forex.indicators.PriceBarFactory;
+import com.parker.forex.indicators.PriceBarFactory.BarType;
+import com.parker.forex.indicators.PriceBarHistory;
 
 /**
  * A continuously trading strategy where subsequent entry and exit points based on the order open price relative to fixed 
@@ -39,6 +42,7 @@ public class RedRocketStrategy implements IStrategy {
     //*****************************************************************************************************************
     private static final String NAME = "RED_ROCKET";
     private static final int SLIPPAGE = 1;
+    private static final int RENKO_BRICK_PIPS = 5;
     private static final SimpleDateFormat DATE_FORMAT_LONG = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss.SSS Z");
     
     static {
@@ -53,6 +57,9 @@ public class RedRocketStrategy implements IStrategy {
     private IConsole console;
     private IHistory history;
     
+    private final PriceBarFactory priceBars = new PriceBarFactory();
+    private PriceBarHistory renkoBars;
+    
     private long orderId = 1;
     private IOrder currentOrder;
     private boolean marketIsOpen;
@@ -99,6 +106,16 @@ public class RedRocketStrategy implements IStrategy {
     	return BigDecimal.valueOf(value).setScale(precision, RoundingMode.HALF_UP).doubleValue();
     }
     
+    @SuppressWarnings("deprecation")
+    private boolean isRenkoBullish() throws JFException {
+    	// Use the locally built bricks, falling back to the history service until the first brick has completed
+    	if (renkoBars.size() > 0) {
+    		return renkoBars.getOpen(0) < renkoBars.getClose(0);
+    	}
+    	IRenkoBar previousRenkoBar = history.getRenkoBar(instrument, OfferSide.BID, PriceRange.FIVE_PIPS, 1);
+    	return previousRenkoBar.getOpen() < previousRenkoBar.getClose();
+    }
+    
     private void placeTrade(OrderCommand orderCommand)  throws JFException {
     	// Only place new trades when the market is open
     	//if (marketIsOpen) {
@@ -111,6 +128,7 @@ public class RedRocketStrategy implements IStrategy {
 	//*****************************************************************************************************************
     public void onTick(Instrument instrument, ITick tick) throws JFException {
     	if (this.instrument.equals(instrument)) {
+    		priceBars.onTick(instrument, tick);
     		
     		if (currentOrder != null && State.FILLED.equals(currentOrder.getState())) {
 	            if (currentOrder.isLong()) {
@@ -138,7 +156,6 @@ public class RedRocketStrategy implements IStrategy {
     	}
     }
     
-    @SuppressWarnings("deprecation")
 	public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) throws JFException {
         if (this.instrument.equals(instrument) && Period.ONE_HOUR.equals(period) && !marketIsOpen) {
         	
@@ -154,8 +171,7 @@ public class RedRocketStrategy implements IStrategy {
         		closeOrder();
         		
         		// Start trading for the day - determine which way to go based on the previous Renko bar
-        		IRenkoBar previousRenkoBar = history.getRenkoBar(instrument, OfferSide.BID, PriceRange.FIVE_PIPS, 1);
-        		if (previousRenkoBar.getOpen() < previousRenkoBar.getClose()) {
+        		if (isRenkoBullish()) {
         			placeTrade(OrderCommand.BUY);
         		} else {
         			placeTrade(OrderCommand.SELL);
@@ -197,6 +213,7 @@ public class RedRocketStrategy implements IStrategy {
         this.history = context.getHistory();
         
         context.setSubscribedInstruments(Collections.singleton(instrument));
+        renkoBars = priceBars.subscribe(instrument, OfferSide.BID, BarType.RENKO, RENKO_BRICK_PIPS, 16);
         log("Started " + NAME + " strategy using " + instrument + ".");
     }
     
@@ -2,13 +2,12 @@ package com.parker.forex.strategies.archived;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -27,10 +26,14 @@ import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.Period;
 import com.dukascopy.api.feed.ITickBar;
+import com.parker.forex.runtime.PartitionedHost;
+import com.parker.forex.runtime.PartitionedHost.Outbox;
+import com.parker.forex.runtime.PartitionedHost.Partition;
 
 /**
  * Determines buy and sell trigger points based on the previous tick bar. Implements a martingale strategy for losing
- * trades.
+ * trades. Each instrument's ticks are tracked by a partition of a {@link PartitionedHost}, while orders and losses are
+ * handled on the platform thread.
  */
 public class RogerDodgerStrategy implements IStrategy {
     
@@ -57,7 +60,7 @@ public class RogerDodgerStrategy implements IStrategy {
     private int orderCounter = 1;
     private int consecutiveLossCount;
     private int bailouts;
-    private Map<Instrument, TickData> tickDataMap;
+    private PartitionedHost host;
     
     @Configurable(value = "Instruments")
     public Set<Instrument> instruments;
@@ -77,6 +80,13 @@ public class RogerDodgerStrategy implements IStrategy {
     @Configurable(value = "Consecutive Loss Limit")
     public int consecutiveLossLimit = 12;
     
+    @Configurable(value = "Partition Threads")
+    public int partitionThreads = 1;
+    
+    // Above 0 the ticks are tracked ahead of the orders, so open positions are checked up to that many ticks late
+    @Configurable(value = "Partition Window")
+    public int partitionWindow = 0;
+    
     //*****************************************************************************************************************
     // Private Methods
     //*****************************************************************************************************************
@@ -110,13 +120,13 @@ public class RogerDodgerStrategy implements IStrategy {
         return baseLotSize * Math.pow(2, consecutiveLossCount);
     }
     
-    private IOrder buy(TickData tickData) throws JFException {
-    	double lastAskPrice = tickData.getLastTick().getAsk();
+    private IOrder buy(Instrument instrument, ITick lastTick) throws JFException {
+    	double lastAskPrice = lastTick.getAsk();
     	
-    	double stopPrice = getPreciseValue(lastAskPrice - (tickData.getInstrument().getPipValue() * stopLossPips));
-    	double takeProfitPrice = getPreciseValue(lastAskPrice + (tickData.getInstrument().getPipValue() * takeProfitPips));
+    	double stopPrice = getPreciseValue(lastAskPrice - (instrument.getPipValue() * stopLossPips));
+    	double takeProfitPrice = getPreciseValue(lastAskPrice + (instrument.getPipValue() * takeProfitPips));
         
-        IOrder order = engine.submitOrder(getNextOrderId(tickData.getInstrument()), tickData.getInstrument(), IEngine.OrderCommand.BUY, getLotSize());
+        IOrder order = engine.submitOrder(getNextOrderId(instrument), instrument, IEngine.OrderCommand.BUY, getLotSize());
         
         order.waitForUpdate(State.FILLED);
         order.setStopLossPrice(stopPrice);
@@ -125,13 +135,13 @@ public class RogerDodgerStrategy implements IStrategy {
         return order;
     }
     
-    private IOrder sell(TickData tickData) throws JFException {
-    	double lastBidPrice = tickData.getLastTick().getBid();
+    private IOrder sell(Instrument instrument, ITick lastTick) throws JFException {
+    	double lastBidPrice = lastTick.getBid();
     	
-    	double stopPrice = getPreciseValue(lastBidPrice + (tickData.getInstrument().getPipValue() * stopLossPips));
-    	double takeProfitPrice = getPreciseValue(lastBidPrice - (tickData.getInstrument().getPipValue() * takeProfitPips));
+    	double stopPrice = getPreciseValue(lastBidPrice + (instrument.getPipValue() * stopLossPips));
+    	double takeProfitPrice = getPreciseValue(lastBidPrice - (instrument.getPipValue() * takeProfitPips));
     	
-        IOrder order = engine.submitOrder(getNextOrderId(tickData.getInstrument()), tickData.getInstrument(), IEngine.OrderCommand.SELL, getLotSize());
+        IOrder order = engine.submitOrder(getNextOrderId(instrument), instrument, IEngine.OrderCommand.SELL, getLotSize());
         
         order.waitForUpdate(State.FILLED);
         order.setStopLossPrice(stopPrice);
@@ -162,43 +172,36 @@ public class RogerDodgerStrategy implements IStrategy {
         }
     }
     
-    private void logOrder(IOrder order) throws JFException {
+    private void logOrder(IOrder order, String durations) throws JFException {
         if (order != null) {
-            String durations = tickDataMap.get(order.getInstrument()).getTickBarDurations();
             log(order.getLabel() + " @ " + DATE_FORMAT.format(new Date(order.getFillTime())) + ": Placed " + order.getOrderCommand() + " order @ $" + 
                     getPreciseValue(order.getOpenPrice()) + ". " + durations);
         }
     }
     
+    /**
+     * Places an order in the direction of the last 100 tick bar, run on the platform thread for a partition's signal.
+     */
+    private void trade(Instrument instrument, Direction direction, int tickCount, ITick lastTick, String durations) throws JFException {
+        // Execute whenever we are not in a position
+        if (!hasOpenPosition(instrument) && (consecutiveLossCount == 0 || tickCount % 100 == 0)) {
+            IOrder order = null;
+            
+            if (Direction.UPWARDS.equals(direction)) {
+            	order = buy(instrument, lastTick);
+            } else if (Direction.DOWNWARDS.equals(direction)) {
+            	order = sell(instrument, lastTick);
+            }
+                
+            logOrder(order, durations);
+        }
+    }
+    
     //*****************************************************************************************************************
     // Public Methods
     //*****************************************************************************************************************
     public void onTick(Instrument instrument, ITick tick) throws JFException {
-        if (instruments.contains(instrument)) {
-            TickData tickData = tickDataMap.get(instrument);
-            tickData.addTick(tick);
-            
-            // Execute whenever we are not in a position
-            int tickCount = tickData.getCurrentTickCount();
-            if (tickData.isQueueFull() && !hasOpenPosition(instrument) && 
-            		(consecutiveLossCount == 0 || tickCount % 100 == 0)) {
-                
-                // Determine the direction of the last 100 tick bar
-                Direction direction = getDirection(tickData.getTickBar(TickBar.T100));
-                
-                IOrder order = null;
-                
-                if (Direction.UPWARDS.equals(direction)) {
-                	order = buy(tickData);
-                } else if (Direction.DOWNWARDS.equals(direction)) {
-                	order = sell(tickData);
-                }
-                    
-                logOrder(order);
-            }
-            
-            tickData.incrementTickCount();
-        }
+        host.onTick(instrument, tick);
     }
     
     public void onStart(IContext context) throws JFException {
@@ -222,13 +225,13 @@ public class RogerDodgerStrategy implements IStrategy {
         
         context.setSubscribedInstruments(instruments, true);
         
-        // Initialize the tick counters
-        tickDataMap = new HashMap<Instrument, TickData>();
+        // Initialize the tick counters, one partition per instrument
+        host = new PartitionedHost(NAME, partitionThreads, partitionWindow);
         String description = "Started the " + NAME + " strategy using ";
         
         for (Iterator<Instrument> iterator = instruments.iterator(); iterator.hasNext();) {
             Instrument instrument = iterator.next();
-            tickDataMap.put(instrument, new TickData(instrument, TickBar.T100));
+            host.add(new TickPartition(new TickData(instrument, TickBar.T100)));
             
             description += instrument;
             if (iterator.hasNext()) {
@@ -236,10 +239,12 @@ public class RogerDodgerStrategy implements IStrategy {
             }
         }
         
+        host.onStart(context);
         log(description + ".");
     }
 
     public void onStop() throws JFException {
+        host.onStop();
         closeAllPositions();
         log("Total Equity: $" + account.getEquity() + ", Total Bailouts: " + bailouts);
         log("Strategy stopped.");
@@ -273,6 +278,41 @@ public class RogerDodgerStrategy implements IStrategy {
     //********************************************************************************************************************************
     // Inner Classes
     //********************************************************************************************************************************
+    /**
+     * Tracks one instrument's ticks on a worker thread and signals the direction of each full tick bar.
+     */
+    public class TickPartition implements Partition {
+
+        private final TickData tickData;
+        
+        public TickPartition(TickData tickData) {
+            this.tickData = tickData;
+        }
+        
+        @Override
+        public Set<Instrument> getInstruments() {
+            return Collections.singleton(tickData.getInstrument());
+        }
+        
+        @Override
+        public void onTick(Instrument instrument, ITick tick, Outbox outbox) throws JFException {
+            tickData.addTick(tick);
+            
+            int tickCount = tickData.getCurrentTickCount();
+            if (tickData.isQueueFull()) {
+                // Determine the direction of the last 100 tick bar
+                Direction direction = getDirection(tickData.getTickBar(TickBar.T100));
+                
+                if (!Direction.SIDEWAYS.equals(direction)) {
+                    String durations = tickData.getTickBarDurations();
+                    outbox.post(context -> trade(instrument, direction, tickCount, tick, durations));
+                }
+            }
+            
+            tickData.incrementTickCount();
+        }
+    }
+    
     /**
      * Holds tick state for each instrument.
      */
@@ -3,7 +3,6 @@ package com.parker.forex.strategies.archived;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -22,6 +21,10 @@ import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.OfferSide;
 import com.dukascopy.api.Period;
+import com.parker.forex.indicators.CandleHistory;
+import com.parker.forex.indicators.CandlestickPattern;
+import com.parker.forex.indicators.CandlestickPatternScanner;
+import com.parker.forex.indicators.CandlestickPatterns;
 
 /**
  * Determines buy and sell trigger points based on the presence of morning and evening star
@@ -48,7 +51,14 @@ public class StarGazerStrategy implements IStrategy {
     
     private int orderCounter;
     private long tickCounter;
-    private long previousBarTime;
+    
+    private CandlestickPatternScanner scanner;
+    private CandlestickPattern morningStar;
+    private CandlestickPattern eveningStar;
+    private boolean pendingBuy;
+    private boolean pendingSell;
+    private double buyTriggerPrice;
+    private double sellTriggerPrice;
     
     @Configurable(value = "Instrument")
     public Instrument instrument = Instrument.EURUSD;
@@ -129,99 +139,31 @@ public class StarGazerStrategy implements IStrategy {
 //        }
 //    }
     
-    private void processTickBars(Instrument instrument, ITick tick) throws JFException {
-        // Retrieve last 3 bars and determine if we have the beginning of a star formation
-        long barTime = history.getPreviousBarStart(Period.ONE_HOUR, tick.getTime());
-        
-        // Sanity check to prevent us processing the same bar more than once
-        if (previousBarTime == barTime) {
+    private void onPattern(CandlestickPattern pattern, CandleHistory bars) {
+        if (bars.getInstrument() != instrument) {
             return;
         }
-        previousBarTime = barTime;
-        
-        List<IBar> bars = history.getBars(instrument, Period.ONE_HOUR, OfferSide.ASK, Filter.NO_FILTER, HISTORICAL_BARS, barTime, 0);
 
-        // Determine the previous high and low to gauge an indication of trend
-        double previousHigh = bars.get(0).getHigh();
-        double previousLow = bars.get(0).getLow();
-        
-        int counter = 0;
-        for (IBar bar : bars) {
-            // Ignore last 3 bars 
-            if (counter >= (bars.size() - 3)) {
-                continue;
-            } else if (bar.getHigh() > previousHigh) {
-                previousHigh = bar.getHigh();
-            } else if (bar.getLow() < previousLow) {
-                previousLow = bar.getLow();
-            }
-            
-            counter++;
-        }
-        
-        IBar leadingBar = bars.get(bars.size() - 3);
-        IBar starBar = bars.get(bars.size() - 2);
-        IBar trailingBar = bars.get(bars.size() - 1);
-        
-        if (isMorningStar(leadingBar, starBar, trailingBar, previousLow, tick.getAsk())) {
-            buy(tick.getAsk());
-        }
-        
-        bars = history.getBars(instrument, Period.ONE_HOUR, OfferSide.BID, Filter.NO_FILTER, HISTORICAL_BARS, barTime, 0);
-        
-        leadingBar = bars.get(bars.size() - 3);
-        starBar = bars.get(bars.size() - 2);
-        trailingBar = bars.get(bars.size() - 1);
-        
-        if (isEveningStar(leadingBar, starBar, trailingBar, previousHigh, tick.getBid())) {
-            sell(tick.getBid());
-        }
-    }
-    
-    private boolean isMorningStar(IBar leadingBar, IBar starBar, IBar trailingBar, double previousLow, double currentTickPrice) {
-        boolean isMorningStar = false;
-        if (starBar.getLow() < previousLow && // ensure there are no previous bars that are lower (crude trend check)
-                currentTickPrice >= trailingBar.getClose() && // current price must be higher than trailing bar close
-                leadingBar.getOpen() - leadingBar.getClose() >= (instrument.getPipValue() * boundingBarSize) && // first bar body is correct size and downwards
-                leadingBar.getClose() > starBar.getOpen() && leadingBar.getClose() > starBar.getClose() && // star must be fully below the first bar 
-                (!enforceStarDirection || starBar.getOpen() <= starBar.getClose()) && // ensure direction of star is upwards
-                Math.abs(starBar.getOpen() - starBar.getClose()) <= (starSize * instrument.getPipValue()) && // star body is correct size
-                starBar.getOpen() < trailingBar.getOpen() && starBar.getClose() < trailingBar.getOpen() && // star must be fully below the last bar
-                trailingBar.getClose() - trailingBar.getOpen() >= (instrument.getPipValue() * boundingBarSize) && // last bar body is correct size and upwards
-                //trailingBar.getClose() <= leadingBar.getOpen() && // trailing bar must not close higher than leading open
-                Math.abs(trailingBar.getOpen() - trailingBar.getClose()) >= (Math.abs(leadingBar.getOpen() - leadingBar.getClose()) / 2)) { // last bar body must be smaller than first bar
-            isMorningStar = true;
-            logPriceDetails("Morning Star", leadingBar, starBar, trailingBar);
+        // Morning stars are traded off the ask bars, evening stars off the bid bars
+        if (pattern == morningStar && bars.getOfferSide() == OfferSide.ASK) {
+            pendingBuy = true;
+            buyTriggerPrice = bars.getClose(0);
+            logPriceDetails(pattern.getName(), bars);
+        } else if (pattern == eveningStar && bars.getOfferSide() == OfferSide.BID) {
+            pendingSell = true;
+            sellTriggerPrice = bars.getClose(0);
+            logPriceDetails(pattern.getName(), bars);
         }
-        return isMorningStar;
     }
     
-    private boolean isEveningStar(IBar leadingBar, IBar starBar, IBar trailingBar, double previousHigh, double currentTickPrice) {
-        boolean isEveningStar = false;
-        if (starBar.getHigh() > previousHigh && // ensure there are no previous bars that are higher (crude trend check)
-                currentTickPrice <= trailingBar.getClose() && // current price must be higher than trailing bar close
-                leadingBar.getClose() - leadingBar.getOpen() >= (instrument.getPipValue() * boundingBarSize) && // first bar body is correct size and upwards
-                leadingBar.getClose() < starBar.getOpen() && leadingBar.getClose() < starBar.getClose() && // star must be fully above the first bar 
-                (!enforceStarDirection || starBar.getOpen() >= starBar.getClose()) && // ensure direction of star is downwards
-                Math.abs(starBar.getOpen() - starBar.getClose()) <= (starSize * instrument.getPipValue()) && // star body is correct size
-                starBar.getOpen() > trailingBar.getOpen() && starBar.getClose() > trailingBar.getOpen() && // star must be fully above the last bar
-                trailingBar.getOpen() - trailingBar.getClose() >= (instrument.getPipValue() * boundingBarSize) && // last bar body is correct size and downwards
-                //trailingBar.getClose() >= leadingBar.getOpen() && // trailing bar must not close lower than leading open
-                Math.abs(trailingBar.getOpen() - trailingBar.getClose()) >= (Math.abs(leadingBar.getOpen() - leadingBar.getClose()) / 2)) { // last bar body must be smaller than first bar
-            isEveningStar = true;
-            logPriceDetails("Evening Star", leadingBar, starBar, trailingBar);
-        }
-        return isEveningStar;
+    private void logPriceDetails(String type, CandleHistory bars) {
+        log(type + " @ " + DATE_FORMAT.format(new Date(bars.getTime(1))) + " [F-Open=" + bars.getOpen(2) + ",F-Close=" + bars.getClose(2) + ",body=" + formatBodySize(bars.getBody(2)) + 
+                ",S-Open=" + bars.getOpen(1) + ",S-Close=" + bars.getClose(1)  + ",body=" + formatBodySize(bars.getBody(1)) +
+                ",L-Open=" + bars.getOpen(0) + ",L-Close=" + bars.getClose(0) + ",body=" + formatBodySize(bars.getBody(0)));
     }
     
-    private void logPriceDetails(String type, IBar leadingBar, IBar starBar, IBar trailingBar) {
-        log(type + " @ " + DATE_FORMAT.format(new Date(starBar.getTime())) + " [F-Open=" + leadingBar.getOpen() + ",F-Close=" + leadingBar.getClose() + ",body=" + formatBodySize(leadingBar) + 
-                ",S-Open=" + starBar.getOpen() + ",S-Close=" + starBar.getClose()  + ",body=" + formatBodySize(starBar) +
-                ",L-Open=" + trailingBar.getOpen() + ",L-Close=" + trailingBar.getClose() + ",body=" + formatBodySize(trailingBar));
-    }
-    
-    private String formatBodySize(IBar tickbar) {
-        return String.format("%.5f", Math.abs(tickbar.getOpen() - tickbar.getClose()));
+    private String formatBodySize(double body) {
+        return String.format("%.5f", body);
     }
     
     private void buy(double askPrice) throws JFException {
@@ -250,10 +192,18 @@ public class StarGazerStrategy implements IStrategy {
             if (tickCounter % emaBarSize == 0) {
                 tickCounter = 0;
 
-                // Only check for triggers if we are not already in an open position
-                if (!hasOpenPosition()) {
-                    processTickBars(instrument, tick);
+                // Only check for triggers if we are not already in an open position. Patterns are found once per
+                // bar close so each formation is only considered on the first check after it formed.
+                if ((pendingBuy || pendingSell) && !hasOpenPosition()) {
+                    if (pendingBuy && tick.getAsk() >= buyTriggerPrice) { // current price must be higher than trailing bar close
+                        buy(tick.getAsk());
+                    }
+                    if (pendingSell && tick.getBid() <= sellTriggerPrice) { // current price must be lower than trailing bar close
+                        sell(tick.getBid());
+                    }
                 }
+                pendingBuy = false;
+                pendingSell = false;
             }
         }
     }
@@ -268,6 +218,17 @@ public class StarGazerStrategy implements IStrategy {
         instruments.add(instrument);                     
         context.setSubscribedInstruments(instruments, true);
         
+        // Star formations are evaluated once per closed hourly bar against the bars kept by the scanner
+        morningStar = CandlestickPatterns.morningStar(starSize, boundingBarSize, enforceStarDirection);
+        eveningStar = CandlestickPatterns.eveningStar(starSize, boundingBarSize, enforceStarDirection);
+        scanner = new CandlestickPatternScanner(HISTORICAL_BARS - 3, morningStar, eveningStar);
+        scanner.subscribe(instrument, Period.ONE_HOUR);
+        scanner.addListener(this::onPattern);
+        
+        long barTime = history.getPreviousBarStart(Period.ONE_HOUR, history.getTimeOfLastTick(instrument));
+        scanner.warmUp(instrument, Period.ONE_HOUR, OfferSide.ASK, history.getBars(instrument, Period.ONE_HOUR, OfferSide.ASK, Filter.NO_FILTER, HISTORICAL_BARS, barTime, 0));
+        scanner.warmUp(instrument, Period.ONE_HOUR, OfferSide.BID, history.getBars(instrument, Period.ONE_HOUR, OfferSide.BID, Filter.NO_FILTER, HISTORICAL_BARS, barTime, 0));
+        
         log("Strategy started using " + instrument);
     }
 
@@ -276,6 +237,11 @@ public class StarGazerStrategy implements IStrategy {
     }
     
     public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) throws JFException {       
+        if (instrument.equals(this.instrument) && period.equals(Period.ONE_HOUR)) {
+            pendingBuy = false;
+            pendingSell = false;
+            scanner.onBar(instrument, period, askBar, bidBar);
+        }
     }
     
     public void onMessage(IMessage message) throws JFException {
@@ -136,8 +136,8 @@ public class TesterMain2 {
         // Set the date range
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
         dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-        Date dateFrom = dateFormat.parse("20160105");
-        Date dateTo = dateFormat.parse("20161231");
+        Date dateFrom = dateFormat.parse(args.length >= 2 ? args[0] : "20160105");
+        Date dateTo = dateFormat.parse(args.length >= 2 ? args[1] : "20161231");
 
         client.setDataInterval(DataLoadingMethod.ALL_TICKS, dateFrom.getTime(), dateTo.getTime());
 
@@ -4,7 +4,6 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
@@ -24,6 +23,9 @@ import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
 import com.dukascopy.api.JFException;
 import com.dukascopy.api.Period;
+import com.parker.forex.indicators.ThresholdBatch;
+import com.parker.forex.runtime.EventScheduler;
+import com.parker.forex.utils.TournamentTree;
 
 /**
  * Simple trend following strategy that uses a Martingale money management
@@ -49,7 +51,8 @@ public class YlemStrategy implements IStrategy {
     volatile int orderCounter;
     volatile boolean armed;
     volatile boolean hasOrder;
-    volatile long waitTime;
+    volatile EventScheduler.Timer coolDown;
+    final EventScheduler scheduler = new EventScheduler();
 
     volatile int winCounter;
     volatile int lossCounter;
@@ -57,6 +60,10 @@ public class YlemStrategy implements IStrategy {
     volatile int maxConsecutiveLossCounter;
 
     final ConcurrentMap<Instrument, InstrumentInfo> instruments = new ConcurrentHashMap<>();
+    final List<InstrumentInfo> infos = new ArrayList<>();
+    
+    // The signed index of each instrument's best index, by position in infos
+    volatile TournamentTree bestInstruments;
 
     @Configurable(value = "Base Trade Amount")
     public final double baseTradeAmount = 5;
@@ -69,6 +76,9 @@ public class YlemStrategy implements IStrategy {
     
     @Configurable(value = "Min Size")
     public final int minSize = 10;
+    
+    @Configurable(value = "Size Step")
+    public final int sizeStep = 10;
 
     @Configurable(value = "Martingale Factor")
     public final double martingaleFactor = 2.0;
@@ -76,6 +86,9 @@ public class YlemStrategy implements IStrategy {
     @Configurable(value = "Max Consecutive Losses")
     public final double maxConsecutiveLosses = 10;
 
+    @Configurable(value = "Cool Down (minutes)")
+    public final int coolDownMinutes = 10;
+
     // *****************************************************************************************************************
     // Private Methods
     // *****************************************************************************************************************
@@ -104,9 +117,8 @@ public class YlemStrategy implements IStrategy {
 
     private void onOrderCancelled(IMessage message) throws JFException {
         log("Error executing order: " + message.getContent());
-        waitTime = System.currentTimeMillis() + 600000;
         hasOrder = false;
-        checkAndOrder();
+        startCoolDown();
     }
 
     private void onOrderFilled(IOrder order) throws JFException {
@@ -145,23 +157,29 @@ public class YlemStrategy implements IStrategy {
             }
         }
         
-        waitTime = System.currentTimeMillis() + 600000;
         hasOrder = false;
-        checkAndOrder();
+        startCoolDown();
+    }
+    
+    /**
+     * Holds off new orders for the cool down period of market time. The next bar after it ends checks for an order.
+     */
+    private void startCoolDown() {
+        if (coolDown != null) {
+            coolDown.cancel();
+        }
+        coolDown = scheduler.scheduleIn(coolDownMinutes * 60000L, time -> coolDown = null);
     }
     
     private InstrumentInfo getBestInstrument() {
-        List<InstrumentInfo> infos = new ArrayList<>(instruments.values());
-        Collections.sort(infos);
-        return infos.get(0);
+        return infos.get(bestInstruments.getMaxPosition());
     }
     
     private void checkAndOrder() throws JFException {
         synchronized (instruments) {
-            if (!hasOrder && System.currentTimeMillis() > waitTime) {
+            if (!hasOrder && coolDown == null) {
                 InstrumentInfo bestInstrument = getBestInstrument();
-                if (bestInstrument.getBestIndex().index > minIndex) {
-                    waitTime = 0;
+                if (bestInstrument.getBestIndex() > minIndex) {
                     hasOrder = true;
                     placeOrder(bestInstrument);
                 }
@@ -175,12 +193,13 @@ public class YlemStrategy implements IStrategy {
     public void onStart(IContext context) throws JFException {
         this.context = context;
 
-        instruments.put(Instrument.EURUSD, new InstrumentInfo(Instrument.EURUSD));
-        instruments.put(Instrument.EURGBP, new InstrumentInfo(Instrument.EURGBP));
-        instruments.put(Instrument.EURJPY, new InstrumentInfo(Instrument.EURJPY));
-        instruments.put(Instrument.GBPUSD, new InstrumentInfo(Instrument.GBPUSD));
-        instruments.put(Instrument.GBPJPY, new InstrumentInfo(Instrument.GBPJPY));
-        instruments.put(Instrument.USDJPY, new InstrumentInfo(Instrument.USDJPY));
+        Instrument[] traded = {Instrument.EURUSD, Instrument.EURGBP, Instrument.EURJPY, Instrument.GBPUSD, Instrument.GBPJPY, Instrument.USDJPY};
+        bestInstruments = new TournamentTree(traded.length);
+        for (Instrument instrument : traded) {
+            InstrumentInfo info = new InstrumentInfo(instrument, infos.size());
+            infos.add(info);
+            instruments.put(instrument, info);
+        }
 
         context.setSubscribedInstruments(instruments.keySet());
 
@@ -215,6 +234,8 @@ public class YlemStrategy implements IStrategy {
     }
 
     public void onTick(Instrument instrument, ITick tick) throws JFException {
+        scheduler.advance(tick.getTime());
+        
         InstrumentInfo info = instruments.get(instrument);
         if (info != null) {
             if (info.basePrice <= 0) {
@@ -235,126 +256,82 @@ public class YlemStrategy implements IStrategy {
     // *****************************************************************************************************************
     // Static helper classes
     // *****************************************************************************************************************
-    private class InstrumentInfo implements Comparable<InstrumentInfo> {
+    private class InstrumentInfo {
 
         final Instrument instrument;
+        final int position;
         volatile double basePrice;
         OrderCommand orderCommand;
         int size;
         
-        volatile List<Index> indexes = new ArrayList<>();
+        // A trend and a range index for each size, slot n being minSize + n * sizeStep
+        final ThresholdBatch trendIndexes = new ThresholdBatch(ThresholdBatch.Mode.TREND);
+        final ThresholdBatch rangeIndexes = new ThresholdBatch(ThresholdBatch.Mode.RANGE);
+        
+        // The absolute value of each index, trend and range alternating by size
+        final TournamentTree bestIndexes;
 
-        InstrumentInfo(Instrument instrument) {
+        InstrumentInfo(Instrument instrument, int position) {
             this.instrument = instrument;
+            this.position = position;
             
             // Initialize the trend indexes
-            for (int size = minSize; size <= maxSize; size += 10) {
-                indexes.add(new TrendIndex(size, instrument.getPipValue()));
-                indexes.add(new RangeIndex(size, instrument.getPipValue()));
+            for (int size = minSize; size <= maxSize; size += sizeStep) {
+                trendIndexes.add(size * instrument.getPipValue(), false);
+                rangeIndexes.add(size * instrument.getPipValue(), false);
             }
+            bestIndexes = new TournamentTree(trendIndexes.size() * 2);
         }
 
         public void update(double price) {
-            for (Index index : indexes) {
-                index.update(price);
-            }
-        }
-        
-        public Index getBestIndex() {
-            Index bestIndex = null;
-            for (Index index : indexes) {
-                if (bestIndex == null || Math.abs(bestIndex.index) < Math.abs(index.index)) {
-                    bestIndex = index;
+            int trendsMoved = trendIndexes.update(price);
+            for (int i = 0; i < trendsMoved; i++) {
+                int slot = trendIndexes.getMoved(i);
+                int index = trendIndexes.getCounter(slot);
+                if (Math.abs(index) > minIndex) {
+                    armed = true;
                 }
-            }
-
-            orderCommand = bestIndex.orderCommand;
-            size = bestIndex.size;
-            
-            return bestIndex;
-        }
-        
-        @Override
-        public int compareTo(InstrumentInfo info) {
-            return info.getBestIndex().index - this.getBestIndex().index;
-        }
-    }
-    
-    private abstract class Index {
-        
-        int size;
-        double pip;
-        double basePrice;
-        int index;
-        OrderCommand orderCommand;
-        
-        Index(int size, double pip) {
-            this.size = size;
-            this.pip = pip;
-        }
-        
-        abstract void update(double price);
-    }
-    
-    private class TrendIndex extends Index {
-        
-        public TrendIndex(int size, double pip) {
-            super(size, pip);
-        }
-        
-        void update(double price) {
-            if (basePrice == 0) {
-                basePrice = price;
-                return;
+                bestIndexes.set(slot * 2, Math.abs(index));
             }
             
-            double diff = size * pip;
-            if (price - basePrice > diff) {
-                index = index >= 0 ? index + 1 : 0;
-                basePrice = price;
-            } else if (basePrice - price > diff) {
-                index = index <= 0 ? index - 1 : 0;
-                basePrice = price;
+            int rangesMoved = rangeIndexes.update(price);
+            for (int i = 0; i < rangesMoved; i++) {
+                int slot = rangeIndexes.getMoved(i);
+                int index = rangeIndexes.getCounter(slot);
+                if (index > minIndex) {
+                    armed = true;
+                }
+                bestIndexes.set(slot * 2 + 1, Math.abs(index));
             }
             
-            if (Math.abs(index) > minIndex) {
-                armed = true;
+            // Push the instrument's best index to the best instrument
+            if (trendsMoved > 0 || rangesMoved > 0) {
+                bestInstruments.set(position, getIndex(bestIndexes.getMaxPosition()));
             }
-            
-            orderCommand = index > 0 ? OrderCommand.BUY : OrderCommand.SELL;
         }
-    }
-    
-    private class RangeIndex extends Index {
         
-        int lastDirection;
-        
-        RangeIndex(int size, double pip) {
-            super(size, pip);
+        private int getIndex(int position) {
+            return position % 2 == 0 ? trendIndexes.getCounter(position / 2) : rangeIndexes.getCounter(position / 2);
         }
         
-        void update(double price) {
-            if (basePrice == 0) {
-                basePrice = price;
-                return;
-            }
-            
-            double diff = size * pip;
-            if (price - basePrice > diff) {
-                index = lastDirection < 0 ? index + 1 : 0;
-                lastDirection = 1;
-                basePrice = price;
-            } else if (basePrice - price > diff) {
-                index = lastDirection > 0 ? index - 1 : 0;
-                lastDirection = -1;
-                basePrice = price;
-            }
-            
-            if (index > minIndex) {
-                armed = true;
+        /**
+         * Selects the order command and size of the index furthest from 0.
+         * 
+         * @return The value of the index.
+         */
+        public int getBestIndex() {
+            int position = bestIndexes.getMaxPosition();
+            int slot = position / 2;
+            int index = getIndex(position);
+
+            if (position % 2 == 0) {
+                orderCommand = index > 0 ? OrderCommand.BUY : OrderCommand.SELL;
+            } else {
+                orderCommand = rangeIndexes.getDirection(slot) < 0 ? OrderCommand.BUY : OrderCommand.SELL;
             }
+            size = minSize + slot * sizeStep;
             
-            orderCommand = lastDirection < 0 ? OrderCommand.BUY : OrderCommand.SELL;
+            return index;
         }
     }
 }
@@ -0,0 +1,84 @@
+package com.parker.forex.utils;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the position holding the largest of a fixed number of int values in a tournament tree, ties going to the lower
+ * position.
+ */
+public class TournamentTree {
+
+    // *****************************************************************************************************************
+    // Instance Fields
+    // *****************************************************************************************************************
+    private final int size;
+    private final int leaves;
+    private final int[] values;
+    private final int[] winners;
+
+    /**
+     * Creates a tree of the given number of positions, all holding 0.
+     */
+    public TournamentTree(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        }
+        this.size = size;
+        this.leaves = Integer.highestOneBit(size) == size ? size : Integer.highestOneBit(size) << 1;
+
+        // Padding positions never win
+        this.values = new int[leaves];
+        Arrays.fill(values, size, leaves, Integer.MIN_VALUE);
+
+        this.winners = new int[leaves * 2];
+        for (int i = 0; i < leaves; i++) {
+            winners[leaves + i] = i;
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            winners[node] = play(winners[node * 2], winners[node * 2 + 1]);
+        }
+    }
+
+    // *****************************************************************************************************************
+    // Private Methods
+    // *****************************************************************************************************************
+    private int play(int left, int right) {
+        return values[right] > values[left] ? right : left;
+    }
+
+    // *****************************************************************************************************************
+    // Public Methods
+    // *****************************************************************************************************************
+    public void set(int position, int value) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+        }
+        if (values[position] == value) {
+            return;
+        }
+        values[position] = value;
+
+        for (int node = (leaves + position) >> 1; node > 0; node >>= 1) {
+            winners[node] = play(winners[node * 2], winners[node * 2 + 1]);
+        }
+    }
+
+    public int get(int position) {
+        return values[position];
+    }
+
+    /**
+     * @return The position of the largest value, the lowest such position if several hold it.
+     */
+    public int getMaxPosition() {
+        return winners[1];
+    }
+
+    public int getMax() {
+        return values[getMaxPosition()];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,163 @@
+package com.parker.forex.backtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dukascopy.api.Instrument;
+
+public class TickCodecTest {
+
+    private static final long DAY = TickStore.DAY;
+    private static final long START = 18_000 * DAY;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A random walk of whole-point prices from the start of the day, with volumes in millions to two decimals.
+     */
+    private static TickSeries walk(Instrument instrument, int count, double price, long seed) {
+        Random random = new Random(seed);
+        double scale = Math.pow(10, instrument.getPipScale() + 1);
+        long points = Math.round(price * scale);
+        long[] times = new long[count];
+        double[] bids = new double[count];
+        double[] asks = new double[count];
+        double[] bidVolumes = new double[count];
+        double[] askVolumes = new double[count];
+        long time = START;
+        for (int i = 0; i < count; i++) {
+            time += random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(5000);
+            points += random.nextInt(11) - 5;
+            times[i] = time;
+            bids[i] = points / scale;
+            asks[i] = (points + 1 + random.nextInt(20)) / scale;
+            bidVolumes[i] = (1 + random.nextInt(500)) / 100.0;
+            askVolumes[i] = (1 + random.nextInt(500)) / 100.0;
+        }
+        return new TickSeries(instrument, times, bids, asks, bidVolumes, askVolumes);
+    }
+
+    private static void assertSame(TickSeries expected, TickSeries actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getTime(i), actual.getTime(i));
+            assertEquals(expected.getBid(i), actual.getBid(i), 0);
+            assertEquals(expected.getAsk(i), actual.getAsk(i), 0);
+            assertEquals((float) expected.getBidVolume(i), (float) actual.getBidVolume(i), 0);
+            assertEquals((float) expected.getAskVolume(i), (float) actual.getAskVolume(i), 0);
+        }
+    }
+
+    private TickSeries storeAndRead(TickSeries ticks, short expectedVersion) throws IOException {
+        TickStore store = new TickStore(folder.getRoot().toPath());
+        store.writeDay(START / DAY, ticks);
+        byte[] file = Files.readAllBytes(store.getPath(ticks.getInstrument(), START / DAY));
+        assertEquals(expectedVersion, (short) (file[4] & 0xFF | file[5] << 8));
+        return store.readDay(ticks.getInstrument(), START / DAY);
+    }
+
+    @Test
+    public void roundTripsEurUsdDay() throws IOException {
+        TickSeries ticks = walk(Instrument.EURUSD, 500, 1.12345, 1);
+
+        assertSame(ticks, TickCodec.decode(Instrument.EURUSD, TickCodec.encode(ticks), 0, ticks.size()));
+        assertSame(ticks, storeAndRead(ticks, TickStore.ENCODED_VERSION));
+    }
+
+    @Test
+    public void roundTripsUsdJpyDay() throws IOException {
+        TickSeries ticks = walk(Instrument.USDJPY, 500, 108.123, 2);
+
+        assertSame(ticks, TickCodec.decode(Instrument.USDJPY, TickCodec.encode(ticks), 0, ticks.size()));
+        assertSame(ticks, storeAndRead(ticks, TickStore.ENCODED_VERSION));
+    }
+
+    @Test
+    public void storesOffScalePricesRaw() throws IOException {
+        TickSeries ticks = walk(Instrument.USDJPY, 100, 108.123, 3);
+        ticks.bids[50] = 108.123456789;
+
+        assertNull(TickCodec.encode(ticks));
+        assertSame(ticks, storeAndRead(ticks, TickStore.RAW_VERSION));
+    }
+
+    @Test
+    public void keepsFinerPricesWithinTheExtraDecimals() throws IOException {
+        TickSeries ticks = walk(Instrument.EURUSD, 100, 1.12345, 4);
+        ticks.asks[10] = 1.1234567;
+
+        // The block's price decimals in the header
+        assertEquals(7, TickCodec.encode(ticks)[8]);
+        assertSame(ticks, storeAndRead(ticks, TickStore.ENCODED_VERSION));
+    }
+
+    @Test
+    public void roundTripsRawVolumes() throws IOException {
+        TickSeries ticks = walk(Instrument.EURUSD, 100, 1.12345, 5);
+        ticks.askVolumes[7] = 0.123456789;
+        ticks.bidVolumes[8] = 1e-9;
+        byte[] encoded = TickCodec.encode(ticks);
+
+        // The block's ask and bid volume decimals in the header are raw floats
+        assertEquals(0xFF, encoded[9] & 0xFF);
+        assertEquals(0xFF, encoded[10] & 0xFF);
+        assertSame(ticks, TickCodec.decode(Instrument.EURUSD, encoded, 0, ticks.size()));
+        assertSame(ticks, storeAndRead(ticks, TickStore.ENCODED_VERSION));
+    }
+
+    @Test
+    public void roundTripsMultiBlockDays() throws IOException {
+        TickSeries ticks = walk(Instrument.EURUSD, TickCodec.BLOCK_SIZE * 2 + 100, 1.12345, 6);
+        byte[] encoded = TickCodec.encode(ticks);
+
+        assertEquals(TickCodec.BLOCK_SIZE, TickCodec.getBlockSize(encoded, 0));
+        assertSame(ticks, TickCodec.decode(Instrument.EURUSD, encoded, 0, ticks.size()));
+        assertSame(ticks, storeAndRead(ticks, TickStore.ENCODED_VERSION));
+    }
+
+    @Test
+    public void rejectsTruncatedBlocks() {
+        TickSeries ticks = walk(Instrument.EURUSD, TickCodec.BLOCK_SIZE + 10, 1.12345, 7);
+        byte[] encoded = TickCodec.encode(ticks);
+
+        for (int length : new int[] {0, 5, TickCodec.BLOCK_HEADER_SIZE, encoded.length / 2, encoded.length - 1}) {
+            try {
+                TickCodec.decode(Instrument.EURUSD, Arrays.copyOf(encoded, length), 0, ticks.size());
+                fail("Decoded " + length + " of " + encoded.length + " bytes");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void rejectsCorruptBlocks() {
+        TickSeries ticks = walk(Instrument.EURUSD, 100, 1.12345, 8);
+        byte[] encoded = TickCodec.encode(ticks);
+
+        // The count, the length and the continuation bit of a varint, which shifts the rest of the block
+        int[][] corruptions = {{0, 0x55}, {4, 0x55}, {TickCodec.BLOCK_HEADER_SIZE + 1, 0x80}};
+        for (int[] corruption : corruptions) {
+            int position = corruption[0];
+            byte[] corrupt = encoded.clone();
+            corrupt[position] ^= corruption[1];
+            try {
+                TickCodec.decode(Instrument.EURUSD, corrupt, 0, ticks.size());
+                fail("Decoded a block corrupt at " + position);
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.parker.forex.backtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dukascopy.api.Instrument;
+
+public class TickImporterTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The fixture holds 2020-01-06 10h with a tick, its duplicate, a crossed tick and a tick a minute later, and an empty
+     * 11h file.
+     */
+    private static Path fixture() throws Exception {
+        return Paths.get(TickImporterTest.class.getResource("bi5").toURI());
+    }
+
+    @Test
+    public void importsBi5Hours() throws Exception {
+        TickStore store = new TickStore(folder.getRoot().toPath());
+        TickImporter importer = new TickImporter(store, 2);
+
+        assertEquals(2, importer.importBi5(Instrument.EURUSD, fixture()));
+        assertEquals(1, importer.getRejected());
+        assertEquals(1, importer.getDuplicates());
+
+        long day = LocalDate.of(2020, 1, 6).toEpochDay();
+        long hourStart = day * TickStore.DAY + 10 * HOUR;
+        TickSeries ticks = store.readDay(Instrument.EURUSD, day);
+        assertEquals(2, ticks.size());
+        assertEquals(hourStart + 1500, ticks.getTime(0));
+        assertEquals(1.12340, ticks.getBid(0), 1e-9);
+        assertEquals(1.12345, ticks.getAsk(0), 1e-9);
+        assertEquals(2.25, ticks.getBidVolume(0), 1e-9);
+        assertEquals(1.5, ticks.getAskVolume(0), 1e-9);
+        assertEquals(hourStart + 61000, ticks.getTime(1));
+        assertEquals(1.12346, ticks.getBid(1), 1e-9);
+        assertEquals(1.12350, ticks.getAsk(1), 1e-9);
+    }
+
+    @Test
+    public void reimportingAddsNothing() throws Exception {
+        TickImporter importer = new TickImporter(new TickStore(folder.getRoot().toPath()), 1);
+
+        importer.importBi5(Instrument.EURUSD, fixture());
+        assertEquals(0, importer.importBi5(Instrument.EURUSD, fixture()));
+        assertEquals(2, importer.getImported());
+    }
+}
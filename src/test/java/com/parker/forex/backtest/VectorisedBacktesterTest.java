@@ -0,0 +1,60 @@
+package com.parker.forex.backtest;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class VectorisedBacktesterTest {
+
+    private static final long DAY = 86_400_000L;
+    private static final double PIP = 0.0001;
+
+    /**
+     * Daily bars from rows of open, high, low and close in pips above 1.0.
+     */
+    private static BarSeries bars(int[][] rows) {
+        int count = rows.length;
+        long[] times = new long[count];
+        double[] opens = new double[count];
+        double[] highs = new double[count];
+        double[] lows = new double[count];
+        double[] closes = new double[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = i * DAY;
+            opens[i] = 1 + rows[i][0] * PIP;
+            highs[i] = 1 + rows[i][1] * PIP;
+            lows[i] = 1 + rows[i][2] * PIP;
+            closes[i] = 1 + rows[i][3] * PIP;
+        }
+        return new BarSeries(DAY, times, opens, highs, lows, closes);
+    }
+
+    @Test
+    public void ballBreakerFillsOnConsecutiveBars() {
+        // An inside bar leaves the first orders untriggered, then each bar gaps through the previous high
+        BarSeries bid = bars(new int[][] {{0, 20, -2, 15}, {5, 15, 0, 10}, {50, 70, 48, 65}, {100, 120, 98, 115}, {150, 170, 148, 165}});
+        BarSeries ask = bid.withSpread(0);
+
+        BacktestResult result = new VectorisedBacktester(PIP).run(bid, ask, BarRules.ballBreaker(PIP, 5, 0, 1));
+
+        assertEquals(3, result.size());
+        for (int trade = 0; trade < result.size(); trade++) {
+            int bar = trade + 2;
+            assertEquals(bar * DAY, result.getEntryTime(trade));
+            assertEquals(bar * DAY, result.getExitTime(trade));
+            assertEquals(BacktestResult.EXIT_TAKE_PROFIT, result.getExitReason(trade));
+            assertEquals(bid.opens[bar], result.getEntryPrice(trade), 1e-9);
+        }
+    }
+
+    @Test
+    public void morningGloryWaitsForTheInitialRange() {
+        BarSeries bid = bars(new int[][] {{0, 20, -2, 15}, {15, 40, 10, 35}, {35, 60, 30, 55}});
+        BarSeries ask = bid.withSpread(0);
+
+        // Midnight is never the start hour here, so the range is never set and nothing is traded
+        BacktestResult result = new VectorisedBacktester(PIP).run(bid, ask, BarRules.morningGlory(1, 1, 1, 7, 23));
+
+        assertEquals(0, result.size());
+    }
+}
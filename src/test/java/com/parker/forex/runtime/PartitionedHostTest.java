@@ -0,0 +1,246 @@
+package com.parker.forex.runtime;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.dukascopy.api.IConsole;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.IEngine.OrderCommand;
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.IOrder.State;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.JFException;
+import com.parker.forex.backtest.ReplayTick;
+import com.parker.forex.runtime.PartitionedHost.MessageSnapshot;
+import com.parker.forex.runtime.PartitionedHost.Outbox;
+import com.parker.forex.runtime.PartitionedHost.Partition;
+
+public class PartitionedHostTest {
+
+    private static final Instrument[] INSTRUMENTS = {Instrument.EURUSD, Instrument.GBPUSD, Instrument.USDJPY, Instrument.EURJPY,
+            Instrument.EURGBP, Instrument.GBPJPY, Instrument.AUDUSD, Instrument.USDCHF};
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(PartitionedHostTest.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static IContext context() {
+        IConsole console = proxy(IConsole.class, (p, method, args) -> System.out);
+        return proxy(IContext.class, (p, method, args) -> method.getName().equals("getConsole") ? console : null);
+    }
+
+    private static IMessage message(IMessage.Type type, String content, IOrder order) {
+        return proxy(IMessage.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getType":
+                    return type;
+                case "getContent":
+                    return content;
+                case "getOrder":
+                    return order;
+                case "getCreationTime":
+                    return 0L;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * An order whose amount and state are read from the arrays when the host copies it.
+     */
+    private static IOrder order(double[] amount, State[] state) {
+        return proxy(IOrder.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getInstrument":
+                    return Instrument.EURUSD;
+                case "getLabel":
+                    return "ORDER";
+                case "getOrderCommand":
+                    return OrderCommand.BUY;
+                case "getAmount":
+                    return amount[0];
+                case "getState":
+                    return state[0];
+                default:
+                    Class<?> type = method.getReturnType();
+                    return type == double.class ? (Object) 0.0 : type == long.class ? (Object) 0L : null;
+            }
+        });
+    }
+
+    /**
+     * Folds each tick into its state and logs the state every 100 ticks and on each message, through actions.
+     */
+    private static final class LoggingPartition implements Partition {
+
+        final Instrument instrument;
+        final List<String> log;
+        double state;
+        int ticks;
+
+        LoggingPartition(Instrument instrument, List<String> log) {
+            this.instrument = instrument;
+            this.log = log;
+        }
+
+        @Override
+        public Set<Instrument> getInstruments() {
+            return EnumSet.of(instrument);
+        }
+
+        @Override
+        public void onTick(Instrument instrument, ITick tick, Outbox outbox) {
+            for (int i = 0; i < 100; i++) {
+                state = state * 0.999 + Math.sqrt(tick.getBid() + i);
+            }
+            if (++ticks % 100 == 0) {
+                String entry = instrument + " " + tick.getTime() + " " + state;
+                outbox.post(context -> log.add(entry));
+            }
+        }
+
+        @Override
+        public void onMessage(MessageSnapshot message, Outbox outbox) {
+            String entry = instrument + " " + state + " " + message;
+            outbox.post(context -> log.add(entry));
+        }
+    }
+
+    private static List<String> run(int threads, int window) throws JFException {
+        List<String> log = new ArrayList<>();
+        PartitionedHost host = new PartitionedHost("TEST", threads, window);
+        for (Instrument instrument : INSTRUMENTS) {
+            host.add(new LoggingPartition(instrument, log));
+        }
+
+        double[] amount = {0};
+        State[] state = {State.CREATED};
+        IOrder order = order(amount, state);
+        IMessage notification = message(IMessage.Type.NOTIFICATION, "NOTE", null);
+        IMessage filled = message(IMessage.Type.ORDER_FILL_OK, null, order);
+
+        host.onStart(context());
+        Random random = new Random(1);
+        ReplayTick tick = new ReplayTick();
+        for (int i = 0; i < 20_000; i++) {
+            host.onTick(INSTRUMENTS[random.nextInt(INSTRUMENTS.length)], tick.set(i, 1 + random.nextDouble(), 2, 1, 1));
+            if (i % 5000 == 0) {
+                host.onMessage(notification);
+            }
+            if (i % 1000 == 7) {
+                // The order changes right after the message, which the partition must not see
+                amount[0] = i;
+                state[0] = State.FILLED;
+                host.onMessage(filled);
+                amount[0] = 0;
+                state[0] = State.CLOSED;
+            }
+        }
+        host.onStop();
+        return log;
+    }
+
+    @Test
+    public void resultsDoNotDependOnTheThreadCount() throws JFException {
+        List<String> expected = run(1, 0);
+        for (int window : new int[] {0, 64, 256}) {
+            for (int threads = 1; threads <= 8; threads++) {
+                assertEquals("threads " + threads + ", window " + window, expected, run(threads, window));
+            }
+        }
+    }
+
+    @Test
+    public void partitionsKeepTheirTicks() throws JFException {
+        List<ITick> kept = new ArrayList<>();
+        PartitionedHost host = new PartitionedHost("TEST", 1, 256);
+        host.add(new Partition() {
+
+            @Override
+            public Set<Instrument> getInstruments() {
+                return EnumSet.of(Instrument.EURUSD);
+            }
+
+            @Override
+            public void onTick(Instrument instrument, ITick tick, Outbox outbox) {
+                kept.add(tick);
+            }
+        });
+
+        host.onStart(context());
+        ReplayTick tick = new ReplayTick();
+        for (int i = 0; i < 1000; i++) {
+            host.onTick(Instrument.EURUSD, tick.set(i, 1, 2, 1, 1));
+        }
+        host.onStop();
+
+        assertEquals(1000, kept.size());
+        for (int i = 0; i < kept.size(); i++) {
+            assertEquals(i, kept.get(i).getTime());
+        }
+    }
+
+    @Test
+    public void actionsCanDeliverMoreMessagesThanTheRingHolds() throws JFException {
+        for (int window : new int[] {0, 256}) {
+            List<String> seen = new ArrayList<>();
+            List<String> log = new ArrayList<>();
+            PartitionedHost host = new PartitionedHost("TEST", 1, window);
+            host.add(new Partition() {
+
+                @Override
+                public Set<Instrument> getInstruments() {
+                    return EnumSet.of(Instrument.EURUSD);
+                }
+
+                @Override
+                public void onTick(Instrument instrument, ITick tick, Outbox outbox) {
+                    long time = tick.getTime();
+                    outbox.post(context -> {
+                        // As a synchronous engine would, with each message sent back before the action returns
+                        for (int i = 0; i < 100; i++) {
+                            host.onMessage(message(IMessage.Type.NOTIFICATION, time + "-" + i, null));
+                        }
+                    });
+                }
+
+                @Override
+                public void onMessage(MessageSnapshot message, Outbox outbox) {
+                    // The snapshot is reused, so the action gets its own copy of the content
+                    String content = message.getContent();
+                    seen.add(content);
+                    outbox.post(context -> log.add(content));
+                }
+            });
+
+            host.onStart(context());
+            ReplayTick tick = new ReplayTick();
+            for (int i = 0; i < 3; i++) {
+                host.onTick(Instrument.EURUSD, tick.set(i, 1, 2, 1, 1));
+            }
+            host.onStop();
+
+            List<String> expected = new ArrayList<>();
+            for (int time = 0; time < 3; time++) {
+                for (int i = 0; i < 100; i++) {
+                    expected.add(time + "-" + i);
+                }
+            }
+            assertEquals(expected, seen);
+            assertEquals(expected, log);
+        }
+    }
+}